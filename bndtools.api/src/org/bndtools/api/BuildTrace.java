@@ -0,0 +1,143 @@
+package org.bndtools.api;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Structured tracing of where the time of builds goes. Code records spans, which nest by time on each thread, and
+ * counters. While tracing is enabled they are passed to the installed {@link Recorder}; while it is disabled, starting
+ * a span costs no more than reading a volatile field.
+ *
+ * <pre>
+ * try (BuildTrace.Span span = BuildTrace.span(BuildTrace.BUILD, "bnd build")) {
+ *     File[] files = model.build();
+ *     span.arg("files", files.length);
+ * }
+ * </pre>
+ */
+public final class BuildTrace {
+
+    /** Category of the builder steps. */
+    public static final String BUILD = "build";
+    /** Category of the bnd classpath container. */
+    public static final String CLASSPATH = "classpath";
+    /** Category of the bundle indexes and the workspace repository. */
+    public static final String INDEX = "index";
+    /** Category of problem markers. */
+    public static final String MARKERS = "markers";
+    /** Category of calls to the bnd workspace. */
+    public static final String WORKSPACE = "workspace";
+
+    /**
+     * A timed span of work. It is recorded when it is closed, so it must be closed on the thread that started it.
+     */
+    public interface Span extends AutoCloseable {
+
+        /**
+         * Add an argument, such as the name of the project or the number of files. Arguments are only kept while tracing
+         * is enabled.
+         */
+        Span arg(String name, Object value);
+
+        @Override
+        void close();
+    }
+
+    /**
+     * Receives the recorded spans and counters. Implementations are called on the thread that recorded the span, and
+     * must be thread-safe and fast.
+     */
+    public interface Recorder {
+
+        /**
+         * @param startNanos
+         *            the start time of the span, in terms of {@link System#nanoTime()}.
+         */
+        void span(String category, String name, long startNanos, long durationNanos, Thread thread, Map<String,Object> args);
+
+        /**
+         * @param timeNanos
+         *            the time of the value, in terms of {@link System#nanoTime()}.
+         */
+        void counter(String category, String name, long timeNanos, long value);
+    }
+
+    private static final Span DISABLED = new Span() {
+        @Override
+        public Span arg(String name, Object value) {
+            return this;
+        }
+
+        @Override
+        public void close() {}
+    };
+
+    private static volatile Recorder recorder = null;
+
+    private BuildTrace() {}
+
+    /**
+     * Install the recorder of all spans and counters, or {@code null} to disable tracing.
+     */
+    public static void setRecorder(Recorder recorder) {
+        BuildTrace.recorder = recorder;
+    }
+
+    public static boolean isEnabled() {
+        return recorder != null;
+    }
+
+    /**
+     * Start a span, which ends when it is closed.
+     */
+    public static Span span(String category, String name) {
+        Recorder current = recorder;
+        if (current == null)
+            return DISABLED;
+        return new RecordingSpan(current, category, name);
+    }
+
+    /**
+     * Record the current value of a counter, such as the number of files built.
+     */
+    public static void counter(String category, String name, long value) {
+        Recorder current = recorder;
+        if (current != null)
+            current.counter(category, name, System.nanoTime(), value);
+    }
+
+    private static final class RecordingSpan implements Span {
+        private final Recorder recorder;
+        private final String category;
+        private final String name;
+        private final Thread thread = Thread.currentThread();
+        private final long start = System.nanoTime();
+        private Map<String,Object> args = null;
+        private boolean closed = false;
+
+        RecordingSpan(Recorder recorder, String category, String name) {
+            this.recorder = recorder;
+            this.category = category;
+            this.name = name;
+        }
+
+        @Override
+        public Span arg(String argName, Object value) {
+            if (args == null)
+                args = new LinkedHashMap<String,Object>();
+            args.put(argName, value);
+            return this;
+        }
+
+        @Override
+        public void close() {
+            if (closed)
+                return;
+            closed = true;
+            Map<String,Object> recordedArgs = args != null ? args : Collections.<String,Object> emptyMap();
+            recorder.span(category, name, start, System.nanoTime() - start, thread, recordedArgs);
+        }
+    }
+
+}
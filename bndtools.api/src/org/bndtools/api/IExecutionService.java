@@ -0,0 +1,60 @@
+package org.bndtools.api;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+
+/**
+ * The bndtools-wide service for running background work on shared, bounded thread pools. Use this rather than creating
+ * threads or executors; work that must hold a workspace scheduling rule should still use an Eclipse {@code Job}.
+ */
+public interface IExecutionService {
+
+    /**
+     * The pools, by the kind of work they run.
+     */
+    enum Pool {
+        /** Blocking work such as downloads and file access. */
+        IO,
+        /** Computation such as analysis and resolving; sized to the number of processors. */
+        CPU,
+        /** Work that prepares data for the UI and should not queue behind long-running I/O or computation. */
+        UI
+    }
+
+    /**
+     * Within each pool, queued tasks of a higher priority run first; tasks of the same priority run in submission order.
+     */
+    enum Priority {
+        HIGH, NORMAL, LOW
+    }
+
+    /**
+     * Submit a named task. The name is used to aggregate the queue-wait and run-time metrics.
+     */
+    <T> Future<T> submit(Pool pool, Priority priority, String name, Callable<T> task);
+
+    /**
+     * Submit a named task. The name is used to aggregate the queue-wait and run-time metrics.
+     */
+    Future< ? > submit(Pool pool, Priority priority, String name, Runnable task);
+
+    /**
+     * Get an {@link ExecutorService} view of a pool lane, for APIs that require one. Tasks are named after their class.
+     * The returned executor cannot be shut down.
+     */
+    ExecutorService getExecutor(Pool pool, Priority priority);
+
+    /**
+     * Get the shared scheduler for delayed and periodic tasks. Scheduled tasks run on a single thread, so they must be
+     * short; longer work should be submitted to one of the pools.
+     */
+    ScheduledExecutorService getScheduler();
+
+    /**
+     * Get a human-readable dump of the current pool state and the per-task metrics.
+     */
+    String dumpMetrics();
+
+}
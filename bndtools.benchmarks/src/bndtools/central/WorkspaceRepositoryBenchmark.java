@@ -0,0 +1,94 @@
+package bndtools.central;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.bndtools.benchmarks.BenchmarkWorkspaces;
+import org.bndtools.benchmarks.ProjectIndexes;
+import org.bndtools.benchmarks.SyntheticResources;
+import org.bndtools.benchmarks.SyntheticWorkspace;
+import org.eclipse.core.resources.IProject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.osgi.framework.namespace.IdentityNamespace;
+import org.osgi.framework.namespace.PackageNamespace;
+import org.osgi.resource.Capability;
+import org.osgi.resource.Namespace;
+import org.osgi.resource.Requirement;
+
+import aQute.bnd.build.Project;
+import aQute.bnd.build.Workspace;
+import aQute.bnd.osgi.resource.CapReqBuilder;
+
+/**
+ * Lookups in the {@link WorkspaceR5Repository}, which holds the indexes of the bundles built in the workspace, and the
+ * reloading of those indexes after a build.
+ */
+@State(Scope.Benchmark)
+public class WorkspaceRepositoryBenchmark {
+
+    @Param({
+            "10", "100"
+    })
+    public int projects;
+
+    private Workspace ws;
+    private WorkspaceR5Repository repository;
+    private final Map<IProject,File> indexes = new LinkedHashMap<IProject,File>();
+    private final List<Requirement> packageRequirements = new ArrayList<Requirement>();
+    private Requirement identityRequirement;
+
+    @Setup
+    public void setup() throws Exception {
+        ws = BenchmarkWorkspaces.open(BenchmarkWorkspaces.SYNTHETIC, projects);
+        String workspaceRootUri = ws.getBase().toURI().toString();
+        for (Project model : BenchmarkWorkspaces.getProjects(ws))
+            indexes.put(SyntheticResources.project(model.getName(), model.getBase()), ProjectIndexes.index(model, workspaceRootUri));
+
+        repository = new WorkspaceR5Repository();
+        loadProjectIndexes();
+
+        for (int i = 0; i < projects; i++)
+            packageRequirements.add(requirement(PackageNamespace.PACKAGE_NAMESPACE, "(" + PackageNamespace.PACKAGE_NAMESPACE + "=" + SyntheticWorkspace.projectName(i) + ".api)"));
+        identityRequirement = requirement(IdentityNamespace.IDENTITY_NAMESPACE, "(" + IdentityNamespace.IDENTITY_NAMESPACE + "=*)");
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        ws.close();
+    }
+
+    @Benchmark
+    public Map<Requirement,Collection<Capability>> findPackageProviders() {
+        return repository.findProviders(packageRequirements);
+    }
+
+    @Benchmark
+    public Map<Requirement,Collection<Capability>> findAllIdentities() {
+        return repository.findProviders(Collections.singleton(identityRequirement));
+    }
+
+    @Benchmark
+    public WorkspaceR5Repository loadProjectIndexes() throws Exception {
+        for (Map.Entry<IProject,File> entry : indexes.entrySet()) {
+            IProject project = entry.getKey();
+            repository.loadProjectIndex(project, new FileInputStream(entry.getValue()), project.getLocation().toFile().toURI());
+        }
+        return repository;
+    }
+
+    private static Requirement requirement(String namespace, String filter) {
+        return new CapReqBuilder(namespace).addDirective(Namespace.REQUIREMENT_FILTER_DIRECTIVE, filter).buildSyntheticRequirement();
+    }
+
+}
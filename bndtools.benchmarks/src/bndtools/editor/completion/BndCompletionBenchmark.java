@@ -0,0 +1,57 @@
+package bndtools.editor.completion;
+
+import org.eclipse.jface.text.Document;
+import org.eclipse.jface.text.IDocument;
+import org.eclipse.jface.text.contentassist.ICompletionProposal;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Completion in the bnd file editor by {@link BndCompletionProcessor}, which runs on every completion request. The
+ * document is a run descriptor with a long {@code -runbundles} value: one benchmark completes a header after it, the
+ * other completes the last clause of the value.
+ */
+@State(Scope.Benchmark)
+public class BndCompletionBenchmark {
+
+    @Param({
+            "100", "10000"
+    })
+    public int lines;
+
+    private BndCompletionProcessor processor;
+    private IDocument document;
+    private int headerOffset;
+    private int valueOffset;
+
+    @Setup
+    public void setup() throws Exception {
+        processor = new BndCompletionProcessor(new BndCompletionIndex());
+
+        StringBuilder sb = new StringBuilder();
+        sb.append("-runfw: org.apache.felix.framework\n");
+        sb.append("-runbundles: \\\n");
+        for (int i = 0; i < lines; i++)
+            sb.append("\tcom.example.bundle").append(i).append(";version='[1.0.0,1.0.1)',\\\n");
+        sb.append("\tcom.example.last\n");
+        sb.append("-runp");
+        document = new Document(sb.toString());
+
+        headerOffset = document.getLength();
+        valueOffset = headerOffset - "\n-runp".length();
+    }
+
+    @Benchmark
+    public ICompletionProposal[] completeHeader() throws Exception {
+        return processor.computeProposals(document, headerOffset);
+    }
+
+    @Benchmark
+    public ICompletionProposal[] completeValue() throws Exception {
+        return processor.computeProposals(document, valueOffset);
+    }
+
+}
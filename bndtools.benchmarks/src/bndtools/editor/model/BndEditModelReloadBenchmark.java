@@ -0,0 +1,89 @@
+package bndtools.editor.model;
+
+import java.beans.PropertyChangeEvent;
+import java.beans.PropertyChangeListener;
+import java.util.Set;
+
+import org.eclipse.jface.text.Document;
+import org.eclipse.jface.text.IDocument;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * Reloading the edit model from the source page of the bnd file editor, which happens whenever the user switches to a
+ * form page after typing. The document is a run descriptor with a long {@code -runbundles} value and every iteration
+ * edits the {@code Bundle-Version} header. One benchmark reloads and notifies every property, the other notifies only
+ * the properties reported by {@link DocumentPropertyIndex}. The listeners read back the value of their property, as the
+ * form parts do.
+ */
+@State(Scope.Benchmark)
+public class BndEditModelReloadBenchmark {
+
+    @Param({
+            "100", "10000"
+    })
+    public int lines;
+
+    private IDocument document;
+    private IDocumentWrapper wrapper;
+    private DocumentPropertyIndex index;
+    private IncrementalBndEditModel model;
+    private int versionOffset;
+    private boolean edited;
+
+    @Setup
+    public void setup() throws Exception {
+        StringBuilder sb = new StringBuilder();
+        sb.append("-runfw: org.apache.felix.framework\n");
+        sb.append("-runbundles: \\\n");
+        for (int i = 0; i < lines; i++)
+            sb.append("\tcom.example.bundle").append(i).append(";version='[1.0.0,1.0.1)',\\\n");
+        sb.append("\tcom.example.last\n");
+        sb.append("Bundle-Version: 1.0.0\n");
+        document = new Document(sb.toString());
+        wrapper = new IDocumentWrapper(document);
+        versionOffset = document.get().lastIndexOf("1.0.0");
+
+        index = new DocumentPropertyIndex(document);
+        model = new IncrementalBndEditModel();
+        model.loadFrom(wrapper);
+        model.addPropertyChangeListener(new PropertyChangeListener() {
+            @Override
+            public void propertyChange(PropertyChangeEvent evt) {
+                model.genericGet(evt.getPropertyName());
+            }
+        });
+    }
+
+    @TearDown
+    public void tearDown() {
+        index.dispose();
+    }
+
+    @Benchmark
+    public IncrementalBndEditModel fullReload() throws Exception {
+        editVersion();
+        model.loadFrom(wrapper);
+        index.markSynchronized();
+        return model;
+    }
+
+    @Benchmark
+    public IncrementalBndEditModel incrementalReload() throws Exception {
+        editVersion();
+        Set<String> changed = index.getChangedKeys();
+        model.loadFrom(wrapper, changed);
+        index.markSynchronized();
+        return model;
+    }
+
+    private void editVersion() throws Exception {
+        edited = !edited;
+        document.replace(versionOffset, 5, edited ? "2.0.0" : "1.0.0");
+    }
+
+}
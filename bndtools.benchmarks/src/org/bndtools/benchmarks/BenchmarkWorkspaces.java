@@ -0,0 +1,67 @@
+package org.bndtools.benchmarks;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import aQute.bnd.build.Project;
+import aQute.bnd.build.Workspace;
+import aQute.lib.io.IO;
+
+/**
+ * Opens the bnd workspaces the benchmarks run against: either a generated {@link SyntheticWorkspace}, or one of the
+ * test workspaces of the {@code bndtools.test} project.
+ * <p>
+ * The test workspaces are found next to this project, or in the directory given by the {@code bndtools.test.dir}
+ * system property. They are opened offline and are never modified.
+ */
+public class BenchmarkWorkspaces {
+
+    /**
+     * The name of the generated workspace. Any other name is the name of a test workspace, e.g. {@code bndws}.
+     */
+    public static final String SYNTHETIC = "synthetic";
+
+    private static final String TEST_DIR = System.getProperty("bndtools.test.dir", "../bndtools.test");
+
+    private BenchmarkWorkspaces() {}
+
+    /**
+     * Get the directory of a workspace, generating it first if it is the synthetic workspace.
+     *
+     * @param projects
+     *            the number of projects of the synthetic workspace, ignored for test workspaces.
+     */
+    public static File getDirectory(String name, int projects) throws Exception {
+        if (SYNTHETIC.equals(name))
+            return SyntheticWorkspace.generate(IO.getFile("generated/workspaces/" + SYNTHETIC + projects), projects);
+
+        File dir = IO.getFile(IO.getFile(TEST_DIR), name);
+        if (!new File(dir, Workspace.CNFDIR).isDirectory())
+            throw new IllegalArgumentException("No test workspace " + name + " in " + dir.getParentFile().getAbsolutePath());
+        return dir;
+    }
+
+    public static Workspace open(String name, int projects) throws Exception {
+        Workspace workspace = new Workspace(getDirectory(name, projects));
+        workspace.setOffline(true);
+        return workspace;
+    }
+
+    /**
+     * Get the projects of a workspace, sorted by name so that every run visits them in the same order.
+     */
+    public static List<Project> getProjects(Workspace workspace) throws Exception {
+        List<Project> projects = new ArrayList<Project>(workspace.getAllProjects());
+        Collections.sort(projects, new Comparator<Project>() {
+            @Override
+            public int compare(Project p1, Project p2) {
+                return p1.getName().compareTo(p2.getName());
+            }
+        });
+        return projects;
+    }
+
+}
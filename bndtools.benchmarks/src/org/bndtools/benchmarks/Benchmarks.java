@@ -0,0 +1,33 @@
+package org.bndtools.benchmarks;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.openjdk.jmh.Main;
+
+/**
+ * Runs the JMH benchmarks of this project. Results are written as JSON to {@code generated/jmh-result.json}, unless
+ * the result format or file are given in the arguments. All other arguments are passed on to JMH unchanged.
+ */
+public class Benchmarks {
+
+    static final String RESULT_FILE = "generated/jmh-result.json";
+
+    public static void main(String[] args) throws Exception {
+        List<String> arguments = new ArrayList<String>(Arrays.asList(args));
+        if (!arguments.contains("-rf")) {
+            arguments.add("-rf");
+            arguments.add("json");
+        }
+        if (!arguments.contains("-rff")) {
+            arguments.add("-rff");
+            arguments.add(RESULT_FILE);
+        }
+        new File(RESULT_FILE).getAbsoluteFile().getParentFile().mkdirs();
+
+        Main.main(arguments.toArray(new String[arguments.size()]));
+    }
+
+}
@@ -0,0 +1,51 @@
+package org.bndtools.benchmarks;
+
+import java.util.List;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import aQute.bnd.build.Project;
+import aQute.bnd.build.Workspace;
+
+/**
+ * Indexing of the built bundles of every project of a synthetic workspace, as done by the {@code BuiltBundleIndexer}
+ * after each project build.
+ */
+@State(Scope.Benchmark)
+public class IndexerBenchmark {
+
+    @Param({
+            "10", "100"
+    })
+    public int projects;
+
+    private Workspace ws;
+    private List<Project> models;
+    private String workspaceRootUri;
+
+    @Setup
+    public void setup() throws Exception {
+        ws = BenchmarkWorkspaces.open(BenchmarkWorkspaces.SYNTHETIC, projects);
+        models = BenchmarkWorkspaces.getProjects(ws);
+        workspaceRootUri = ws.getBase().toURI().toString();
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        ws.close();
+    }
+
+    @Benchmark
+    public long indexBuiltBundles() throws Exception {
+        long size = 0;
+        for (Project model : models)
+            size += ProjectIndexes.index(model, workspaceRootUri).length();
+        return size;
+    }
+
+}
@@ -0,0 +1,79 @@
+package org.bndtools.benchmarks;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.osgi.service.indexer.Builder;
+import org.osgi.service.indexer.Capability;
+import org.osgi.service.indexer.Requirement;
+import org.osgi.service.indexer.Resource;
+import org.osgi.service.indexer.ResourceAnalyzer;
+import org.osgi.service.indexer.ResourceIndexer;
+import org.osgi.service.indexer.impl.RepoIndex;
+
+import aQute.bnd.build.Project;
+import aQute.lib.io.IO;
+
+/**
+ * Generates the index of the bundles built by a project, in the same way as the {@code BuiltBundleIndexer} of the
+ * builder, which does it after every build of a project.
+ */
+public class ProjectIndexes {
+
+    public static final String INDEX_FILENAME = ".index";
+
+    private ProjectIndexes() {}
+
+    /**
+     * Index the bundles in the target directory of the project.
+     *
+     * @return the index file.
+     */
+    public static File index(final Project model, final String workspaceRootUri) throws Exception {
+        File target = model.getTarget();
+        Set<File> files = new LinkedHashSet<File>();
+        File[] bundles = target.listFiles();
+        if (bundles != null) {
+            for (File bundle : bundles) {
+                if (bundle.getName().endsWith(".jar"))
+                    files.add(bundle);
+            }
+        }
+
+        RepoIndex indexer = new RepoIndex();
+        List<ResourceAnalyzer> analyzers = model.getWorkspace().getPlugins(ResourceAnalyzer.class);
+        for (ResourceAnalyzer analyzer : analyzers) {
+            indexer.addAnalyzer(analyzer, null);
+        }
+
+        // Use an analyzer to add a marker capability to workspace resources
+        indexer.addAnalyzer(new ResourceAnalyzer() {
+            @Override
+            public void analyzeResource(Resource resource, List<Capability> capabilities, List<Requirement> requirements) throws Exception {
+                Capability cap = new Builder().setNamespace("bndtools.workspace").addAttribute("bndtools.workspace", workspaceRootUri).addAttribute("project.path", "/" + model.getName()).buildCapability();
+                capabilities.add(cap);
+            }
+        }, null);
+
+        Map<String,String> config = new HashMap<String,String>();
+        config.put(ResourceIndexer.REPOSITORY_NAME, model.getName());
+        config.put(ResourceIndexer.ROOT_URL, model.getBase().toURI().toString());
+        config.put(ResourceIndexer.PRETTY, "true");
+
+        File indexFile = new File(target, INDEX_FILENAME);
+        OutputStream output = new FileOutputStream(indexFile);
+        try {
+            indexer.index(files, output, config);
+        } finally {
+            IO.close(output);
+        }
+        return indexFile;
+    }
+
+}
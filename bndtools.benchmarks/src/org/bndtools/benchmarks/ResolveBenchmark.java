@@ -0,0 +1,73 @@
+package org.bndtools.benchmarks;
+
+import java.io.File;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.osgi.resource.Resource;
+import org.osgi.resource.Wire;
+
+import aQute.bnd.build.Project;
+import aQute.bnd.build.Run;
+import aQute.bnd.build.Workspace;
+import aQute.bnd.build.model.BndEditModel;
+import aQute.bnd.deployer.repository.ReporterLogService;
+import aQute.bnd.properties.Document;
+import aQute.lib.io.IO;
+import biz.aQute.resolve.BndResolver;
+import biz.aQute.resolve.ResolutionCallback;
+import biz.aQute.resolve.ResolveProcess;
+import biz.aQute.resolve.ResolverLogger;
+
+/**
+ * Resolution of the run descriptor of a synthetic workspace, which requires the bundle of the last project and so
+ * pulls in the bundles of all projects. The resolve is the same as that of the {@code ResolveOperation} behind the
+ * Resolve button of the run descriptor editor, without the resolution result cache.
+ */
+@State(Scope.Benchmark)
+public class ResolveBenchmark {
+
+    @Param({
+            "10", "100"
+    })
+    public int projects;
+
+    private Workspace ws;
+    private BndEditModel model;
+
+    @Setup
+    public void setup() throws Exception {
+        ws = BenchmarkWorkspaces.open(BenchmarkWorkspaces.SYNTHETIC, projects);
+        File runFile = SyntheticWorkspace.getRunFile(ws.getBase(), projects);
+
+        Project run = Run.createRun(ws, runFile);
+        model = new BndEditModel();
+        model.setWorkspace(ws);
+        model.setProject(run);
+        model.loadFrom(new Document(IO.collect(runFile)));
+        model.setBndResource(runFile);
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        ws.close();
+    }
+
+    @Benchmark
+    public Map<Resource,List<Wire>> resolve() throws Exception {
+        ResolverLogger logger = new ResolverLogger();
+        ResolveProcess resolve = new ResolveProcess();
+        Map<Resource,List<Wire>> wirings = resolve.resolveRequired(model, ws, new BndResolver(logger), Collections.<ResolutionCallback> emptyList(), new ReporterLogService(ws));
+        if (wirings.size() < projects)
+            throw new IllegalStateException("Resolved only " + wirings.size() + " resources: " + logger.getLog());
+        return wirings;
+    }
+
+}
@@ -0,0 +1,188 @@
+package org.bndtools.benchmarks;
+
+import java.io.File;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.eclipse.core.resources.IFile;
+import org.eclipse.core.resources.IFolder;
+import org.eclipse.core.resources.IMarkerDelta;
+import org.eclipse.core.resources.IProject;
+import org.eclipse.core.resources.IResource;
+import org.eclipse.core.resources.IResourceDelta;
+import org.eclipse.core.resources.IResourceDeltaVisitor;
+import org.eclipse.core.runtime.IPath;
+import org.eclipse.core.runtime.Path;
+
+/**
+ * Eclipse resources and resource deltas backed by the file system, for driving the builder code without a running
+ * Eclipse workspace.
+ * <p>
+ * Only the methods that describe a resource or walk a delta are implemented; all others throw
+ * {@link UnsupportedOperationException}. Every resource exists and every project is open.
+ */
+public class SyntheticResources {
+
+    private SyntheticResources() {}
+
+    public static IProject project(String name, File location) {
+        return (IProject) create(IProject.class, new ResourceHandler(IResource.PROJECT, null, new Path(name).makeAbsolute(), Path.EMPTY, location));
+    }
+
+    /**
+     * Create a delta for the project and everything in its directory, except hidden files and directories.
+     *
+     * @param flags
+     *            the flags of the file deltas, e.g. {@link IResourceDelta#CONTENT} or {@link IResourceDelta#MARKERS}.
+     *            The folder deltas have no flags.
+     */
+    public static IResourceDelta projectDelta(IProject project, File location, int flags) {
+        return delta(project, location, 0, flags);
+    }
+
+    private static IResourceDelta delta(IResource resource, File location, int flags, int fileFlags) {
+        List<IResourceDelta> children = new ArrayList<IResourceDelta>();
+        File[] files = location.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                if (file.getName().startsWith("."))
+                    continue;
+                IResource child = child(resource, file);
+                children.add(child.getType() == IResource.FILE ? delta(child, file, fileFlags, fileFlags) : delta(child, file, 0, fileFlags));
+            }
+        }
+        return (IResourceDelta) create(IResourceDelta.class, new DeltaHandler(resource, IResourceDelta.CHANGED, flags, children.toArray(new IResourceDelta[children.size()])));
+    }
+
+    private static IResource child(IResource parent, File file) {
+        boolean isFile = file.isFile();
+        ResourceHandler handler = new ResourceHandler(isFile ? IResource.FILE : IResource.FOLDER, parent.getProject(), parent.getFullPath().append(file.getName()), parent.getProjectRelativePath().append(file.getName()), file);
+        return (IResource) create(isFile ? IFile.class : IFolder.class, handler);
+    }
+
+    private static Object create(Class< ? > type, InvocationHandler handler) {
+        return Proxy.newProxyInstance(SyntheticResources.class.getClassLoader(), new Class< ? >[] {
+                type
+        }, handler);
+    }
+
+    private static Object objectMethod(Object proxy, Method method, Object[] args, String description) {
+        switch (method.getName()) {
+        case "hashCode" :
+            return System.identityHashCode(proxy);
+        case "equals" :
+            return proxy == args[0];
+        case "toString" :
+            return description;
+        default :
+            throw new UnsupportedOperationException(method.toString());
+        }
+    }
+
+    private static final class ResourceHandler implements InvocationHandler {
+        private final int type;
+        private final IProject project;
+        private final IPath fullPath;
+        private final IPath projectRelativePath;
+        private final File location;
+
+        ResourceHandler(int type, IProject project, IPath fullPath, IPath projectRelativePath, File location) {
+            this.type = type;
+            this.project = project;
+            this.fullPath = fullPath;
+            this.projectRelativePath = projectRelativePath;
+            this.location = location;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) {
+            switch (method.getName()) {
+            case "getType" :
+                return type;
+            case "getName" :
+                return fullPath.lastSegment();
+            case "getFullPath" :
+                return fullPath;
+            case "getProjectRelativePath" :
+                return projectRelativePath;
+            case "getLocation" :
+                return Path.fromOSString(location.getAbsolutePath());
+            case "getLocationURI" :
+                return location.toURI();
+            case "getProject" :
+                return project != null ? project : proxy;
+            case "exists" :
+            case "isAccessible" :
+            case "isOpen" :
+                return true;
+            default :
+                return objectMethod(proxy, method, args, fullPath.toString());
+            }
+        }
+    }
+
+    private static final class DeltaHandler implements InvocationHandler {
+        private final IResource resource;
+        private final int kind;
+        private final int flags;
+        private final IResourceDelta[] children;
+
+        DeltaHandler(IResource resource, int kind, int flags, IResourceDelta[] children) {
+            this.resource = resource;
+            this.kind = kind;
+            this.flags = flags;
+            this.children = children;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+            case "getKind" :
+                return kind;
+            case "getFlags" :
+                return flags;
+            case "getResource" :
+                return resource;
+            case "getFullPath" :
+                return resource.getFullPath();
+            case "getProjectRelativePath" :
+                return resource.getProjectRelativePath();
+            case "getAffectedChildren" :
+                return children;
+            case "getMarkerDeltas" :
+                return new IMarkerDelta[0];
+            case "getMovedFromPath" :
+            case "getMovedToPath" :
+                return null;
+            case "findMember" :
+                return findMember((IResourceDelta) proxy, (IPath) args[0]);
+            case "accept" :
+                accept((IResourceDelta) proxy, (IResourceDeltaVisitor) args[0]);
+                return null;
+            default :
+                return objectMethod(proxy, method, args, "Delta " + resource);
+            }
+        }
+
+        private IResourceDelta findMember(IResourceDelta self, IPath path) {
+            if (path.segmentCount() == 0)
+                return self;
+            for (IResourceDelta child : children) {
+                if (child.getResource().getName().equals(path.segment(0)))
+                    return child.findMember(path.removeFirstSegments(1));
+            }
+            return null;
+        }
+
+        private void accept(IResourceDelta self, IResourceDeltaVisitor visitor) throws Exception {
+            if (visitor.visit(self)) {
+                for (IResourceDelta child : children)
+                    child.accept(visitor);
+            }
+        }
+    }
+
+}
@@ -0,0 +1,143 @@
+package org.bndtools.benchmarks;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.jar.Attributes;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+
+import org.osgi.service.indexer.ResourceIndexer;
+import org.osgi.service.indexer.impl.RepoIndex;
+
+import aQute.bnd.build.Project;
+import aQute.bnd.build.Workspace;
+import aQute.bnd.osgi.Constants;
+import aQute.lib.io.IO;
+
+/**
+ * Generates a bnd workspace with any number of projects, for measuring how the code paths scale beyond the size of the
+ * test workspaces.
+ * <p>
+ * Project {@code p<i>} has a few source files and a built bundle, which exports {@code p<i>.api} and imports the API
+ * packages of {@code p<i-1>}, {@code p<i/2>} and one of the libraries. The bundles are not compiled; they only have a
+ * manifest. The libraries, a stand-in framework and the project bundles are indexed in the {@code Synthetic}
+ * repository of the workspace. The last project has a run descriptor that requires its bundle, so that resolving it
+ * pulls in every project.
+ */
+public class SyntheticWorkspace {
+
+    public static final String RUN_FILE = "launch.bndrun";
+    public static final String REPOSITORY = "Synthetic";
+
+    static final String FRAMEWORK = "synthetic.framework";
+    static final int SOURCES_PER_PROJECT = 10;
+    static final int PROJECTS_PER_LIBRARY = 5;
+
+    private SyntheticWorkspace() {}
+
+    public static String projectName(int i) {
+        return "p" + i;
+    }
+
+    /**
+     * Get the run descriptor of a generated workspace.
+     */
+    public static File getRunFile(File dir, int projects) {
+        return new File(new File(dir, projectName(projects - 1)), RUN_FILE);
+    }
+
+    /**
+     * Generate the workspace, replacing any content of the directory.
+     */
+    public static File generate(File dir, int projects) throws Exception {
+        if (projects < 1)
+            throw new IllegalArgumentException("A workspace needs at least one project");
+
+        IO.delete(dir);
+        File cnf = new File(dir, Workspace.CNFDIR);
+        File repo = new File(cnf, "repo");
+        IO.mkdirs(repo);
+
+        Set<File> bundles = new LinkedHashSet<File>();
+        bundles.add(bundle(new File(repo, FRAMEWORK + ".jar"), FRAMEWORK, "org.osgi.framework;version=1.7", null));
+
+        int libraries = Math.max(1, projects / PROJECTS_PER_LIBRARY);
+        for (int i = 0; i < libraries; i++) {
+            String library = "lib" + i;
+            bundles.add(bundle(new File(repo, library + ".jar"), library, library + ".api;version=1.0.0", "org.osgi.framework;version=\"[1.7,2)\""));
+        }
+
+        for (int i = 0; i < projects; i++) {
+            String name = projectName(i);
+            String library = "lib" + (i % libraries);
+            File project = new File(dir, name);
+
+            StringBuilder buildpath = new StringBuilder(library).append(";version=latest");
+            StringBuilder imports = new StringBuilder("org.osgi.framework;version=\"[1.7,2)\",").append(library).append(".api;version=\"[1,2)\"");
+            for (int dependency : new LinkedHashSet<Integer>(Arrays.asList(i - 1, i / 2))) {
+                if (dependency < 0 || dependency == i)
+                    continue;
+                buildpath.append(",\\\n\t").append(projectName(dependency)).append(";version=latest");
+                imports.append(',').append(projectName(dependency)).append(".api;version=\"[1,2)\"");
+            }
+            write("-buildpath: " + buildpath + "\n\nBundle-Version: 1.0.0\nExport-Package: " + name + ".api\n", new File(project, Project.BNDFILE));
+
+            for (int j = 0; j < SOURCES_PER_PROJECT; j++) {
+                String source = "package " + name + ".impl;\n\npublic class Component" + j + " {}\n";
+                write(source, new File(project, "src/" + name + "/impl/Component" + j + ".java"));
+            }
+            bundles.add(bundle(new File(project, "generated/" + name + ".jar"), name, name + ".api;version=1.0.0", imports.toString()));
+        }
+
+        File index = new File(repo, "index.xml");
+        index(bundles, index, repo);
+        write("-plugin: aQute.bnd.deployer.repository.FixedIndexedRepo; name=" + REPOSITORY + "; locations=" + index.toURI() + "\n", new File(cnf, Workspace.BUILDFILE));
+
+        write("-runfw: " + FRAMEWORK + ";version='[1,2)'\n-runee: JavaSE-1.7\n-runrequires: osgi.identity;filter:='(osgi.identity=" + projectName(projects - 1) + ")'\n", getRunFile(dir, projects));
+        return dir;
+    }
+
+    private static void write(String content, File file) throws IOException {
+        IO.mkdirs(file.getParentFile());
+        IO.store(content, file);
+    }
+
+    private static File bundle(File file, String bsn, String exports, String imports) throws IOException {
+        Manifest manifest = new Manifest();
+        Attributes main = manifest.getMainAttributes();
+        main.put(Attributes.Name.MANIFEST_VERSION, "1.0");
+        main.putValue(Constants.BUNDLE_MANIFESTVERSION, "2");
+        main.putValue(Constants.BUNDLE_SYMBOLICNAME, bsn);
+        main.putValue(Constants.BUNDLE_VERSION, "1.0.0");
+        main.putValue(Constants.EXPORT_PACKAGE, exports);
+        if (imports != null)
+            main.putValue(Constants.IMPORT_PACKAGE, imports);
+
+        IO.mkdirs(file.getParentFile());
+        JarOutputStream jar = new JarOutputStream(new FileOutputStream(file), manifest);
+        jar.close();
+        return file;
+    }
+
+    private static void index(Set<File> bundles, File index, File root) throws Exception {
+        Map<String,String> config = new HashMap<String,String>();
+        config.put(ResourceIndexer.REPOSITORY_NAME, REPOSITORY);
+        config.put(ResourceIndexer.ROOT_URL, root.toURI().toString());
+        config.put(ResourceIndexer.PRETTY, "true");
+
+        OutputStream output = new FileOutputStream(index);
+        try {
+            new RepoIndex().index(bundles, output, config);
+        } finally {
+            IO.close(output);
+        }
+    }
+
+}
@@ -0,0 +1,92 @@
+package org.bndtools.builder;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.bndtools.benchmarks.BenchmarkWorkspaces;
+import org.bndtools.benchmarks.SyntheticResources;
+import org.eclipse.core.resources.IProject;
+import org.eclipse.core.resources.IResourceDelta;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import aQute.bnd.build.Project;
+import aQute.bnd.build.Workspace;
+
+/**
+ * Classification of resource deltas by {@link DeltaWrapper}, which the builder does for every project on every build.
+ * Each benchmark classifies a delta of every file in every project of the workspace: once with content changes and
+ * once with marker changes only.
+ */
+@State(Scope.Benchmark)
+public class DeltaWrapperBenchmark {
+
+    @Param({
+            "bndws", BenchmarkWorkspaces.SYNTHETIC
+    })
+    public String workspace;
+
+    @Param({
+            "100"
+    })
+    public int projects;
+
+    private Workspace ws;
+    private final List<DeltaWrapper> contentChanges = new ArrayList<DeltaWrapper>();
+    private final List<DeltaWrapper> markerChanges = new ArrayList<DeltaWrapper>();
+    private final List<IResourceDelta> markerDeltas = new ArrayList<IResourceDelta>();
+
+    @Setup
+    public void setup() throws Exception {
+        ws = BenchmarkWorkspaces.open(workspace, projects);
+        BuildLogger log = new BuildLogger(BuildLogger.LOG_NONE);
+        for (Project model : BenchmarkWorkspaces.getProjects(ws)) {
+            IProject project = SyntheticResources.project(model.getName(), model.getBase());
+            contentChanges.add(new DeltaWrapper(model, SyntheticResources.projectDelta(project, model.getBase(), IResourceDelta.CONTENT), log));
+
+            IResourceDelta markerDelta = SyntheticResources.projectDelta(project, model.getBase(), IResourceDelta.MARKERS);
+            markerChanges.add(new DeltaWrapper(model, markerDelta, log));
+            markerDeltas.add(markerDelta);
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        ws.close();
+    }
+
+    @Benchmark
+    public int hasProjectChanged() throws Exception {
+        int changed = 0;
+        for (DeltaWrapper delta : contentChanges) {
+            if (delta.hasProjectChanged())
+                changed++;
+        }
+        return changed;
+    }
+
+    @Benchmark
+    public int hasChangedSubbundles() throws Exception {
+        int changed = 0;
+        for (DeltaWrapper delta : contentChanges) {
+            if (delta.hasChangedSubbundles())
+                changed++;
+        }
+        return changed;
+    }
+
+    @Benchmark
+    public int isNonMarkerChange() {
+        int changed = 0;
+        for (int i = 0; i < markerChanges.size(); i++) {
+            if (markerChanges.get(i).isNonMarkerChange(markerDeltas.get(i)))
+                changed++;
+        }
+        return changed;
+    }
+
+}
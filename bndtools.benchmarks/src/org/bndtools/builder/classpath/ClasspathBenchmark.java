@@ -0,0 +1,91 @@
+package org.bndtools.builder.classpath;
+
+import java.util.Iterator;
+import java.util.List;
+
+import org.bndtools.benchmarks.BenchmarkWorkspaces;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.infra.Blackhole;
+
+import aQute.bnd.build.Container;
+import aQute.bnd.build.Project;
+import aQute.bnd.build.Workspace;
+
+/**
+ * The classpath computation of the bnd classpath container for every project of the workspace, as done by
+ * {@link BndContainerInitializer}: the containers of the build path, test path and boot class path, the jar
+ * information of each container and the patterns of its access rules, from {@link AccessRulePatterns}.
+ * <p>
+ * The Eclipse classpath entries themselves need a running Java model, so the benchmark stops at their inputs. The jar
+ * information cache is shared between invocations, as it is in Eclipse. {@link #recalculateContainers(Blackhole)} also makes
+ * bnd recalculate the containers, as happens after a change to the project's bnd.bnd.
+ */
+@State(Scope.Benchmark)
+public class ClasspathBenchmark {
+
+    @Param({
+            "bndws", BenchmarkWorkspaces.SYNTHETIC
+    })
+    public String workspace;
+
+    @Param({
+            "100"
+    })
+    public int projects;
+
+    private Workspace ws;
+    private List<Project> models;
+    private JarInfoCache jarInfoCache;
+
+    @Setup
+    public void setup() throws Exception {
+        ws = BenchmarkWorkspaces.open(workspace, projects);
+        models = BenchmarkWorkspaces.getProjects(ws);
+        jarInfoCache = new JarInfoCache(null, JarInfoCache.DEFAULT_MAX_ENTRIES);
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        ws.close();
+    }
+
+    @Benchmark
+    public void calculateClasspath(Blackhole blackhole) throws Exception {
+        for (Project model : models)
+            calculateProjectClasspath(model, blackhole);
+    }
+
+    @Benchmark
+    public void recalculateContainers(Blackhole blackhole) throws Exception {
+        for (Project model : models) {
+            model.forceRefresh();
+            calculateProjectClasspath(model, blackhole);
+        }
+    }
+
+    private void calculateProjectClasspath(Project model, Blackhole blackhole) throws Exception {
+        Iterator<Container> containers = model.getBuildpath().iterator();
+        if (containers.hasNext()) { // The first container is always the project directory; it is not part of this container.
+            containers.next();
+        }
+        calculateContainersClasspath(containers, blackhole);
+        calculateContainersClasspath(model.getTestpath().iterator(), blackhole);
+        calculateContainersClasspath(model.getBootclasspath().iterator(), blackhole);
+    }
+
+    private void calculateContainersClasspath(Iterator<Container> containers, Blackhole blackhole) {
+        while (containers.hasNext()) {
+            Container c = containers.next();
+            blackhole.consume(AccessRulePatterns.calculate(c, jarInfoCache));
+            if (c.getType() == Container.TYPE.PROJECT && AccessRulePatterns.isVersionProject(c))
+                continue; // no library entry for the generated jar
+            blackhole.consume(jarInfoCache.get(c.getFile()).hasSource); // source attachment of the library entry
+        }
+    }
+
+}
@@ -12,6 +12,7 @@ import java.util.concurrent.Callable;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeoutException;
 import org.bndtools.api.BndtoolsConstants;
+import org.bndtools.api.BuildTrace;
 import org.bndtools.api.ILogger;
 import org.bndtools.api.Logger;
 import org.bndtools.build.api.BuildErrorDetailsHandler;
@@ -100,6 +101,7 @@ public class BndtoolsBuilder extends IncrementalProjectBuilder {
         final BuildListeners listeners = new BuildListeners();
 
         final IProject myProject = getProject();
+        final BuildTrace.Span buildSpan = BuildTrace.span(BuildTrace.BUILD, "build").arg("project", myProject.getName()).arg("kind", kind);
         try {
 
             listeners.fireBuildStarting(myProject);
@@ -145,25 +147,28 @@ public class BndtoolsBuilder extends IncrementalProjectBuilder {
 
                         boolean setupChanged = false;
 
-                        if (!postponed && (delta.havePropertiesChanged(model) || delta.hasChangedSubbundles())) {
-                            buildLog.basic("project was dirty from changed bnd files postponed = " + postponed);
-                            model.forceRefresh();
-                            setupChanged = true;
-                        }
+                        try (BuildTrace.Span span = BuildTrace.span(BuildTrace.BUILD, "check setup")) {
+                            if (!postponed && (delta.havePropertiesChanged(model) || delta.hasChangedSubbundles())) {
+                                buildLog.basic("project was dirty from changed bnd files postponed = " + postponed);
+                                model.forceRefresh();
+                                setupChanged = true;
+                            }
 
-                        if (dirty.remove(model)) {
-                            buildLog.basic("project was dirty from a workspace refresh postponed = " + postponed);
-                            setupChanged = true && !postponed;
-                        }
+                            if (dirty.remove(model)) {
+                                buildLog.basic("project was dirty from a workspace refresh postponed = " + postponed);
+                                setupChanged = true && !postponed;
+                            }
 
-                        if (!force && !setupChanged && delta.hasEclipseChanged()) {
-                            buildLog.basic("Eclipse project had a buildpath change");
-                            setupChanged = true;
-                        }
+                            if (!force && !setupChanged && delta.hasEclipseChanged()) {
+                                buildLog.basic("Eclipse project had a buildpath change");
+                                setupChanged = true;
+                            }
 
-                        if (!force && !setupChanged && suggestClasspathContainerUpdate()) {
-                            buildLog.basic("Project classpath may need to be updated");
-                            setupChanged = true;
+                            if (!force && !setupChanged && suggestClasspathContainerUpdate()) {
+                                buildLog.basic("Project classpath may need to be updated");
+                                setupChanged = true;
+                            }
+                            span.arg("changed", setupChanged);
                         }
 
                         //
@@ -173,15 +178,17 @@ public class BndtoolsBuilder extends IncrementalProjectBuilder {
                         //
 
                         if (force || setupChanged) {
-                            model.setChanged();
-                            model.setDelayRunDependencies(true);
-                            model.prepare();
+                            try (BuildTrace.Span span = BuildTrace.span(BuildTrace.BUILD, "prepare")) {
+                                model.setChanged();
+                                model.setDelayRunDependencies(true);
+                                model.prepare();
 
-                            markers.validate(model);
-                            markers.setMarkers(model, BndtoolsConstants.MARKER_BND_PATH_PROBLEM);
-                            model.clear();
+                                markers.validate(model);
+                                markers.setMarkers(model, BndtoolsConstants.MARKER_BND_PATH_PROBLEM);
+                                model.clear();
 
-                            dependsOn = calculateDependsOn(model);
+                                dependsOn = calculateDependsOn(model);
+                            }
 
                             //
                             // We have a setup change so we MUST check both class path
@@ -219,19 +226,22 @@ public class BndtoolsBuilder extends IncrementalProjectBuilder {
                         force |= postponed;
                         postponed = false;
 
-                        if (!force && delta.hasProjectChanged()) {
-                            buildLog.basic("project had changed files");
-                            force = true;
-                        }
+                        try (BuildTrace.Span span = BuildTrace.span(BuildTrace.BUILD, "check changes")) {
+                            if (!force && delta.hasProjectChanged()) {
+                                buildLog.basic("project had changed files");
+                                force = true;
+                            }
 
-                        if (!force && hasUpstreamChanges()) {
-                            buildLog.basic("project had upstream changes");
-                            force = true;
-                        }
+                            if (!force && hasUpstreamChanges()) {
+                                buildLog.basic("project had upstream changes");
+                                force = true;
+                            }
 
-                        if (!force && delta.hasNoTarget(model)) {
-                            buildLog.basic("project has no target files");
-                            force = true;
+                            if (!force && delta.hasNoTarget(model)) {
+                                buildLog.basic("project has no target files");
+                                force = true;
+                            }
+                            span.arg("changed", force);
                         }
 
                         //
@@ -268,18 +278,26 @@ public class BndtoolsBuilder extends IncrementalProjectBuilder {
                             model.warning("Project %s has blocking errors but requested to continue anyway", myProject.getName());
                         }
 
-                        deleteBuildFiles(model);
-                        Central.invalidateIndex();
+                        File buildFiles[];
+                        try (BuildTrace.Span span = BuildTrace.span(BuildTrace.BUILD, "bnd build")) {
+                            deleteBuildFiles(model);
+                            Central.invalidateIndex();
 
-                        File buildFiles[] = model.build();
+                            buildFiles = model.build();
+                            span.arg("files", buildFiles != null ? buildFiles.length : 0);
+                        }
 
                         if (buildFiles != null) {
-                            listeners.updateListeners(buildFiles, myProject);
+                            try (BuildTrace.Span span = BuildTrace.span(BuildTrace.BUILD, "build listeners")) {
+                                listeners.updateListeners(buildFiles, myProject);
+                            }
                             buildLog.setFiles(buildFiles.length);
                         }
 
                         // We can now decorate based on the build we just did.
-                        PackageDecorator.updateDecoration(myProject, model);
+                        try (BuildTrace.Span span = BuildTrace.span(BuildTrace.BUILD, "package decorations")) {
+                            PackageDecorator.updateDecoration(myProject, model);
+                        }
 
                         if (model.isCnf()) {
                             model.getWorkspace().refresh(); // this is for bnd plugins built in cnf
@@ -298,6 +316,7 @@ public class BndtoolsBuilder extends IncrementalProjectBuilder {
             if (buildLog.isActive())
                 logger.logInfo(buildLog.toString(myProject.getName()), null);
             listeners.release(myProject);
+            buildSpan.close();
         }
     }
 
@@ -416,16 +435,20 @@ public class BndtoolsBuilder extends IncrementalProjectBuilder {
             return false; // project does not have a BndContainer
         }
 
-        BndContainerInitializer.requestClasspathContainerUpdate(javaProject);
+        try (BuildTrace.Span span = BuildTrace.span(BuildTrace.CLASSPATH, "request classpath update")) {
+            BndContainerInitializer.requestClasspathContainerUpdate(javaProject);
 
-        return oldContainer != BndContainerInitializer.getClasspathContainer(javaProject);
+            boolean changed = oldContainer != BndContainerInitializer.getClasspathContainer(javaProject);
+            span.arg("changed", changed);
+            return changed;
+        }
     }
 
     /*
      * Set the project's dependencies to influence the build order for Eclipse.
      */
     private boolean setBuildOrder(IProgressMonitor monitor) throws Exception {
-        try {
+        try (BuildTrace.Span span = BuildTrace.span(BuildTrace.BUILD, "set build order")) {
             IProjectDescription projectDescription = getProject().getDescription();
             IProject[] older = projectDescription.getDynamicReferences();
             if (Arrays.equals(dependsOn, older))
@@ -1,5 +1,8 @@
 package org.bndtools.builder;
 
+import org.bndtools.builder.utils.ASTCache;
+import org.eclipse.core.resources.IResourceChangeEvent;
+import org.eclipse.core.resources.ResourcesPlugin;
 import org.osgi.framework.BundleContext;
 
 public class BuilderPlugin extends org.eclipse.core.runtime.Plugin {
@@ -18,10 +21,13 @@ public class BuilderPlugin extends org.eclipse.core.runtime.Plugin {
         synchronized (BuilderPlugin.class) {
             instance = this;
         }
+        ResourcesPlugin.getWorkspace().addResourceChangeListener(ASTCache.getInstance(), IResourceChangeEvent.POST_CHANGE);
     }
 
     @Override
     public void stop(BundleContext context) throws Exception {
+        ResourcesPlugin.getWorkspace().removeResourceChangeListener(ASTCache.getInstance());
+        ASTCache.getInstance().clear();
         synchronized (BuilderPlugin.class) {
             instance = null;
         }
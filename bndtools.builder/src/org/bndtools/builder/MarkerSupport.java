@@ -5,6 +5,7 @@ import java.util.Collection;
 import java.util.List;
 import java.util.Map.Entry;
 
+import org.bndtools.api.BuildTrace;
 import org.bndtools.api.ILogger;
 import org.bndtools.api.IProjectValidator;
 import org.bndtools.api.IValidator;
@@ -39,7 +40,7 @@ class MarkerSupport {
     }
 
     boolean hasBlockingErrors(DeltaWrapper dw) {
-        try {
+        try (BuildTrace.Span span = BuildTrace.span(BuildTrace.MARKERS, "check blocking errors")) {
             if (containsError(dw, findMarkers(IJavaModelMarker.JAVA_MODEL_PROBLEM_MARKER)))
                 return true;
 
@@ -62,9 +63,12 @@ class MarkerSupport {
     }
 
     void setMarkers(Processor model, String markerType) throws Exception {
-        deleteMarkers(markerType);
-        createMarkers(model, IMarker.SEVERITY_ERROR, model.getErrors(), markerType);
-        createMarkers(model, IMarker.SEVERITY_WARNING, model.getWarnings(), markerType);
+        try (BuildTrace.Span span = BuildTrace.span(BuildTrace.MARKERS, "set markers")) {
+            span.arg("type", markerType).arg("errors", model.getErrors().size()).arg("warnings", model.getWarnings().size());
+            deleteMarkers(markerType);
+            createMarkers(model, IMarker.SEVERITY_ERROR, model.getErrors(), markerType);
+            createMarkers(model, IMarker.SEVERITY_WARNING, model.getWarnings(), markerType);
+        }
     }
 
     void deleteMarkers(String markerType) throws CoreException {
@@ -169,7 +173,8 @@ class MarkerSupport {
         if (validators != null) {
 
             for (IValidator v : validators) {
-                try {
+                try (BuildTrace.Span span = BuildTrace.span(BuildTrace.MARKERS, "validate")) {
+                    span.arg("validator", v.getClass().getName());
                     if (v instanceof IProjectValidator) {
                         ((IProjectValidator) v).validateProject(model);
                     } else {
@@ -0,0 +1,81 @@
+package org.bndtools.builder.classpath;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.bndtools.builder.classpath.JarInfoCache.JarInfo;
+import org.eclipse.core.runtime.IPath;
+import org.eclipse.core.runtime.Path;
+
+import aQute.bnd.build.Container;
+import aQute.bnd.osgi.Constants;
+
+/**
+ * The path patterns of the accessible packages of a classpath container entry, from which the bnd classpath container
+ * creates its access rules.
+ */
+final class AccessRulePatterns {
+
+    private static final Pattern packagePattern = Pattern.compile("(?<=^|\\.)\\*(?=\\.|$)|\\.");
+
+    private AccessRulePatterns() {}
+
+    /**
+     * Calculate the patterns of the packages listed by the {@code packages} attribute of the container or, without it,
+     * of the packages exported by the jar of a project, repository or external container.
+     *
+     * @return the patterns, or null for full access
+     */
+    static List<IPath> calculate(Container c, JarInfoCache jarInfoCache) {
+        String packageList = c.getAttributes().get("packages");
+        if (packageList != null) {
+            // Use packages=* for full access
+            List<IPath> patterns = new ArrayList<IPath>();
+            for (String exportPkg : packageList.trim().split("\\s*,\\s*")) {
+                Matcher m = packagePattern.matcher(exportPkg);
+                StringBuffer pathStr = new StringBuffer(exportPkg.length() + 1);
+                while (m.find()) {
+                    m.appendReplacement(pathStr, m.group().equals("*") ? "**" : "/");
+                }
+                m.appendTail(pathStr).append("/*");
+                patterns.add(new Path(pathStr.toString()));
+            }
+            return patterns;
+        }
+
+        switch (c.getType()) {
+        case PROJECT :
+            if (isVersionProject(c))
+                break; // the jar of version=project is not built yet
+            //$FALL-THROUGH$
+        case REPO :
+        case EXTERNAL :
+            JarInfo info = jarInfoCache.get(c.getFile());
+            if (info.exports == null) {
+                break; // no export; so full access
+            }
+            List<IPath> patterns = new ArrayList<IPath>(info.exports.length);
+            for (String exportPkg : info.exports) {
+                patterns.add(new Path(exportPkg.replace('.', '/') + "/*"));
+            }
+            return patterns;
+        default :
+            break;
+        }
+
+        return null; // full access
+    }
+
+    /**
+     * @return whether the container has the {@code packages} attribute, which takes precedence over the exports
+     */
+    static boolean hasPackages(Container c) {
+        return c.getAttributes().get("packages") != null;
+    }
+
+    static boolean isVersionProject(Container c) {
+        return Constants.VERSION_ATTR_PROJECT.equals(c.getAttributes().get(Constants.VERSION_ATTRIBUTE));
+    }
+}
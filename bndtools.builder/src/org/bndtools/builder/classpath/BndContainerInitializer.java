@@ -7,22 +7,18 @@ import java.util.Arrays;
 import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
-import java.util.Map;
 import java.util.Set;
-import java.util.WeakHashMap;
 import java.util.concurrent.Callable;
-import java.util.jar.Manifest;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 import org.bndtools.api.BndtoolsConstants;
+import org.bndtools.api.BuildTrace;
 import org.bndtools.api.ILogger;
 import org.bndtools.api.Logger;
 import org.bndtools.api.ModelListener;
 import org.bndtools.builder.BndtoolsBuilder;
 import org.bndtools.builder.BuildLogger;
 import org.bndtools.builder.BuilderPlugin;
-import org.bndtools.utils.jar.PseudoJar;
+import org.bndtools.builder.classpath.JarInfoCache.JarInfo;
 import org.eclipse.core.resources.IProject;
 import org.eclipse.core.resources.IResource;
 import org.eclipse.core.resources.IWorkspaceRoot;
@@ -41,7 +37,6 @@ import org.eclipse.jdt.internal.core.JavaModelManager;
 import aQute.bnd.build.CircularDependencyException;
 import aQute.bnd.build.Container;
 import aQute.bnd.build.Project;
-import aQute.bnd.header.Parameters;
 import aQute.bnd.osgi.Constants;
 import aQute.bnd.osgi.Descriptors.PackageRef;
 import aQute.lib.io.IO;
@@ -159,8 +154,6 @@ public class BndContainerInitializer extends ClasspathContainerInitializer imple
         private static final IAccessRule DISCOURAGED = JavaCore.newAccessRule(new Path("**"), IAccessRule.K_DISCOURAGED | IAccessRule.IGNORE_IF_BETTER);
         private static final IClasspathAttribute EMPTY_INDEX = JavaCore.newClasspathAttribute(IClasspathAttribute.INDEX_LOCATION_ATTRIBUTE_NAME,
                 "platform:/plugin/" + BndtoolsBuilder.PLUGIN_ID + "/org/bndtools/builder/classpath/empty.index");
-        private static final Pattern packagePattern = Pattern.compile("(?<=^|\\.)\\*(?=\\.|$)|\\.");
-        private static final Map<File,JarInfo> jarInfo = Collections.synchronizedMap(new WeakHashMap<File,JarInfo>());
 
         private final IProject project;
         private final IJavaProject javaProject;
@@ -186,36 +179,40 @@ public class BndContainerInitializer extends ClasspathContainerInitializer imple
         }
 
         void updateClasspathContainer(boolean init) throws CoreException {
-            if (model == null) { // this can happen during new project creation
-                setClasspathEntries(EMPTY_ENTRIES);
-                return;
-            }
+            try (BuildTrace.Span span = BuildTrace.span(BuildTrace.CLASSPATH, "update classpath container").arg("project", project.getName())) {
+                if (model == null) { // this can happen during new project creation
+                    setClasspathEntries(EMPTY_ENTRIES);
+                    return;
+                }
 
-            List<IClasspathEntry> newClasspath = Collections.emptyList();
-            try {
-                newClasspath = Central.bndCall(new Callable<List<IClasspathEntry>>() {
-                    @Override
-                    public List<IClasspathEntry> call() throws Exception {
-                        return calculateProjectClasspath();
-                    }
-                });
-            } catch (Exception e) {
-                SetLocation error = error("Unable to calculate classpath for project %s", e, project.getName());
-                logger.logError(error.location().message, e);
-            }
+                List<IClasspathEntry> newClasspath = Collections.emptyList();
+                try {
+                    newClasspath = Central.bndCall(new Callable<List<IClasspathEntry>>() {
+                        @Override
+                        public List<IClasspathEntry> call() throws Exception {
+                            return calculateProjectClasspath();
+                        }
+                    });
+                } catch (Exception e) {
+                    SetLocation error = error("Unable to calculate classpath for project %s", e, project.getName());
+                    logger.logError(error.location().message, e);
+                }
+                JarInfoCache.saveInstance();
 
-            newClasspath = BndContainerSourceManager.loadAttachedSources(project, newClasspath);
+                newClasspath = BndContainerSourceManager.loadAttachedSources(project, newClasspath);
+                span.arg("entries", newClasspath.size());
 
-            if (!init) {
-                BndContainer container = (BndContainer) JavaCore.getClasspathContainer(BndtoolsConstants.BND_CLASSPATH_ID, javaProject);
-                List<IClasspathEntry> currentClasspath = Arrays.asList(container.getClasspathEntries());
-                if (newClasspath.equals(currentClasspath)) {
-                    container.updateLastModified(lastModified);
-                    return; // no change; so no need to set entries
+                if (!init) {
+                    BndContainer container = (BndContainer) JavaCore.getClasspathContainer(BndtoolsConstants.BND_CLASSPATH_ID, javaProject);
+                    List<IClasspathEntry> currentClasspath = Arrays.asList(container.getClasspathEntries());
+                    if (newClasspath.equals(currentClasspath)) {
+                        container.updateLastModified(lastModified);
+                        return; // no change; so no need to set entries
+                    }
                 }
-            }
 
-            setClasspathEntries(newClasspath.toArray(new IClasspathEntry[0]));
+                setClasspathEntries(newClasspath.toArray(new IClasspathEntry[0]));
+            }
         }
 
         boolean suggestClasspathContainerUpdate() throws Exception {
@@ -401,37 +398,7 @@ public class BndContainerInitializer extends ClasspathContainerInitializer imple
         }
 
         private JarInfo getJarInfo(File file) {
-            final long lastModified = file.lastModified();
-            JarInfo info = jarInfo.get(file);
-            if ((info != null) && (lastModified == info.lastModified)) {
-                return info;
-            }
-            info = new JarInfo();
-            if (!file.exists()) {
-                return info;
-            }
-            info.lastModified = lastModified;
-            PseudoJar jar = new PseudoJar(file);
-            try {
-                Manifest mf = jar.readManifest();
-                if ((mf != null) && (mf.getMainAttributes().getValue(Constants.BUNDLE_MANIFESTVERSION) != null)) {
-                    Parameters exportPkgs = new Parameters(mf.getMainAttributes().getValue(Constants.EXPORT_PACKAGE));
-                    Set<String> exports = exportPkgs.keySet();
-                    info.exports = exports.toArray(new String[0]);
-                }
-                for (String entry = jar.nextEntry(); entry != null; entry = jar.nextEntry()) {
-                    if (entry.startsWith("OSGI-OPT/src/")) {
-                        info.hasSource = true; // use library path as source attachment path
-                        break;
-                    }
-                }
-            } catch (IOException e) {
-                logger.logInfo("Failed to read " + file, e);
-            } finally {
-                IO.close(jar);
-            }
-            jarInfo.put(file, info);
-            return info;
+            return JarInfoCache.getInstance().get(file);
         }
 
         private void addLibraryEntry(List<IClasspathEntry> classpath, IPath path, File file, List<IAccessRule> accessRules, List<IClasspathAttribute> extraAttrs) {
@@ -460,45 +427,19 @@ public class BndContainerInitializer extends ClasspathContainerInitializer imple
         }
 
         private List<IAccessRule> calculateContainerAccessRules(Container c) {
-            String packageList = c.getAttributes().get("packages");
-            if (packageList != null) {
-                // Use packages=* for full access
-                List<IAccessRule> accessRules = new ArrayList<IAccessRule>();
-                for (String exportPkg : packageList.trim().split("\\s*,\\s*")) {
-                    Matcher m = packagePattern.matcher(exportPkg);
-                    StringBuffer pathStr = new StringBuffer(exportPkg.length() + 1);
-                    while (m.find()) {
-                        m.appendReplacement(pathStr, m.group().equals("*") ? "**" : "/");
-                    }
-                    m.appendTail(pathStr).append("/*");
-                    accessRules.add(JavaCore.newAccessRule(new Path(pathStr.toString()), IAccessRule.K_ACCESSIBLE));
-                }
-                return accessRules;
+            if (c.getType() == Container.TYPE.PROJECT && isVersionProject(c) && !AccessRulePatterns.hasPackages(c)) {
+                return calculateProjectAccessRules(c.getProject()); // if version=project, try Project for exports
             }
 
-            switch (c.getType()) {
-            case PROJECT :
-                if (isVersionProject(c)) { // if version=project, try Project for exports
-                    return calculateProjectAccessRules(c.getProject());
-                }
-                //$FALL-THROUGH$
-            case REPO :
-            case EXTERNAL :
-                JarInfo info = getJarInfo(c.getFile());
-                if (info.exports == null) {
-                    break; // no export; so full access
-                }
-                List<IAccessRule> accessRules = new ArrayList<IAccessRule>();
-                for (String exportPkg : info.exports) {
-                    String pathStr = exportPkg.replace('.', '/') + "/*";
-                    accessRules.add(JavaCore.newAccessRule(new Path(pathStr), IAccessRule.K_ACCESSIBLE));
-                }
-                return accessRules;
-            default :
-                break;
+            List<IPath> patterns = AccessRulePatterns.calculate(c, JarInfoCache.getInstance());
+            if (patterns == null) {
+                return null; // full access
             }
-
-            return null; // full access
+            List<IAccessRule> accessRules = new ArrayList<IAccessRule>(patterns.size());
+            for (IPath pattern : patterns) {
+                accessRules.add(JavaCore.newAccessRule(pattern, IAccessRule.K_ACCESSIBLE));
+            }
+            return accessRules;
         }
 
         private List<IAccessRule> calculateProjectAccessRules(Project p) {
@@ -583,7 +524,7 @@ public class BndContainerInitializer extends ClasspathContainerInitializer imple
         }
 
         private boolean isVersionProject(Container c) {
-            return Constants.VERSION_ATTR_PROJECT.equals(c.getAttributes().get(Constants.VERSION_ATTRIBUTE));
+            return AccessRulePatterns.isVersionProject(c);
         }
 
         private boolean isVersionProject(IClasspathEntry cpe) {
@@ -613,12 +554,4 @@ public class BndContainerInitializer extends ClasspathContainerInitializer imple
             }
         }
     }
-
-    private static class JarInfo {
-        boolean hasSource;
-        String[] exports;
-        long lastModified;
-
-        JarInfo() {}
-    }
 }
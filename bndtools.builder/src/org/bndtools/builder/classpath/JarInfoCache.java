@@ -0,0 +1,312 @@
+package org.bndtools.builder.classpath;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.jar.JarFile;
+import java.util.jar.Manifest;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import org.bndtools.api.ILogger;
+import org.bndtools.api.Logger;
+import org.bndtools.builder.BuilderPlugin;
+import org.bndtools.utils.jar.PseudoJar;
+
+import aQute.bnd.header.Parameters;
+import aQute.bnd.osgi.Constants;
+import aQute.lib.io.IO;
+
+/**
+ * Cache of the source attachment and export information of the jars on bnd classpath containers.
+ * <p>
+ * Jars are read through their ZIP central directory, so only the manifest is inflated. Entries are keyed by the path,
+ * size and last modified time of the jar, and a hash of its first and last bytes, which cover the first local header
+ * and the end of central directory record. The cache is bounded, least recently used entries are dropped first, and it
+ * is persisted in the builder plugin state location so that it survives restarts.
+ */
+class JarInfoCache {
+
+    private static final ILogger logger = Logger.getLogger(JarInfoCache.class);
+
+    static final String CACHE_FILE = "jarinfo.cache";
+    static final int DEFAULT_MAX_ENTRIES = 4096;
+
+    private static final int FORMAT_VERSION = 1;
+    private static final int HASH_BLOCK_SIZE = 1024;
+    private static final String SOURCE_PREFIX = "OSGI-OPT/src/";
+
+    private static JarInfoCache instance = null;
+
+    private final File file;
+    private final Map<String,JarInfo> entries;
+    // Held while writing the cache file, so that an older snapshot cannot replace a newer one
+    private final Object saveLock = new Object();
+    private boolean loaded = false;
+    private boolean dirty = false;
+
+    static synchronized JarInfoCache getInstance() {
+        if (instance == null) {
+            BuilderPlugin plugin = BuilderPlugin.getInstance();
+            File cacheFile = plugin != null ? new File(plugin.getStateLocation().toFile(), CACHE_FILE) : null;
+            instance = new JarInfoCache(cacheFile, DEFAULT_MAX_ENTRIES);
+        }
+        return instance;
+    }
+
+    /**
+     * Save the shared cache, if it has been used.
+     */
+    static void saveInstance() {
+        JarInfoCache cache;
+        synchronized (JarInfoCache.class) {
+            cache = instance;
+        }
+        if (cache != null)
+            cache.save();
+    }
+
+    JarInfoCache(File file, final int maxEntries) {
+        this.file = file;
+        this.entries = new LinkedHashMap<String,JarInfo>(64, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String,JarInfo> eldest) {
+                return size() > maxEntries;
+            }
+        };
+    }
+
+    /**
+     * Get the information for a jar file or a directory with the layout of a jar.
+     */
+    JarInfo get(File jar) {
+        if (!jar.exists())
+            return new JarInfo();
+
+        if (!jar.isFile()) {
+            // Directories change without their modification time changing, so are not cached
+            return readDirectory(jar);
+        }
+
+        String path = jar.getAbsolutePath();
+        long size = jar.length();
+        long lastModified = jar.lastModified();
+        long hash;
+        try {
+            hash = headerHash(jar, size);
+        } catch (IOException e) {
+            logger.logInfo("Failed to read " + jar, e);
+            return new JarInfo();
+        }
+
+        synchronized (this) {
+            load();
+            JarInfo info = entries.get(path);
+            if (info != null && info.size == size && info.lastModified == lastModified && info.hash == hash)
+                return info;
+        }
+
+        JarInfo info = readJar(jar);
+        info.size = size;
+        info.lastModified = lastModified;
+        info.hash = hash;
+        synchronized (this) {
+            entries.put(path, info);
+            dirty = true;
+        }
+        return info;
+    }
+
+    private static JarInfo readJar(File jar) {
+        JarInfo info = new JarInfo();
+        try (ZipFile zip = new ZipFile(jar)) {
+            ZipEntry manifestEntry = zip.getEntry(JarFile.MANIFEST_NAME);
+            if (manifestEntry != null) {
+                try (InputStream in = zip.getInputStream(manifestEntry)) {
+                    info.exports = exports(new Manifest(in));
+                }
+            }
+            for (Enumeration< ? extends ZipEntry> e = zip.entries(); e.hasMoreElements();) {
+                if (e.nextElement().getName().startsWith(SOURCE_PREFIX)) {
+                    info.hasSource = true; // use library path as source attachment path
+                    break;
+                }
+            }
+        } catch (IOException e) {
+            logger.logInfo("Failed to read " + jar, e);
+        }
+        return info;
+    }
+
+    private static JarInfo readDirectory(File dir) {
+        JarInfo info = new JarInfo();
+        PseudoJar jar = new PseudoJar(dir);
+        try {
+            info.exports = exports(jar.readManifest());
+            for (String entry = jar.nextEntry(); entry != null; entry = jar.nextEntry()) {
+                if (entry.startsWith(SOURCE_PREFIX)) {
+                    info.hasSource = true;
+                    break;
+                }
+            }
+        } catch (IOException e) {
+            logger.logInfo("Failed to read " + dir, e);
+        } finally {
+            IO.close(jar);
+        }
+        return info;
+    }
+
+    private static String[] exports(Manifest mf) {
+        if ((mf == null) || (mf.getMainAttributes().getValue(Constants.BUNDLE_MANIFESTVERSION) == null))
+            return null;
+        Parameters exportPkgs = new Parameters(mf.getMainAttributes().getValue(Constants.EXPORT_PACKAGE));
+        Set<String> exports = exportPkgs.keySet();
+        return exports.toArray(new String[0]);
+    }
+
+    private static long headerHash(File jar, long size) throws IOException {
+        CRC32 crc = new CRC32();
+        byte[] buffer = new byte[HASH_BLOCK_SIZE];
+        try (RandomAccessFile raf = new RandomAccessFile(jar, "r")) {
+            int head = (int) Math.min(size, HASH_BLOCK_SIZE);
+            raf.readFully(buffer, 0, head);
+            crc.update(buffer, 0, head);
+            if (size > HASH_BLOCK_SIZE) {
+                int tail = (int) Math.min(size - HASH_BLOCK_SIZE, HASH_BLOCK_SIZE);
+                raf.seek(size - tail);
+                raf.readFully(buffer, 0, tail);
+                crc.update(buffer, 0, tail);
+            }
+        }
+        return crc.getValue();
+    }
+
+    private void load() {
+        if (loaded)
+            return;
+        loaded = true;
+        if (file == null || !file.isFile())
+            return;
+
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(IO.read(file)))) {
+            if (in.readInt() != FORMAT_VERSION)
+                return;
+            int count = readSize(in);
+            for (int i = 0; i < count; i++) {
+                String path = in.readUTF();
+                JarInfo info = new JarInfo();
+                info.size = in.readLong();
+                info.lastModified = in.readLong();
+                info.hash = in.readLong();
+                info.hasSource = in.readBoolean();
+                int exportCount = in.readInt();
+                if (exportCount != -1) {
+                    if (exportCount < 0 || exportCount > in.available())
+                        throw new IOException("Corrupt cache file");
+                    info.exports = new String[exportCount];
+                    for (int j = 0; j < exportCount; j++)
+                        info.exports[j] = in.readUTF();
+                }
+                entries.put(path, info);
+            }
+        } catch (IOException | RuntimeException | OutOfMemoryError e) {
+            // A damaged cache file only costs a rescan
+            entries.clear();
+            logger.logInfo("Discarding damaged jar information cache " + file, e);
+        }
+    }
+
+    /**
+     * Read a count of following items, each of which takes at least one byte.
+     */
+    private static int readSize(DataInputStream in) throws IOException {
+        int size = in.readInt();
+        if (size < 0 || size > in.available())
+            throw new IOException("Corrupt cache file");
+        return size;
+    }
+
+    void save() {
+        if (file == null)
+            return;
+
+        synchronized (saveLock) {
+            List<Map.Entry<String,JarInfo>> snapshot;
+            synchronized (this) {
+                if (!dirty)
+                    return;
+                snapshot = new ArrayList<>(entries.entrySet());
+                dirty = false;
+            }
+
+            try {
+                File dir = file.getAbsoluteFile().getParentFile();
+                IO.mkdirs(dir);
+                File tmp = File.createTempFile(file.getName(), ".tmp", dir);
+                try {
+                    try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)))) {
+                        write(out, snapshot);
+                    }
+                    try {
+                        Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+                    } catch (AtomicMoveNotSupportedException e) {
+                        Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+                    }
+                } finally {
+                    IO.delete(tmp);
+                }
+            } catch (IOException e) {
+                logger.logInfo("Failed to save jar information cache " + file, e);
+            }
+        }
+    }
+
+    private static void write(DataOutputStream out, List<Map.Entry<String,JarInfo>> snapshot) throws IOException {
+        out.writeInt(FORMAT_VERSION);
+        out.writeInt(snapshot.size());
+        for (Map.Entry<String,JarInfo> entry : snapshot) {
+            JarInfo info = entry.getValue();
+            out.writeUTF(entry.getKey());
+            out.writeLong(info.size);
+            out.writeLong(info.lastModified);
+            out.writeLong(info.hash);
+            out.writeBoolean(info.hasSource);
+            if (info.exports == null) {
+                out.writeInt(-1);
+            } else {
+                out.writeInt(info.exports.length);
+                for (String export : info.exports)
+                    out.writeUTF(export);
+            }
+        }
+    }
+
+    static class JarInfo {
+        boolean hasSource;
+        String[] exports;
+        long size;
+        long lastModified;
+        long hash;
+
+        JarInfo() {}
+    }
+}
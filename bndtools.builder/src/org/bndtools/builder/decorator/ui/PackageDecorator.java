@@ -1,16 +1,29 @@
 package org.bndtools.builder.decorator.ui;
 
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.bndtools.api.BndtoolsConstants;
 import org.bndtools.api.ILogger;
 import org.bndtools.api.Logger;
 import org.bndtools.builder.BndtoolsBuilder;
+import org.bndtools.builder.BuilderPlugin;
 import org.bndtools.utils.swt.SWTConcurrencyUtil;
 import org.eclipse.core.resources.IProject;
 import org.eclipse.core.resources.IResource;
 import org.eclipse.core.runtime.CoreException;
-import org.eclipse.core.runtime.QualifiedName;
 import org.eclipse.jdt.core.IClasspathEntry;
 import org.eclipse.jdt.core.IJavaElement;
 import org.eclipse.jdt.core.IJavaProject;
@@ -18,9 +31,11 @@ import org.eclipse.jdt.core.IPackageFragment;
 import org.eclipse.jdt.core.IPackageFragmentRoot;
 import org.eclipse.jdt.core.JavaCore;
 import org.eclipse.jface.resource.ImageDescriptor;
+import org.eclipse.jface.viewers.IBaseLabelProvider;
 import org.eclipse.jface.viewers.IDecoration;
 import org.eclipse.jface.viewers.ILightweightLabelDecorator;
 import org.eclipse.jface.viewers.LabelProvider;
+import org.eclipse.jface.viewers.LabelProviderChangedEvent;
 import org.eclipse.swt.widgets.Display;
 import org.eclipse.ui.PlatformUI;
 import org.eclipse.ui.plugin.AbstractUIPlugin;
@@ -31,14 +46,21 @@ import aQute.bnd.version.Version;
 
 /**
  * A decorator for {@link IPackageFragment}s that adds an icon if the package is exported by the bundle manifest.
+ * <p>
+ * The decorations of each project are held in memory, keyed by package path, and saved as one snapshot per project in
+ * the builder plugin state location. After a build only the packages whose decoration changed are refreshed.
  *
  * @author duckAsteroid
  */
 public class PackageDecorator extends LabelProvider implements ILightweightLabelDecorator {
     private static final ILogger logger = Logger.getLogger(PackageDecorator.class);
     private static final String packageDecoratorId = "bndtools.packageDecorator";
-    private static final QualifiedName packageDecoratorKey = new QualifiedName(BndtoolsBuilder.PLUGIN_ID, packageDecoratorId);
     private static final String excluded = " <excluded>";
+    private static final String snapshotSuffix = ".decorations";
+
+    // Project name -> package path -> decoration text
+    private static final Map<String,Map<String,String>> decorations = new ConcurrentHashMap<String,Map<String,String>>();
+
     private final ImageDescriptor exportedIcon = AbstractUIPlugin.imageDescriptorFromPlugin(BndtoolsBuilder.PLUGIN_ID, "icons/plus-decorator.png");
     private final ImageDescriptor excludedIcon = AbstractUIPlugin.imageDescriptorFromPlugin(BndtoolsBuilder.PLUGIN_ID, "icons/excluded_ovr.gif");
 
@@ -49,14 +71,11 @@ public class PackageDecorator extends LabelProvider implements ILightweightLabel
             if (pkg.getKind() != IPackageFragmentRoot.K_SOURCE) {
                 return;
             }
-            if (!pkg.getJavaProject().getProject().hasNature(BndtoolsConstants.NATURE_ID)) {
-                return;
-            }
-            IResource pkgResource = pkg.getCorrespondingResource();
-            if (pkgResource == null) {
+            IProject project = pkg.getJavaProject().getProject();
+            if (!project.hasNature(BndtoolsConstants.NATURE_ID)) {
                 return;
             }
-            String text = pkgResource.getPersistentProperty(packageDecoratorKey);
+            String text = getDecorations(project).get(pkg.getPath().toString());
             if (text == null) {
                 return;
             }
@@ -79,7 +98,8 @@ public class PackageDecorator extends LabelProvider implements ILightweightLabel
         if (javaProject == null) {
             return; // project is not a java project
         }
-        boolean changed = false;
+        Map<String,String> newDecorations = new HashMap<String,String>();
+        Map<String,IPackageFragment> packages = new HashMap<String,IPackageFragment>();
         for (IClasspathEntry cpe : javaProject.getRawClasspath()) {
             if (cpe.getEntryKind() != IClasspathEntry.CPE_SOURCE) {
                 continue;
@@ -95,61 +115,113 @@ public class PackageDecorator extends LabelProvider implements ILightweightLabel
                 for (IJavaElement child : pkgRoot.getChildren()) {
                     IPackageFragment pkg = (IPackageFragment) child;
                     assert pkg.getKind() == IPackageFragmentRoot.K_SOURCE;
-                    IResource pkgResource = pkg.getCorrespondingResource();
-                    if (pkgResource == null) {
+                    String path = pkg.getPath().toString();
+                    packages.put(path, pkg);
+                    if (!pkgInSourcePath) {
                         continue;
                     }
-                    String text = pkgResource.getPersistentProperty(packageDecoratorKey);
-                    if (pkgInSourcePath) {
-                        String pkgName = pkg.getElementName();
+                    String pkgName = pkg.getElementName();
 
-                        // Decorate if exported package
-                        Attrs pkgAttrs = model.getExports().getByFQN(pkgName);
+                    // Decorate if exported package
+                    Attrs pkgAttrs = model.getExports().getByFQN(pkgName);
+                    if (pkgAttrs != null) {
+                        StringBuilder sb = new StringBuilder(" ").append(Version.parseVersion(pkgAttrs.getVersion()));
+                        pkgAttrs = model.getImports().getByFQN(pkgName);
                         if (pkgAttrs != null) {
-                            StringBuilder sb = new StringBuilder(" ").append(Version.parseVersion(pkgAttrs.getVersion()));
-                            pkgAttrs = model.getImports().getByFQN(pkgName);
-                            if (pkgAttrs != null) {
-                                String versionRange = pkgAttrs.getVersion();
-                                if (versionRange != null) {
-                                    sb.append('\u2194').append(versionRange);
-                                }
-                            }
-                            String version = sb.toString();
-                            if (!version.equals(text)) {
-                                pkgResource.setPersistentProperty(packageDecoratorKey, version);
-                                changed = true;
-                            }
-                            continue;
-                        }
-
-                        // Decorate if non-empty, non-contained package
-                        if (pkg.containsJavaResources() && !model.getContained().containsFQN(pkgName)) {
-                            if (!excluded.equals(text)) {
-                                pkgResource.setPersistentProperty(packageDecoratorKey, excluded);
-                                changed = true;
+                            String versionRange = pkgAttrs.getVersion();
+                            if (versionRange != null) {
+                                sb.append('\u2194').append(versionRange);
                             }
-                            continue;
                         }
+                        newDecorations.put(path, sb.toString());
+                        continue;
                     }
 
-                    // Clear decoration
-                    if (text != null) {
-                        pkgResource.setPersistentProperty(packageDecoratorKey, null);
-                        changed = true;
+                    // Decorate if non-empty, non-contained package
+                    if (pkg.containsJavaResources() && !model.getContained().containsFQN(pkgName)) {
+                        newDecorations.put(path, excluded);
                     }
                 }
             }
         }
 
-        // If decoration change, update display
-        if (changed) {
-            Display display = PlatformUI.getWorkbench().getDisplay();
-            SWTConcurrencyUtil.execForDisplay(display, true, new Runnable() {
-                @Override
-                public void run() {
-                    PlatformUI.getWorkbench().getDecoratorManager().update(packageDecoratorId);
+        // Diff against the previous build
+        Map<String,String> oldDecorations = getDecorations(project);
+        Set<String> changedPaths = new HashSet<String>();
+        for (Map.Entry<String,String> entry : newDecorations.entrySet()) {
+            if (!entry.getValue().equals(oldDecorations.get(entry.getKey())))
+                changedPaths.add(entry.getKey());
+        }
+        for (String path : oldDecorations.keySet()) {
+            if (!newDecorations.containsKey(path))
+                changedPaths.add(path);
+        }
+        if (changedPaths.isEmpty()) {
+            return;
+        }
+
+        decorations.put(project.getName(), newDecorations);
+        saveSnapshot(project, newDecorations);
+
+        // Update the display of the changed packages only
+        final List<Object> changedElements = new ArrayList<Object>(changedPaths.size());
+        for (String path : changedPaths) {
+            IPackageFragment pkg = packages.get(path);
+            if (pkg != null)
+                changedElements.add(pkg);
+        }
+        if (changedElements.isEmpty()) {
+            return; // only packages that no longer exist changed
+        }
+        Display display = PlatformUI.getWorkbench().getDisplay();
+        SWTConcurrencyUtil.execForDisplay(display, true, new Runnable() {
+            @Override
+            public void run() {
+                // The decorator manager only returns the decorator if it is enabled
+                IBaseLabelProvider decorator = PlatformUI.getWorkbench().getDecoratorManager().getBaseLabelProvider(packageDecoratorId);
+                if (decorator instanceof PackageDecorator) {
+                    ((PackageDecorator) decorator).fireLabelProviderChanged(new LabelProviderChangedEvent(decorator, changedElements.toArray()));
                 }
-            });
+            }
+        });
+    }
+
+    private static Map<String,String> getDecorations(IProject project) {
+        Map<String,String> result = decorations.get(project.getName());
+        if (result == null) {
+            result = loadSnapshot(project);
+            decorations.put(project.getName(), result);
+        }
+        return result;
+    }
+
+    private static File getSnapshotFile(IProject project) {
+        return new File(BuilderPlugin.getInstance().getStateLocation().toFile(), project.getName() + snapshotSuffix);
+    }
+
+    private static Map<String,String> loadSnapshot(IProject project) {
+        Map<String,String> result = new HashMap<String,String>();
+        File file = getSnapshotFile(project);
+        if (file.isFile()) {
+            Properties props = new Properties();
+            try (InputStream in = new FileInputStream(file)) {
+                props.load(in);
+                for (String path : props.stringPropertyNames())
+                    result.put(path, props.getProperty(path));
+            } catch (IOException e) {
+                logger.logError("Failed to read package decorations for project " + project.getName(), e);
+            }
+        }
+        return result;
+    }
+
+    private static void saveSnapshot(IProject project, Map<String,String> projectDecorations) {
+        Properties props = new Properties();
+        props.putAll(projectDecorations);
+        try (OutputStream out = new FileOutputStream(getSnapshotFile(project))) {
+            props.store(out, null);
+        } catch (IOException e) {
+            logger.logError("Failed to write package decorations for project " + project.getName(), e);
         }
     }
 }
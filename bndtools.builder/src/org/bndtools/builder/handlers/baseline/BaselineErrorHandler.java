@@ -12,8 +12,9 @@ import org.bndtools.api.ILogger;
 import org.bndtools.api.Logger;
 import org.bndtools.build.api.AbstractBuildErrorDetailsHandler;
 import org.bndtools.build.api.MarkerData;
+import org.bndtools.builder.utils.ASTCache;
+import org.bndtools.builder.utils.ASTCache.ParsedUnit;
 import org.bndtools.builder.utils.MemberValuePairLocationRetriever;
-import org.bndtools.utils.jdt.ASTUtil;
 import org.eclipse.core.resources.IFile;
 import org.eclipse.core.resources.IMarker;
 import org.eclipse.core.resources.IProject;
@@ -32,14 +33,10 @@ import org.eclipse.jdt.core.IPackageFragment;
 import org.eclipse.jdt.core.ISourceRange;
 import org.eclipse.jdt.core.JavaCore;
 import org.eclipse.jdt.core.JavaModelException;
-import org.eclipse.jdt.core.dom.AST;
-import org.eclipse.jdt.core.dom.ASTParser;
-import org.eclipse.jdt.core.dom.ASTVisitor;
+import org.eclipse.jdt.core.dom.AbstractTypeDeclaration;
 import org.eclipse.jdt.core.dom.CompilationUnit;
-import org.eclipse.jdt.core.dom.ITypeBinding;
 import org.eclipse.jdt.core.dom.MethodDeclaration;
 import org.eclipse.jdt.core.dom.SimpleName;
-import org.eclipse.jdt.core.dom.TypeDeclaration;
 import org.eclipse.jface.text.contentassist.CompletionProposal;
 import org.eclipse.jface.text.contentassist.ICompletionProposal;
 import org.eclipse.ui.IMarkerResolution;
@@ -142,11 +139,7 @@ public class BaselineErrorHandler extends AbstractBuildErrorDetailsHandler {
                     for (IAnnotation annot : annots) {
                         String name = annot.getElementName();
                         if (ANNOTATION_VERSION_NO_PKG.equals(name) || ANNOTATION_VERSION_OSGI.equals(name) || ANNOTATION_VERSION_BND.equals(name)) {
-                            ASTParser parser = ASTParser.newParser(AST.JLS8);
-                            parser.setKind(ASTParser.K_COMPILATION_UNIT);
-                            parser.setSource(compUnit);
-                            parser.setResolveBindings(true);
-                            CompilationUnit ast = (CompilationUnit) parser.createAST(null);
+                            CompilationUnit ast = ASTCache.getInstance().get(compUnit, true).getAST();
 
                             MemberValuePairLocationRetriever mvpRetriever = new MemberValuePairLocationRetriever(annot, new Function<String,Boolean>() {
                                 @Override
@@ -219,55 +212,38 @@ public class BaselineErrorHandler extends AbstractBuildErrorDetailsHandler {
 
     List<MarkerData> generateAddedMethodMarker(IJavaProject javaProject, String className, final String methodName, final Delta requiresDelta) throws JavaModelException {
         final List<MarkerData> markers = new LinkedList<MarkerData>();
-        final CompilationUnit ast = createAST(javaProject, className);
-        if (ast != null) {
-            ast.accept(new ASTVisitor() {
-                @Override
-                public boolean visit(MethodDeclaration methodDecl) {
-                    String signature = ASTUtil.buildMethodSignature(methodDecl);
-                    if (signature.equals(methodName)) {
-                        // Create the marker attribs here
-                        Map<String,Object> attribs = new HashMap<String,Object>();
-                        attribs.put(IMarker.CHAR_START, methodDecl.getStartPosition());
-                        attribs.put(IMarker.CHAR_END, methodDecl.getStartPosition() + methodDecl.getLength());
-
-                        String message = String.format("This method was added, which requires a %s change to the package.", requiresDelta);
-                        attribs.put(IMarker.MESSAGE, message);
-
-                        markers.add(new MarkerData(ast.getJavaElement().getResource(), attribs, false));
-                    }
-
-                    return false;
-                }
-            });
+        ParsedUnit unit = ASTCache.getInstance().get(javaProject, className, false);
+        if (unit != null) {
+            for (MethodDeclaration methodDecl : unit.findMethodsBySignature(methodName)) {
+                // Create the marker attribs here
+                Map<String,Object> attribs = new HashMap<String,Object>();
+                attribs.put(IMarker.CHAR_START, methodDecl.getStartPosition());
+                attribs.put(IMarker.CHAR_END, methodDecl.getStartPosition() + methodDecl.getLength());
+
+                String message = String.format("This method was added, which requires a %s change to the package.", requiresDelta);
+                attribs.put(IMarker.MESSAGE, message);
+
+                markers.add(new MarkerData(unit.getResource(), attribs, false));
+            }
         }
         return markers;
     }
 
     List<MarkerData> generateRemovedMethodMarker(IJavaProject javaProject, final String className, final String methodName, final Delta requiresDelta) throws JavaModelException {
         final List<MarkerData> markers = new LinkedList<MarkerData>();
-        final CompilationUnit ast = createAST(javaProject, className);
-        ast.accept(new ASTVisitor() {
-            @Override
-            public boolean visit(TypeDeclaration typeDecl) {
-                ITypeBinding typeBinding = typeDecl.resolveBinding();
-                if (typeBinding != null) {
-                    if (typeBinding.getBinaryName().equals(className)) {
-                        Map<String,Object> attribs = new HashMap<String,Object>();
-                        SimpleName nameNode = typeDecl.getName();
-                        attribs.put(IMarker.CHAR_START, nameNode.getStartPosition());
-                        attribs.put(IMarker.CHAR_END, nameNode.getStartPosition() + nameNode.getLength());
-
-                        String message = String.format("The method '%s' was removed, which requires a %s change to the package.", methodName, requiresDelta);
-                        attribs.put(IMarker.MESSAGE, message);
-
-                        markers.add(new MarkerData(ast.getJavaElement().getResource(), attribs, false));
-                        return false;
-                    }
-                }
-                return true;
-            }
-        });
+        ParsedUnit unit = ASTCache.getInstance().get(javaProject, className, true);
+        AbstractTypeDeclaration typeDecl = unit != null ? unit.findType(className) : null;
+        if (typeDecl != null) {
+            Map<String,Object> attribs = new HashMap<String,Object>();
+            SimpleName nameNode = typeDecl.getName();
+            attribs.put(IMarker.CHAR_START, nameNode.getStartPosition());
+            attribs.put(IMarker.CHAR_END, nameNode.getStartPosition() + nameNode.getLength());
+
+            String message = String.format("The method '%s' was removed, which requires a %s change to the package.", methodName, requiresDelta);
+            attribs.put(IMarker.MESSAGE, message);
+
+            markers.add(new MarkerData(unit.getResource(), attribs, false));
+        }
 
         return markers;
     }
@@ -7,10 +7,14 @@ import java.util.Map;
 
 import org.bndtools.build.api.AbstractBuildErrorDetailsHandler;
 import org.bndtools.build.api.MarkerData;
+import org.bndtools.builder.utils.ASTCache;
+import org.bndtools.builder.utils.ASTCache.ParsedUnit;
 import org.eclipse.core.resources.IMarker;
 import org.eclipse.core.resources.IProject;
 import org.eclipse.jdt.core.IJavaProject;
 import org.eclipse.jdt.core.JavaCore;
+import org.eclipse.jdt.core.dom.ASTNode;
+import org.eclipse.jdt.core.dom.AbstractTypeDeclaration;
 
 import aQute.bnd.build.Project;
 import aQute.bnd.component.error.DeclarativeServicesAnnotationError;
@@ -31,16 +35,28 @@ public class DSAnnotationErrorHandler extends AbstractBuildErrorDetailsHandler {
 
         MarkerData md = null;
         if (dsError.className != null) {
-            if (dsError.methodName != null && dsError.methodSignature != null) {
-                md = createMethodMarkerData(javaProject, dsError.className, dsError.methodName, dsError.methodSignature, attribs, false);
-            }
+            ParsedUnit unit = ASTCache.getInstance().get(javaProject, dsError.className, true);
+            if (unit != null) {
+                ASTNode node = null;
+                if (dsError.methodName != null && dsError.methodSignature != null) {
+                    node = unit.findMethod(dsError.className, dsError.methodName, dsError.methodSignature);
+                }
 
-            if (dsError.fieldName != null) {
-                md = createFieldMarkerData(javaProject, dsError.className, dsError.fieldName, attribs, false);
-            }
+                if (dsError.fieldName != null) {
+                    node = unit.findField(dsError.className, dsError.fieldName);
+                }
+
+                if (node == null) {
+                    AbstractTypeDeclaration typeDecl = unit.findType(dsError.className);
+                    if (typeDecl != null)
+                        node = typeDecl.getName();
+                }
 
-            if (md == null) {
-                md = createTypeMarkerData(javaProject, dsError.className, attribs, false);
+                if (node != null) {
+                    attribs.put(IMarker.CHAR_START, node.getStartPosition());
+                    attribs.put(IMarker.CHAR_END, node.getStartPosition() + node.getLength());
+                    md = new MarkerData(unit.getResource(), attribs, false);
+                }
             }
         }
 
@@ -13,6 +13,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
+import org.bndtools.api.BuildTrace;
 import org.bndtools.api.ILogger;
 import org.bndtools.api.Logger;
 import org.bndtools.build.api.AbstractBuildListener;
@@ -68,6 +69,7 @@ public class BuiltBundleIndexer extends AbstractBuildListener {
         // Generate the index file
         File indexFile;
         OutputStream output = null;
+        BuildTrace.Span span = BuildTrace.span(BuildTrace.INDEX, "index bundles").arg("project", project.getName()).arg("bundles", files.size());
         try {
             Project model = Central.getProject(project.getLocation().toFile());
             File target = model.getTarget();
@@ -106,10 +108,12 @@ public class BuiltBundleIndexer extends AbstractBuildListener {
             return;
         } finally {
             IO.close(output);
+            span.close();
         }
 
         // Parse the index and add to the workspace repository
         FileInputStream input = null;
+        span = BuildTrace.span(BuildTrace.INDEX, "load workspace index").arg("project", project.getName());
         try {
             input = new FileInputStream(indexFile);
             WorkspaceR5Repository workspaceRepo = Central.getWorkspaceR5Repository();
@@ -124,6 +128,7 @@ public class BuiltBundleIndexer extends AbstractBuildListener {
                     /* ignore */
                 }
             }
+            span.close();
         }
     }
 
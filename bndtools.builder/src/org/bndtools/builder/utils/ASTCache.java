@@ -0,0 +1,338 @@
+package org.bndtools.builder.utils;
+
+import java.lang.ref.SoftReference;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.bndtools.utils.jdt.ASTUtil;
+import org.eclipse.core.resources.IResource;
+import org.eclipse.core.resources.IResourceChangeEvent;
+import org.eclipse.core.resources.IResourceChangeListener;
+import org.eclipse.core.resources.IResourceDelta;
+import org.eclipse.core.resources.IResourceDeltaVisitor;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IPath;
+import org.eclipse.jdt.core.ICompilationUnit;
+import org.eclipse.jdt.core.IJavaProject;
+import org.eclipse.jdt.core.IType;
+import org.eclipse.jdt.core.JavaModelException;
+import org.eclipse.jdt.core.dom.AST;
+import org.eclipse.jdt.core.dom.ASTParser;
+import org.eclipse.jdt.core.dom.ASTVisitor;
+import org.eclipse.jdt.core.dom.AbstractTypeDeclaration;
+import org.eclipse.jdt.core.dom.AnnotationTypeDeclaration;
+import org.eclipse.jdt.core.dom.CompilationUnit;
+import org.eclipse.jdt.core.dom.EnumDeclaration;
+import org.eclipse.jdt.core.dom.FieldDeclaration;
+import org.eclipse.jdt.core.dom.IMethodBinding;
+import org.eclipse.jdt.core.dom.ITypeBinding;
+import org.eclipse.jdt.core.dom.MethodDeclaration;
+import org.eclipse.jdt.core.dom.TypeDeclaration;
+import org.eclipse.jdt.core.dom.VariableDeclarationFragment;
+
+/**
+ * Cache of parsed compilation units for the builder's marker generators, so that a unit with many errors is parsed at
+ * most once per change rather than once per marker.
+ * <p>
+ * Each unit is parsed with bindings only if a caller needs them. The type, method and field declarations of a unit are
+ * indexed when it is parsed. Entries are held by soft references in a bounded, least recently used map, and are
+ * dropped when a resource delta reports a change to their file.
+ */
+public class ASTCache implements IResourceChangeListener {
+
+    public static final int DEFAULT_MAX_ENTRIES = 64;
+
+    private static final String CONSTRUCTOR_NAME = "<init>";
+    private static final String JAVA_EXTENSION = "java";
+
+    private static final ASTCache instance = new ASTCache(DEFAULT_MAX_ENTRIES);
+
+    private final Map<IPath,SoftReference<ParsedUnit>> entries;
+
+    public static ASTCache getInstance() {
+        return instance;
+    }
+
+    ASTCache(final int maxEntries) {
+        entries = new LinkedHashMap<IPath,SoftReference<ParsedUnit>>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<IPath,SoftReference<ParsedUnit>> eldest) {
+                return size() > maxEntries;
+            }
+        };
+    }
+
+    /**
+     * Get the parsed compilation unit containing the source of a class.
+     *
+     * @param className
+     *            the fully qualified class name (e.g java.lang.String)
+     * @return the parsed unit, or null if no source file exists for that class
+     */
+    public ParsedUnit get(IJavaProject javaProject, String className, boolean resolveBindings) throws JavaModelException {
+        IType type = javaProject.findType(className);
+        if (type == null)
+            return null;
+        ICompilationUnit unit = type.getCompilationUnit();
+        if (unit == null)
+            return null; // not a source type
+        return get(unit, resolveBindings);
+    }
+
+    /**
+     * Get the parsed compilation unit, parsing it if it is not cached, or was cached without bindings when bindings are
+     * required.
+     */
+    public ParsedUnit get(ICompilationUnit unit, boolean resolveBindings) {
+        IResource resource = unit.getResource();
+        IPath key = resource != null ? resource.getFullPath() : unit.getPath();
+        long stamp = resource != null ? resource.getModificationStamp() : IResource.NULL_STAMP;
+
+        synchronized (this) {
+            SoftReference<ParsedUnit> ref = entries.get(key);
+            ParsedUnit parsed = ref != null ? ref.get() : null;
+            if (parsed != null && parsed.stamp == stamp && stamp != IResource.NULL_STAMP && (parsed.bindings || !resolveBindings))
+                return parsed;
+        }
+
+        ASTParser parser = ASTParser.newParser(AST.JLS8);
+        parser.setKind(ASTParser.K_COMPILATION_UNIT);
+        parser.setSource(unit);
+        parser.setResolveBindings(resolveBindings);
+        ParsedUnit parsed = new ParsedUnit((CompilationUnit) parser.createAST(null), resource, stamp, resolveBindings);
+
+        synchronized (this) {
+            entries.put(key, new SoftReference<ParsedUnit>(parsed));
+        }
+        return parsed;
+    }
+
+    public synchronized void invalidate(IPath path) {
+        entries.remove(path);
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+    }
+
+    @Override
+    public void resourceChanged(IResourceChangeEvent event) {
+        IResourceDelta delta = event.getDelta();
+        if (delta == null)
+            return;
+        synchronized (this) {
+            if (entries.isEmpty())
+                return;
+        }
+        try {
+            delta.accept(new IResourceDeltaVisitor() {
+                @Override
+                public boolean visit(IResourceDelta child) throws CoreException {
+                    IResource resource = child.getResource();
+                    if (resource.getType() == IResource.FILE) {
+                        if (JAVA_EXTENSION.equals(resource.getFileExtension()))
+                            invalidate(resource.getFullPath());
+                        return false;
+                    }
+                    return true;
+                }
+            });
+        } catch (CoreException e) {
+            clear();
+        }
+    }
+
+    /**
+     * A parsed compilation unit with its declarations indexed by name.
+     */
+    public static class ParsedUnit {
+        private final CompilationUnit ast;
+        private final IResource resource;
+        private final long stamp;
+        private final boolean bindings;
+
+        // Binary type name -> declaration
+        private final Map<String,AbstractTypeDeclaration> types = new HashMap<String,AbstractTypeDeclaration>();
+        // Binary type name + '#' + method name + descriptor -> declaration; only with bindings
+        private final Map<String,MethodDeclaration> methods = new HashMap<String,MethodDeclaration>();
+        // Method signature as built by ASTUtil -> declarations
+        private final Map<String,List<MethodDeclaration>> methodsBySignature = new HashMap<String,List<MethodDeclaration>>();
+        // Binary type name + '#' + field name -> declaration
+        private final Map<String,FieldDeclaration> fields = new HashMap<String,FieldDeclaration>();
+
+        ParsedUnit(CompilationUnit ast, IResource resource, long stamp, boolean bindings) {
+            this.ast = ast;
+            this.resource = resource;
+            this.stamp = stamp;
+            this.bindings = bindings;
+            index();
+        }
+
+        public CompilationUnit getAST() {
+            return ast;
+        }
+
+        public IResource getResource() {
+            return resource;
+        }
+
+        public boolean hasBindings() {
+            return bindings;
+        }
+
+        /**
+         * @param className
+         *            the binary class name (e.g. org.example.Outer$Inner)
+         */
+        public AbstractTypeDeclaration findType(String className) {
+            return types.get(className);
+        }
+
+        /**
+         * Find a method by name and descriptor. Requires bindings.
+         *
+         * @param methodSignature
+         *            the descriptor in internal form, e.g. (Ljava/lang/Integer;[Ljava/lang/String;Z)V
+         */
+        public MethodDeclaration findMethod(String className, String methodName, String methodSignature) {
+            return methods.get(className + '#' + methodName + methodSignature.replace('.', '/'));
+        }
+
+        /**
+         * Find the methods with a signature as built by {@link ASTUtil#buildMethodSignature(MethodDeclaration)}.
+         */
+        public List<MethodDeclaration> findMethodsBySignature(String signature) {
+            List<MethodDeclaration> result = methodsBySignature.get(signature);
+            return result != null ? result : Collections.<MethodDeclaration> emptyList();
+        }
+
+        public FieldDeclaration findField(String className, String fieldName) {
+            return fields.get(className + '#' + fieldName);
+        }
+
+        private void index() {
+            final String packagePrefix = ast.getPackage() != null ? ast.getPackage().getName().getFullyQualifiedName() + "." : "";
+            ast.accept(new ASTVisitor() {
+                private final List<String> enclosing = new ArrayList<String>();
+
+                @Override
+                public boolean visit(TypeDeclaration typeDecl) {
+                    return enter(typeDecl);
+                }
+
+                @Override
+                public boolean visit(EnumDeclaration enumDecl) {
+                    return enter(enumDecl);
+                }
+
+                @Override
+                public boolean visit(AnnotationTypeDeclaration annotationDecl) {
+                    return enter(annotationDecl);
+                }
+
+                @Override
+                public void endVisit(TypeDeclaration typeDecl) {
+                    exit();
+                }
+
+                @Override
+                public void endVisit(EnumDeclaration enumDecl) {
+                    exit();
+                }
+
+                @Override
+                public void endVisit(AnnotationTypeDeclaration annotationDecl) {
+                    exit();
+                }
+
+                @Override
+                public boolean visit(MethodDeclaration methodDecl) {
+                    String signature = ASTUtil.buildMethodSignature(methodDecl);
+                    List<MethodDeclaration> list = methodsBySignature.get(signature);
+                    if (list == null) {
+                        list = new ArrayList<MethodDeclaration>(1);
+                        methodsBySignature.put(signature, list);
+                    }
+                    list.add(methodDecl);
+
+                    String owner = currentType();
+                    IMethodBinding binding = bindings ? methodDecl.resolveBinding() : null;
+                    if (owner != null && binding != null) {
+                        String name = methodDecl.isConstructor() ? CONSTRUCTOR_NAME : methodDecl.getName().getIdentifier();
+                        methods.put(owner + '#' + name + descriptor(binding), methodDecl);
+                    }
+                    return false;
+                }
+
+                @Override
+                public boolean visit(FieldDeclaration fieldDecl) {
+                    String owner = currentType();
+                    if (owner != null) {
+                        for (Object fragment : fieldDecl.fragments())
+                            fields.put(owner + '#' + ((VariableDeclarationFragment) fragment).getName().getIdentifier(), fieldDecl);
+                    }
+                    return false;
+                }
+
+                private boolean enter(AbstractTypeDeclaration typeDecl) {
+                    String name = binaryName(typeDecl);
+                    enclosing.add(name);
+                    if (name != null)
+                        types.put(name, typeDecl);
+                    return true;
+                }
+
+                private void exit() {
+                    enclosing.remove(enclosing.size() - 1);
+                }
+
+                private String currentType() {
+                    return enclosing.isEmpty() ? null : enclosing.get(enclosing.size() - 1);
+                }
+
+                private String binaryName(AbstractTypeDeclaration typeDecl) {
+                    if (bindings) {
+                        ITypeBinding binding = typeDecl.resolveBinding();
+                        if (binding != null)
+                            return binding.getBinaryName();
+                    }
+                    // without bindings the binary name of local types is unknown
+                    if (typeDecl.isLocalTypeDeclaration())
+                        return null;
+                    if (enclosing.isEmpty())
+                        return packagePrefix + typeDecl.getName().getIdentifier();
+                    String outer = currentType();
+                    return outer != null ? outer + '$' + typeDecl.getName().getIdentifier() : null;
+                }
+            });
+        }
+
+        private static String descriptor(IMethodBinding binding) {
+            StringBuilder sb = new StringBuilder("(");
+            for (ITypeBinding param : binding.getParameterTypes())
+                appendDescriptor(sb, param);
+            sb.append(')');
+            appendDescriptor(sb, binding.getReturnType());
+            return sb.toString();
+        }
+
+        private static void appendDescriptor(StringBuilder sb, ITypeBinding type) {
+            ITypeBinding erasure = type.getErasure();
+            String binaryName = erasure.getBinaryName();
+            if (binaryName == null) {
+                sb.append("Ljava/lang/Object;");
+            } else if (erasure.isPrimitive() || erasure.isArray()) {
+                // the binary name of primitive and array types is their descriptor
+                sb.append(binaryName.replace('.', '/'));
+            } else {
+                sb.append('L').append(binaryName.replace('.', '/')).append(';');
+            }
+        }
+    }
+}
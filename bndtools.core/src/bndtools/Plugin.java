@@ -10,17 +10,23 @@
  *******************************************************************************/
 package bndtools;
 
+import java.io.File;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Dictionary;
 import java.util.Hashtable;
-import java.util.LinkedList;
 import java.util.List;
-import java.util.concurrent.Executors;
+import java.util.Map;
+import java.util.concurrent.Callable;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.atomic.AtomicBoolean;
 
+import org.bndtools.api.IExecutionService;
 import org.bndtools.api.ILogger;
-import org.bndtools.api.IStartupParticipant;
 import org.bndtools.api.Logger;
+import org.bndtools.core.execution.ExecutionService;
+import org.bndtools.core.trace.BuildTracing;
 import org.bndtools.headless.build.manager.api.HeadlessBuildManager;
 import org.bndtools.versioncontrol.ignores.manager.api.VersionControlIgnoresManager;
 import org.eclipse.core.resources.IWorkspace;
@@ -43,7 +49,10 @@ import org.osgi.util.tracker.ServiceTracker;
 import aQute.bnd.build.Workspace;
 import aQute.bnd.osgi.Processor;
 import aQute.bnd.version.Version;
+import bndtools.editor.completion.BndCompletionIndex;
+import bndtools.internal.javaindex.JavaElementIndex;
 import bndtools.services.WorkspaceURLStreamHandlerService;
+import bndtools.tasks.OutputFolderStamps;
 
 public class Plugin extends AbstractUIPlugin {
 
@@ -61,7 +70,7 @@ public class Plugin extends AbstractUIPlugin {
 
     private BundleContext bundleContext;
     private Activator bndActivator;
-    private final List<IStartupParticipant> startupParticipants = new LinkedList<IStartupParticipant>();
+    private volatile StartupParticipants startupParticipants;
 
     private volatile ServiceTracker<IWorkspace,IWorkspace> workspaceTracker;
     private volatile ServiceRegistration<URLStreamHandlerService> urlHandlerReg;
@@ -69,7 +78,10 @@ public class Plugin extends AbstractUIPlugin {
     private volatile HeadlessBuildManagerTracker headlessBuildManager;
     private volatile VersionControlIgnoresManagerTracker versionControlIgnoresManager;
 
+    private volatile ExecutionService executionService;
     private volatile ScheduledExecutorService scheduler;
+    private volatile BuildTracing buildTracing;
+    private volatile JavaElementIndex javaElementIndex;
 
     @Override
     public void start(BundleContext context) throws Exception {
@@ -78,19 +90,21 @@ public class Plugin extends AbstractUIPlugin {
         plugin = this;
         this.bundleContext = context;
 
-        scheduler = Executors.newScheduledThreadPool(1);
+        executionService = new ExecutionService();
+        executionService.registerMBean();
+        scheduler = executionService.getScheduler();
+        registerExecutionService(context);
 
-        bndActivator = new Activator();
-        bndActivator.start(context);
+        buildTracing = new BuildTracing(new File(getStateLocation().toFile(), "traces"), executionService, scheduler);
+        buildTracing.start(getPreferenceStore());
 
-        resourceIndexerTracker = new ResourceIndexerTracker(context, 1000);
-        resourceIndexerTracker.open();
+        javaElementIndex = new JavaElementIndex(executionService, scheduler);
+        javaElementIndex.start();
 
-        versionControlIgnoresManager = new VersionControlIgnoresManagerTracker(context);
-        versionControlIgnoresManager.open();
+        bndActivator = new Activator();
+        bndActivator.start(context);
 
-        headlessBuildManager = new HeadlessBuildManagerTracker(context);
-        headlessBuildManager.open();
+        // The service trackers are opened when they are first used
 
         registerWorkspaceServiceFactory(context);
 
@@ -104,6 +118,10 @@ public class Plugin extends AbstractUIPlugin {
         context.registerService(Workspace.class.getName(), new WorkspaceServiceFactory(), props);
     }
 
+    private void registerExecutionService(BundleContext context) {
+        context.registerService(IExecutionService.class, executionService, null);
+    }
+
     private void registerWorkspaceURLHandler(BundleContext context) {
         workspaceTracker = new ServiceTracker<IWorkspace,IWorkspace>(context, IWorkspace.class.getName(), null);
         workspaceTracker.open();
@@ -118,31 +136,30 @@ public class Plugin extends AbstractUIPlugin {
     private void runStartupParticipants() {
         IConfigurationElement[] elements = Platform.getExtensionRegistry().getConfigurationElementsFor(PLUGIN_ID, "bndtoolsStartupParticipant");
 
-        for (IConfigurationElement element : elements) {
-            try {
-                Object obj = element.createExecutableExtension("class");
-                if (obj instanceof Runnable) {
-                    Runnable participant = (Runnable) obj;
-                    participant.run();
-                } else if (obj instanceof IStartupParticipant) {
-                    IStartupParticipant isp = (IStartupParticipant) obj;
-                    startupParticipants.add(isp);
-                    isp.start();
+        startupParticipants = new StartupParticipants(executionService);
+        for (final IConfigurationElement element : elements) {
+            String className = element.getAttribute("class");
+            String id = element.getAttribute("id");
+            String requires = element.getAttribute("requires");
+            Collection<String> requiredIds = requires != null ? Arrays.asList(requires.trim().split("\\s*,\\s*")) : Collections.<String> emptyList();
+            boolean synchronous = Boolean.parseBoolean(element.getAttribute("synchronous"));
+
+            startupParticipants.add(id != null ? id : className, requiredIds, synchronous, new Callable<Object>() {
+                @Override
+                public Object call() throws CoreException {
+                    return element.createExecutableExtension("class");
                 }
-            } catch (CoreException e) {
-                logger.logError("Error executing startup participant", e);
-            }
+            });
         }
+        startupParticipants.start();
     }
 
-    private void stopStartupParticipants() {
-        for (IStartupParticipant isp : startupParticipants) {
-            try {
-                isp.stop();
-            } catch (Exception e) {
-                logger.logError("Error stopping startup participant", e);
-            }
-        }
+    /**
+     * @return the time in milliseconds each startup participant took to start, by participant id
+     */
+    public Map<String,Long> getStartupParticipantTimes() {
+        StartupParticipants participants = startupParticipants;
+        return participants != null ? participants.getStartTimes() : Collections.<String,Long> emptyMap();
     }
 
     private void unregisterWorkspaceURLHandler() {
@@ -152,17 +169,18 @@ public class Plugin extends AbstractUIPlugin {
 
     @Override
     public void stop(BundleContext context) throws Exception {
-        stopStartupParticipants();
+        startupParticipants.stop();
+        BndCompletionIndex.dispose();
+        OutputFolderStamps.dispose();
 
         bndActivator.stop(context);
-        headlessBuildManager.close();
-        versionControlIgnoresManager.close();
-        resourceIndexerTracker.close();
-        this.bundleContext = null;
+        closeTrackers();
         plugin = null;
         super.stop(context);
         unregisterWorkspaceURLHandler();
-        scheduler.shutdown();
+        buildTracing.stop();
+        javaElementIndex.close();
+        executionService.close();
     }
 
     public static Plugin getDefault() {
@@ -277,18 +295,73 @@ public class Plugin extends AbstractUIPlugin {
     }
 
     public ResourceIndexer getResourceIndexer() {
-        return resourceIndexerTracker;
+        ResourceIndexerTracker tracker = resourceIndexerTracker;
+        if (tracker == null) {
+            synchronized (this) {
+                tracker = resourceIndexerTracker;
+                if (tracker == null && bundleContext != null) {
+                    tracker = new ResourceIndexerTracker(bundleContext, 1000);
+                    tracker.open();
+                    resourceIndexerTracker = tracker;
+                }
+            }
+        }
+        return tracker;
     }
 
     public HeadlessBuildManager getHeadlessBuildManager() {
-        return headlessBuildManager;
+        HeadlessBuildManagerTracker tracker = headlessBuildManager;
+        if (tracker == null) {
+            synchronized (this) {
+                tracker = headlessBuildManager;
+                if (tracker == null && bundleContext != null) {
+                    tracker = new HeadlessBuildManagerTracker(bundleContext);
+                    tracker.open();
+                    headlessBuildManager = tracker;
+                }
+            }
+        }
+        return tracker;
     }
 
     public VersionControlIgnoresManager getVersionControlIgnoresManager() {
-        return versionControlIgnoresManager;
+        VersionControlIgnoresManagerTracker tracker = versionControlIgnoresManager;
+        if (tracker == null) {
+            synchronized (this) {
+                tracker = versionControlIgnoresManager;
+                if (tracker == null && bundleContext != null) {
+                    tracker = new VersionControlIgnoresManagerTracker(bundleContext);
+                    tracker.open();
+                    versionControlIgnoresManager = tracker;
+                }
+            }
+        }
+        return tracker;
+    }
+
+    private synchronized void closeTrackers() {
+        // No trackers are opened once the bundle is stopping
+        bundleContext = null;
+        if (headlessBuildManager != null)
+            headlessBuildManager.close();
+        if (versionControlIgnoresManager != null)
+            versionControlIgnoresManager.close();
+        if (resourceIndexerTracker != null)
+            resourceIndexerTracker.close();
+        headlessBuildManager = null;
+        versionControlIgnoresManager = null;
+        resourceIndexerTracker = null;
     }
 
     public ScheduledExecutorService getScheduler() {
         return scheduler;
     }
+
+    public IExecutionService getExecutionService() {
+        return executionService;
+    }
+
+    public JavaElementIndex getJavaElementIndex() {
+        return javaElementIndex;
+    }
 }
@@ -0,0 +1,227 @@
+package bndtools;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.bndtools.api.IExecutionService;
+import org.bndtools.api.IExecutionService.Pool;
+import org.bndtools.api.IExecutionService.Priority;
+import org.bndtools.api.ILogger;
+import org.bndtools.api.IStartupParticipant;
+import org.bndtools.api.Logger;
+
+/**
+ * Starts the startup participants of bndtools. Synchronous participants are started in order on the activating thread,
+ * the other participants are started concurrently in the background. A participant that requires other participants
+ * is only started once they have started. The time each participant takes to start is recorded, and participants that
+ * are slow to start are logged.
+ */
+final class StartupParticipants {
+
+    private static final ILogger logger = Logger.getLogger(StartupParticipants.class);
+
+    static final long SLOW_START = 1000L;
+    private static final long STOP_TIMEOUT = TimeUnit.SECONDS.toMillis(10);
+
+    private final IExecutionService executionService;
+    private final Map<String,Participant> participants = new LinkedHashMap<String,Participant>();
+
+    private final Object lock = new Object();
+    // Guarded by lock
+    private final List<Future< ? >> pending = new ArrayList<Future< ? >>();
+    private final List<IStartupParticipant> started = new ArrayList<IStartupParticipant>();
+    private final Map<String,Long> startTimes = new LinkedHashMap<String,Long>();
+    private boolean stopped;
+
+    StartupParticipants(IExecutionService executionService) {
+        this.executionService = executionService;
+    }
+
+    /**
+     * @param id the id of the participant, by which other participants can require it
+     * @param requires the ids of the participants that must be started before this participant
+     * @param synchronous whether the participant must be started before the activation of bndtools completes
+     * @param factory creates the participant, which is either a {@link Runnable} or an {@link IStartupParticipant}
+     */
+    void add(String id, Collection<String> requires, boolean synchronous, Callable< ? > factory) {
+        if (participants.containsKey(id)) {
+            logger.logWarning("Duplicate startup participant " + id + " is ignored", null);
+            return;
+        }
+        participants.put(id, new Participant(id, requires, synchronous, factory));
+    }
+
+    void start() {
+        for (Participant participant : participants.values()) {
+            for (String required : participant.requires) {
+                Participant requirement = participants.get(required);
+                if (requirement == null) {
+                    logger.logWarning("Startup participant " + participant.id + " requires unknown participant " + required, null);
+                } else if (participant.synchronous && !requirement.synchronous) {
+                    logger.logWarning("Synchronous startup participant " + participant.id + " requires background participant " + required + ", the requirement is ignored", null);
+                } else if (!requirement.synchronous) {
+                    participant.waitingFor++;
+                    requirement.dependents.add(participant);
+                }
+            }
+        }
+        breakCycles();
+
+        for (Participant participant : participants.values()) {
+            if (participant.synchronous)
+                run(participant);
+        }
+        synchronized (lock) {
+            for (Participant participant : participants.values()) {
+                if (!participant.synchronous && participant.waitingFor == 0)
+                    submit(participant);
+            }
+        }
+    }
+
+    /**
+     * Stops the participants in the reverse order of their start, after waiting for the participants that are still
+     * starting. Participants that have not started yet are not started anymore.
+     */
+    void stop() {
+        List<Future< ? >> waitFor;
+        synchronized (lock) {
+            stopped = true;
+            waitFor = new ArrayList<Future< ? >>(pending);
+        }
+        long deadline = System.currentTimeMillis() + STOP_TIMEOUT;
+        for (Future< ? > future : waitFor) {
+            try {
+                future.get(Math.max(0L, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            } catch (ExecutionException | TimeoutException e) {
+                // logged by the participant task, or it is left running
+            }
+        }
+
+        List<IStartupParticipant> toStop;
+        synchronized (lock) {
+            toStop = new ArrayList<IStartupParticipant>(started);
+            started.clear();
+        }
+        Collections.reverse(toStop);
+        for (IStartupParticipant isp : toStop) {
+            try {
+                isp.stop();
+            } catch (Exception e) {
+                logger.logError("Error stopping startup participant", e);
+            }
+        }
+    }
+
+    /**
+     * @return the time in milliseconds each participant took to start, in the order in which they started
+     */
+    Map<String,Long> getStartTimes() {
+        synchronized (lock) {
+            return new LinkedHashMap<String,Long>(startTimes);
+        }
+    }
+
+    // Must hold lock
+    private void submit(final Participant participant) {
+        if (stopped)
+            return;
+        pending.add(executionService.submit(Pool.IO, Priority.HIGH, "Startup participant " + participant.id, new Runnable() {
+            @Override
+            public void run() {
+                synchronized (lock) {
+                    if (stopped)
+                        return;
+                }
+                StartupParticipants.this.run(participant);
+            }
+        }));
+    }
+
+    private void run(Participant participant) {
+        long start = System.nanoTime();
+        try {
+            Object obj = participant.factory.call();
+            if (obj instanceof Runnable) {
+                ((Runnable) obj).run();
+            } else if (obj instanceof IStartupParticipant) {
+                IStartupParticipant isp = (IStartupParticipant) obj;
+                isp.start();
+                synchronized (lock) {
+                    started.add(isp);
+                }
+            }
+        } catch (Exception e) {
+            logger.logError("Error executing startup participant " + participant.id, e);
+        } finally {
+            long time = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+            if (time >= SLOW_START)
+                logger.logWarning("Startup participant " + participant.id + " took " + time + "ms to start", null);
+            synchronized (lock) {
+                startTimes.put(participant.id, time);
+                // A participant that failed to start does not hold up the participants requiring it
+                for (Participant dependent : participant.dependents) {
+                    if (--dependent.waitingFor == 0)
+                        submit(dependent);
+                }
+            }
+        }
+    }
+
+    /*
+     * Participants in a requirement cycle would never start, so their requirements on each other are dropped
+     */
+    private void breakCycles() {
+        Map<Participant,Integer> waiting = new LinkedHashMap<Participant,Integer>();
+        List<Participant> ready = new ArrayList<Participant>();
+        for (Participant participant : participants.values()) {
+            waiting.put(participant, participant.waitingFor);
+            if (participant.waitingFor == 0)
+                ready.add(participant);
+        }
+        while (!ready.isEmpty()) {
+            Participant participant = ready.remove(ready.size() - 1);
+            waiting.remove(participant);
+            for (Participant dependent : participant.dependents) {
+                int count = waiting.get(dependent) - 1;
+                waiting.put(dependent, count);
+                if (count == 0)
+                    ready.add(dependent);
+            }
+        }
+        for (Participant participant : waiting.keySet()) {
+            logger.logWarning("Startup participant " + participant.id + " is part of a requirement cycle, its requirements are ignored", null);
+            participant.waitingFor = 0;
+            participant.dependents.removeAll(waiting.keySet());
+        }
+    }
+
+    private static final class Participant {
+        final String id;
+        final Collection<String> requires;
+        final boolean synchronous;
+        final Callable< ? > factory;
+        final List<Participant> dependents = new ArrayList<Participant>();
+        // Guarded by the lock of the enclosing instance once started
+        int waitingFor;
+
+        Participant(String id, Collection<String> requires, boolean synchronous, Callable< ? > factory) {
+            this.id = id;
+            this.requires = requires;
+            this.synchronous = synchronous;
+            this.factory = factory;
+        }
+    }
+}
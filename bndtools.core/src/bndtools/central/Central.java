@@ -14,6 +14,7 @@ import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.locks.ReentrantLock;
 
 import org.bndtools.api.BndtoolsConstants;
+import org.bndtools.api.BuildTrace;
 import org.bndtools.api.ILogger;
 import org.bndtools.api.IStartupParticipant;
 import org.bndtools.api.Logger;
@@ -580,18 +581,23 @@ public class Central implements IStartupParticipant {
         boolean interrupted = Thread.interrupted();
         try {
             boolean locked = false;
-            for (int i = 0; !locked && (i < 60) && !monitor.isCanceled(); i++) {
-                try {
-                    locked = bndLock.tryLock(1, TimeUnit.SECONDS);
-                } catch (InterruptedException e) {
-                    interrupted = true;
-                    throw e;
+            try (BuildTrace.Span span = BuildTrace.span(BuildTrace.WORKSPACE, "bndCall lock wait")) {
+                if (BuildTrace.isEnabled())
+                    BuildTrace.counter(BuildTrace.WORKSPACE, "bndCall waiting threads", bndLock.getQueueLength());
+                for (int i = 0; !locked && (i < 60) && !monitor.isCanceled(); i++) {
+                    try {
+                        locked = bndLock.tryLock(1, TimeUnit.SECONDS);
+                    } catch (InterruptedException e) {
+                        interrupted = true;
+                        throw e;
+                    }
                 }
+                span.arg("locked", locked);
             }
             if (!locked) {
                 throw new TimeoutException("Unable to acquire bndLock");
             }
-            try {
+            try (BuildTrace.Span span = BuildTrace.span(BuildTrace.WORKSPACE, "bndCall")) {
                 return callable.call();
             } finally {
                 bndLock.unlock();
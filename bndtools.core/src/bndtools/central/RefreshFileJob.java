@@ -24,6 +24,12 @@ public class RefreshFileJob extends WorkspaceJob {
         this.files = Collections.singletonList(file);
     }
 
+    public RefreshFileJob(List<File> filesToRefresh, boolean derived) {
+        super("Refreshing " + filesToRefresh.size() + " files");
+        this.derived = derived;
+        this.files = filesToRefresh;
+    }
+
     public RefreshFileJob(List<File> filesToRefresh, boolean derived, IProject project) {
         super("Refreshing " + project.getName());
         this.derived = derived;
@@ -8,11 +8,13 @@ import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 
+import org.bndtools.api.IExecutionService;
+import org.bndtools.api.IExecutionService.Pool;
+import org.bndtools.api.IExecutionService.Priority;
 import org.bndtools.utils.swt.SWTConcurrencyUtil;
-import org.eclipse.core.resources.WorkspaceJob;
-import org.eclipse.core.runtime.CoreException;
 import org.eclipse.core.runtime.IProgressMonitor;
 import org.eclipse.core.runtime.IStatus;
 import org.eclipse.core.runtime.NullProgressMonitor;
@@ -69,60 +71,66 @@ public class RepositoriesViewRefresher implements RepositoryListenerPlugin {
         // Since this can delay, we move this to the background
         //
 
-        new WorkspaceJob("Updating repositories content") {
-
+        final IExecutionService executionService = Plugin.getDefault().getExecutionService();
+        executionService.getScheduler().schedule(new Runnable() {
             @Override
-            public IStatus runInWorkspace(IProgressMonitor monitor) throws CoreException {
-                try {
-                    if (monitor == null)
-                        monitor = new NullProgressMonitor();
-
-                    Set<RepositoryPlugin> repos = new HashSet<>();
-                    if (target != null)
-                        repos.add(target);
-                    else {
-                        for (RefreshModel m : viewers.values()) {
-                            repos.addAll(m.getRepositories());
-                        }
+            public void run() {
+                executionService.submit(Pool.IO, Priority.NORMAL, "Update repositories content", new Runnable() {
+                    @Override
+                    public void run() {
+                        updateRepositories(target);
                     }
+                });
+            }
+        }, 1000, TimeUnit.MILLISECONDS);
+    }
 
-                    ensureLoaded(monitor, repos);
+    private void updateRepositories(RepositoryPlugin target) {
+        try {
+            IProgressMonitor monitor = new NullProgressMonitor();
+
+            Set<RepositoryPlugin> repos = new HashSet<>();
+            if (target != null)
+                repos.add(target);
+            else {
+                for (RefreshModel m : viewers.values()) {
+                    repos.addAll(m.getRepositories());
+                }
+            }
 
-                    //
-                    // And now back to the UI thread
-                    //
+            ensureLoaded(monitor, repos);
 
-                    getDisplay().asyncExec(new Runnable() {
-                        @Override
-                        public void run() {
-
-                            synchronized (RepositoriesViewRefresher.this) {
-                                redo = false;
-                            }
-
-                            for (Map.Entry<TreeViewer,RefreshModel> entry : viewers.entrySet()) {
-
-                                TreePath[] expandedTreePaths = entry.getKey().getExpandedTreePaths();
-
-                                entry.getKey().setInput(entry.getValue().getRepositories());
-                                if (expandedTreePaths != null && expandedTreePaths.length > 0)
-                                    entry.getKey().setExpandedTreePaths(expandedTreePaths);
-                            }
-                            synchronized (RepositoriesViewRefresher.this) {
-                                busy = false;
-                                if (redo) {
-                                    refreshRepositories(null);
-                                }
-                            }
+            //
+            // And now back to the UI thread
+            //
+
+            getDisplay().asyncExec(new Runnable() {
+                @Override
+                public void run() {
+
+                    synchronized (RepositoriesViewRefresher.this) {
+                        redo = false;
+                    }
+
+                    for (Map.Entry<TreeViewer,RefreshModel> entry : viewers.entrySet()) {
+
+                        TreePath[] expandedTreePaths = entry.getKey().getExpandedTreePaths();
+
+                        entry.getKey().setInput(entry.getValue().getRepositories());
+                        if (expandedTreePaths != null && expandedTreePaths.length > 0)
+                            entry.getKey().setExpandedTreePaths(expandedTreePaths);
+                    }
+                    synchronized (RepositoriesViewRefresher.this) {
+                        busy = false;
+                        if (redo) {
+                            refreshRepositories(null);
                         }
-                    });
-                } catch (Exception e) {
-                    e.printStackTrace();
+                    }
                 }
-                return Status.OK_STATUS;
-            }
-
-        }.schedule(1000);
+            });
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
     }
 
     private IStatus ensureLoaded(IProgressMonitor monitor, Collection<RepositoryPlugin> repos) {
@@ -206,12 +214,12 @@ public class RepositoriesViewRefresher implements RepositoryListenerPlugin {
             }
             busy = true;
         }
-        new WorkspaceJob("Setting repositories") {
+        Plugin.getDefault().getExecutionService().submit(Pool.IO, Priority.NORMAL, "Set repositories", new Runnable() {
 
             @Override
-            public IStatus runInWorkspace(IProgressMonitor monitor) throws CoreException {
+            public void run() {
 
-                ensureLoaded(monitor, refresh.getRepositories());
+                ensureLoaded(new NullProgressMonitor(), refresh.getRepositories());
 
                 SWTConcurrencyUtil.execForControl(viewer.getControl(), true, new Runnable() {
 
@@ -227,8 +235,7 @@ public class RepositoriesViewRefresher implements RepositoryListenerPlugin {
                     }
 
                 });
-                return Status.OK_STATUS;
             }
-        }.schedule();
+        });
     }
 }
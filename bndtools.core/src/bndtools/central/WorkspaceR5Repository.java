@@ -44,6 +44,8 @@ public class WorkspaceR5Repository extends BaseRepository {
     private final ILogger logger = Logger.getLogger(WorkspaceR5Repository.class);
     private final LogService logAdapter = new LogServiceAdapter(logger);
 
+    private volatile long generation = 0L;
+
     /**
      * Can only be instantiated within the package.
      */
@@ -113,11 +115,19 @@ public class WorkspaceR5Repository extends BaseRepository {
             } catch (Exception e) {
                 logger.logError(MessageFormat.format("Failed to process index file for bundles in project {0}.", project.getName()), e);
             } finally {
+                generation++;
                 IO.close(index);
             }
         }
     }
 
+    /**
+     * Return a number that changes whenever the index of a project is loaded, for example after the project is built.
+     */
+    public long getGeneration() {
+        return generation;
+    }
+
     private void cleanProject(IProject project) {
         CapabilityIndex index = projectMap.get(project);
         if (index != null)
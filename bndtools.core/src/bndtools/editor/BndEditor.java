@@ -77,6 +77,7 @@ import bndtools.Plugin;
 import bndtools.central.Central;
 import bndtools.editor.common.IPriority;
 import bndtools.editor.model.IDocumentWrapper;
+import bndtools.editor.model.IncrementalBndEditModel;
 import bndtools.editor.pages.BundleContentPage;
 import bndtools.editor.pages.BundleDescriptionPage;
 import bndtools.editor.pages.ProjectBuildPage;
@@ -103,7 +104,7 @@ public class BndEditor extends ExtendedFormEditor implements IResourceChangeList
     public static final String BNDRUN_PAGE = "__bndrun_page";
     public static final String TEST_SUITES_PAGE = "__test_suites_page";
 
-    private final BndEditModel model = new BndEditModel();
+    private final BndEditModel model = new IncrementalBndEditModel();
 
     private final Map<String,IFormPageFactory> pageFactories = new LinkedHashMap<String,IFormPageFactory>();
 
@@ -13,10 +13,12 @@ package bndtools.editor;
 import java.beans.PropertyChangeEvent;
 import java.beans.PropertyChangeListener;
 import java.io.IOException;
+import java.util.Set;
 
 import org.bndtools.api.ILogger;
 import org.bndtools.api.Logger;
 import org.eclipse.core.resources.IMarker;
+import org.eclipse.core.runtime.CoreException;
 import org.eclipse.jdt.ui.JavaUI;
 import org.eclipse.jface.resource.ImageDescriptor;
 import org.eclipse.swt.graphics.Image;
@@ -35,7 +37,9 @@ import aQute.bnd.build.model.BndEditModel;
 import aQute.bnd.properties.IDocument;
 import bndtools.Plugin;
 import bndtools.editor.completion.BndSourceViewerConfiguration;
+import bndtools.editor.model.DocumentPropertyIndex;
 import bndtools.editor.model.IDocumentWrapper;
+import bndtools.editor.model.IncrementalBndEditModel;
 
 public class BndSourceEditorPage extends TextEditor implements IFormPage {
     private static final ILogger logger = Logger.getLogger(BndSourceEditorPage.class);
@@ -47,6 +51,7 @@ public class BndSourceEditorPage extends TextEditor implements IFormPage {
 
     private String lastLoaded;
     private BndEditModel editModel;
+    private DocumentPropertyIndex propertyIndex;
 
     private int index;
 
@@ -54,7 +59,10 @@ public class BndSourceEditorPage extends TextEditor implements IFormPage {
         @Override
         public void propertyChange(PropertyChangeEvent evt) {
             refresh();
-            lastLoaded = getDocument().get();
+            if (propertyIndex != null)
+                propertyIndex.markSynchronized();
+            else
+                lastLoaded = getDocument().get();
         }
     };
 
@@ -70,6 +78,8 @@ public class BndSourceEditorPage extends TextEditor implements IFormPage {
     @Override
     public void dispose() {
         editModel.removePropertyChangeListener(propChangeListener);
+        if (propertyIndex != null)
+            propertyIndex.dispose();
         super.dispose();
         icon.dispose();
     }
@@ -122,6 +132,7 @@ public class BndSourceEditorPage extends TextEditor implements IFormPage {
         BndEditor bndEditor = (BndEditor) formEditor;
         editModel = bndEditor.getEditModel();
         editModel.addPropertyChangeListener(propChangeListener);
+        connectPropertyIndex();
     }
 
     @Override
@@ -158,7 +169,39 @@ public class BndSourceEditorPage extends TextEditor implements IFormPage {
         }
     }
 
+    @Override
+    protected void doSetInput(IEditorInput input) throws CoreException {
+        super.doSetInput(input);
+        connectPropertyIndex();
+    }
+
+    private void connectPropertyIndex() {
+        if (propertyIndex != null) {
+            propertyIndex.dispose();
+            propertyIndex = null;
+        }
+        IEditorInput input = getEditorInput();
+        if (input != null && editModel instanceof IncrementalBndEditModel) {
+            org.eclipse.jface.text.IDocument document = getDocumentProvider().getDocument(input);
+            if (document != null)
+                propertyIndex = new DocumentPropertyIndex(document);
+        }
+    }
+
     void commit(@SuppressWarnings("unused") boolean onSave) {
+        if (propertyIndex != null) {
+            // Reload the model, but only notify the parts showing the properties that were edited
+            Set<String> changed = propertyIndex.getChangedKeys();
+            if (!changed.isEmpty()) {
+                try {
+                    ((IncrementalBndEditModel) editModel).loadFrom(getDocument(), changed);
+                } catch (IOException e) {
+                    logger.logError("Error loading model from document.", e);
+                }
+            }
+            propertyIndex.markSynchronized();
+            return;
+        }
         try {
             // Only commit changes to the model if the document text has
             // actually changed since we switched to the page; this prevents us
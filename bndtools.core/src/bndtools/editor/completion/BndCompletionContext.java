@@ -0,0 +1,118 @@
+package bndtools.editor.completion;
+
+import org.eclipse.jface.text.BadLocationException;
+import org.eclipse.jface.text.IDocument;
+import org.eclipse.jface.text.IRegion;
+
+/**
+ * Where the caret is in a bnd file, as far as completion is concerned. Only the logical line containing the caret is
+ * read: the physical line plus any preceding lines joined to it with a trailing backslash.
+ */
+class BndCompletionContext {
+
+    enum Kind {
+        /** The caret is in the key of a header. */
+        HEADER,
+        /** The caret is at the start of a clause in the value of a header. */
+        VALUE,
+        /** The caret is in the name of a macro reference. */
+        MACRO
+    }
+
+    final Kind kind;
+    final String header;
+    final String prefix;
+
+    private BndCompletionContext(Kind kind, String header, String prefix) {
+        this.kind = kind;
+        this.header = header;
+        this.prefix = prefix;
+    }
+
+    /**
+     * Work out the completion context at the offset, or return {@code null} if there is nothing to complete there, for
+     * example in a comment or in the attributes of a clause.
+     */
+    static BndCompletionContext compute(IDocument document, int offset) throws BadLocationException {
+        int line = document.getLineOfOffset(offset);
+        int start = document.getLineOffset(line);
+        while (line > 0 && isContinued(document, document.getLineInformation(line - 1))) {
+            line--;
+            start = document.getLineOffset(line);
+        }
+        return compute(document.get(start, offset - start));
+    }
+
+    static BndCompletionContext compute(String text) {
+        int keyStart = 0;
+        while (keyStart < text.length() && Character.isWhitespace(text.charAt(keyStart)))
+            keyStart++;
+        if (keyStart < text.length() && (text.charAt(keyStart) == '#' || text.charAt(keyStart) == '!'))
+            return null;
+
+        int macro = text.lastIndexOf("${");
+        if (macro >= 0 && text.indexOf('}', macro) < 0)
+            return new BndCompletionContext(Kind.MACRO, null, text.substring(macro + 2));
+
+        int keyEnd = keyEnd(text, keyStart);
+        if (keyEnd >= text.length())
+            return new BndCompletionContext(Kind.HEADER, null, text.substring(keyStart));
+
+        String header = text.substring(keyStart, keyEnd);
+        int clauseStart = text.lastIndexOf(',') + 1;
+        if (clauseStart <= keyEnd) {
+            // first clause: skip the separator
+            clauseStart = keyEnd;
+            while (clauseStart < text.length() && Character.isWhitespace(text.charAt(clauseStart)))
+                clauseStart++;
+            if (clauseStart < text.length() && (text.charAt(clauseStart) == ':' || text.charAt(clauseStart) == '='))
+                clauseStart++;
+        }
+        String clause = text.substring(clauseStart);
+        if (clause.indexOf(';') >= 0)
+            return null;
+
+        int prefixStart = 0;
+        while (prefixStart < clause.length() && (Character.isWhitespace(clause.charAt(prefixStart)) || clause.charAt(prefixStart) == '\\'))
+            prefixStart++;
+        return new BndCompletionContext(Kind.VALUE, header, clause.substring(prefixStart));
+    }
+
+    /**
+     * Return the key defined by a line that starts a property, or {@code null} if the line is blank, a comment, or has
+     * no value separator.
+     */
+    static String key(String line) {
+        int keyStart = 0;
+        while (keyStart < line.length() && Character.isWhitespace(line.charAt(keyStart)))
+            keyStart++;
+        if (keyStart >= line.length() || line.charAt(keyStart) == '#' || line.charAt(keyStart) == '!')
+            return null;
+        int keyEnd = keyEnd(line, keyStart);
+        return keyEnd < line.length() && keyEnd > keyStart ? line.substring(keyStart, keyEnd) : null;
+    }
+
+    private static int keyEnd(String text, int keyStart) {
+        int keyEnd = keyStart;
+        while (keyEnd < text.length()) {
+            char c = text.charAt(keyEnd);
+            if (c == '\\')
+                keyEnd++; // skip the escaped character
+            else if (c == ':' || c == '=' || Character.isWhitespace(c))
+                break;
+            keyEnd++;
+        }
+        return keyEnd;
+    }
+
+    /**
+     * Return whether the physical line is joined to the next one: it ends with an odd number of backslashes, so that the
+     * last one is not escaped.
+     */
+    static boolean isContinued(IDocument document, IRegion region) throws BadLocationException {
+        int backslashes = 0;
+        for (int i = region.getOffset() + region.getLength() - 1; i >= region.getOffset() && document.getChar(i) == '\\'; i--)
+            backslashes++;
+        return (backslashes & 1) == 1;
+    }
+}
@@ -0,0 +1,261 @@
+package bndtools.editor.completion;
+
+import java.io.File;
+import java.lang.reflect.Method;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.jar.Manifest;
+
+import org.bndtools.api.IExecutionService;
+import org.bndtools.api.IExecutionService.Pool;
+import org.bndtools.api.IExecutionService.Priority;
+import org.bndtools.api.ILogger;
+import org.bndtools.api.Logger;
+import org.osgi.framework.BundleContext;
+import org.osgi.framework.ServiceRegistration;
+import org.osgi.framework.namespace.PackageNamespace;
+import org.osgi.resource.Capability;
+import org.osgi.resource.Namespace;
+import org.osgi.resource.Requirement;
+import org.osgi.service.repository.Repository;
+
+import aQute.bnd.header.Parameters;
+import aQute.bnd.help.Syntax;
+import aQute.bnd.osgi.Constants;
+import aQute.bnd.osgi.Jar;
+import aQute.bnd.osgi.Macro;
+import aQute.bnd.osgi.resource.CapReqBuilder;
+import aQute.bnd.service.RepositoryListenerPlugin;
+import aQute.bnd.service.RepositoryPlugin;
+import bndtools.Plugin;
+import bndtools.central.Central;
+
+/**
+ * The names offered by bnd file completion: instructions, built-in macros, and the bundle symbolic names and exported
+ * packages of the workspace repositories.
+ * <p>
+ * The repository names are indexed in the background, one repository at a time, and re-indexed when the repository
+ * reports a change, so lookups never block on a repository.
+ */
+public class BndCompletionIndex implements RepositoryListenerPlugin {
+
+    private static final ILogger logger = Logger.getLogger(BndCompletionIndex.class);
+
+    private static final String TASK_NAME = "bnd completion index";
+
+    private static BndCompletionIndex instance = null;
+    private static ServiceRegistration<RepositoryListenerPlugin> registration = null;
+
+    private final PrefixTrie<Syntax> headers = new PrefixTrie<Syntax>();
+    private final PrefixTrie<String> macros = new PrefixTrie<String>();
+
+    // Names contributed by each repository, keyed by repository name
+    private final Map<String,Set<String>> repoBsns = new HashMap<String,Set<String>>();
+    private final Map<String,Set<String>> repoPackages = new HashMap<String,Set<String>>();
+
+    private volatile PrefixTrie<String> bsns = new PrefixTrie<String>();
+    private volatile PrefixTrie<String> packages = new PrefixTrie<String>();
+
+    /**
+     * Get the shared index. The first call registers it for repository change notifications and starts indexing the
+     * workspace repositories.
+     */
+    public static synchronized BndCompletionIndex getInstance() {
+        if (instance == null) {
+            instance = new BndCompletionIndex();
+            Plugin plugin = Plugin.getDefault();
+            if (plugin != null) {
+                BundleContext context = plugin.getBundleContext();
+                if (context != null)
+                    registration = context.registerService(RepositoryListenerPlugin.class, instance, null);
+                instance.scheduleRefreshAll();
+            }
+        }
+        return instance;
+    }
+
+    /**
+     * Unregister the shared index from repository change notifications and drop it. Called when the plugin stops.
+     */
+    public static synchronized void dispose() {
+        if (registration != null) {
+            try {
+                registration.unregister();
+            } catch (IllegalStateException e) {
+                // already unregistered when the bundle stopped
+            }
+            registration = null;
+        }
+        instance = null;
+    }
+
+    BndCompletionIndex() {
+        for (Syntax syntax : Syntax.HELP.values())
+            headers.put(syntax.getHeader(), syntax);
+        for (Method method : Macro.class.getMethods()) {
+            String name = method.getName();
+            if (name.length() > 1 && name.charAt(0) == '_' && Character.isLetter(name.charAt(1)))
+                macros.put(name.substring(1), name.substring(1));
+        }
+    }
+
+    List<Syntax> findHeaders(String prefix, int limit) {
+        return headers.search(prefix, limit);
+    }
+
+    List<String> findMacros(String prefix, int limit) {
+        return macros.search(prefix, limit);
+    }
+
+    List<String> findBsns(String prefix, int limit) {
+        return bsns.search(prefix, limit);
+    }
+
+    List<String> findPackages(String prefix, int limit) {
+        return packages.search(prefix, limit);
+    }
+
+    @Override
+    public void bundleAdded(RepositoryPlugin repository, Jar jar, File file) {
+        try {
+            String bsn = jar.getBsn();
+            Set<String> exports = exports(jar.getManifest());
+            synchronized (this) {
+                if (bsn != null) {
+                    contribution(repoBsns, repository.getName()).add(bsn);
+                    bsns.put(bsn, bsn);
+                }
+                contribution(repoPackages, repository.getName()).addAll(exports);
+                for (String pkg : exports)
+                    packages.put(pkg, pkg);
+            }
+        } catch (Exception e) {
+            scheduleRefresh(repository);
+        }
+    }
+
+    @Override
+    public void bundleRemoved(RepositoryPlugin repository, Jar jar, File file) {
+        scheduleRefresh(repository);
+    }
+
+    @Override
+    public void repositoryRefreshed(RepositoryPlugin repository) {
+        scheduleRefresh(repository);
+    }
+
+    @Override
+    public void repositoriesRefreshed() {
+        scheduleRefreshAll();
+    }
+
+    void refresh(RepositoryPlugin repository) {
+        Set<String> newBsns = new TreeSet<String>();
+        Set<String> newPackages = new TreeSet<String>();
+        try {
+            List<String> list = repository.list(null);
+            if (list != null)
+                newBsns.addAll(list);
+            if (repository instanceof Repository)
+                newPackages.addAll(packages((Repository) repository));
+        } catch (Exception e) {
+            logger.logWarning("Unable to index repository " + repository.getName() + " for completion", e);
+            return;
+        }
+
+        synchronized (this) {
+            repoBsns.put(repository.getName(), newBsns);
+            repoPackages.put(repository.getName(), newPackages);
+            bsns = merge(repoBsns);
+            packages = merge(repoPackages);
+        }
+    }
+
+    void refreshAll() {
+        List<RepositoryPlugin> repositories;
+        try {
+            repositories = Central.getWorkspace().getRepositories();
+        } catch (Exception e) {
+            logger.logWarning("Unable to index the workspace repositories for completion", e);
+            return;
+        }
+
+        synchronized (this) {
+            Set<String> names = new TreeSet<String>();
+            for (RepositoryPlugin repository : repositories)
+                names.add(repository.getName());
+            repoBsns.keySet().retainAll(names);
+            repoPackages.keySet().retainAll(names);
+        }
+        for (RepositoryPlugin repository : repositories)
+            refresh(repository);
+    }
+
+    private void scheduleRefresh(final RepositoryPlugin repository) {
+        submit(new Runnable() {
+            @Override
+            public void run() {
+                refresh(repository);
+            }
+        });
+    }
+
+    private void scheduleRefreshAll() {
+        submit(new Runnable() {
+            @Override
+            public void run() {
+                refreshAll();
+            }
+        });
+    }
+
+    private static void submit(Runnable task) {
+        Plugin plugin = Plugin.getDefault();
+        IExecutionService executionService = plugin != null ? plugin.getExecutionService() : null;
+        if (executionService != null)
+            executionService.submit(Pool.IO, Priority.LOW, TASK_NAME, task);
+    }
+
+    private static Set<String> contribution(Map<String,Set<String>> contributions, String repository) {
+        Set<String> names = contributions.get(repository);
+        if (names == null) {
+            names = new TreeSet<String>();
+            contributions.put(repository, names);
+        }
+        return names;
+    }
+
+    private static PrefixTrie<String> merge(Map<String,Set<String>> contributions) {
+        PrefixTrie<String> trie = new PrefixTrie<String>();
+        for (Set<String> names : contributions.values())
+            for (String name : names)
+                trie.put(name, name);
+        return trie;
+    }
+
+    private static Set<String> packages(Repository repository) {
+        Requirement requirement = new CapReqBuilder(PackageNamespace.PACKAGE_NAMESPACE).addDirective(Namespace.REQUIREMENT_FILTER_DIRECTIVE, "(" + PackageNamespace.PACKAGE_NAMESPACE + "=*)").buildSyntheticRequirement();
+        Map<Requirement,Collection<Capability>> providers = repository.findProviders(Collections.singleton(requirement));
+        Set<String> result = new TreeSet<String>();
+        Collection<Capability> capabilities = providers.get(requirement);
+        if (capabilities != null) {
+            for (Capability capability : capabilities) {
+                Object pkg = capability.getAttributes().get(PackageNamespace.PACKAGE_NAMESPACE);
+                if (pkg instanceof String)
+                    result.add((String) pkg);
+            }
+        }
+        return result;
+    }
+
+    private static Set<String> exports(Manifest manifest) {
+        if (manifest == null)
+            return Collections.emptySet();
+        return new Parameters(manifest.getMainAttributes().getValue(Constants.EXPORT_PACKAGE)).keySet();
+    }
+}
@@ -1,59 +1,117 @@
 package bndtools.editor.completion;
 
 import java.util.ArrayList;
-import java.util.Collections;
-import java.util.Comparator;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
 
 import org.eclipse.jface.text.*;
 import org.eclipse.jface.text.contentassist.*;
 
 import aQute.bnd.help.Syntax;
+import aQute.bnd.osgi.Constants;
 
 public class BndCompletionProcessor implements IContentAssistProcessor {
 
-    private static final Pattern PREFIX_PATTERN = Pattern.compile("^(?:.*\\s)*(.*)$");
+    static final int MAX_PROPOSALS = 200;
+
+    private static final Set<String> BSN_HEADERS = new TreeSet<String>(Arrays.asList(Constants.BUILDPATH, Constants.TESTPATH, Constants.RUNBUNDLES, Constants.RUNPATH, Constants.RUNFW));
+    private static final Set<String> PACKAGE_HEADERS = new TreeSet<String>(Arrays.asList(Constants.EXPORT_PACKAGE, Constants.PRIVATE_PACKAGE, Constants.PRIVATEPACKAGE, Constants.IMPORT_PACKAGE, Constants.DYNAMICIMPORT_PACKAGE,
+            Constants.EXPORT_CONTENTS, Constants.CONDITIONAL_PACKAGE));
+
+    private final BndCompletionIndex index;
+
+    // The keys defined in the last document completed in, for macro completion
+    private DocumentKeys keys = null;
+
+    public BndCompletionProcessor() {
+        this(BndCompletionIndex.getInstance());
+    }
+
+    BndCompletionProcessor(BndCompletionIndex index) {
+        this.index = index;
+    }
 
     @Override
     public ICompletionProposal[] computeCompletionProposals(ITextViewer viewer, int offset) {
+        IDocument document = viewer.getDocument();
+        BndCompletionContext context;
         try {
-            String pre = viewer.getDocument().get(0, offset);
-            Matcher matcher = PREFIX_PATTERN.matcher(pre);
-            if (matcher.matches()) {
-                String prefix = matcher.group(1);
-                ICompletionProposal[] found = proposals(prefix, offset);
-                if (found.length == 1) {
-                    found[0].apply(viewer.getDocument());
-                    viewer.setSelectedRange(offset + (found[0].getDisplayString().length() - prefix.length() + 2), 0);
-                    return new ICompletionProposal[0];
-                }
-                return found;
-            }
-            return proposals(null, offset);
+            context = BndCompletionContext.compute(document, offset);
         } catch (BadLocationException e) {
-            return proposals(null, offset);
+            return new ICompletionProposal[0];
         }
+        ICompletionProposal[] found = computeProposals(document, context, offset);
+        if (found.length == 1 && context.kind == BndCompletionContext.Kind.HEADER) {
+            found[0].apply(document);
+            viewer.setSelectedRange(offset + (found[0].getDisplayString().length() - context.prefix.length() + 2), 0);
+            return new ICompletionProposal[0];
+        }
+        return found;
     }
 
-    private static ICompletionProposal[] proposals(String prefix, int offset) {
-        ArrayList<ICompletionProposal> results = new ArrayList<ICompletionProposal>(Syntax.HELP.size());
-        for (Syntax s : Syntax.HELP.values()) {
-            if (prefix == null || s.getHeader().startsWith(prefix)) {
+    ICompletionProposal[] computeProposals(IDocument document, int offset) throws BadLocationException {
+        return computeProposals(document, BndCompletionContext.compute(document, offset), offset);
+    }
+
+    private ICompletionProposal[] computeProposals(IDocument document, BndCompletionContext context, int offset) {
+        if (context == null)
+            return new ICompletionProposal[0];
+
+        List<ICompletionProposal> results = new ArrayList<ICompletionProposal>();
+        switch (context.kind) {
+        case HEADER :
+            for (Syntax s : index.findHeaders(context.prefix, MAX_PROPOSALS)) {
                 IContextInformation info = new ContextInformation(s.getHeader(), s.getHeader());
-                String text = prefix == null ? s.getHeader() : s.getHeader().substring(prefix.length());
+                String text = s.getHeader().substring(context.prefix.length());
                 results.add(new CompletionProposal(text + ": ", offset, 0, text.length() + 2, null, s.getHeader(), info, s.getLead())); //$NON-NLS-1$
             }
-        }
-        Collections.sort(results, new Comparator<ICompletionProposal>() {
-            @Override
-            public int compare(ICompletionProposal p1, ICompletionProposal p2) {
-                return p1.getDisplayString().compareTo(p2.getDisplayString());
+            break;
+        case MACRO :
+            Set<String> names = new TreeSet<String>(index.findMacros(context.prefix, MAX_PROPOSALS));
+            names.addAll(getKeys(document).search(context.prefix, MAX_PROPOSALS));
+            for (String name : names) {
+                if (results.size() >= MAX_PROPOSALS)
+                    break;
+                addValueProposal(results, context.prefix, name, offset);
             }
-        });
+            break;
+        case VALUE :
+            List<String> values;
+            if (BSN_HEADERS.contains(context.header))
+                values = index.findBsns(context.prefix, MAX_PROPOSALS);
+            else if (PACKAGE_HEADERS.contains(context.header))
+                values = index.findPackages(context.prefix, MAX_PROPOSALS);
+            else
+                break;
+            for (String value : values)
+                addValueProposal(results, context.prefix, value, offset);
+            break;
+        default :
+            break;
+        }
         return results.toArray(new ICompletionProposal[0]);
     }
 
+    private static void addValueProposal(List<ICompletionProposal> results, String prefix, String value, int offset) {
+        String text = value.substring(prefix.length());
+        results.add(new CompletionProposal(text, offset, 0, text.length(), null, value, null, null));
+    }
+
+    /**
+     * Get the keys defined in the document. The index follows the edits of the document, so it is only built again when
+     * completing in another document.
+     */
+    private synchronized DocumentKeys getKeys(IDocument document) {
+        if (keys == null || keys.getDocument() != document) {
+            if (keys != null)
+                keys.dispose();
+            keys = new DocumentKeys(document);
+        }
+        return keys;
+    }
+
     @Override
     public IContextInformation[] computeContextInformation(ITextViewer viewer, int offset) {
         // TODO Auto-generated method stub
@@ -0,0 +1,152 @@
+package bndtools.editor.completion;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeMap;
+
+import org.eclipse.jface.text.BadLocationException;
+import org.eclipse.jface.text.DocumentEvent;
+import org.eclipse.jface.text.IDocument;
+import org.eclipse.jface.text.IDocumentListener;
+import org.eclipse.jface.text.IRegion;
+
+/**
+ * The keys defined in a bnd document, for macro completion. The index listens to the document and reparses only the
+ * lines touched by each change, plus the line after them, which starts a property or not depending on whether the last
+ * touched line is continued.
+ */
+class DocumentKeys implements IDocumentListener {
+
+    private static final class Line {
+        // The key the line defines if it starts a property
+        final String key;
+        final boolean continued;
+
+        Line(String key, boolean continued) {
+            this.key = key;
+            this.continued = continued;
+        }
+    }
+
+    private final IDocument document;
+    private final List<Line> lines = new ArrayList<Line>();
+    // The number of lines defining each key
+    private final TreeMap<String,Integer> keys = new TreeMap<String,Integer>();
+
+    // The lines affected by the pending change, in the old document
+    private int pendingFirst = -1;
+    private int pendingLast = -1;
+
+    DocumentKeys(IDocument document) {
+        this.document = document;
+        reparseAll();
+        document.addDocumentListener(this);
+    }
+
+    IDocument getDocument() {
+        return document;
+    }
+
+    void dispose() {
+        document.removeDocumentListener(this);
+    }
+
+    /**
+     * Return the keys starting with the prefix, in order.
+     */
+    synchronized List<String> search(String prefix, int limit) {
+        List<String> result = new ArrayList<String>();
+        for (String key : keys.tailMap(prefix, true).keySet()) {
+            if (result.size() >= limit || !key.startsWith(prefix))
+                break;
+            result.add(key);
+        }
+        return result;
+    }
+
+    @Override
+    public synchronized void documentAboutToBeChanged(DocumentEvent event) {
+        try {
+            pendingFirst = document.getLineOfOffset(event.getOffset());
+            pendingLast = document.getLineOfOffset(event.getOffset() + event.getLength());
+            for (int line = pendingFirst; line <= pendingLast + 1 && line < lines.size(); line++)
+                remove(line);
+        } catch (BadLocationException e) {
+            pendingFirst = -1;
+        }
+    }
+
+    @Override
+    public synchronized void documentChanged(DocumentEvent event) {
+        if (pendingFirst < 0 || pendingLast >= lines.size()) {
+            reparseAll();
+            return;
+        }
+        try {
+            String text = event.getText();
+            int last = document.getLineOfOffset(event.getOffset() + (text != null ? text.length() : 0));
+            List<Line> parsed = new ArrayList<Line>(last - pendingFirst + 1);
+            for (int line = pendingFirst; line <= last; line++)
+                parsed.add(parse(line));
+            List<Line> replaced = lines.subList(pendingFirst, pendingLast + 1);
+            replaced.clear();
+            replaced.addAll(parsed);
+            if (lines.size() != document.getNumberOfLines()) {
+                reparseAll();
+                return;
+            }
+            for (int line = pendingFirst; line <= last + 1 && line < lines.size(); line++)
+                add(line);
+        } catch (BadLocationException e) {
+            reparseAll();
+        } finally {
+            pendingFirst = -1;
+        }
+    }
+
+    private void reparseAll() {
+        lines.clear();
+        keys.clear();
+        try {
+            for (int line = 0; line < document.getNumberOfLines(); line++)
+                lines.add(parse(line));
+        } catch (BadLocationException e) {
+            // the document changed under us; use what we have
+        }
+        for (int line = 0; line < lines.size(); line++)
+            add(line);
+    }
+
+    private Line parse(int line) throws BadLocationException {
+        IRegion region = document.getLineInformation(line);
+        return new Line(BndCompletionContext.key(document.get(region.getOffset(), region.getLength())), BndCompletionContext.isContinued(document, region));
+    }
+
+    /*
+     * The key defined by the line, which is only a property if it is not a continuation of the previous line
+     */
+    private String definedKey(int line) {
+        String key = lines.get(line).key;
+        return key != null && (line == 0 || !lines.get(line - 1).continued) ? key : null;
+    }
+
+    private void add(int line) {
+        String key = definedKey(line);
+        if (key != null) {
+            Integer count = keys.get(key);
+            keys.put(key, count != null ? count + 1 : 1);
+        }
+    }
+
+    private void remove(int line) {
+        String key = definedKey(line);
+        if (key != null) {
+            Integer count = keys.get(key);
+            if (count == null || count <= 1)
+                keys.remove(key);
+            else
+                keys.put(key, count - 1);
+        }
+    }
+
+}
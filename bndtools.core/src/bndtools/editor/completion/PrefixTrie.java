@@ -0,0 +1,81 @@
+package bndtools.editor.completion;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * A prefix tree of values keyed by string. Lookups by prefix cost time proportional to the prefix length plus the
+ * number of results, and return the values in key order.
+ */
+class PrefixTrie<V> {
+
+    private static class Node<V> {
+        Map<Character,Node<V>> children = null;
+        V value = null;
+    }
+
+    private final Node<V> root = new Node<V>();
+    private int size = 0;
+
+    synchronized void put(String key, V value) {
+        Node<V> node = root;
+        for (int i = 0; i < key.length(); i++) {
+            if (node.children == null)
+                node.children = new TreeMap<Character,Node<V>>();
+            Character c = key.charAt(i);
+            Node<V> child = node.children.get(c);
+            if (child == null) {
+                child = new Node<V>();
+                node.children.put(c, child);
+            }
+            node = child;
+        }
+        if (node.value == null)
+            size++;
+        node.value = value;
+    }
+
+    synchronized boolean contains(String key) {
+        Node<V> node = find(key);
+        return node != null && node.value != null;
+    }
+
+    /**
+     * Return, in key order, at most {@code limit} values whose keys start with the prefix.
+     */
+    synchronized List<V> search(String prefix, int limit) {
+        List<V> result = new ArrayList<V>();
+        Node<V> node = find(prefix);
+        if (node != null)
+            collect(node, result, limit);
+        return result;
+    }
+
+    synchronized int size() {
+        return size;
+    }
+
+    private Node<V> find(String prefix) {
+        Node<V> node = root;
+        for (int i = 0; i < prefix.length() && node != null; i++) {
+            node = node.children != null ? node.children.get(prefix.charAt(i)) : null;
+        }
+        return node;
+    }
+
+    private static <V> void collect(Node<V> node, List<V> result, int limit) {
+        if (result.size() >= limit)
+            return;
+        if (node.value != null)
+            result.add(node.value);
+        if (node.children != null) {
+            for (Node<V> child : node.children.values()) {
+                if (result.size() >= limit)
+                    return;
+                collect(child, result, limit);
+            }
+        }
+    }
+}
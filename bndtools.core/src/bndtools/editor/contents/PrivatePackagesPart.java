@@ -21,11 +21,8 @@ import java.util.List;
 import java.util.Set;
 
 import org.eclipse.core.resources.IProject;
-import org.eclipse.jdt.core.IJavaElement;
 import org.eclipse.jdt.core.IJavaProject;
 import org.eclipse.jdt.core.JavaCore;
-import org.eclipse.jdt.core.search.IJavaSearchScope;
-import org.eclipse.jdt.core.search.SearchEngine;
 import org.eclipse.jface.dialogs.MessageDialog;
 import org.eclipse.jface.util.LocalSelectionTransfer;
 import org.eclipse.jface.viewers.ArrayContentProvider;
@@ -64,10 +61,11 @@ import org.eclipse.ui.part.ResourceTransfer;
 
 import aQute.bnd.build.model.BndEditModel;
 import aQute.bnd.osgi.Constants;
+import bndtools.Plugin;
 import bndtools.editor.common.PackageDropAdapter;
 import bndtools.editor.common.PrivatePackageTableLabelProvider;
 import bndtools.internal.pkgselection.IPackageFilter;
-import bndtools.internal.pkgselection.JavaSearchScopePackageLister;
+import bndtools.internal.pkgselection.JavaProjectPackageLister;
 import bndtools.internal.pkgselection.PackageSelectionDialog;
 
 public class PrivatePackagesPart extends SectionPart implements PropertyChangeListener {
@@ -203,10 +201,7 @@ public class PrivatePackagesPart extends SectionPart implements PropertyChangeLi
             MessageDialog.openError(getSection().getShell(), "Error", "Cannot add packages: unable to find a Java project associated with the editor input.");
             return;
         }
-        IJavaSearchScope searchScope = SearchEngine.createJavaSearchScope(new IJavaElement[] {
-                javaProject
-        });
-        JavaSearchScopePackageLister packageLister = new JavaSearchScopePackageLister(searchScope, window);
+        JavaProjectPackageLister packageLister = new JavaProjectPackageLister(javaProject, window);
 
         // Create and open the dialog
         PackageSelectionDialog dialog = new PackageSelectionDialog(getSection().getShell(), packageLister, filter, "Select new packages to include in the bundle.");
@@ -273,6 +268,11 @@ public class PrivatePackagesPart extends SectionPart implements PropertyChangeLi
         this.managedForm = form;
         model = (BndEditModel) form.getInput();
         model.addPropertyChangeListener(Constants.PRIVATE_PACKAGE, this);
+
+        // Start indexing now so the package selection dialog does not have to wait
+        IJavaProject javaProject = getJavaProject();
+        if (javaProject != null)
+            Plugin.getDefault().getJavaElementIndex().getPackages(javaProject);
     }
 
     @Override
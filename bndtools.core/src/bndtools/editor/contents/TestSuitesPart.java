@@ -20,8 +20,6 @@ import org.eclipse.jdt.core.IJavaProject;
 import org.eclipse.jdt.core.IType;
 import org.eclipse.jdt.core.JavaCore;
 import org.eclipse.jdt.core.JavaModelException;
-import org.eclipse.jdt.core.search.IJavaSearchScope;
-import org.eclipse.jdt.core.search.SearchEngine;
 import org.eclipse.jdt.ui.JavaUI;
 import org.eclipse.jface.dialogs.MessageDialog;
 import org.eclipse.jface.viewers.ArrayContentProvider;
@@ -71,7 +69,7 @@ import aQute.bnd.build.model.BndEditModel;
 import aQute.bnd.osgi.Constants;
 import bndtools.Plugin;
 import bndtools.internal.testcaseselection.ITestCaseFilter;
-import bndtools.internal.testcaseselection.JavaSearchScopeTestCaseLister;
+import bndtools.internal.testcaseselection.JavaProjectTestCaseLister;
 import bndtools.internal.testcaseselection.TestCaseSelectionDialog;
 
 public class TestSuitesPart extends SectionPart implements PropertyChangeListener {
@@ -243,10 +241,7 @@ public class TestSuitesPart extends SectionPart implements PropertyChangeListene
             return;
         }
 
-        IJavaSearchScope searchScope = SearchEngine.createJavaSearchScope(new IJavaElement[] {
-                javaProject
-        });
-        JavaSearchScopeTestCaseLister testCaseLister = new JavaSearchScopeTestCaseLister(searchScope, window);
+        JavaProjectTestCaseLister testCaseLister = new JavaProjectTestCaseLister(javaProject, window);
 
         // Create and open the dialog
         TestCaseSelectionDialog dialog = new TestCaseSelectionDialog(getSection().getShell(), testCaseLister, filter, Messages.TestSuitesPart_title);
@@ -316,6 +311,11 @@ public class TestSuitesPart extends SectionPart implements PropertyChangeListene
 
         this.model = (BndEditModel) form.getInput();
         this.model.addPropertyChangeListener(Constants.TESTCASES, this);
+
+        // Start indexing now so the test case selection dialog does not have to wait
+        IJavaProject javaProject = getJavaProject();
+        if (javaProject != null)
+            Plugin.getDefault().getJavaElementIndex().getTestCases(javaProject);
     }
 
     @Override
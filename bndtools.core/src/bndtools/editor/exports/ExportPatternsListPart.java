@@ -36,11 +36,8 @@ import org.eclipse.core.runtime.MultiStatus;
 import org.eclipse.core.runtime.Path;
 import org.eclipse.core.runtime.Status;
 import org.eclipse.core.runtime.SubMonitor;
-import org.eclipse.jdt.core.IJavaElement;
 import org.eclipse.jdt.core.IJavaProject;
 import org.eclipse.jdt.core.JavaCore;
-import org.eclipse.jdt.core.search.IJavaSearchScope;
-import org.eclipse.jdt.core.search.SearchEngine;
 import org.eclipse.jface.dialogs.ErrorDialog;
 import org.eclipse.jface.operation.IRunnableWithProgress;
 import org.eclipse.jface.window.Window;
@@ -63,7 +60,7 @@ import bndtools.editor.contents.PackageInfoStyle;
 import bndtools.editor.contents.PackageInfoDialog.FileVersionTuple;
 import bndtools.editor.pkgpatterns.PkgPatternsListPart;
 import bndtools.internal.pkgselection.IPackageFilter;
-import bndtools.internal.pkgselection.JavaSearchScopePackageLister;
+import bndtools.internal.pkgselection.JavaProjectPackageLister;
 import bndtools.internal.pkgselection.PackageSelectionDialog;
 import bndtools.preferences.BndPreferences;
 
@@ -101,10 +98,7 @@ public class ExportPatternsListPart extends PkgPatternsListPart<ExportedPackage>
         IProject project = ResourceUtil.getResource(page.getEditorInput()).getProject();
         IJavaProject javaProject = JavaCore.create(project);
 
-        IJavaSearchScope searchScope = SearchEngine.createJavaSearchScope(new IJavaElement[] {
-                javaProject
-        });
-        JavaSearchScopePackageLister packageLister = new JavaSearchScopePackageLister(searchScope, window);
+        JavaProjectPackageLister packageLister = new JavaProjectPackageLister(javaProject, window);
 
         // Create and open the dialog
         PackageSelectionDialog dialog = new PackageSelectionDialog(window.getShell(), packageLister, filter, "Select new packages to export from the bundle.");
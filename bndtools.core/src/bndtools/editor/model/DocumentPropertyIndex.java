@@ -0,0 +1,264 @@
+package bndtools.editor.model;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.eclipse.jface.text.BadLocationException;
+import org.eclipse.jface.text.DocumentEvent;
+import org.eclipse.jface.text.IDocument;
+import org.eclipse.jface.text.IDocumentListener;
+import org.eclipse.jface.text.IRegion;
+
+/**
+ * Maps the regions of a properties document to the property entries they define, and keeps the map up to date as the
+ * document is edited by reparsing only the logical lines touched by each change.
+ * <p>
+ * The index records which properties have changed since it was last synchronised with the edit model, so that the
+ * model only needs to notify the listeners of those properties.
+ */
+public class DocumentPropertyIndex implements IDocumentListener {
+
+    static class Entry {
+        final String key;
+        int offset;
+        final int length;
+        final String text;
+
+        Entry(String key, int offset, int length, String text) {
+            this.key = key;
+            this.offset = offset;
+            this.length = length;
+            this.text = text;
+        }
+
+        int end() {
+            return offset + length;
+        }
+    }
+
+    private final IDocument document;
+
+    // Entries in document order
+    private final List<Entry> entries = new ArrayList<Entry>();
+
+    // The text of each touched property when the index was last synchronised
+    private final Map<String,String> baseline = new HashMap<String,String>();
+
+    // Start and end of the logical lines affected by the pending change, in the old document
+    private int pendingStart = -1;
+    private int pendingEnd = -1;
+
+    public DocumentPropertyIndex(IDocument document) {
+        this.document = document;
+        try {
+            entries.addAll(parse(0, document.getLength()));
+        } catch (BadLocationException e) {
+            // cannot happen for the whole document
+            throw new IllegalStateException(e);
+        }
+        document.addDocumentListener(this);
+    }
+
+    public void dispose() {
+        document.removeDocumentListener(this);
+    }
+
+    /**
+     * Return the names of the properties whose text differs from when the index was last synchronised.
+     */
+    public synchronized Set<String> getChangedKeys() {
+        Set<String> result = new HashSet<String>();
+        for (Map.Entry<String,String> entry : baseline.entrySet()) {
+            String current = getText(entry.getKey());
+            if (current == null ? entry.getValue() != null : !current.equals(entry.getValue()))
+                result.add(entry.getKey());
+        }
+        return result;
+    }
+
+    /**
+     * Record that the edit model now reflects the document.
+     */
+    public synchronized void markSynchronized() {
+        baseline.clear();
+    }
+
+    /**
+     * Return the text of the logical lines defining the property, or {@code null} if the property is not defined.
+     */
+    public synchronized String getText(String key) {
+        StringBuilder sb = null;
+        for (Entry entry : entries) {
+            if (entry.key.equals(key)) {
+                if (sb == null)
+                    sb = new StringBuilder();
+                else
+                    sb.append('\n');
+                sb.append(entry.text);
+            }
+        }
+        return sb != null ? sb.toString() : null;
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    @Override
+    public synchronized void documentAboutToBeChanged(DocumentEvent event) {
+        try {
+            pendingStart = logicalLineStart(event.getOffset());
+            pendingEnd = logicalLineEnd(event.getOffset() + event.getLength());
+        } catch (BadLocationException e) {
+            pendingStart = -1;
+        }
+    }
+
+    @Override
+    public synchronized void documentChanged(DocumentEvent event) {
+        if (pendingStart < 0) {
+            reparseAll();
+            return;
+        }
+        String text = event.getText();
+        int delta = (text != null ? text.length() : 0) - event.getLength();
+
+        try {
+            int start = pendingStart;
+            int end = logicalLineEnd(Math.max(start, pendingEnd + delta));
+
+            // Remove the entries in the affected region, and shift those after it
+            int first = 0;
+            while (first < entries.size() && entries.get(first).end() < start)
+                first++;
+            int last = first;
+            while (last < entries.size() && entries.get(last).offset <= pendingEnd) {
+                touch(entries.get(last).key);
+                last++;
+            }
+            for (int i = last; i < entries.size(); i++)
+                entries.get(i).offset += delta;
+            // the new region may extend into the following entries, for example by adding a continuation
+            while (last < entries.size() && entries.get(last).offset <= end) {
+                touch(entries.get(last).key);
+                last++;
+            }
+
+            List<Entry> parsed = parse(start, end);
+            for (Entry entry : parsed)
+                touch(entry.key);
+            entries.subList(first, last).clear();
+            entries.addAll(first, parsed);
+        } catch (BadLocationException e) {
+            reparseAll();
+        } finally {
+            pendingStart = -1;
+        }
+    }
+
+    private void reparseAll() {
+        for (Entry entry : entries)
+            touch(entry.key);
+        entries.clear();
+        try {
+            entries.addAll(parse(0, document.getLength()));
+        } catch (BadLocationException e) {
+            throw new IllegalStateException(e);
+        }
+        for (Entry entry : entries) {
+            if (!baseline.containsKey(entry.key))
+                baseline.put(entry.key, null);
+        }
+    }
+
+    /**
+     * Remember the text of a property before its first change since the last synchronisation. This must be called
+     * before the entries are modified.
+     */
+    private void touch(String key) {
+        if (!baseline.containsKey(key))
+            baseline.put(key, getText(key));
+    }
+
+    /**
+     * Parse the logical lines between the offsets, which must be at the start and end of logical lines.
+     */
+    private List<Entry> parse(int start, int end) throws BadLocationException {
+        List<Entry> result = new ArrayList<Entry>();
+        int line = document.getLineOfOffset(start);
+        int lines = document.getNumberOfLines();
+        while (line < lines) {
+            IRegion region = document.getLineInformation(line);
+            if (region.getOffset() > end)
+                break;
+            int entryStart = region.getOffset();
+            int entryLine = line;
+            while (isContinued(region) && line + 1 < lines) {
+                line++;
+                region = document.getLineInformation(line);
+            }
+            int entryEnd = region.getOffset() + region.getLength();
+            String firstLine = document.get(entryStart, document.getLineInformation(entryLine).getLength());
+            String key = key(firstLine);
+            if (key != null)
+                result.add(new Entry(key, entryStart, entryEnd - entryStart, document.get(entryStart, entryEnd - entryStart)));
+            line++;
+        }
+        return result;
+    }
+
+    private int logicalLineStart(int offset) throws BadLocationException {
+        int line = document.getLineOfOffset(offset);
+        while (line > 0 && isContinued(document.getLineInformation(line - 1)))
+            line--;
+        return document.getLineOffset(line);
+    }
+
+    private int logicalLineEnd(int offset) throws BadLocationException {
+        int line = document.getLineOfOffset(Math.min(offset, document.getLength()));
+        int lines = document.getNumberOfLines();
+        IRegion region = document.getLineInformation(line);
+        while (isContinued(region) && line + 1 < lines) {
+            line++;
+            region = document.getLineInformation(line);
+        }
+        return region.getOffset() + region.getLength();
+    }
+
+    private boolean isContinued(IRegion region) throws BadLocationException {
+        int backslashes = 0;
+        for (int i = region.getOffset() + region.getLength() - 1; i >= region.getOffset() && document.getChar(i) == '\\'; i--)
+            backslashes++;
+        return (backslashes & 1) == 1;
+    }
+
+    /**
+     * Return the unescaped key defined by the first line of a logical line, or {@code null} if it is blank or a
+     * comment.
+     */
+    static String key(String line) {
+        int i = 0;
+        while (i < line.length() && Character.isWhitespace(line.charAt(i)))
+            i++;
+        if (i >= line.length() || line.charAt(i) == '#' || line.charAt(i) == '!')
+            return null;
+
+        StringBuilder key = new StringBuilder();
+        for (; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (c == '\\') {
+                if (++i < line.length())
+                    key.append(line.charAt(i));
+            } else if (c == ':' || c == '=' || Character.isWhitespace(c)) {
+                break;
+            } else {
+                key.append(c);
+            }
+        }
+        return key.toString();
+    }
+}
@@ -0,0 +1,102 @@
+package bndtools.editor.model;
+
+import java.beans.PropertyChangeEvent;
+import java.beans.PropertyChangeListener;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+import aQute.bnd.build.model.BndEditModel;
+import aQute.bnd.properties.IDocument;
+
+/**
+ * An edit model that can be reloaded from a document while notifying only the listeners of the properties that
+ * changed. Listeners are wrapped so that, during such a reload, the change events for all other properties are
+ * suppressed.
+ */
+public class IncrementalBndEditModel extends BndEditModel {
+
+    private final Map<PropertyChangeListener,FilteringListener> wrappers = new HashMap<PropertyChangeListener,FilteringListener>();
+
+    // When not null, only change events for these properties are delivered
+    private volatile Set<String> deliverOnly = null;
+
+    public IncrementalBndEditModel() {
+        super();
+    }
+
+    /**
+     * Reload the model from the document, notifying only the listeners of the specified properties. The caller
+     * guarantees that no other property has changed since the model was last loaded or saved.
+     */
+    public void loadFrom(IDocument document, Set<String> changedProperties) throws IOException {
+        deliverOnly = changedProperties;
+        try {
+            loadFrom(document);
+        } finally {
+            deliverOnly = null;
+        }
+    }
+
+    @Override
+    public void addPropertyChangeListener(PropertyChangeListener listener) {
+        super.addPropertyChangeListener(acquire(listener));
+    }
+
+    @Override
+    public void addPropertyChangeListener(String propertyName, PropertyChangeListener listener) {
+        super.addPropertyChangeListener(propertyName, acquire(listener));
+    }
+
+    @Override
+    public void removePropertyChangeListener(PropertyChangeListener listener) {
+        FilteringListener wrapper = release(listener);
+        if (wrapper != null)
+            super.removePropertyChangeListener(wrapper);
+    }
+
+    @Override
+    public void removePropertyChangeListener(String propertyName, PropertyChangeListener listener) {
+        FilteringListener wrapper = release(listener);
+        if (wrapper != null)
+            super.removePropertyChangeListener(propertyName, wrapper);
+    }
+
+    private FilteringListener acquire(PropertyChangeListener listener) {
+        synchronized (wrappers) {
+            FilteringListener wrapper = wrappers.get(listener);
+            if (wrapper == null) {
+                wrapper = new FilteringListener(listener);
+                wrappers.put(listener, wrapper);
+            }
+            wrapper.registrations++;
+            return wrapper;
+        }
+    }
+
+    private FilteringListener release(PropertyChangeListener listener) {
+        synchronized (wrappers) {
+            FilteringListener wrapper = wrappers.get(listener);
+            if (wrapper != null && --wrapper.registrations <= 0)
+                wrappers.remove(listener);
+            return wrapper;
+        }
+    }
+
+    private class FilteringListener implements PropertyChangeListener {
+        private final PropertyChangeListener delegate;
+        int registrations = 0;
+
+        FilteringListener(PropertyChangeListener delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public void propertyChange(PropertyChangeEvent evt) {
+            Set<String> only = deliverOnly;
+            if (only == null || only.contains(evt.getPropertyName()))
+                delegate.propertyChange(evt);
+        }
+    }
+}
@@ -0,0 +1,414 @@
+package bndtools.internal.javaindex;
+
+import java.lang.reflect.InvocationTargetException;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.bndtools.api.IExecutionService;
+import org.bndtools.api.IExecutionService.Pool;
+import org.bndtools.api.IExecutionService.Priority;
+import org.eclipse.core.runtime.IPath;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.NullProgressMonitor;
+import org.eclipse.jdt.core.ElementChangedEvent;
+import org.eclipse.jdt.core.Flags;
+import org.eclipse.jdt.core.IElementChangedListener;
+import org.eclipse.jdt.core.IJavaElement;
+import org.eclipse.jdt.core.IJavaElementDelta;
+import org.eclipse.jdt.core.IJavaProject;
+import org.eclipse.jdt.core.IPackageFragment;
+import org.eclipse.jdt.core.IPackageFragmentRoot;
+import org.eclipse.jdt.core.IType;
+import org.eclipse.jdt.core.ITypeHierarchy;
+import org.eclipse.jdt.core.ITypeHierarchyChangedListener;
+import org.eclipse.jdt.core.JavaCore;
+import org.eclipse.jdt.core.JavaModelException;
+import org.eclipse.jface.operation.IRunnableContext;
+import org.eclipse.jface.operation.IRunnableWithProgress;
+
+/**
+ * An in-memory index of the packages and the JUnit test cases visible to Java projects, for the package and test case
+ * selection dialogs.
+ * <p>
+ * Projects are indexed in the background when they are first asked for. Packages are kept per package fragment root,
+ * so libraries shared by several projects are only read once, and a root is read again only when the Java model
+ * reports that its packages or compilation units were added or removed. Test cases are kept as JDT type hierarchies
+ * of the JUnit base types, which are refreshed when JDT reports that they changed. Updates are delayed a little so the
+ * many deltas of a build or a save are handled at once.
+ */
+public class JavaElementIndex implements IElementChangedListener {
+
+    private static final long UPDATE_DELAY_MILLIS = 500L;
+    private static final long WAIT_POLL_MILLIS = 100L;
+
+    private static final String[] TEST_CASE_BASE_TYPES = {
+            "junit.framework.TestCase", "junit.framework.TestSuite" //$NON-NLS-1$ //$NON-NLS-2$
+    };
+
+    private final IExecutionService executionService;
+    private final ScheduledExecutorService scheduler;
+
+    // Package name to whether the package has compilation units, per package fragment root path
+    private final ConcurrentMap<IPath,Map<String,Boolean>> rootPackages = new ConcurrentHashMap<>();
+    private final AtomicLong rootGeneration = new AtomicLong();
+
+    private final ConcurrentMap<IJavaProject,Entry<Map<String,Boolean>>> projectPackages = new ConcurrentHashMap<>();
+    private final ConcurrentMap<IJavaProject,TestCases> projectTestCases = new ConcurrentHashMap<>();
+
+    public JavaElementIndex(IExecutionService executionService, ScheduledExecutorService scheduler) {
+        this.executionService = executionService;
+        this.scheduler = scheduler;
+    }
+
+    public void start() {
+        JavaCore.addElementChangedListener(this, ElementChangedEvent.POST_CHANGE);
+    }
+
+    public void close() {
+        JavaCore.removeElementChangedListener(this);
+        for (Iterator<Entry<Map<String,Boolean>>> iter = projectPackages.values().iterator(); iter.hasNext();) {
+            iter.next().cancel();
+            iter.remove();
+        }
+        for (Iterator<TestCases> iter = projectTestCases.values().iterator(); iter.hasNext();) {
+            iter.next().dispose();
+            iter.remove();
+        }
+        rootPackages.clear();
+    }
+
+    /**
+     * The packages visible to the project, mapped to whether they have compilation units. The default package is not
+     * included.
+     */
+    public Future<Map<String,Boolean>> getPackages(final IJavaProject project) {
+        Entry<Map<String,Boolean>> entry = projectPackages.get(project);
+        if (entry == null) {
+            Entry<Map<String,Boolean>> newEntry = new Entry<Map<String,Boolean>>("Index packages of " + project.getElementName(), new Callable<Map<String,Boolean>>() {
+                @Override
+                public Map<String,Boolean> call() throws Exception {
+                    return calculatePackages(project);
+                }
+            });
+            entry = projectPackages.putIfAbsent(project, newEntry);
+            if (entry == null)
+                entry = newEntry;
+        }
+        return entry.get();
+    }
+
+    /**
+     * The concrete JUnit 3 test case and test suite classes visible to the project, by fully qualified name, mapped to
+     * whether they are source types.
+     */
+    public Future<Map<String,Boolean>> getTestCases(IJavaProject project) {
+        TestCases testCases = projectTestCases.get(project);
+        if (testCases == null) {
+            TestCases newTestCases = new TestCases(project);
+            testCases = projectTestCases.putIfAbsent(project, newTestCases);
+            if (testCases == null)
+                testCases = newTestCases;
+        }
+        return testCases.entry.get();
+    }
+
+    /**
+     * Wait for an index result. When it is not yet available, the wait is shown as a cancellable operation in the
+     * given runnable context.
+     */
+    public static <T> T waitFor(final Future<T> future, IRunnableContext runContext) throws InvocationTargetException, InterruptedException {
+        if (future.isDone()) {
+            try {
+                return future.get();
+            } catch (ExecutionException e) {
+                throw new InvocationTargetException(e.getCause());
+            }
+        }
+
+        final AtomicReference<T> result = new AtomicReference<T>();
+        runContext.run(true, true, new IRunnableWithProgress() {
+            @Override
+            public void run(IProgressMonitor monitor) throws InvocationTargetException, InterruptedException {
+                monitor.beginTask("Indexing Java elements...", IProgressMonitor.UNKNOWN);
+                try {
+                    while (true) {
+                        if (monitor.isCanceled())
+                            throw new InterruptedException();
+                        try {
+                            result.set(future.get(WAIT_POLL_MILLIS, TimeUnit.MILLISECONDS));
+                            return;
+                        } catch (TimeoutException e) {
+                            // keep waiting
+                        } catch (ExecutionException e) {
+                            throw new InvocationTargetException(e.getCause());
+                        }
+                    }
+                } finally {
+                    monitor.done();
+                }
+            }
+        });
+        return result.get();
+    }
+
+    @Override
+    public void elementChanged(ElementChangedEvent event) {
+        processDelta(event.getDelta());
+    }
+
+    private void processDelta(IJavaElementDelta delta) {
+        IJavaElement element = delta.getElement();
+        int kind = delta.getKind();
+        int flags = delta.getFlags();
+
+        switch (element.getElementType()) {
+        case IJavaElement.JAVA_MODEL :
+            break;
+        case IJavaElement.JAVA_PROJECT :
+            IJavaProject project = (IJavaProject) element;
+            if (kind == IJavaElementDelta.REMOVED || (flags & IJavaElementDelta.F_CLOSED) != 0) {
+                removeProject(project);
+                return;
+            }
+            if ((flags & (IJavaElementDelta.F_CLASSPATH_CHANGED | IJavaElementDelta.F_RESOLVED_CLASSPATH_CHANGED)) != 0) {
+                invalidatePackages();
+                // The JUnit base types may have come or gone; the hierarchies are created again when next asked for
+                TestCases testCases = projectTestCases.remove(project);
+                if (testCases != null)
+                    testCases.dispose();
+            }
+            break;
+        case IJavaElement.PACKAGE_FRAGMENT_ROOT :
+            if (kind != IJavaElementDelta.CHANGED || (flags & (IJavaElementDelta.F_ARCHIVE_CONTENT_CHANGED | IJavaElementDelta.F_ADDED_TO_CLASSPATH | IJavaElementDelta.F_REMOVED_FROM_CLASSPATH)) != 0) {
+                invalidateRoot(element.getPath());
+                return;
+            }
+            break;
+        case IJavaElement.PACKAGE_FRAGMENT :
+        case IJavaElement.COMPILATION_UNIT :
+            // Changes to a compilation unit do not change the packages, but adding the first or removing the last one
+            // changes whether its package has source
+            if (kind != IJavaElementDelta.CHANGED) {
+                IJavaElement root = element.getAncestor(IJavaElement.PACKAGE_FRAGMENT_ROOT);
+                if (root != null)
+                    invalidateRoot(root.getPath());
+                return;
+            }
+            if (element.getElementType() == IJavaElement.COMPILATION_UNIT)
+                return;
+            break;
+        default :
+            return;
+        }
+
+        for (IJavaElementDelta child : delta.getAffectedChildren())
+            processDelta(child);
+    }
+
+    private void removeProject(IJavaProject project) {
+        Entry<Map<String,Boolean>> packages = projectPackages.remove(project);
+        if (packages != null)
+            packages.cancel();
+        TestCases testCases = projectTestCases.remove(project);
+        if (testCases != null)
+            testCases.dispose();
+
+        IPath projectPath = project.getPath();
+        boolean removed = false;
+        for (Iterator<IPath> iter = rootPackages.keySet().iterator(); iter.hasNext();) {
+            if (projectPath.isPrefixOf(iter.next())) {
+                iter.remove();
+                removed = true;
+            }
+        }
+        if (removed) {
+            rootGeneration.incrementAndGet();
+            invalidatePackages();
+        }
+    }
+
+    private void invalidateRoot(IPath path) {
+        rootGeneration.incrementAndGet();
+        rootPackages.remove(path);
+        invalidatePackages();
+    }
+
+    private void invalidatePackages() {
+        // Cheap: the packages of unchanged roots are still indexed
+        for (Entry<Map<String,Boolean>> entry : projectPackages.values())
+            entry.invalidate();
+    }
+
+    private Map<String,Boolean> calculatePackages(IJavaProject project) throws JavaModelException {
+        Map<String,Boolean> packages = new TreeMap<String,Boolean>();
+        for (IPackageFragmentRoot root : project.getPackageFragmentRoots()) {
+            IPath path = root.getPath();
+            Map<String,Boolean> indexed = rootPackages.get(path);
+            if (indexed == null) {
+                long generation = rootGeneration.get();
+                indexed = calculateRootPackages(root);
+                // Do not keep the result if the root changed while it was read
+                if (rootGeneration.get() == generation)
+                    rootPackages.put(path, indexed);
+            }
+            for (Map.Entry<String,Boolean> pkg : indexed.entrySet()) {
+                Boolean hasSource = packages.get(pkg.getKey());
+                packages.put(pkg.getKey(), (hasSource != null && hasSource.booleanValue()) || pkg.getValue().booleanValue());
+            }
+        }
+        return Collections.unmodifiableMap(packages);
+    }
+
+    private static Map<String,Boolean> calculateRootPackages(IPackageFragmentRoot root) throws JavaModelException {
+        Map<String,Boolean> packages = new TreeMap<String,Boolean>();
+        boolean source = root.getKind() == IPackageFragmentRoot.K_SOURCE;
+        for (IJavaElement child : root.getChildren()) {
+            String name = child.getElementName();
+            if (name.length() == 0) // Do not include default pkg
+                continue;
+            packages.put(name, source && ((IPackageFragment) child).getCompilationUnits().length > 0);
+        }
+        return Collections.unmodifiableMap(packages);
+    }
+
+    /**
+     * An index result, which is calculated in the background when first asked for and again a little while after it is
+     * invalidated.
+     */
+    private final class Entry<T> {
+        private final String name;
+        private final Callable<T> calculation;
+
+        // Guarded by this
+        private Future<T> value = null;
+        private ScheduledFuture< ? > update = null;
+
+        Entry(String name, Callable<T> calculation) {
+            this.name = name;
+            this.calculation = calculation;
+        }
+
+        synchronized Future<T> get() {
+            if (value == null || failed(value))
+                value = executionService.submit(Pool.IO, Priority.NORMAL, name, calculation);
+            return value;
+        }
+
+        synchronized void invalidate() {
+            value = null;
+            if (update == null) {
+                update = scheduler.schedule(new Runnable() {
+                    @Override
+                    public void run() {
+                        synchronized (Entry.this) {
+                            update = null;
+                        }
+                        get();
+                    }
+                }, UPDATE_DELAY_MILLIS, TimeUnit.MILLISECONDS);
+            }
+        }
+
+        synchronized void cancel() {
+            if (update != null) {
+                update.cancel(false);
+                update = null;
+            }
+        }
+    }
+
+    private static boolean failed(Future< ? > future) {
+        if (!future.isDone())
+            return false;
+        try {
+            future.get();
+            return false;
+        } catch (Exception e) {
+            return true;
+        }
+    }
+
+    private final class TestCases implements ITypeHierarchyChangedListener {
+        private final IJavaProject project;
+        private final Entry<Map<String,Boolean>> entry;
+        private final List<ITypeHierarchy> hierarchies = new CopyOnWriteArrayList<ITypeHierarchy>();
+
+        // Not guarded by the calculation lock, so JDT notifications and disposal do not wait for a calculation
+        private volatile boolean created = false;
+        private volatile boolean stale = false;
+        private volatile boolean disposed = false;
+
+        TestCases(IJavaProject project) {
+            this.project = project;
+            this.entry = new Entry<Map<String,Boolean>>("Index test cases of " + project.getElementName(), new Callable<Map<String,Boolean>>() {
+                @Override
+                public Map<String,Boolean> call() throws Exception {
+                    return calculate(new NullProgressMonitor());
+                }
+            });
+        }
+
+        synchronized Map<String,Boolean> calculate(IProgressMonitor monitor) throws JavaModelException {
+            if (!created) {
+                for (String baseTypeName : TEST_CASE_BASE_TYPES) {
+                    IType baseType = project.findType(baseTypeName);
+                    if (baseType == null)
+                        continue;
+                    ITypeHierarchy hierarchy = baseType.newTypeHierarchy(project, monitor);
+                    hierarchy.addTypeHierarchyChangedListener(this);
+                    hierarchies.add(hierarchy);
+                }
+                created = true;
+                if (disposed)
+                    removeListeners();
+            } else if (stale) {
+                stale = false;
+                for (ITypeHierarchy hierarchy : hierarchies)
+                    hierarchy.refresh(monitor);
+            }
+
+            Map<String,Boolean> testCases = new TreeMap<String,Boolean>();
+            for (ITypeHierarchy hierarchy : hierarchies) {
+                for (IType type : hierarchy.getAllSubtypes(hierarchy.getType())) {
+                    if (!type.exists() || Flags.isAbstract(type.getFlags()))
+                        continue;
+                    testCases.put(type.getFullyQualifiedName(), !type.isBinary());
+                }
+            }
+            return Collections.unmodifiableMap(testCases);
+        }
+
+        @Override
+        public void typeHierarchyChanged(ITypeHierarchy typeHierarchy) {
+            stale = true;
+            entry.invalidate();
+        }
+
+        void dispose() {
+            disposed = true;
+            entry.cancel();
+            removeListeners();
+        }
+
+        private void removeListeners() {
+            for (ITypeHierarchy hierarchy : hierarchies)
+                hierarchy.removeTypeHierarchyChangedListener(this);
+        }
+    }
+
+}
@@ -0,0 +1,50 @@
+package bndtools.internal.pkgselection;
+
+import java.lang.reflect.InvocationTargetException;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+
+import org.eclipse.jdt.core.IJavaProject;
+import org.eclipse.jface.operation.IRunnableContext;
+
+import bndtools.Plugin;
+import bndtools.internal.javaindex.JavaElementIndex;
+
+public class JavaProjectPackageLister implements IPackageLister {
+
+    private final IJavaProject javaProject;
+    private final IRunnableContext runContext;
+
+    public JavaProjectPackageLister(IJavaProject javaProject, IRunnableContext runContext) {
+        this.javaProject = javaProject;
+        this.runContext = runContext;
+    }
+
+    @Override
+    public String[] getPackages(boolean includeNonSource, IPackageFilter filter) throws PackageListException {
+        Map<String,Boolean> packages;
+        try {
+            packages = JavaElementIndex.waitFor(Plugin.getDefault().getJavaElementIndex().getPackages(javaProject), runContext);
+        } catch (InvocationTargetException e) {
+            throw new PackageListException(e.getCause());
+        } catch (InterruptedException e) {
+            throw new PackageListException("Operation interrupted");
+        }
+
+        // Remove non-source and excludes
+        Set<String> packageNames = new LinkedHashSet<String>();
+        for (Entry<String,Boolean> pkg : packages.entrySet()) {
+            String name = pkg.getKey();
+            if (!includeNonSource && !pkg.getValue().booleanValue())
+                continue;
+            if (filter != null && !filter.select(name))
+                continue;
+            packageNames.add(name);
+        }
+
+        return packageNames.toArray(new String[0]);
+    }
+
+}
@@ -0,0 +1,50 @@
+package bndtools.internal.testcaseselection;
+
+import java.lang.reflect.InvocationTargetException;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+
+import org.eclipse.jdt.core.IJavaProject;
+import org.eclipse.jface.operation.IRunnableContext;
+
+import bndtools.Plugin;
+import bndtools.internal.javaindex.JavaElementIndex;
+
+public class JavaProjectTestCaseLister implements ITestCaseLister {
+
+    private final IJavaProject javaProject;
+    private final IRunnableContext runContext;
+
+    public JavaProjectTestCaseLister(IJavaProject javaProject, IRunnableContext runContext) {
+        this.javaProject = javaProject;
+        this.runContext = runContext;
+    }
+
+    @Override
+    public String[] getTestCases(boolean includeNonSource, ITestCaseFilter filter) throws TestCaseListException {
+        Map<String,Boolean> testCases;
+        try {
+            testCases = JavaElementIndex.waitFor(Plugin.getDefault().getJavaElementIndex().getTestCases(javaProject), runContext);
+        } catch (InvocationTargetException e) {
+            throw new TestCaseListException(e.getCause());
+        } catch (InterruptedException e) {
+            throw new TestCaseListException(Messages.JavaProjectTestCaseLister_interrupted);
+        }
+
+        // Remove non-source and excludes
+        Set<String> testCaseNames = new LinkedHashSet<String>();
+        for (Entry<String,Boolean> testCase : testCases.entrySet()) {
+            String className = testCase.getKey();
+            if (!includeNonSource && !testCase.getValue().booleanValue())
+                continue;
+            if (filter != null && !filter.select(className))
+                continue;
+            testCaseNames.add(className);
+        }
+
+        return testCaseNames.toArray(new String[0]);
+    }
+
+}
@@ -4,7 +4,7 @@ import org.eclipse.osgi.util.NLS;
 
 public class Messages extends NLS {
     private static final String BUNDLE_NAME = "bndtools.internal.testcaseselection.messages"; //$NON-NLS-1$
-    public static String JavaSearchScopeTestCaseLister_2;
+    public static String JavaProjectTestCaseLister_interrupted;
     public static String TestCaseSelectionDialog_btnSourceOnly;
     public static String TestCaseSelectionDialog_title_select_tests;
     static {
@@ -116,7 +116,8 @@ public abstract class AbstractOSGiLaunchDelegate extends JavaLaunchDelegate {
                         Object source = event.getSource();
                         if (source instanceof IProcess) {
                             ILaunch processLaunch = ((IProcess) source).getLaunch();
-                            if (processLaunch == launch) {
+                            // A launch can run several frameworks, clean up once they have all gone
+                            if (processLaunch == launch && allTerminated(launch)) {
                                 // Not interested in any further events =>
                                 // unregister this listener
                                 DebugPlugin.getDefault().removeDebugEventListener(this);
@@ -141,6 +142,14 @@ public abstract class AbstractOSGiLaunchDelegate extends JavaLaunchDelegate {
         super.launch(configuration, mode, launch, monitor);
     }
 
+    protected static boolean allTerminated(ILaunch launch) {
+        for (IProcess process : launch.getProcesses()) {
+            if (!process.isTerminated())
+                return false;
+        }
+        return true;
+    }
+
     @Override
     public String[] getClasspath(ILaunchConfiguration configuration) throws CoreException {
         Collection<String> paths = getProjectLauncher().getClasspath();
@@ -1,8 +1,21 @@
 package bndtools.launch;
 
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
 
 import org.bndtools.api.ILogger;
 import org.bndtools.api.Logger;
@@ -28,11 +41,21 @@ import aQute.bnd.build.Project;
 import bndtools.central.Central;
 import bndtools.launch.util.LaunchUtils;
 
+/**
+ * The sources of the run bundles of a launch. The packages of the run bundles are indexed on the first lookup so a
+ * lookup only searches the bundles that contain the package of the source, and names that are not found are
+ * remembered.
+ */
 public class BndDependencySourceContainer extends CompositeSourceContainer {
     private static final ILogger logger = Logger.getLogger(BndDependencySourceContainer.class);
 
     public static final String TYPE_ID = "org.bndtools.core.launch.sourceContainerTypes.bndDependencies";
 
+    private static final Object[] EMPTY = new Object[0];
+
+    private Index index;
+    private final Set<String> notFound = Collections.newSetFromMap(new ConcurrentHashMap<String,Boolean>());
+
     @Override
     public boolean equals(Object obj) {
         return obj instanceof DefaultSourceContainer;
@@ -61,39 +84,200 @@ public class BndDependencySourceContainer extends CompositeSourceContainer {
         return getSourceContainerType(TYPE_ID);
     }
 
+    /*
+     * Only the containers of the run bundles that contain the package of the name are searched, they are created on
+     * the first search that reaches them.
+     */
+    @Override
+    public Object[] findSourceElements(String name) throws CoreException {
+        if (name == null || notFound.contains(name))
+            return EMPTY;
+
+        Index index = getIndex();
+        List<Candidate> candidates = new ArrayList<Candidate>();
+        List<Candidate> indexed = index.packages.get(packageOf(name));
+        if (indexed != null)
+            candidates.addAll(indexed);
+        candidates.addAll(index.unindexed);
+
+        List<Object> results = new ArrayList<Object>();
+        CoreException error = null;
+        for (Candidate candidate : candidates) {
+            ISourceContainer container = candidate.getContainer();
+            if (container == null)
+                continue;
+            try {
+                Object[] elements = container.findSourceElements(name);
+                if (elements.length > 0) {
+                    if (!isFindDuplicates())
+                        return elements;
+                    results.addAll(Arrays.asList(elements));
+                }
+            } catch (CoreException e) {
+                if (error == null)
+                    error = e;
+            }
+        }
+
+        if (!results.isEmpty())
+            return results.toArray();
+        if (error != null)
+            throw error;
+        notFound.add(name);
+        return EMPTY;
+    }
+
     @Override
     protected ISourceContainer[] createSourceContainers() throws CoreException {
+        Index index = getIndex();
         List<ISourceContainer> result = new LinkedList<ISourceContainer>();
+        for (Candidate candidate : index.candidates) {
+            ISourceContainer container = candidate.getContainer();
+            if (container != null)
+                result.add(container);
+        }
+        return result.toArray(new ISourceContainer[0]);
+    }
+
+    @Override
+    public void dispose() {
+        Index disposed;
+        synchronized (this) {
+            disposed = index;
+            index = null;
+        }
+        if (disposed != null) {
+            for (Candidate candidate : disposed.candidates)
+                candidate.dispose();
+        }
+        notFound.clear();
+        super.dispose();
+    }
 
+    private synchronized Index getIndex() {
+        if (index == null)
+            index = createIndex();
+        return index;
+    }
+
+    private Index createIndex() {
+        Index result = new Index();
         ILaunchConfiguration config = getLaunchConfiguration();
         try {
             Project project = LaunchUtils.getBndProject(config);
             if (project != null) {
                 Collection<Container> runbundles = project.getRunbundles();
                 for (Container runbundle : runbundles) {
-                    if (runbundle.getType() == TYPE.PROJECT) {
-                        String targetProjName = runbundle.getProject().getName();
-                        IProject targetProj = ResourcesPlugin.getWorkspace().getRoot().getProject(targetProjName);
-                        if (targetProj != null) {
-                            IJavaProject targetJavaProj = JavaCore.create(targetProj);
-                            result.add(new JavaProjectSourceContainer(targetJavaProj));
-                        }
-                    } else if (runbundle.getType() == TYPE.REPO) {
-                        IPath bundlePath = Central.toPath(runbundle.getFile());
-                        if (bundlePath != null) {
-                            IFile bundleFile = ResourcesPlugin.getWorkspace().getRoot().getFile(bundlePath);
-                            if (bundleFile != null) {
-                                ArchiveSourceContainer tempArchiveCont = new ArchiveSourceContainer(bundleFile, false);
-                                result.add(tempArchiveCont);
-                            }
+                    if (runbundle.getType() != TYPE.PROJECT && runbundle.getType() != TYPE.REPO)
+                        continue;
+
+                    Candidate candidate = new Candidate(runbundle);
+                    result.candidates.add(candidate);
+                    Set<String> packages = packagesOf(runbundle.getFile());
+                    if (packages == null) {
+                        // The source of a project that has not been built can still be found, just not by package
+                        if (runbundle.getType() == TYPE.PROJECT)
+                            result.unindexed.add(candidate);
+                        continue;
+                    }
+                    for (String packageName : packages) {
+                        List<Candidate> candidates = result.packages.get(packageName);
+                        if (candidates == null) {
+                            candidates = new ArrayList<Candidate>(1);
+                            result.packages.put(packageName, candidates);
                         }
+                        candidates.add(candidate);
                     }
                 }
             }
         } catch (Exception e) {
             logger.logError("Error querying bnd dependency source containers.", e);
         }
+        return result;
+    }
 
-        return result.toArray(new ISourceContainer[0]);
+    /**
+     * @return the folders of the entries in a bundle, which are the names of the packages the bundle can have source
+     *         for, or null if the bundle cannot be read
+     */
+    static Set<String> packagesOf(File bundle) {
+        if (bundle == null || !bundle.isFile())
+            return null;
+        Set<String> packages = new HashSet<String>();
+        try (ZipFile zip = new ZipFile(bundle)) {
+            for (Enumeration< ? extends ZipEntry> entries = zip.entries(); entries.hasMoreElements();) {
+                ZipEntry entry = entries.nextElement();
+                if (!entry.isDirectory())
+                    packages.add(packageOf(entry.getName()));
+            }
+        } catch (IOException e) {
+            logger.logWarning("Unable to index the packages of " + bundle, e);
+            return null;
+        }
+        return packages;
+    }
+
+    static String packageOf(String name) {
+        int slash = name.lastIndexOf('/');
+        return slash < 0 ? "" : name.substring(0, slash);
+    }
+
+    private static class Index {
+        final List<Candidate> candidates = new ArrayList<Candidate>();
+        final Map<String,List<Candidate>> packages = new HashMap<String,List<Candidate>>();
+        final List<Candidate> unindexed = new ArrayList<Candidate>();
+    }
+
+    /*
+     * A run bundle and its source container, which is created on first use
+     */
+    private class Candidate {
+        private final Container runbundle;
+        private boolean created;
+        private ISourceContainer container;
+
+        Candidate(Container runbundle) {
+            this.runbundle = runbundle;
+        }
+
+        synchronized ISourceContainer getContainer() {
+            if (!created) {
+                created = true;
+                try {
+                    container = createContainer(runbundle);
+                    if (container != null)
+                        container.init(getDirector());
+                } catch (Exception e) {
+                    logger.logError("Error creating the source container for " + runbundle, e);
+                }
+            }
+            return container;
+        }
+
+        synchronized void dispose() {
+            if (container != null)
+                container.dispose();
+            container = null;
+        }
+    }
+
+    private static ISourceContainer createContainer(Container runbundle) throws Exception {
+        if (runbundle.getType() == TYPE.PROJECT) {
+            String targetProjName = runbundle.getProject().getName();
+            IProject targetProj = ResourcesPlugin.getWorkspace().getRoot().getProject(targetProjName);
+            if (targetProj != null) {
+                IJavaProject targetJavaProj = JavaCore.create(targetProj);
+                return new JavaProjectSourceContainer(targetJavaProj);
+            }
+        } else if (runbundle.getType() == TYPE.REPO) {
+            IPath bundlePath = Central.toPath(runbundle.getFile());
+            if (bundlePath != null) {
+                IFile bundleFile = ResourcesPlugin.getWorkspace().getRoot().getFile(bundlePath);
+                if (bundleFile != null) {
+                    return new ArchiveSourceContainer(bundleFile, false);
+                }
+            }
+        }
+        return null;
     }
 }
@@ -0,0 +1,70 @@
+package bndtools.launch;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.bndtools.api.ILogger;
+import org.bndtools.api.Logger;
+import org.eclipse.jdt.junit.JUnitCore;
+import org.eclipse.jdt.junit.TestRunListener;
+import org.eclipse.jdt.junit.model.ITestElement.ProgressState;
+import org.eclipse.jdt.junit.model.ITestElement.Result;
+import org.eclipse.jdt.junit.model.ITestRunSession;
+
+/**
+ * Saves the changed test selection of a launch once its JUnit session has completed without failures, so that the tests
+ * of changed bundles are selected again after a failed, stopped or aborted run. The JUnit session of a launch is
+ * recognised by the name of its launch configuration; a later launch of the same configuration replaces a selection that
+ * is still pending.
+ */
+class ChangedTestSelectionSaver extends TestRunListener {
+
+    private static final ILogger logger = Logger.getLogger(ChangedTestSelectionSaver.class);
+
+    // The pending saver by launch configuration name
+    private static final Map<String,ChangedTestSelectionSaver> pending = new HashMap<String,ChangedTestSelectionSaver>();
+
+    private final String launchName;
+    private final ChangedTestSelector.Selection selection;
+
+    /**
+     * Save the selection when the JUnit session of the launch configuration passes.
+     */
+    static void saveWhenPassed(String launchName, ChangedTestSelector.Selection selection) {
+        ChangedTestSelectionSaver saver = new ChangedTestSelectionSaver(launchName, selection);
+        ChangedTestSelectionSaver previous;
+        synchronized (pending) {
+            previous = pending.put(launchName, saver);
+        }
+        if (previous != null)
+            JUnitCore.removeTestRunListener(previous);
+        JUnitCore.addTestRunListener(saver);
+    }
+
+    private ChangedTestSelectionSaver(String launchName, ChangedTestSelector.Selection selection) {
+        this.launchName = launchName;
+        this.selection = selection;
+    }
+
+    @Override
+    public void sessionFinished(ITestRunSession session) {
+        if (!launchName.equals(session.getTestRunName()))
+            return;
+
+        synchronized (pending) {
+            if (pending.get(launchName) != this)
+                return;
+            pending.remove(launchName);
+        }
+        JUnitCore.removeTestRunListener(this);
+
+        Result result = session.getTestResult(true);
+        if (session.getProgressState() != ProgressState.COMPLETED || (result != Result.OK && result != Result.IGNORED))
+            return;
+        try {
+            selection.save();
+        } catch (Exception e) {
+            logger.logError("Error saving the changed test selection of " + launchName, e);
+        }
+    }
+}
@@ -0,0 +1,421 @@
+package bndtools.launch;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.jar.Attributes;
+import java.util.jar.JarFile;
+import java.util.jar.Manifest;
+
+import org.osgi.framework.Constants;
+
+import aQute.bnd.header.Parameters;
+import aQute.bnd.osgi.Analyzer;
+import aQute.bnd.osgi.Clazz;
+import aQute.bnd.osgi.Descriptors.PackageRef;
+import aQute.bnd.osgi.Descriptors.TypeRef;
+import aQute.bnd.osgi.Jar;
+import aQute.bnd.osgi.Processor;
+import aQute.bnd.osgi.Resource;
+import aQute.lib.hex.Hex;
+import aQute.lib.strings.Strings;
+
+/**
+ * Selects the tests of a launch that can be affected by the bundles that changed since the previous launch.
+ * <p>
+ * For every test class the bundles it depends on are worked out from the packages its byte code refers to: the bundle
+ * that contains it, the bundles that export those packages, and the bundles that those import from in turn. This map
+ * is kept in a state file together with the content hash of every run bundle. On the next launch only the tests that
+ * depend on a bundle whose content changed are selected. Everything is selected when there is no previous state, or
+ * when anything other than the content of the run bundles changed: the run path, the run properties, the VM arguments
+ * or the set of run bundles.
+ * <p>
+ * The state of a launch is only saved once its tests have passed, so the tests of a changed bundle stay selected until
+ * a run of them succeeds.
+ */
+class ChangedTestSelector {
+
+    private static final String ALGORITHM = "SHA-256";
+    private static final String ENVIRONMENT = "environment";
+    private static final String BUNDLE_PREFIX = "bundle.";
+    private static final String TEST_PREFIX = "test.";
+    private static final String TESTCASES = "Test-Cases";
+
+    private final File stateFile;
+
+    ChangedTestSelector(File stateFile) {
+        this.stateFile = stateFile;
+    }
+
+    /**
+     * Select the tests affected by the changes since the last saved selection.
+     *
+     * @param tests the tests of the launch, either a class name or a class name and method separated by a colon
+     * @param runBundles the run bundles of the launch
+     * @param environment a key for everything else that determines the outcome of the launch
+     * @return the selection, which must be saved when the tests of the launch have passed
+     */
+    Selection select(List<String> tests, Collection<File> runBundles, String environment) throws Exception {
+        State previous = State.load(stateFile);
+
+        Set<String> classNames = testClasses(tests);
+        List<BundleInfo> bundles = new ArrayList<BundleInfo>();
+        for (File file : runBundles) {
+            if (file.isFile())
+                bundles.add(BundleInfo.read(file, previous.bundles.get(file.getAbsolutePath()), classNames));
+        }
+
+        State current = new State();
+        current.environment = environment;
+        for (BundleInfo info : bundles)
+            current.bundles.put(info.path, info.stamp);
+        current.tests.putAll(dependencies(bundles));
+
+        List<String> selected = new ArrayList<String>();
+        if (!environment.equals(previous.environment) || !current.bundles.keySet().equals(previous.bundles.keySet())) {
+            selected.addAll(tests);
+        } else {
+            Set<String> changed = new HashSet<String>();
+            for (Entry<String,Stamp> entry : current.bundles.entrySet()) {
+                if (!entry.getValue().hash.equals(previous.bundles.get(entry.getKey()).hash))
+                    changed.add(entry.getKey());
+            }
+            for (String test : tests) {
+                Set<String> dependencies = previous.tests.get(className(test));
+                if (dependencies == null || containsAny(dependencies, changed))
+                    selected.add(test);
+            }
+        }
+
+        return new Selection(selected, current);
+    }
+
+    /**
+     * The tests selected for a launch, and the state of the launch to compare the next one with.
+     */
+    class Selection {
+        private final List<String> tests;
+        private final State state;
+
+        Selection(List<String> tests, State state) {
+            this.tests = tests;
+            this.state = state;
+        }
+
+        /**
+         * @return the selected tests, in the order they were given
+         */
+        List<String> getTests() {
+            return tests;
+        }
+
+        /**
+         * Record the state of the launch, so that the next launch only selects the tests affected by later changes.
+         */
+        void save() throws IOException {
+            state.save(stateFile);
+        }
+    }
+
+    /**
+     * @return the test classes listed in the Test-Cases header of the bundles
+     */
+    static List<String> testCases(Collection<File> runBundles) throws IOException {
+        List<String> tests = new ArrayList<String>();
+        for (File file : runBundles) {
+            if (!file.isFile())
+                continue;
+            try (JarFile jar = new JarFile(file)) {
+                Manifest manifest = jar.getManifest();
+                String testCases = manifest != null ? manifest.getMainAttributes().getValue(TESTCASES) : null;
+                if (testCases != null)
+                    tests.addAll(Strings.split(testCases));
+            }
+        }
+        return tests;
+    }
+
+    private static Set<String> testClasses(List<String> tests) {
+        Set<String> classNames = new LinkedHashSet<String>();
+        for (String test : tests)
+            classNames.add(className(test));
+        return classNames;
+    }
+
+    private static String className(String test) {
+        int colon = test.indexOf(':');
+        return colon < 0 ? test : test.substring(0, colon);
+    }
+
+    private static boolean containsAny(Set<String> set, Set<String> candidates) {
+        for (String candidate : candidates) {
+            if (set.contains(candidate))
+                return true;
+        }
+        return false;
+    }
+
+    /*
+     * For every test class: the bundle that contains it, the bundles that export the packages it refers to, and the
+     * bundles those bundles import from in turn
+     */
+    private static Map<String,Set<String>> dependencies(List<BundleInfo> bundles) throws Exception {
+        Map<String,List<BundleInfo>> exporters = new HashMap<String,List<BundleInfo>>();
+        for (BundleInfo info : bundles) {
+            for (String pkg : info.exports) {
+                List<BundleInfo> list = exporters.get(pkg);
+                if (list == null) {
+                    list = new ArrayList<BundleInfo>();
+                    exporters.put(pkg, list);
+                }
+                list.add(info);
+            }
+        }
+
+        Map<String,Set<String>> result = new LinkedHashMap<String,Set<String>>();
+        for (BundleInfo info : bundles) {
+            if (info.testClasses.isEmpty())
+                continue;
+
+            try (Jar jar = new Jar(info.file); Analyzer analyzer = new Analyzer()) {
+                for (String className : info.testClasses) {
+                    if (result.containsKey(className))
+                        continue;
+
+                    Set<String> dependencies = new TreeSet<String>();
+                    dependencies.add(info.path);
+                    Deque<BundleInfo> queue = new ArrayDeque<BundleInfo>();
+                    for (String pkg : referredPackages(jar, analyzer, className))
+                        addExporters(exporters.get(pkg), dependencies, queue);
+                    while (!queue.isEmpty()) {
+                        BundleInfo next = queue.removeFirst();
+                        for (String pkg : next.imports)
+                            addExporters(exporters.get(pkg), dependencies, queue);
+                    }
+                    result.put(className, dependencies);
+                }
+            }
+        }
+        return result;
+    }
+
+    private static void addExporters(List<BundleInfo> exporters, Set<String> dependencies, Deque<BundleInfo> queue) {
+        if (exporters == null)
+            return;
+        for (BundleInfo exporter : exporters) {
+            if (dependencies.add(exporter.path))
+                queue.addLast(exporter);
+        }
+    }
+
+    /*
+     * The packages referred to by the class, its nested classes and its super classes in the same bundle
+     */
+    private static Set<String> referredPackages(Jar jar, Analyzer analyzer, String className) throws Exception {
+        String path = classPath(className);
+        Set<String> classPaths = new LinkedHashSet<String>();
+        classPaths.add(path);
+        String nestedPrefix = path.substring(0, path.length() - ".class".length()) + "$";
+        for (String resourcePath : jar.getResources().keySet()) {
+            if (resourcePath.startsWith(nestedPrefix) && resourcePath.endsWith(".class"))
+                classPaths.add(resourcePath);
+        }
+
+        Set<String> referred = new TreeSet<String>();
+        Deque<String> queue = new ArrayDeque<String>(classPaths);
+        while (!queue.isEmpty()) {
+            String classPath = queue.removeFirst();
+            Resource resource = jar.getResource(classPath);
+            if (resource == null)
+                continue;
+            Clazz clazz = new Clazz(analyzer, classPath, resource);
+            clazz.parseClassFile();
+            for (PackageRef pkg : clazz.getReferred())
+                referred.add(pkg.getFQN());
+
+            TypeRef superClass = clazz.getSuperClass();
+            if (superClass != null && classPaths.add(superClass.getPath()))
+                queue.addLast(superClass.getPath());
+        }
+        return referred;
+    }
+
+    private static String classPath(String className) {
+        return className.replace('.', '/') + ".class";
+    }
+
+    /**
+     * @return a hash of the parts, to use as the environment key of a launch or as a file name
+     */
+    static String key(Collection<String> parts) throws Exception {
+        MessageDigest digest = MessageDigest.getInstance(ALGORITHM);
+        for (String part : parts) {
+            digest.update(part.getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) 0);
+        }
+        return Hex.toHexString(digest.digest()).toLowerCase(Locale.ROOT);
+    }
+
+    private static class BundleInfo {
+        final File file;
+        final String path;
+        final Stamp stamp;
+        final Set<String> exports = new HashSet<String>();
+        final Set<String> imports = new HashSet<String>();
+        final Set<String> testClasses = new LinkedHashSet<String>();
+
+        BundleInfo(File file, Stamp stamp) {
+            this.file = file;
+            this.path = file.getAbsolutePath();
+            this.stamp = stamp;
+        }
+
+        static BundleInfo read(File file, Stamp previous, Set<String> classNames) throws Exception {
+            Stamp stamp;
+            if (previous != null && previous.modified == file.lastModified() && previous.size == file.length())
+                stamp = previous;
+            else
+                stamp = new Stamp(file.lastModified(), file.length(), hash(file));
+
+            BundleInfo info = new BundleInfo(file, stamp);
+            try (JarFile jar = new JarFile(file)) {
+                Manifest manifest = jar.getManifest();
+                if (manifest != null) {
+                    Attributes attribs = manifest.getMainAttributes();
+                    addPackages(attribs.getValue(Constants.EXPORT_PACKAGE), info.exports);
+                    addPackages(attribs.getValue(Constants.IMPORT_PACKAGE), info.imports);
+                }
+                for (String className : classNames) {
+                    if (jar.getEntry(classPath(className)) != null)
+                        info.testClasses.add(className);
+                }
+            }
+            return info;
+        }
+
+        private static void addPackages(String header, Set<String> packages) {
+            if (header == null)
+                return;
+            for (String key : new Parameters(header).keySet())
+                packages.add(Processor.removeDuplicateMarker(key));
+        }
+
+        private static String hash(File file) throws Exception {
+            MessageDigest digest = MessageDigest.getInstance(ALGORITHM);
+            byte[] buffer = new byte[64 * 1024];
+            try (InputStream in = new FileInputStream(file)) {
+                int n;
+                while ((n = in.read(buffer)) > 0)
+                    digest.update(buffer, 0, n);
+            }
+            return Hex.toHexString(digest.digest()).toLowerCase(Locale.ROOT);
+        }
+    }
+
+    private static class Stamp {
+        final long modified;
+        final long size;
+        final String hash;
+
+        Stamp(long modified, long size, String hash) {
+            this.modified = modified;
+            this.size = size;
+            this.hash = hash;
+        }
+
+        static Stamp parse(String value) {
+            String[] parts = value.split(",");
+            if (parts.length != 3)
+                return null;
+            try {
+                return new Stamp(Long.parseLong(parts[0]), Long.parseLong(parts[1]), parts[2]);
+            } catch (NumberFormatException e) {
+                return null;
+            }
+        }
+
+        @Override
+        public String toString() {
+            return modified + "," + size + "," + hash;
+        }
+    }
+
+    private static class State {
+        String environment;
+        final Map<String,Stamp> bundles = new LinkedHashMap<String,Stamp>();
+        final Map<String,Set<String>> tests = new LinkedHashMap<String,Set<String>>();
+
+        static State load(File file) throws IOException {
+            State state = new State();
+            if (!file.isFile())
+                return state;
+
+            Properties props = new Properties();
+            try (InputStream in = new FileInputStream(file)) {
+                props.load(in);
+            }
+            state.environment = props.getProperty(ENVIRONMENT);
+            for (String key : props.stringPropertyNames()) {
+                String value = props.getProperty(key);
+                if (key.startsWith(BUNDLE_PREFIX)) {
+                    Stamp stamp = Stamp.parse(value);
+                    if (stamp != null)
+                        state.bundles.put(key.substring(BUNDLE_PREFIX.length()), stamp);
+                } else if (key.startsWith(TEST_PREFIX)) {
+                    state.tests.put(key.substring(TEST_PREFIX.length()), new TreeSet<String>(Strings.split(File.pathSeparator, value)));
+                }
+            }
+            return state;
+        }
+
+        void save(File file) throws IOException {
+            Properties props = new Properties();
+            props.setProperty(ENVIRONMENT, environment);
+            for (Entry<String,Stamp> entry : bundles.entrySet())
+                props.setProperty(BUNDLE_PREFIX + entry.getKey(), entry.getValue().toString());
+            for (Entry<String,Set<String>> entry : tests.entrySet())
+                props.setProperty(TEST_PREFIX + entry.getKey(), Strings.join(File.pathSeparator, entry.getValue()));
+
+            File dir = file.getAbsoluteFile().getParentFile();
+            dir.mkdirs();
+            File tempFile = File.createTempFile(file.getName(), ".tmp", dir);
+            try {
+                try (OutputStream out = new FileOutputStream(tempFile)) {
+                    props.store(out, null);
+                }
+                try {
+                    Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+                } catch (AtomicMoveNotSupportedException e) {
+                    Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+                }
+            } finally {
+                if (tempFile.exists())
+                    tempFile.delete();
+            }
+        }
+    }
+
+}
@@ -0,0 +1,376 @@
+package bndtools.launch;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.bndtools.api.ILogger;
+import org.bndtools.api.Logger;
+
+/**
+ * Merges the JUnit reports of the shards of a launch into a single test run for the Eclipse JUnit view. Each shard
+ * reports to its own port on which the merger listens. Once every shard has described its tests the merger connects
+ * to the JUnit view, announces the total number of tests and the test trees, and then forwards the test events of all
+ * shards as they arrive. Test ids are prefixed with the shard number so they stay unique across shards. The duration
+ * of each test class is measured on the way and recorded when all shards are done.
+ * <p>
+ * Every shard is read by its own thread for the whole test run, so the merger owns these threads rather than taking
+ * them from a shared pool, where they would hold up other work and delay the reading of the other shards.
+ */
+class JUnitShardMerger implements Closeable {
+
+    private static final ILogger logger = Logger.getLogger(JUnitShardMerger.class);
+
+    // The messages of the remote test runner protocol of the Eclipse JUnit view
+    static final String TEST_RUN_START = "%TESTC  ";
+    static final String TEST_RUN_END = "%RUNTIME";
+    static final String TEST_TREE = "%TSTTREE";
+    static final String TEST_START = "%TESTS  ";
+    static final String TEST_END = "%TESTE  ";
+    static final String TEST_ERROR = "%ERROR  ";
+    static final String TEST_FAILED = "%FAILED ";
+    static final String TEST_RERAN = "%TSTRERN";
+    private static final String[] ID_MESSAGES = {
+            TEST_TREE, TEST_START, TEST_END, TEST_ERROR, TEST_FAILED, TEST_RERAN
+    };
+    private static final String[] SECTION_STARTS = {
+            "%TRACES ", "%EXPECTS", "%ACTUALS", "%RTRACES"
+    };
+    private static final String[] SECTION_ENDS = {
+            "%TRACEE ", "%EXPECTE", "%ACTUALE", "%RTRACEE"
+    };
+    private static final String[] FAILURE_CONTINUATIONS = {
+            TEST_ERROR, TEST_FAILED, "%EXPECTE", "%ACTUALE"
+    };
+    private static final int MESSAGE_LENGTH = 8;
+
+    private static final Pattern TEST_NAME_P = Pattern.compile("[^(]*\\((.+)\\)");
+    private static final long CONNECT_TIMEOUT = TimeUnit.SECONDS.toMillis(30);
+    private static final long CONNECT_RETRY = 100L;
+
+    private final String host;
+    private final int junitPort;
+    private final TestDurations durations;
+    private final ExecutorService readers;
+    private final List<ServerSocket> servers;
+    private volatile boolean closed;
+
+    private final Object lock = new Object();
+    // Guarded by lock
+    private final List<List<String>> trees;
+    private final List<List<String>> pendingBlocks = new ArrayList<List<String>>();
+    private final Map<String,Long> measured = new HashMap<String,Long>();
+    private Writer out;
+    private boolean connected;
+    private int pendingTrees;
+    private int running;
+    private int total;
+    private long start;
+
+    /**
+     * @param host the host on which the JUnit view listens
+     * @param junitPort the port on which the JUnit view listens
+     * @param shardPorts the ports on which the shards report, 0 for any free port
+     * @param durations where the durations of the test classes are recorded
+     */
+    JUnitShardMerger(String host, int junitPort, int[] shardPorts, TestDurations durations) throws IOException {
+        this.host = host;
+        this.junitPort = junitPort;
+        this.durations = durations;
+        this.readers = Executors.newFixedThreadPool(Math.max(1, shardPorts.length), new ThreadFactory() {
+            private final AtomicInteger count = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "bndtools-junit-shard-" + count.getAndIncrement());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        this.servers = new ArrayList<ServerSocket>(shardPorts.length);
+        this.trees = new ArrayList<List<String>>(shardPorts.length);
+        try {
+            for (int port : shardPorts) {
+                servers.add(new ServerSocket(port));
+                trees.add(Collections.<String> emptyList());
+            }
+        } catch (IOException e) {
+            close();
+            throw e;
+        }
+        pendingTrees = shardPorts.length;
+        running = shardPorts.length;
+    }
+
+    int getShardPort(int shard) {
+        return servers.get(shard).getLocalPort();
+    }
+
+    void start() {
+        synchronized (lock) {
+            start = System.currentTimeMillis();
+        }
+        for (int i = 0; i < servers.size(); i++) {
+            final int shard = i;
+            readers.execute(new Runnable() {
+                @Override
+                public void run() {
+                    readShard(shard);
+                }
+            });
+        }
+    }
+
+    /**
+     * Stops listening for shards that have not connected yet, for instance when the launch has terminated before
+     * their framework got to run the tests. The threads end once the shards that did connect have been read.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        readers.shutdown();
+        for (ServerSocket server : servers) {
+            try {
+                server.close();
+            } catch (IOException e) {
+                // ignore
+            }
+        }
+    }
+
+    private void readShard(int shard) {
+        ServerSocket server = servers.get(shard);
+        String prefix = shard + ".";
+        List<String> tree = new ArrayList<String>();
+        int count = 0;
+        boolean inTree = true;
+        Map<String,Long> started = new HashMap<String,Long>();
+        Map<String,Long> shardMeasured = new HashMap<String,Long>();
+
+        try (Socket socket = server.accept(); BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8))) {
+            server.close();
+
+            List<String> block = new ArrayList<String>();
+            boolean inSection = false;
+            String line;
+            while ((line = in.readLine()) != null) {
+                if (inSection) {
+                    block.add(line);
+                    if (startsWithAny(line, SECTION_ENDS)) {
+                        inSection = false;
+                        if (!startsWithAny(line, FAILURE_CONTINUATIONS))
+                            block = send(block);
+                    }
+                    continue;
+                }
+
+                if (line.startsWith(TEST_RUN_START)) {
+                    count = parseCount(line);
+                    continue;
+                }
+                // Measured before the first test start is held up by connecting to the JUnit view
+                measure(line, started, shardMeasured);
+                if (inTree) {
+                    if (line.startsWith(TEST_TREE)) {
+                        tree.add(prefixId(line, prefix));
+                        continue;
+                    }
+                    inTree = false;
+                    treeReceived(shard, count, tree);
+                }
+                if (line.startsWith(TEST_RUN_END))
+                    continue;
+
+                block.add(startsWithAny(line, ID_MESSAGES) ? prefixId(line, prefix) : line);
+                if (startsWithAny(line, SECTION_STARTS))
+                    inSection = true;
+                else if (!startsWithAny(line, FAILURE_CONTINUATIONS))
+                    block = send(block);
+            }
+            if (!block.isEmpty())
+                send(block);
+        } catch (IOException e) {
+            if (!closed)
+                logger.logError("Error reading the JUnit report of test shard " + shard, e);
+        } finally {
+            if (inTree)
+                treeReceived(shard, count, tree);
+            shardDone(shardMeasured);
+        }
+    }
+
+    private void treeReceived(int shard, int count, List<String> tree) {
+        synchronized (lock) {
+            total += count;
+            trees.set(shard, tree);
+            if (--pendingTrees > 0)
+                return;
+        }
+
+        // The JUnit view may take a while to accept the connection, the shards keep being read in the meantime
+        Writer writer = connect();
+        synchronized (lock) {
+            out = writer;
+            connected = true;
+            write(Collections.singletonList(TEST_RUN_START + total + " v2"));
+            for (List<String> shardTree : trees)
+                write(shardTree);
+            for (List<String> block : pendingBlocks)
+                write(block);
+            pendingBlocks.clear();
+        }
+    }
+
+    private List<String> send(List<String> block) {
+        synchronized (lock) {
+            if (!connected)
+                pendingBlocks.add(block);
+            else
+                write(block);
+        }
+        return new ArrayList<String>();
+    }
+
+    private void shardDone(Map<String,Long> shardMeasured) {
+        Map<String,Long> result;
+        Writer finished;
+        synchronized (lock) {
+            measured.putAll(shardMeasured);
+            if (--running > 0)
+                return;
+
+            write(Collections.singletonList(TEST_RUN_END + (System.currentTimeMillis() - start)));
+            finished = out;
+            out = null;
+            result = new HashMap<String,Long>(measured);
+        }
+
+        // The durations are recorded before the JUnit view sees the end of the run
+        durations.update(result);
+        if (finished != null) {
+            try {
+                finished.close();
+            } catch (IOException e) {
+                // ignore
+            }
+        }
+    }
+
+    /*
+     * Must not be called while holding the lock, as it retries until the JUnit view accepts the connection
+     */
+    private Writer connect() {
+        long deadline = System.currentTimeMillis() + CONNECT_TIMEOUT;
+        while (!closed) {
+            try {
+                @SuppressWarnings("resource")
+                Socket socket = new Socket(host, junitPort);
+                return new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8);
+            } catch (IOException e) {
+                if (System.currentTimeMillis() > deadline) {
+                    logger.logError("Unable to connect to the JUnit view on port " + junitPort, e);
+                    return null;
+                }
+            }
+            try {
+                Thread.sleep(CONNECT_RETRY);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return null;
+            }
+        }
+        return null;
+    }
+
+    private void write(List<String> lines) {
+        if (out == null)
+            return;
+        try {
+            for (String line : lines) {
+                out.write(line);
+                out.write('\n');
+            }
+            out.flush();
+        } catch (IOException e) {
+            logger.logError("Error writing the JUnit report to port " + junitPort, e);
+            try {
+                out.close();
+            } catch (IOException e1) {
+                // ignore
+            }
+            out = null;
+        }
+    }
+
+    /*
+     * Accumulate the time between the start and end of each test by test class
+     */
+    private static void measure(String line, Map<String,Long> started, Map<String,Long> shardMeasured) {
+        if (line.startsWith(TEST_START)) {
+            started.put(id(line), System.currentTimeMillis());
+        } else if (line.startsWith(TEST_END)) {
+            Long startTime = started.remove(id(line));
+            if (startTime == null)
+                return;
+            String className = className(line);
+            if (className == null)
+                return;
+            long elapsed = System.currentTimeMillis() - startTime;
+            Long previous = shardMeasured.get(className);
+            shardMeasured.put(className, previous != null ? previous + elapsed : elapsed);
+        }
+    }
+
+    static String className(String line) {
+        int comma = line.indexOf(',', MESSAGE_LENGTH);
+        if (comma < 0)
+            return null;
+        Matcher m = TEST_NAME_P.matcher(line.substring(comma + 1));
+        return m.lookingAt() ? m.group(1) : null;
+    }
+
+    private static String id(String line) {
+        int comma = line.indexOf(',', MESSAGE_LENGTH);
+        return comma < 0 ? line.substring(MESSAGE_LENGTH) : line.substring(MESSAGE_LENGTH, comma);
+    }
+
+    private static String prefixId(String line, String prefix) {
+        return line.substring(0, MESSAGE_LENGTH) + prefix + line.substring(MESSAGE_LENGTH);
+    }
+
+    private static int parseCount(String line) {
+        String[] parts = line.substring(MESSAGE_LENGTH).trim().split("\\s+");
+        try {
+            return Integer.parseInt(parts[0]);
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    private static boolean startsWithAny(String line, String[] prefixes) {
+        for (String prefix : prefixes) {
+            if (line.startsWith(prefix))
+                return true;
+        }
+        return false;
+    }
+
+}
@@ -0,0 +1,85 @@
+package bndtools.launch;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+
+/**
+ * Splits the tests of a JUnit launch into shards that each run in their own framework. A test class is never split
+ * over shards. The classes are balanced by the duration of their last run, the longest first; classes that have not
+ * run before are assumed to take the average time.
+ */
+final class JUnitShardPlanner {
+
+    static final long DEFAULT_DURATION = 1000L;
+
+    private JUnitShardPlanner() {}
+
+    /**
+     * @param tests the test names, either a class name or a class name and method separated by a colon
+     * @param shards the maximum number of shards
+     * @param durations the last known duration of test classes, in milliseconds
+     * @return the tests of each shard, there are never more shards than test classes
+     */
+    static List<List<String>> plan(Collection<String> tests, int shards, Map<String,Long> durations) {
+        Map<String,List<String>> byClass = new LinkedHashMap<String,List<String>>();
+        for (String test : tests) {
+            int colon = test.indexOf(':');
+            String className = colon < 0 ? test : test.substring(0, colon);
+            List<String> classTests = byClass.get(className);
+            if (classTests == null) {
+                classTests = new ArrayList<String>();
+                byClass.put(className, classTests);
+            }
+            classTests.add(test);
+        }
+
+        long known = 0L;
+        int knownCount = 0;
+        for (String className : byClass.keySet()) {
+            Long duration = durations.get(className);
+            if (duration != null) {
+                known += duration;
+                knownCount++;
+            }
+        }
+        long average = knownCount > 0 ? Math.max(1L, known / knownCount) : DEFAULT_DURATION;
+
+        Map<String,Long> estimates = new LinkedHashMap<String,Long>();
+        for (String className : byClass.keySet()) {
+            Long duration = durations.get(className);
+            estimates.put(className, duration != null ? duration : average);
+        }
+        List<Entry<String,Long>> ordered = new ArrayList<Entry<String,Long>>(estimates.entrySet());
+        // Stable, so classes with the same estimate keep the order in which they were selected
+        Collections.sort(ordered, new Comparator<Entry<String,Long>>() {
+            @Override
+            public int compare(Entry<String,Long> e1, Entry<String,Long> e2) {
+                return Long.compare(e2.getValue(), e1.getValue());
+            }
+        });
+
+        int count = Math.max(1, Math.min(shards, byClass.size()));
+        List<List<String>> result = new ArrayList<List<String>>(count);
+        long[] loads = new long[count];
+        for (int i = 0; i < count; i++)
+            result.add(new ArrayList<String>());
+
+        for (Entry<String,Long> entry : ordered) {
+            int lightest = 0;
+            for (int i = 1; i < count; i++) {
+                if (loads[i] < loads[lightest])
+                    lightest = i;
+            }
+            result.get(lightest).addAll(byClass.get(entry.getKey()));
+            loads[lightest] += entry.getValue();
+        }
+        return result;
+    }
+
+}
@@ -25,6 +25,10 @@ public interface LaunchConstants {
     public static final String ATTR_OLD_JUNIT_KEEP_ALIVE = "bndtools.runtime.junit.keepAlive";
     public static final String ATTR_JUNIT_KEEP_ALIVE = "junit.keepAlive";
     public static final boolean DEFAULT_JUNIT_KEEP_ALIVE = false;
+    public static final String ATTR_JUNIT_SHARDS = "junit.shards";
+    public static final int DEFAULT_JUNIT_SHARDS = 1;
+    public static final String ATTR_JUNIT_CHANGED_TESTS_ONLY = "junit.changedTestsOnly";
+    public static final boolean DEFAULT_JUNIT_CHANGED_TESTS_ONLY = false;
 
     public static final int LAUNCH_STATUS_JUNIT = 999;
 }
\ No newline at end of file
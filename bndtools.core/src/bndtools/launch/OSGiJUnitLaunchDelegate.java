@@ -3,9 +3,16 @@ package bndtools.launch;
 import java.io.File;
 import java.io.IOException;
 import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.TreeMap;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
+import org.bndtools.api.ILogger;
+import org.bndtools.api.Logger;
 import org.bndtools.utils.osgi.BundleUtils;
 import org.eclipse.core.resources.IResource;
 import org.eclipse.core.runtime.CoreException;
@@ -13,11 +20,14 @@ import org.eclipse.core.runtime.IProgressMonitor;
 import org.eclipse.core.runtime.IStatus;
 import org.eclipse.core.runtime.Status;
 import org.eclipse.core.runtime.SubMonitor;
+import org.eclipse.debug.core.DebugEvent;
 import org.eclipse.debug.core.DebugPlugin;
+import org.eclipse.debug.core.IDebugEventSetListener;
 import org.eclipse.debug.core.ILaunch;
 import org.eclipse.debug.core.ILaunchConfiguration;
 import org.eclipse.debug.core.ILaunchConfigurationWorkingCopy;
 import org.eclipse.debug.core.IStatusHandler;
+import org.eclipse.debug.core.model.IProcess;
 import org.eclipse.jdt.launching.IJavaLaunchConfigurationConstants;
 import org.eclipse.jdt.launching.SocketUtil;
 import org.osgi.framework.Bundle;
@@ -42,11 +52,19 @@ public class OSGiJUnitLaunchDelegate extends AbstractOSGiLaunchDelegate {
     public static final String ORG_BNDTOOLS_TESTNAMES = "org.bndtools.testnames";
     private static final String JDT_JUNIT_BSN = "org.eclipse.jdt.junit";
     private static final String ATTR_JUNIT_PORT = "org.eclipse.jdt.junit.PORT";
+    private static final String TEST_DURATIONS_FILE = "junit-durations.properties";
+    private static final String TEST_SELECTION_DIR = "test-selection";
+    private static final ILogger logger = Logger.getLogger(OSGiJUnitLaunchDelegate.class);
 
     private int junitPort;
     private ProjectTester bndTester;
     private EclipseJUnitTester bndEclipseTester;
 
+    // The testers of the frameworks the tests are sharded over, null when the tests run in a single framework
+    private List<ProjectTester> shardTesters;
+    private int[] shardPorts;
+    private int currentShard = -1;
+
     @Override
     protected void initialiseBndLauncher(ILaunchConfiguration configuration, Project model) throws Exception {
         synchronized (model) {
@@ -56,6 +74,16 @@ public class OSGiJUnitLaunchDelegate extends AbstractOSGiLaunchDelegate {
         if (bndTester instanceof EclipseJUnitTester)
             bndEclipseTester = (EclipseJUnitTester) bndTester;
         junitPort = configureTester(configuration);
+
+        shardTesters = null;
+        int shards = configuration.getAttribute(LaunchConstants.ATTR_JUNIT_SHARDS, LaunchConstants.DEFAULT_JUNIT_SHARDS);
+        if (shards > 1 && !bndTester.getContinuous() && !bndTester.getTests().isEmpty()) {
+            List<List<String>> plan = JUnitShardPlanner.plan(bndTester.getTests(), shards, getTestDurations().load());
+            if (plan.size() > 1) {
+                configureShards(configuration, model, plan);
+                return;
+            }
+        }
         bndTester.prepare();
     }
 
@@ -74,7 +102,8 @@ public class OSGiJUnitLaunchDelegate extends AbstractOSGiLaunchDelegate {
 
     @Override
     protected IStatus getLauncherStatus() {
-        return createStatus("Problem(s) preparing the runtime environment.", bndTester.getProjectLauncher().getErrors(), bndTester.getProjectLauncher().getWarnings());
+        ProjectLauncher launcher = shardTesters != null ? shardTesters.get(0).getProjectLauncher() : bndTester.getProjectLauncher();
+        return createStatus("Problem(s) preparing the runtime environment.", launcher.getErrors(), launcher.getWarnings());
     }
 
     // A couple of hacks to make sure the JUnit plugin is active and notices our
@@ -113,7 +142,84 @@ public class OSGiJUnitLaunchDelegate extends AbstractOSGiLaunchDelegate {
             throw new CoreException(new Status(IStatus.ERROR, Plugin.PLUGIN_ID, 0, "Error obtaining OSGi project tester.", e));
         }
 
-        super.launch(configuration, mode, launch, progress.newChild(1, SubMonitor.SUPPRESS_NONE));
+        if (shardTesters == null) {
+            super.launch(configuration, mode, launch, progress.newChild(1, SubMonitor.SUPPRESS_NONE));
+            return;
+        }
+
+        // Each shard reports to the merger, which reports the combined test run to the JUnit view
+        JUnitShardMerger merger;
+        try {
+            merger = new JUnitShardMerger("localhost", junitPort, shardPorts, getTestDurations());
+        } catch (IOException e) {
+            throw new CoreException(new Status(IStatus.ERROR, Plugin.PLUGIN_ID, 0, "Error listening for the JUnit reports of the test shards.", e));
+        }
+        IDebugEventSetListener cleanup = registerMergerCleanup(launch, merger, shardTesters.size());
+        merger.start();
+
+        SubMonitor shardsProgress = progress.newChild(1, SubMonitor.SUPPRESS_NONE).setWorkRemaining(shardTesters.size());
+        try {
+            for (currentShard = 0; currentShard < shardTesters.size(); currentShard++)
+                super.launch(configuration, mode, launch, shardsProgress.newChild(1, SubMonitor.SUPPRESS_NONE));
+        } catch (CoreException | RuntimeException e) {
+            DebugPlugin.getDefault().removeDebugEventListener(cleanup);
+            merger.close();
+            throw e;
+        } finally {
+            currentShard = -1;
+        }
+    }
+
+    private void configureShards(ILaunchConfiguration configuration, Project model, List<List<String>> plan) throws Exception {
+        shardTesters = new ArrayList<ProjectTester>(plan.size());
+        shardPorts = new int[plan.size()];
+        for (int i = 0; i < plan.size(); i++) {
+            ProjectTester tester;
+            synchronized (model) {
+                tester = model.getProjectTester();
+            }
+            if (!(tester instanceof EclipseJUnitTester))
+                throw new CoreException(new Status(IStatus.ERROR, Plugin.PLUGIN_ID, 0, "Bnd/Eclipse tester was not initialised.", null));
+
+            // Every shard runs its own framework, so it needs its own storage and its own port to report on
+            shardPorts[i] = SocketUtil.findFreePort();
+            ((EclipseJUnitTester) tester).setPort(shardPorts[i]);
+            ProjectLauncher launcher = tester.getProjectLauncher();
+            File storage = launcher.getStorageDir();
+            launcher.setStorageDir(new File(storage.getParentFile(), storage.getName() + "-" + i));
+            enableTraceOptionIfSetOnConfiguration(configuration, launcher);
+            tester.setContinuous(false);
+            for (String test : plan.get(i))
+                tester.addTest(test);
+            tester.prepare();
+            shardTesters.add(tester);
+        }
+    }
+
+    /*
+     * Closes the merger once the processes of all shards have been added to the launch and have terminated. An early
+     * shard may terminate before the later shards are launched.
+     */
+    private static IDebugEventSetListener registerMergerCleanup(final ILaunch launch, final JUnitShardMerger merger, final int shards) {
+        IDebugEventSetListener listener = new IDebugEventSetListener() {
+            @Override
+            public void handleDebugEvents(DebugEvent[] events) {
+                for (DebugEvent event : events) {
+                    if (event.getKind() == DebugEvent.TERMINATE && event.getSource() instanceof IProcess && ((IProcess) event.getSource()).getLaunch() == launch && launch.getProcesses().length >= shards
+                            && allTerminated(launch)) {
+                        DebugPlugin.getDefault().removeDebugEventListener(this);
+                        merger.close();
+                        return;
+                    }
+                }
+            }
+        };
+        DebugPlugin.getDefault().addDebugEventListener(listener);
+        return listener;
+    }
+
+    private static TestDurations getTestDurations() {
+        return new TestDurations(new File(Plugin.getDefault().getStateLocation().toFile(), TEST_DURATIONS_FILE));
     }
 
     private int configureTester(ILaunchConfiguration configuration) throws CoreException, IOException {
@@ -161,10 +267,15 @@ public class OSGiJUnitLaunchDelegate extends AbstractOSGiLaunchDelegate {
         } else {
             //We're not being asked to run a specific class and/or method, so use
             String tests = configuration.getAttribute(ORG_BNDTOOLS_TESTNAMES, (String) null);
+            List<String> testNames = new ArrayList<String>();
             if (tests != null && !tests.trim().isEmpty()) {
-                for (String test : tests.trim().split("\\s+")) {
-                    bndTester.addTest(test);
-                }
+                testNames.addAll(Arrays.asList(tests.trim().split("\\s+")));
+            }
+            if (configuration.getAttribute(LaunchConstants.ATTR_JUNIT_CHANGED_TESTS_ONLY, LaunchConstants.DEFAULT_JUNIT_CHANGED_TESTS_ONLY)) {
+                testNames = selectChangedTests(configuration, testNames);
+            }
+            for (String test : testNames) {
+                bndTester.addTest(test);
             }
         }
 
@@ -179,6 +290,47 @@ public class OSGiJUnitLaunchDelegate extends AbstractOSGiLaunchDelegate {
         return port;
     }
 
+    /*
+     * Select the tests that can be affected by the run bundles that changed since the previous launch. Without
+     * explicit tests, the candidates are the tests listed in the Test-Cases headers of the run bundles. The selection
+     * is only saved once the tests have passed.
+     */
+    private List<String> selectChangedTests(ILaunchConfiguration configuration, List<String> tests) throws CoreException {
+        try {
+            ProjectLauncher launcher = bndTester.getProjectLauncher();
+            List<File> runBundles = new ArrayList<File>();
+            for (String path : launcher.getRunBundles())
+                runBundles.add(new File(path));
+
+            List<String> candidates = tests.isEmpty() ? ChangedTestSelector.testCases(runBundles) : tests;
+            if (candidates.isEmpty())
+                return tests;
+
+            List<String> environment = new ArrayList<String>();
+            for (String path : launcher.getRunpath()) {
+                File file = new File(path);
+                environment.add(path + "," + file.lastModified() + "," + file.length());
+            }
+            environment.add(new TreeMap<String,String>(launcher.getRunProperties()).toString());
+            environment.addAll(launcher.getRunVM());
+            environment.addAll(launcher.getRunProgramArgs());
+
+            String stateName = ChangedTestSelector.key(Collections.singletonList(model.getPropertiesFile().getAbsolutePath()));
+            File stateFile = new File(Plugin.getDefault().getStateLocation().toFile(), TEST_SELECTION_DIR + "/" + stateName + ".properties");
+            ChangedTestSelector.Selection selection = new ChangedTestSelector(stateFile).select(candidates, runBundles, ChangedTestSelector.key(environment));
+            ChangedTestSelectionSaver.saveWhenPassed(configuration.getName(), selection);
+            List<String> selected = selection.getTests();
+            if (selected.isEmpty()) {
+                // Nothing changed, so this is a deliberate rerun
+                logger.logInfo("No tests are affected by changes since the previous launch, running all tests", null);
+                return tests;
+            }
+            return selected;
+        } catch (Exception e) {
+            throw new CoreException(new Status(IStatus.ERROR, Plugin.PLUGIN_ID, 0, "Error selecting the tests affected by changes.", e));
+        }
+    }
+
     private void assertBndEclipseTester() throws CoreException {
         if (bndEclipseTester == null)
             throw new CoreException(new Status(IStatus.ERROR, Plugin.PLUGIN_ID, 0, "Bnd/Eclipse tester was not initialised.", null));
@@ -195,6 +347,8 @@ public class OSGiJUnitLaunchDelegate extends AbstractOSGiLaunchDelegate {
 
     @Override
     protected ProjectLauncher getProjectLauncher() throws CoreException {
+        if (currentShard >= 0)
+            return shardTesters.get(currentShard).getProjectLauncher();
         if (bndTester == null)
             throw new CoreException(new Status(IStatus.ERROR, Plugin.PLUGIN_ID, 0, "Bnd tester was not initialised.", null));
         return bndTester.getProjectLauncher();
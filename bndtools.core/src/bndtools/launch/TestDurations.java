@@ -0,0 +1,93 @@
+package bndtools.launch;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Properties;
+
+import org.bndtools.api.ILogger;
+import org.bndtools.api.Logger;
+
+/**
+ * The duration of the most recent run of each test class, in milliseconds, kept in a local properties file. It is
+ * used to balance test classes over the shards of a JUnit launch.
+ */
+class TestDurations {
+
+    private static final ILogger logger = Logger.getLogger(TestDurations.class);
+
+    private final File file;
+
+    TestDurations(File file) {
+        this.file = file;
+    }
+
+    synchronized Map<String,Long> load() {
+        Map<String,Long> durations = new HashMap<String,Long>();
+        if (!file.isFile())
+            return durations;
+
+        Properties props = new Properties();
+        try (InputStream in = new FileInputStream(file)) {
+            props.load(in);
+        } catch (IOException e) {
+            logger.logWarning("Unable to read test durations from " + file, e);
+            return durations;
+        }
+        for (String className : props.stringPropertyNames()) {
+            try {
+                durations.put(className, Long.valueOf(props.getProperty(className)));
+            } catch (NumberFormatException e) {
+                // ignore a damaged entry, it is replaced after the next run
+            }
+        }
+        return durations;
+    }
+
+    /**
+     * Record the measured durations. The file is read again first so that concurrent launches do not lose each
+     * other's measurements.
+     */
+    synchronized void update(Map<String,Long> measured) {
+        if (measured.isEmpty())
+            return;
+
+        Map<String,Long> durations = load();
+        durations.putAll(measured);
+
+        Properties props = new Properties();
+        for (Entry<String,Long> entry : durations.entrySet())
+            props.setProperty(entry.getKey(), Long.toString(entry.getValue()));
+
+        try {
+            File dir = file.getAbsoluteFile().getParentFile();
+            dir.mkdirs();
+            File tempFile = File.createTempFile(file.getName(), ".tmp", dir);
+            try {
+                try (OutputStream out = new FileOutputStream(tempFile)) {
+                    props.store(out, null);
+                }
+                try {
+                    Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+                } catch (AtomicMoveNotSupportedException e) {
+                    Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+                }
+            } finally {
+                if (tempFile.exists())
+                    tempFile.delete();
+            }
+        } catch (IOException e) {
+            logger.logWarning("Unable to write test durations to " + file, e);
+        }
+    }
+
+}
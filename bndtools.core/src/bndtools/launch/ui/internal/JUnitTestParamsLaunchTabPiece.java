@@ -12,15 +12,23 @@ import org.eclipse.swt.widgets.Button;
 import org.eclipse.swt.widgets.Composite;
 import org.eclipse.swt.widgets.Control;
 import org.eclipse.swt.widgets.Group;
+import org.eclipse.swt.widgets.Label;
+import org.eclipse.swt.widgets.Spinner;
 
 import bndtools.launch.LaunchConstants;
 import bndtools.launch.ui.AbstractLaunchTabPiece;
 
 public class JUnitTestParamsLaunchTabPiece extends AbstractLaunchTabPiece {
 
+    private static final int MAX_SHARDS = 16;
+
     private boolean keepAlive = false;
+    private boolean changedTestsOnly = LaunchConstants.DEFAULT_JUNIT_CHANGED_TESTS_ONLY;
+    private int shards = LaunchConstants.DEFAULT_JUNIT_SHARDS;
 
     private Button keepAliveButton;
+    private Button changedTestsOnlyButton;
+    private Spinner shardsSpinner;
 
     public Control createControl(Composite parent) {
         Group group = new Group(parent, SWT.NONE);
@@ -29,6 +37,15 @@ public class JUnitTestParamsLaunchTabPiece extends AbstractLaunchTabPiece {
         keepAliveButton = new Button(group, SWT.CHECK);
         keepAliveButton.setText(Messages.JUnitTestParamsLaunchTabPiece_labelKeepAlive);
 
+        changedTestsOnlyButton = new Button(group, SWT.CHECK);
+        changedTestsOnlyButton.setText(Messages.JUnitTestParamsLaunchTabPiece_labelChangedTestsOnly);
+
+        Label shardsLabel = new Label(group, SWT.NONE);
+        shardsLabel.setText(Messages.JUnitTestParamsLaunchTabPiece_labelShards);
+        shardsSpinner = new Spinner(group, SWT.BORDER);
+        shardsSpinner.setValues(shards, 1, MAX_SHARDS, 0, 1, 4);
+        shardsSpinner.setToolTipText(Messages.JUnitTestParamsLaunchTabPiece_descShards);
+
         // Listeners
         keepAliveButton.addSelectionListener(new SelectionAdapter() {
             @Override
@@ -39,21 +56,49 @@ public class JUnitTestParamsLaunchTabPiece extends AbstractLaunchTabPiece {
                 firePropertyChange("keepAlive", old, keepAlive); //$NON-NLS-1$
             }
         });
+        changedTestsOnlyButton.addSelectionListener(new SelectionAdapter() {
+            @Override
+            public void widgetSelected(SelectionEvent e) {
+                setDirty(true);
+                boolean old = changedTestsOnly;
+                changedTestsOnly = changedTestsOnlyButton.getSelection();
+                firePropertyChange("changedTestsOnly", old, changedTestsOnly); //$NON-NLS-1$
+            }
+        });
+        shardsSpinner.addSelectionListener(new SelectionAdapter() {
+            @Override
+            public void widgetSelected(SelectionEvent e) {
+                setDirty(true);
+                int old = shards;
+                shards = shardsSpinner.getSelection();
+                firePropertyChange("shards", old, shards); //$NON-NLS-1$
+            }
+        });
 
         // Layout
         GridData gd;
 
-        GridLayout layout = new GridLayout(1, false);
+        GridLayout layout = new GridLayout(2, false);
         group.setLayout(layout);
 
-        gd = new GridData(SWT.LEFT, SWT.CENTER, false, false);
+        gd = new GridData(SWT.LEFT, SWT.CENTER, false, false, 2, 1);
         keepAliveButton.setLayoutData(gd);
 
+        gd = new GridData(SWT.LEFT, SWT.CENTER, false, false, 2, 1);
+        changedTestsOnlyButton.setLayoutData(gd);
+
+        gd = new GridData(SWT.LEFT, SWT.CENTER, false, false);
+        shardsLabel.setLayoutData(gd);
+        gd = new GridData(SWT.LEFT, SWT.CENTER, false, false);
+        shardsSpinner.setLayoutData(gd);
+
         return group;
     }
 
     public void setDefaults(ILaunchConfigurationWorkingCopy configuration) {
         configuration.setAttribute(LaunchConstants.ATTR_JUNIT_KEEP_ALIVE, LaunchConstants.DEFAULT_JUNIT_KEEP_ALIVE);
+        configuration.setAttribute(LaunchConstants.ATTR_JUNIT_CHANGED_TESTS_ONLY, LaunchConstants.DEFAULT_JUNIT_CHANGED_TESTS_ONLY);
+        configuration.setAttribute(LaunchConstants.ATTR_JUNIT_SHARDS, LaunchConstants.DEFAULT_JUNIT_SHARDS);
     }
 
     @SuppressWarnings("deprecation")
@@ -63,11 +108,19 @@ public class JUnitTestParamsLaunchTabPiece extends AbstractLaunchTabPiece {
             keepAlive = configuration.getAttribute(LaunchConstants.ATTR_OLD_JUNIT_KEEP_ALIVE, LaunchConstants.DEFAULT_JUNIT_KEEP_ALIVE);
         }
         keepAliveButton.setSelection(keepAlive);
+
+        changedTestsOnly = configuration.getAttribute(LaunchConstants.ATTR_JUNIT_CHANGED_TESTS_ONLY, LaunchConstants.DEFAULT_JUNIT_CHANGED_TESTS_ONLY);
+        changedTestsOnlyButton.setSelection(changedTestsOnly);
+
+        shards = configuration.getAttribute(LaunchConstants.ATTR_JUNIT_SHARDS, LaunchConstants.DEFAULT_JUNIT_SHARDS);
+        shardsSpinner.setSelection(shards);
     }
 
     @SuppressWarnings("deprecation")
     public void performApply(ILaunchConfigurationWorkingCopy configuration) {
         configuration.setAttribute(LaunchConstants.ATTR_JUNIT_KEEP_ALIVE, keepAlive);
         configuration.removeAttribute(LaunchConstants.ATTR_OLD_JUNIT_KEEP_ALIVE);
+        configuration.setAttribute(LaunchConstants.ATTR_JUNIT_CHANGED_TESTS_ONLY, changedTestsOnly);
+        configuration.setAttribute(LaunchConstants.ATTR_JUNIT_SHARDS, shards);
     }
 }
@@ -4,9 +4,12 @@ import org.eclipse.osgi.util.NLS;
 
 class Messages extends NLS {
     private static final String BUNDLE_NAME = "bndtools.launch.ui.internal.messages"; //$NON-NLS-1$
+    public static String JUnitTestParamsLaunchTabPiece_descShards;
     public static String JUnitTestParamsLaunchTabPiece_descStartingTimeout;
     public static String JUnitTestParamsLaunchTabPiece_errorTimeoutValue;
+    public static String JUnitTestParamsLaunchTabPiece_labelChangedTestsOnly;
     public static String JUnitTestParamsLaunchTabPiece_labelKeepAlive;
+    public static String JUnitTestParamsLaunchTabPiece_labelShards;
     public static String JUnitTestParamsLaunchTabPiece_labelStartingTimeout;
     public static String JUnitTestParamsLaunchTabPiece_title;
     static {
@@ -28,6 +28,7 @@ public class BndPreferences {
     private static final String PREF_WARN_EXISTING_LAUNCH = "warnExistingLaunch";
     private static final String PREF_HIDE_WARNING_EXTERNAL_FILE = "hideExternalFileWarning";
     private static final String PREF_BUILD_LOGGING = "buildLogging";
+    public static final String PREF_BUILD_TRACING = "buildTracing";
     private static final String PREF_EDITOR_OPEN_SOURCE_TAB = "editorOpenSourceTab";
     private static final String PREF_HEADLESS_BUILD_CREATE = "headlessBuildCreate";
     private static final String PREF_HEADLESS_BUILD_PLUGINS = "headlessBuildPlugins";
@@ -142,6 +143,14 @@ public class BndPreferences {
         return store.getInt(PREF_BUILD_LOGGING);
     }
 
+    public void setBuildTracing(boolean buildTracing) {
+        store.setValue(PREF_BUILD_TRACING, buildTracing);
+    }
+
+    public boolean getBuildTracing() {
+        return store.getBoolean(PREF_BUILD_TRACING);
+    }
+
     public void setHideInitCnfAdvice(boolean hide) {
         store.setValue(PREF_HIDE_INITIALISE_CNF_ADVICE, hide);
     }
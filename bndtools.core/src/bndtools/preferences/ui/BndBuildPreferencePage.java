@@ -6,6 +6,7 @@ import org.eclipse.swt.events.SelectionAdapter;
 import org.eclipse.swt.events.SelectionEvent;
 import org.eclipse.swt.layout.GridData;
 import org.eclipse.swt.layout.GridLayout;
+import org.eclipse.swt.widgets.Button;
 import org.eclipse.swt.widgets.Combo;
 import org.eclipse.swt.widgets.Composite;
 import org.eclipse.swt.widgets.Control;
@@ -19,11 +20,13 @@ public class BndBuildPreferencePage extends PreferencePage implements IWorkbench
 
     private BndPreferences prefs;
     private int buildLogging;
+    private boolean buildTracing;
 
     @Override
     public void init(IWorkbench workbench) {
         prefs = new BndPreferences();
         buildLogging = prefs.getBuildLogging();
+        buildTracing = prefs.getBuildTracing();
     }
 
     @Override
@@ -42,8 +45,13 @@ public class BndBuildPreferencePage extends PreferencePage implements IWorkbench
         });
         cmbBuildLogging.setLayoutData(new GridData(SWT.FILL, SWT.CENTER, true, false));
 
+        final Button btnBuildTracing = new Button(composite, SWT.CHECK);
+        btnBuildTracing.setText("Record build trace (Chrome trace format, in the plug-in state location)");
+        btnBuildTracing.setLayoutData(new GridData(SWT.FILL, SWT.CENTER, true, false, 2, 1));
+
         // Load Data
         cmbBuildLogging.select(buildLogging);
+        btnBuildTracing.setSelection(buildTracing);
 
         // Listeners
         cmbBuildLogging.addSelectionListener(new SelectionAdapter() {
@@ -52,6 +60,12 @@ public class BndBuildPreferencePage extends PreferencePage implements IWorkbench
                 buildLogging = cmbBuildLogging.getSelectionIndex();
             }
         });
+        btnBuildTracing.addSelectionListener(new SelectionAdapter() {
+            @Override
+            public void widgetSelected(SelectionEvent e) {
+                buildTracing = btnBuildTracing.getSelection();
+            }
+        });
 
         return composite;
     }
@@ -59,6 +73,7 @@ public class BndBuildPreferencePage extends PreferencePage implements IWorkbench
     @Override
     public boolean performOk() {
         prefs.setBuildLogging(buildLogging);
+        prefs.setBuildTracing(buildTracing);
 
         return true;
     }
@@ -2,61 +2,242 @@ package bndtools.tasks;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.jar.JarFile;
+import java.util.jar.Manifest;
 
+import org.bndtools.utils.osgi.BundleUtils;
 import org.bndtools.utils.workspace.FileUtils;
 import org.eclipse.core.resources.IFile;
 import org.eclipse.core.resources.IProject;
 import org.eclipse.jdt.core.JavaCore;
+import org.osgi.resource.Capability;
 
 import aQute.bnd.build.Project;
 import aQute.bnd.osgi.Builder;
+import aQute.bnd.osgi.Jar;
+import aQute.lib.io.IO;
 import bndtools.central.Central;
+import bndtools.model.resolution.RequirementWrapper;
 
+/**
+ * Loads the capabilities and requirements of the bundle described by a bnd file. When the bundle built by the last
+ * successful build of the project is up to date with the bnd files and the compiled classes of the project, it is
+ * analysed instead of building the bundle again, and the result is cached until that bundle changes. Otherwise the
+ * bundle is built in memory from the bnd file.
+ */
 public class BndFileCapReqLoader extends BndBuilderCapReqLoader {
 
+    static final int MAX_CACHED = 64;
+
+    // The capabilities and requirements of the built bundles by bnd file, least recently used first. Guarded by itself.
+    private static final Map<File,BuiltCapReqs> builtCache = new LinkedHashMap<File,BuiltCapReqs>(16, 0.75f, true) {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<File,BuiltCapReqs> eldest) {
+            return size() > MAX_CACHED;
+        }
+    };
+
     private Builder builder;
+    private boolean resolved;
+    private Project bndProject;
+    private Builder subBuilder;
+    private File builtJar;
 
     public BndFileCapReqLoader(File bndFile) {
         super(bndFile);
     }
 
     @Override
-    protected synchronized Builder getBuilder() throws Exception {
-        if (builder == null) {
-            Builder b;
-
-            IFile[] wsfiles = FileUtils.getWorkspaceFiles(file);
-            if (wsfiles == null || wsfiles.length == 0)
-                throw new Exception("Unable to determine project owner for bnd file: " + file.getAbsolutePath());
+    public Map<String,List<Capability>> loadCapabilities() throws Exception {
+        BuiltCapReqs cached = getBuiltCapReqs();
+        if (cached != null)
+            return cached.capabilities;
+        return super.loadCapabilities();
+    }
 
-            IProject project = wsfiles[0].getProject();
+    @Override
+    public Map<String,List<RequirementWrapper>> loadRequirements() throws Exception {
+        BuiltCapReqs cached = getBuiltCapReqs();
+        if (cached != null)
+            return cached.copyRequirements();
+        return super.loadRequirements();
+    }
 
-            // Calculate the manifest
-            Project bndProject = Central.getInstance().getModel(JavaCore.create(project));
+    @Override
+    protected synchronized Builder getBuilder() throws Exception {
+        if (builder == null) {
+            resolve();
             if (bndProject == null)
                 return null;
-            if (file.getName().equals(Project.BNDFILE)) {
-                b = bndProject.getSubBuilders().iterator().next();
-            } else {
-                b = bndProject.getSubBuilder(file);
-            }
 
-            if (b == null) {
+            Builder b;
+            if (builtJar != null) {
                 b = new Builder();
-                b.setProperties(file);
+                b.setJar(new Jar(builtJar));
+                b.analyze();
+                subBuilder.close();
+            } else {
+                b = subBuilder;
+                if (b == null) {
+                    b = new Builder();
+                    b.setProperties(file);
+                }
+                b.build();
             }
-            b.build();
+            subBuilder = null;
 
             builder = b;
         }
         return builder;
     }
 
+    /**
+     * @return the cached capabilities and requirements of the built bundle, or null when the built bundle is stale
+     */
+    private synchronized BuiltCapReqs getBuiltCapReqs() throws Exception {
+        resolve();
+        if (builtJar == null)
+            return null;
+
+        String stamp = builtJar.getAbsolutePath() + ':' + builtJar.lastModified() + ':' + builtJar.length();
+        BuiltCapReqs cached = getCached(file, stamp);
+        if (cached == null) {
+            cached = new BuiltCapReqs(stamp, super.loadCapabilities(), super.loadRequirements());
+            putCached(file, cached);
+        }
+        return cached;
+    }
+
+    static BuiltCapReqs getCached(File bndFile, String stamp) {
+        synchronized (builtCache) {
+            BuiltCapReqs cached = builtCache.get(bndFile);
+            return cached != null && cached.stamp.equals(stamp) ? cached : null;
+        }
+    }
+
+    static void putCached(File bndFile, BuiltCapReqs capReqs) {
+        synchronized (builtCache) {
+            builtCache.put(bndFile, capReqs);
+        }
+    }
+
+    private static void removeCached(File bndFile) {
+        synchronized (builtCache) {
+            builtCache.remove(bndFile);
+        }
+    }
+
+    private void resolve() throws Exception {
+        if (resolved)
+            return;
+        resolved = true;
+
+        IFile[] wsfiles = FileUtils.getWorkspaceFiles(file);
+        if (wsfiles == null || wsfiles.length == 0)
+            throw new Exception("Unable to determine project owner for bnd file: " + file.getAbsolutePath());
+
+        IProject project = wsfiles[0].getProject();
+
+        // Calculate the manifest
+        bndProject = Central.getInstance().getModel(JavaCore.create(project));
+        if (bndProject == null)
+            return;
+        if (file.getName().equals(Project.BNDFILE)) {
+            subBuilder = bndProject.getSubBuilders().iterator().next();
+        } else {
+            subBuilder = bndProject.getSubBuilder(file);
+        }
+
+        if (subBuilder != null)
+            builtJar = findBuiltJar(project, bndProject, subBuilder);
+        if (builtJar == null)
+            removeCached(file);
+    }
+
+    /**
+     * Find the bundle built for the builder by the last build of the project, provided none of the bnd files and
+     * compiled classes it was built from has changed since. A build that failed after compiling leaves classes that are
+     * newer than the bundle.
+     */
+    private File findBuiltJar(IProject eclipseProject, Project project, Builder b) throws Exception {
+        File[] buildFiles = project.getBuildFiles(false);
+        if (buildFiles == null)
+            return null;
+
+        // The list of build files is written at the end of a successful build
+        long built = IO.getFile(project.getTarget(), Project.BUILDFILES).lastModified();
+        long modified = Math.max(project.lastModified(), Math.max(file.lastModified(), b.lastModified()));
+        modified = Math.max(modified, OutputFolderStamps.getInstance().lastModified(eclipseProject));
+        return findBuiltJar(buildFiles, b.getBsn(), built, modified);
+    }
+
+    /**
+     * @return the build file with the bundle symbolic name, or null when there is none or the build is older than the
+     *         last modification of its inputs
+     */
+    static File findBuiltJar(File[] buildFiles, String bsn, long built, long modified) throws IOException {
+        if (bsn == null || built < modified)
+            return null;
+
+        for (File buildFile : buildFiles) {
+            if (buildFile == null || !buildFile.isFile())
+                continue;
+            try (JarFile jar = new JarFile(buildFile)) {
+                Manifest manifest = jar.getManifest();
+                if (manifest != null && bsn.equals(BundleUtils.getBundleSymbolicName(manifest.getMainAttributes())))
+                    return buildFile;
+            }
+        }
+        return null;
+    }
+
     @Override
     public synchronized void close() throws IOException {
         if (builder != null)
             builder.close();
         builder = null;
+        if (subBuilder != null)
+            subBuilder.close();
+        subBuilder = null;
+    }
+
+    static class BuiltCapReqs {
+        final String stamp;
+        final Map<String,List<Capability>> capabilities;
+        final Map<String,List<RequirementWrapper>> requirements;
+
+        BuiltCapReqs(String stamp, Map<String,List<Capability>> capabilities, Map<String,List<RequirementWrapper>> requirements) {
+            this.stamp = stamp;
+            this.capabilities = Collections.unmodifiableMap(capabilities);
+            this.requirements = requirements;
+        }
+
+        /*
+         * The wrappers are marked as resolved by the analysis, which depends on the other bundles it is run against
+         */
+        Map<String,List<RequirementWrapper>> copyRequirements() {
+            Map<String,List<RequirementWrapper>> copy = new HashMap<String,List<RequirementWrapper>>();
+            for (Entry<String,List<RequirementWrapper>> entry : requirements.entrySet()) {
+                List<RequirementWrapper> list = new ArrayList<RequirementWrapper>(entry.getValue().size());
+                for (RequirementWrapper rw : entry.getValue()) {
+                    RequirementWrapper rwCopy = new RequirementWrapper();
+                    rwCopy.requirement = rw.requirement;
+                    rwCopy.requirers = rw.requirers;
+                    list.add(rwCopy);
+                }
+                copy.put(entry.getKey(), list);
+            }
+            return copy;
+        }
     }
 
 }
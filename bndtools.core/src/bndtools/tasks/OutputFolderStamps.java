@@ -0,0 +1,151 @@
+package bndtools.tasks;
+
+import java.io.File;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.bndtools.api.ILogger;
+import org.bndtools.api.Logger;
+import org.eclipse.core.resources.IFolder;
+import org.eclipse.core.resources.IProject;
+import org.eclipse.core.resources.IResource;
+import org.eclipse.core.resources.IResourceChangeEvent;
+import org.eclipse.core.resources.IResourceChangeListener;
+import org.eclipse.core.resources.IResourceDelta;
+import org.eclipse.core.resources.IResourceDeltaVisitor;
+import org.eclipse.core.resources.IWorkspace;
+import org.eclipse.core.resources.ResourcesPlugin;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IPath;
+import org.eclipse.jdt.core.JavaCore;
+
+/**
+ * The time of the last change in the Java output folder of each project. The output folder of a project is walked once,
+ * when it is first asked for, and the time is then kept up to date from the resource deltas of the workspace, so that
+ * asking again is cheap.
+ */
+public class OutputFolderStamps implements IResourceChangeListener {
+
+    private static final ILogger logger = Logger.getLogger(OutputFolderStamps.class);
+
+    private static OutputFolderStamps instance = null;
+
+    private final IWorkspace workspace;
+
+    // The newest modification time in the output folder by project name
+    private final ConcurrentMap<String,Long> stamps = new ConcurrentHashMap<String,Long>();
+
+    /**
+     * Get the shared instance. The first call registers it for resource change notifications.
+     */
+    public static synchronized OutputFolderStamps getInstance() {
+        if (instance == null)
+            instance = new OutputFolderStamps(ResourcesPlugin.getWorkspace());
+        return instance;
+    }
+
+    /**
+     * Unregister the shared instance from resource change notifications and drop it. Called when the plugin stops.
+     */
+    public static synchronized void dispose() {
+        if (instance != null) {
+            instance.workspace.removeResourceChangeListener(instance);
+            instance = null;
+        }
+    }
+
+    OutputFolderStamps(IWorkspace workspace) {
+        this.workspace = workspace;
+        workspace.addResourceChangeListener(this, IResourceChangeEvent.POST_CHANGE);
+    }
+
+    /**
+     * @return the newest modification time of the files in the Java output folder of the project, or 0 when it has no
+     *         output folder or the folder is empty
+     */
+    public long lastModified(IProject project) {
+        Long stamp = stamps.get(project.getName());
+        if (stamp != null)
+            return stamp;
+
+        IFolder output = getOutputFolder(project);
+        if (output == null || output.getLocation() == null)
+            return 0;
+        // Changes reported while walking are merged with the result
+        return update(project.getName(), newestModification(output.getLocation().toFile()));
+    }
+
+    @Override
+    public void resourceChanged(IResourceChangeEvent event) {
+        IResourceDelta rootDelta = event.getDelta();
+        if (rootDelta == null)
+            return;
+
+        for (IResourceDelta projectDelta : rootDelta.getAffectedChildren()) {
+            final IProject project = (IProject) projectDelta.getResource();
+            if (projectDelta.getKind() == IResourceDelta.REMOVED) {
+                stamps.remove(project.getName());
+                continue;
+            }
+
+            IFolder output = getOutputFolder(project);
+            IResourceDelta outputDelta = output != null ? rootDelta.findMember(output.getFullPath()) : null;
+            if (outputDelta == null)
+                continue;
+
+            try {
+                outputDelta.accept(new IResourceDeltaVisitor() {
+                    @Override
+                    public boolean visit(IResourceDelta delta) throws CoreException {
+                        IResource resource = delta.getResource();
+                        if (resource.getType() != IResource.FILE)
+                            return true;
+                        // A removed file has no time stamp, but removing it changed its folder
+                        IResource changed = delta.getKind() == IResourceDelta.REMOVED ? resource.getParent() : resource;
+                        update(project.getName(), changed.getLocalTimeStamp());
+                        return false;
+                    }
+                });
+            } catch (CoreException e) {
+                logger.logError("Failed to read the output folder changes of " + project.getName(), e);
+            }
+        }
+    }
+
+    private long update(String project, long time) {
+        while (true) {
+            Long stamp = stamps.putIfAbsent(project, time);
+            if (stamp == null)
+                return time;
+            if (stamp >= time || stamps.replace(project, stamp, time))
+                return Math.max(stamp, time);
+        }
+    }
+
+    private IFolder getOutputFolder(IProject project) {
+        try {
+            if (!project.isOpen() || !project.hasNature(JavaCore.NATURE_ID))
+                return null;
+            IPath location = JavaCore.create(project).getOutputLocation();
+            if (location == null || location.segmentCount() < 2)
+                return null;
+            return workspace.getRoot().getFolder(location);
+        } catch (CoreException e) {
+            return null;
+        }
+    }
+
+    /**
+     * @return the newest modification time of the files in the directory and its subdirectories, or 0 when there are
+     *         none
+     */
+    static long newestModification(File dir) {
+        long newest = 0;
+        File[] files = dir.listFiles();
+        if (files == null)
+            return newest;
+        for (File file : files)
+            newest = Math.max(newest, file.isDirectory() ? newestModification(file) : file.lastModified());
+        return newest;
+    }
+}
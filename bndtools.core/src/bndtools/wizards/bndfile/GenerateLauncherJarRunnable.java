@@ -4,6 +4,8 @@ import java.io.File;
 import java.lang.reflect.InvocationTargetException;
 
 import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.OperationCanceledException;
+import org.eclipse.core.runtime.SubMonitor;
 import org.eclipse.jface.operation.IRunnableWithProgress;
 
 import aQute.bnd.build.Project;
@@ -24,24 +26,36 @@ class GenerateLauncherJarRunnable implements IRunnableWithProgress {
     }
 
     @Override
-    public void run(IProgressMonitor monitor) throws InvocationTargetException {
+    public void run(IProgressMonitor monitor) throws InvocationTargetException, InterruptedException {
+        SubMonitor progress = SubMonitor.convert(monitor, "Exporting " + project.getName(), 10);
         try {
             ProjectLauncher launcher = project.getProjectLauncher();
+            // The embedded bundles are file resources, they are only read when the jar is written
             Jar jar = launcher.executable();
             project.getInfo(launcher);
-
-            if (folder) {
-                File folder = new File(path);
-                jar.writeFolder(folder);
-
-                File start = IO.getFile(folder, "start");
-                if (start.isFile())
-                    start.setExecutable(true);
-            } else
-                jar.write(path);
-
+            progress.worked(1);
+
+            try {
+                LauncherJarExporter exporter = new LauncherJarExporter(jar);
+                if (folder) {
+                    File folder = new File(path);
+                    exporter.writeFolder(folder, progress.newChild(9));
+
+                    File start = IO.getFile(folder, "start");
+                    if (start.isFile())
+                        start.setExecutable(true);
+                } else
+                    exporter.writeJar(new File(path), progress.newChild(9));
+            } finally {
+                jar.close();
+            }
+        } catch (OperationCanceledException e) {
+            throw new InterruptedException();
         } catch (Exception e) {
             throw new InvocationTargetException(e);
+        } finally {
+            if (monitor != null)
+                monitor.done();
         }
     }
 
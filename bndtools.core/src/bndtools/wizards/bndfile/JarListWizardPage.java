@@ -12,13 +12,23 @@ package bndtools.wizards.bndfile;
 
 import java.beans.PropertyChangeListener;
 import java.beans.PropertyChangeSupport;
+import java.io.File;
+import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Future;
+import java.util.jar.JarFile;
 import java.util.jar.Manifest;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
 
+import org.bndtools.api.IExecutionService.Pool;
+import org.bndtools.api.IExecutionService.Priority;
 import org.bndtools.api.ILogger;
 import org.bndtools.api.Logger;
 import org.eclipse.core.resources.IFile;
@@ -49,6 +59,8 @@ import org.eclipse.swt.layout.GridData;
 import org.eclipse.swt.layout.GridLayout;
 import org.eclipse.swt.widgets.Button;
 import org.eclipse.swt.widgets.Composite;
+import org.eclipse.swt.widgets.Control;
+import org.eclipse.swt.widgets.Display;
 import org.eclipse.swt.widgets.FileDialog;
 import org.eclipse.swt.widgets.Label;
 import org.eclipse.swt.widgets.Table;
@@ -58,7 +70,6 @@ import org.eclipse.ui.model.WorkbenchContentProvider;
 import org.eclipse.ui.model.WorkbenchLabelProvider;
 
 import aQute.bnd.osgi.Constants;
-import aQute.bnd.osgi.Jar;
 import bndtools.Plugin;
 import bndtools.utils.ClassPathLabelProvider;
 import bndtools.utils.FileExtensionFilter;
@@ -71,6 +82,11 @@ public class JarListWizardPage extends WizardPage {
     private final PropertyChangeSupport propertySupport = new PropertyChangeSupport(this);
     private final Collection<IPath> paths = new LinkedList<IPath>();
 
+    // Whether each JAR is a bundle, as of its modification time
+    private final Map<File,BundleCheck> bundleChecks = new ConcurrentHashMap<File,BundleCheck>();
+    private Future< ? > bundleCheck = null;
+    private int checkGeneration = 0;
+
     private TableViewer viewer;
     private Button btnAdd;
     private Button btnAddExternal;
@@ -259,33 +275,70 @@ public class JarListWizardPage extends WizardPage {
         }
     }
 
+    /**
+     * Check in the background which of the JARs are already bundles, and show them in a warning when done. Only the
+     * manifest of each JAR is read, and the result is kept until the JAR is modified, so only new or changed JARs are
+     * read again. A check still running when the paths change again is cancelled.
+     */
     private void checkExistingBundles() {
-        List<IPath> alreadyBundles = new LinkedList<IPath>();
+        if (bundleCheck != null)
+            bundleCheck.cancel(true);
+
+        final List<IPath> checkPaths = new ArrayList<IPath>(paths.size());
         for (IPath path : paths) {
-            Jar jar = null;
-            try {
-                if (path.isAbsolute()) {
-                    jar = new Jar(path.toFile());
-                } else {
-                    path = ResourcesPlugin.getWorkspace().getRoot().getLocation().append(path);
-                    jar = new Jar(path.toFile());
-                }
+            if (!path.isAbsolute())
+                path = ResourcesPlugin.getWorkspace().getRoot().getLocation().append(path);
+            checkPaths.add(path);
+        }
+        final Display display = getShell().getDisplay();
+        final int generation = ++checkGeneration;
 
-                Manifest manifest = jar.getManifest();
-                if (manifest != null) {
-                    String bsn = manifest.getMainAttributes().getValue(Constants.BUNDLE_SYMBOLICNAME);
-                    if (bsn != null) {
+        bundleCheck = Plugin.getDefault().getExecutionService().submit(Pool.IO, Priority.NORMAL, "Check for existing bundles", new Runnable() {
+            @Override
+            public void run() {
+                final List<IPath> alreadyBundles = new LinkedList<IPath>();
+                for (IPath path : checkPaths) {
+                    if (Thread.currentThread().isInterrupted())
+                        return;
+                    if (isBundle(path.toFile()))
                         alreadyBundles.add(path);
+                }
+
+                display.asyncExec(new Runnable() {
+                    @Override
+                    public void run() {
+                        Control control = getControl();
+                        if (generation == checkGeneration && control != null && !control.isDisposed())
+                            showExistingBundles(alreadyBundles);
                     }
+                });
+            }
+        });
+    }
+
+    private boolean isBundle(File file) {
+        long modified = file.lastModified();
+        BundleCheck check = bundleChecks.get(file);
+        if (check != null && check.modified == modified)
+            return check.bundle;
+
+        boolean bundle = false;
+        try (ZipFile zip = new ZipFile(file)) {
+            ZipEntry entry = zip.getEntry(JarFile.MANIFEST_NAME);
+            if (entry != null) {
+                try (InputStream in = zip.getInputStream(entry)) {
+                    Manifest manifest = new Manifest(in);
+                    bundle = manifest.getMainAttributes().getValue(Constants.BUNDLE_SYMBOLICNAME) != null;
                 }
-            } catch (Exception e) {
-                logger.logError("Error inspecting JAR file: " + path.toString(), e);
-            } finally {
-                if (jar != null)
-                    jar.close();
             }
+        } catch (Exception e) {
+            logger.logError("Error inspecting JAR file: " + file, e);
         }
+        bundleChecks.put(file, new BundleCheck(modified, bundle));
+        return bundle;
+    }
 
+    private void showExistingBundles(List<IPath> alreadyBundles) {
         String warning = null;
         if (!alreadyBundles.isEmpty()) {
             StringBuilder builder = new StringBuilder();
@@ -301,6 +354,13 @@ public class JarListWizardPage extends WizardPage {
         setMessage(warning, IMessageProvider.WARNING);
     }
 
+    @Override
+    public void dispose() {
+        if (bundleCheck != null)
+            bundleCheck.cancel(true);
+        super.dispose();
+    }
+
     public Collection<IPath> getPaths() {
         return paths;
     }
@@ -321,4 +381,14 @@ public class JarListWizardPage extends WizardPage {
         propertySupport.removePropertyChangeListener(propertyName, listener);
     }
 
+    private static final class BundleCheck {
+        final long modified;
+        final boolean bundle;
+
+        BundleCheck(long modified, boolean bundle) {
+            this.modified = modified;
+            this.bundle = bundle;
+        }
+    }
+
 }
@@ -0,0 +1,270 @@
+package bndtools.wizards.bndfile;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.jar.Manifest;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.OperationCanceledException;
+import org.eclipse.core.runtime.SubMonitor;
+
+import aQute.bnd.osgi.Jar;
+import aQute.bnd.osgi.Resource;
+
+/**
+ * Writes the executable {@link Jar} built by a project launcher without holding its content in memory. The embedded
+ * bundles are streamed from their resources straight into the output, and since they are already compressed they are
+ * stored rather than deflated again. Exporting to a folder only copies the entries whose content changed since the
+ * last export to that folder.
+ */
+class LauncherJarExporter {
+
+    static final String MANIFEST_NAME = "META-INF/MANIFEST.MF";
+
+    private static final String ALGORITHM = "SHA-256";
+    private static final String BUNDLES_DIR = "jar/";
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final Jar jar;
+
+    LauncherJarExporter(Jar jar) {
+        this.jar = jar;
+    }
+
+    /**
+     * Writes the executable JAR to the given file. The file is only replaced once it has been written completely.
+     */
+    void writeJar(File file, IProgressMonitor monitor) throws Exception {
+        Map<String,Resource> resources = sortedResources();
+        SubMonitor progress = SubMonitor.convert(monitor, "Writing " + file.getName(), resources.size() + 1);
+
+        File dir = file.getAbsoluteFile().getParentFile();
+        dir.mkdirs();
+        File tempFile = File.createTempFile(file.getName(), ".tmp", dir);
+        try {
+            try (ZipOutputStream out = new ZipOutputStream(new FileOutputStream(tempFile))) {
+                Set<String> directories = new HashSet<String>();
+                Manifest manifest = jar.getManifest();
+                if (manifest != null) {
+                    writeDirectories(out, MANIFEST_NAME, directories);
+                    out.putNextEntry(new ZipEntry(MANIFEST_NAME));
+                    Jar.writeManifest(manifest, out);
+                    out.closeEntry();
+                }
+                progress.worked(1);
+
+                for (Entry<String,Resource> entry : resources.entrySet()) {
+                    checkCanceled(progress);
+                    progress.subTask(entry.getKey());
+                    writeDirectories(out, entry.getKey(), directories);
+                    writeEntry(out, entry.getKey(), entry.getValue());
+                    progress.worked(1);
+                }
+            }
+            replace(tempFile, file);
+        } finally {
+            if (tempFile.exists())
+                tempFile.delete();
+        }
+    }
+
+    /**
+     * Writes the executable JAR exploded into the given folder. Entries whose content is already present in the folder
+     * are left alone, and bundles left behind by an earlier export that are no longer part of the launch are removed.
+     *
+     * @return the number of entries that were written
+     */
+    int writeFolder(File folder, IProgressMonitor monitor) throws Exception {
+        Map<String,Resource> resources = sortedResources();
+        SubMonitor progress = SubMonitor.convert(monitor, "Writing " + folder.getName(), resources.size() + 2);
+
+        int written = 0;
+        Manifest manifest = jar.getManifest();
+        if (manifest != null) {
+            File target = new File(folder, MANIFEST_NAME);
+            target.getParentFile().mkdirs();
+            File tempFile = File.createTempFile(target.getName(), ".tmp", target.getParentFile());
+            try {
+                try (OutputStream out = new FileOutputStream(tempFile)) {
+                    Jar.writeManifest(manifest, out);
+                }
+                if (!sameContent(tempFile, target)) {
+                    replace(tempFile, target);
+                    written++;
+                }
+            } finally {
+                if (tempFile.exists())
+                    tempFile.delete();
+            }
+        }
+        progress.worked(1);
+
+        for (Entry<String,Resource> entry : resources.entrySet()) {
+            checkCanceled(progress);
+            progress.subTask(entry.getKey());
+            if (copyIfChanged(entry.getValue(), new File(folder, entry.getKey())))
+                written++;
+            progress.worked(1);
+        }
+
+        File bundlesDir = new File(folder, BUNDLES_DIR);
+        File[] existing = bundlesDir.listFiles();
+        if (existing != null) {
+            for (File file : existing) {
+                if (file.isFile() && !resources.containsKey(BUNDLES_DIR + file.getName()))
+                    file.delete();
+            }
+        }
+        progress.worked(1);
+
+        return written;
+    }
+
+    private Map<String,Resource> sortedResources() {
+        Map<String,Resource> resources = new TreeMap<String,Resource>(jar.getResources());
+        resources.remove(MANIFEST_NAME);
+        return resources;
+    }
+
+    private static void writeDirectories(ZipOutputStream out, String name, Set<String> directories) throws IOException {
+        int index = name.lastIndexOf('/');
+        if (index < 0)
+            return;
+        String directory = name.substring(0, index + 1);
+        if (!directories.add(directory))
+            return;
+        writeDirectories(out, directory.substring(0, index), directories);
+        out.putNextEntry(new ZipEntry(directory));
+        out.closeEntry();
+    }
+
+    private static void writeEntry(ZipOutputStream out, String name, Resource resource) throws Exception {
+        ZipEntry entry = new ZipEntry(name);
+        long lastModified = resource.lastModified();
+        if (lastModified > 0)
+            entry.setTime(lastModified);
+
+        if (isCompressed(name)) {
+            // A stored entry needs its size and checksum up front, so read the content once to work them out
+            CRC32 crc = new CRC32();
+            long size = 0;
+            byte[] buffer = new byte[BUFFER_SIZE];
+            try (InputStream in = resource.openInputStream()) {
+                int n;
+                while ((n = in.read(buffer)) > 0) {
+                    crc.update(buffer, 0, n);
+                    size += n;
+                }
+            }
+            entry.setMethod(ZipEntry.STORED);
+            entry.setSize(size);
+            entry.setCompressedSize(size);
+            entry.setCrc(crc.getValue());
+        }
+
+        out.putNextEntry(entry);
+        try (InputStream in = resource.openInputStream()) {
+            copy(in, out);
+        }
+        out.closeEntry();
+    }
+
+    private static boolean copyIfChanged(Resource resource, File target) throws Exception {
+        if (target.isFile()) {
+            byte[] digest;
+            long size;
+            try (InputStream in = resource.openInputStream()) {
+                MessageDigest md = MessageDigest.getInstance(ALGORITHM);
+                size = digest(in, md);
+                digest = md.digest();
+            }
+            if (size == target.length() && Arrays.equals(digest, digest(target)))
+                return false;
+        }
+
+        target.getParentFile().mkdirs();
+        File tempFile = File.createTempFile(target.getName(), ".tmp", target.getParentFile());
+        try {
+            try (InputStream in = resource.openInputStream(); OutputStream out = new FileOutputStream(tempFile)) {
+                copy(in, out);
+            }
+            long lastModified = resource.lastModified();
+            if (lastModified > 0)
+                tempFile.setLastModified(lastModified);
+            if (target.canExecute())
+                tempFile.setExecutable(true);
+            replace(tempFile, target);
+        } finally {
+            if (tempFile.exists())
+                tempFile.delete();
+        }
+        return true;
+    }
+
+    private static boolean sameContent(File source, File target) throws Exception {
+        return target.isFile() && source.length() == target.length() && Arrays.equals(digest(source), digest(target));
+    }
+
+    private static byte[] digest(File file) throws Exception {
+        MessageDigest md = MessageDigest.getInstance(ALGORITHM);
+        try (InputStream in = new FileInputStream(file)) {
+            digest(in, md);
+        }
+        return md.digest();
+    }
+
+    private static long digest(InputStream in, MessageDigest md) throws IOException {
+        byte[] buffer = new byte[BUFFER_SIZE];
+        long size = 0;
+        int n;
+        while ((n = in.read(buffer)) > 0) {
+            md.update(buffer, 0, n);
+            size += n;
+        }
+        return size;
+    }
+
+    private static void copy(InputStream in, OutputStream out) throws IOException {
+        byte[] buffer = new byte[BUFFER_SIZE];
+        int n;
+        while ((n = in.read(buffer)) > 0)
+            out.write(buffer, 0, n);
+    }
+
+    private static boolean isCompressed(String name) {
+        String lower = name.toLowerCase(Locale.ROOT);
+        return lower.endsWith(".jar") || lower.endsWith(".zip");
+    }
+
+    private static void checkCanceled(IProgressMonitor monitor) {
+        if (monitor.isCanceled())
+            throw new OperationCanceledException();
+    }
+
+    private static void replace(File source, File target) throws IOException {
+        try {
+            Files.move(source.toPath(), target.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(source.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+}
@@ -5,12 +5,27 @@ import java.beans.PropertyChangeListener;
 import java.io.BufferedInputStream;
 import java.io.File;
 import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
 import java.text.MessageFormat;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Deque;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 import java.util.jar.Attributes;
+import java.util.jar.JarFile;
+import java.util.jar.Manifest;
 
+import org.bndtools.api.IExecutionService.Pool;
+import org.bndtools.api.IExecutionService.Priority;
 import org.bndtools.utils.osgi.BundleUtils;
 import org.eclipse.core.resources.WorkspaceJob;
 import org.eclipse.core.runtime.CoreException;
@@ -21,7 +36,6 @@ import org.eclipse.core.runtime.Status;
 import org.eclipse.jface.wizard.Wizard;
 
 import aQute.bnd.osgi.Constants;
-import aQute.bnd.osgi.Jar;
 import aQute.bnd.service.RepositoryPlugin;
 import bndtools.Plugin;
 import bndtools.central.RefreshFileJob;
@@ -29,6 +43,8 @@ import bndtools.types.Pair;
 
 public class AddFilesToRepositoryWizard extends Wizard {
 
+    private static final int MAX_CONCURRENT_PUTS = 4;
+
     private RepositoryPlugin repository;
     private final File[] files;
     private List<Pair<String,String>> selectedBundles;
@@ -72,48 +88,98 @@ public class AddFilesToRepositoryWizard extends Wizard {
         return true;
     }
 
+    /**
+     * Add the files in a two stage pipeline. All files are analysed in parallel, reading only their manifest, and each
+     * analysed file is passed on to be put into the repository, with at most {@link #MAX_CONCURRENT_PUTS} puts at a
+     * time. Progress, status and cancellation are handled on the calling thread.
+     */
     private IStatus performFinishAddFiles(IProgressMonitor monitor) {
         MultiStatus status = new MultiStatus(Plugin.PLUGIN_ID, 0, "Failed to install one or more bundles", null);
 
+        final RepositoryPlugin target = repository;
         List<File> files = fileSelectionPage.getFiles();
-        selectedBundles = new LinkedList<Pair<String,String>>();
+        CompletionService<AddedFile> completion = new ExecutorCompletionService<AddedFile>(Plugin.getDefault().getExecutionService().getExecutor(Pool.IO, Priority.NORMAL));
+        List<Future<AddedFile>> futures = new ArrayList<Future<AddedFile>>(files.size() * 2);
+        Deque<AddedFile> analysed = new ArrayDeque<AddedFile>();
+        List<File> artifacts = new ArrayList<File>(files.size());
+        int pending = 0;
+        int putting = 0;
+
         monitor.beginTask("Processing files", files.size());
+        List<AddedFile> addedFiles = new ArrayList<AddedFile>(files.size());
         for (File file : files) {
-            monitor.subTask(file.getName());
-
-            Jar jar = null;
-            try {
-                jar = new Jar(file);
-                jar.setDoNotTouchManifest();
-
-                Attributes mainAttribs = jar.getManifest().getMainAttributes();
-                String bsn = BundleUtils.getBundleSymbolicName(mainAttribs);
-                String version = mainAttribs.getValue(Constants.BUNDLE_VERSION);
-                if (version == null)
-                    version = "0";
-                selectedBundles.add(Pair.newInstance(bsn, version));
-            } catch (Exception e) {
-                status.add(new Status(IStatus.ERROR, Plugin.PLUGIN_ID, 0, MessageFormat.format("Failed to analyse JAR: {0}", file.getPath()), e));
-                continue;
-            } finally {
-                if (jar != null)
-                    jar.close();
-            }
+            final AddedFile addedFile = new AddedFile(file);
+            addedFiles.add(addedFile);
+            futures.add(completion.submit(new Callable<AddedFile>() {
+                @Override
+                public AddedFile call() throws Exception {
+                    return addedFile.analyse();
+                }
+            }));
+            pending++;
+        }
 
-            try {
-                RepositoryPlugin.PutResult result = repository.put(new BufferedInputStream(new FileInputStream(file)), new RepositoryPlugin.PutOptions());
-                if (result.artifact != null && result.artifact.getScheme().equals("file")) {
-                    File newFile = new File(result.artifact);
+        try {
+            while (pending > 0) {
+                if (monitor.isCanceled())
+                    return Status.CANCEL_STATUS;
+
+                Future<AddedFile> done = completion.poll(100, TimeUnit.MILLISECONDS);
+                if (done == null)
+                    continue;
+                pending--;
+
+                AddedFile addedFile = done.get();
+                if (addedFile.analyseError != null) {
+                    status.add(new Status(IStatus.ERROR, Plugin.PLUGIN_ID, 0, MessageFormat.format("Failed to analyse JAR: {0}", addedFile.file.getPath()), addedFile.analyseError));
+                    monitor.worked(1);
+                } else if (!addedFile.put) {
+                    analysed.add(addedFile);
+                } else {
+                    putting--;
+                    if (addedFile.putError != null)
+                        status.add(new Status(IStatus.ERROR, Plugin.PLUGIN_ID, 0, MessageFormat.format("Failed to add JAR to repository: {0}", addedFile.file.getPath()), addedFile.putError));
+                    else if (addedFile.artifact != null)
+                        artifacts.add(addedFile.artifact);
+                    monitor.subTask(addedFile.file.getName());
+                    monitor.worked(1);
+                }
 
-                    RefreshFileJob refreshJob = new RefreshFileJob(newFile, false);
-                    if (refreshJob.needsToSchedule())
-                        refreshJob.schedule();
+                while (putting < MAX_CONCURRENT_PUTS && !analysed.isEmpty()) {
+                    final AddedFile next = analysed.poll();
+                    futures.add(completion.submit(new Callable<AddedFile>() {
+                        @Override
+                        public AddedFile call() throws Exception {
+                            return next.put(target);
+                        }
+                    }));
+                    pending++;
+                    putting++;
                 }
-            } catch (Exception e) {
-                status.add(new Status(IStatus.ERROR, Plugin.PLUGIN_ID, 0, MessageFormat.format("Failed to add JAR to repository: {0}", file.getPath()), e));
-                continue;
             }
-            monitor.worked(1);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return Status.CANCEL_STATUS;
+        } catch (ExecutionException e) {
+            status.add(new Status(IStatus.ERROR, Plugin.PLUGIN_ID, 0, "Failed to add files to repository", e.getCause()));
+        } finally {
+            for (Future<AddedFile> future : futures)
+                future.cancel(false);
+
+            // Refresh the added files at once
+            if (!artifacts.isEmpty()) {
+                RefreshFileJob refreshJob = new RefreshFileJob(artifacts, false);
+                if (refreshJob.needsToSchedule())
+                    refreshJob.schedule();
+            }
+
+            // The files that were analysed and offered to the repository, in the order they were selected
+            selectedBundles = new LinkedList<Pair<String,String>>();
+            for (AddedFile addedFile : addedFiles) {
+                if (addedFile.put)
+                    selectedBundles.add(Pair.newInstance(addedFile.bsn, addedFile.version));
+            }
+            monitor.done();
         }
         return status;
     }
@@ -121,4 +187,49 @@ public class AddFilesToRepositoryWizard extends Wizard {
     public List<Pair<String,String>> getSelectedBundles() {
         return Collections.unmodifiableList(selectedBundles);
     }
+
+    /**
+     * A file going through the pipeline. Its fields are written by the pool thread of each stage, and read by the job
+     * thread after the stage completed.
+     */
+    private static class AddedFile {
+        final File file;
+        volatile String bsn;
+        volatile String version;
+        volatile Exception analyseError;
+        volatile boolean put = false;
+        volatile File artifact;
+        volatile Exception putError;
+
+        AddedFile(File file) {
+            this.file = file;
+        }
+
+        AddedFile analyse() {
+            try (JarFile jar = new JarFile(file)) {
+                Manifest manifest = jar.getManifest();
+                if (manifest == null)
+                    throw new IOException("The JAR has no manifest");
+                Attributes mainAttribs = manifest.getMainAttributes();
+                bsn = BundleUtils.getBundleSymbolicName(mainAttribs);
+                String bundleVersion = mainAttribs.getValue(Constants.BUNDLE_VERSION);
+                version = bundleVersion != null ? bundleVersion : "0";
+            } catch (Exception e) {
+                analyseError = e;
+            }
+            return this;
+        }
+
+        AddedFile put(RepositoryPlugin repository) {
+            put = true;
+            try (InputStream stream = new BufferedInputStream(new FileInputStream(file))) {
+                RepositoryPlugin.PutResult result = repository.put(stream, new RepositoryPlugin.PutOptions());
+                if (result.artifact != null && result.artifact.getScheme().equals("file"))
+                    artifact = new File(result.artifact);
+            } catch (Exception e) {
+                putError = e;
+            }
+            return this;
+        }
+    }
 }
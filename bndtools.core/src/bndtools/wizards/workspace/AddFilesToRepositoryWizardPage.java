@@ -1,12 +1,15 @@
 package bndtools.wizards.workspace;
 
 import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.jar.Attributes;
+import java.util.jar.JarFile;
+import java.util.jar.Manifest;
 
 import org.bndtools.api.ILogger;
 import org.bndtools.api.Logger;
@@ -46,7 +49,6 @@ import org.eclipse.ui.model.WorkbenchLabelProvider;
 import org.eclipse.ui.plugin.AbstractUIPlugin;
 import org.osgi.framework.Constants;
 
-import aQute.bnd.osgi.Jar;
 import bndtools.Plugin;
 import bndtools.types.Pair;
 import bndtools.utils.FileExtensionFilter;
@@ -86,19 +88,18 @@ public class AddFilesToRepositoryWizardPage extends WizardPage {
     }
 
     void analyseFile(File file) {
-        Jar jar = null;
-        try {
-            jar = new Jar(file);
-            Attributes attribs = jar.getManifest().getMainAttributes();
+        // Only the manifest is needed, so do not read the whole JAR
+        try (JarFile jar = new JarFile(file)) {
+            Manifest manifest = jar.getManifest();
+            if (manifest == null)
+                throw new IOException("The JAR has no manifest: " + file);
+            Attributes attribs = manifest.getMainAttributes();
             String bsn = attribs.getValue(Constants.BUNDLE_SYMBOLICNAME);
             String version = attribs.getValue(Constants.BUNDLE_VERSION);
 
             bsnMap.put(file, Pair.newInstance(bsn, version));
         } catch (Exception e) {
             logger.logError("Error reading JAR file content", e);
-        } finally {
-            if (jar != null)
-                jar.close();
         }
     }
 
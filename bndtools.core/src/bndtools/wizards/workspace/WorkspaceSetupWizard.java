@@ -15,6 +15,7 @@ import org.bndtools.core.ui.wizards.shared.TemplateSelectionWizardPage;
 import org.bndtools.templating.Resource;
 import org.bndtools.templating.ResourceMap;
 import org.bndtools.templating.Template;
+import org.bndtools.templating.util.RenderedResource;
 import org.eclipse.core.resources.IProject;
 import org.eclipse.core.resources.IProjectDescription;
 import org.eclipse.core.resources.IProjectNature;
@@ -115,8 +116,15 @@ public class WorkspaceSetupWizard extends Wizard implements IWorkbenchWizard {
                     case File :
                         File parentDir = file.getParentFile();
                         Files.createDirectories(parentDir.toPath());
-                        try (InputStream in = resource.getContent(); FileOutputStream out = new FileOutputStream(file)) {
-                            IO.copy(in, out);
+                        if (resource instanceof RenderedResource) {
+                            // Render straight into the file rather than through an in-memory copy
+                            try (FileOutputStream out = new FileOutputStream(file)) {
+                                ((RenderedResource) resource).write(out);
+                            }
+                        } else {
+                            try (InputStream in = resource.getContent(); FileOutputStream out = new FileOutputStream(file)) {
+                                IO.copy(in, out);
+                            }
                         }
                         break;
                     default :
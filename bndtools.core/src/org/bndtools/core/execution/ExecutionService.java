@@ -0,0 +1,263 @@
+package org.bndtools.core.execution;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.TreeMap;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.RunnableFuture;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.bndtools.api.IExecutionService;
+import org.bndtools.api.ILogger;
+import org.bndtools.api.Logger;
+
+/**
+ * The shared bounded thread pools for bndtools background work. Each pool has a fixed number of threads, which time out
+ * when idle, and a priority-ordered queue. Queue-wait and run times are recorded per task name and published through
+ * JMX.
+ */
+public class ExecutionService implements IExecutionService, ExecutionServiceMXBean {
+
+    private static final ILogger logger = Logger.getLogger(ExecutionService.class);
+
+    public static final String OBJECT_NAME = "bndtools:type=ExecutionService";
+
+    private static final int IO_THREADS = 8;
+    private static final int UI_THREADS = 2;
+    private static final long KEEP_ALIVE_SECONDS = 60L;
+
+    // Bound the number of distinct task names we keep figures for
+    private static final int MAX_TASK_NAMES = 500;
+    private static final String OTHER_TASKS = "<other>";
+
+    private final Map<Pool,ThreadPoolExecutor> pools = new EnumMap<>(Pool.class);
+    private final Map<Pool,Map<String,TaskStatistics>> statistics = new EnumMap<>(Pool.class);
+    private final ScheduledThreadPoolExecutor scheduler;
+    private final AtomicLong sequence = new AtomicLong();
+
+    private ObjectName registeredName = null;
+
+    public ExecutionService() {
+        int cpus = Runtime.getRuntime().availableProcessors();
+        pools.put(Pool.IO, createPool("io", IO_THREADS));
+        pools.put(Pool.CPU, createPool("cpu", Math.max(1, cpus)));
+        pools.put(Pool.UI, createPool("ui", UI_THREADS));
+        for (Pool pool : Pool.values())
+            statistics.put(pool, new TreeMap<String,TaskStatistics>());
+
+        scheduler = new ScheduledThreadPoolExecutor(1, new NamedThreadFactory("bndtools-scheduler"));
+        scheduler.setRemoveOnCancelPolicy(true);
+    }
+
+    private static ThreadPoolExecutor createPool(String name, int threads) {
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(threads, threads, KEEP_ALIVE_SECONDS, TimeUnit.SECONDS, new PriorityBlockingQueue<Runnable>(), new NamedThreadFactory("bndtools-" + name));
+        pool.allowCoreThreadTimeOut(true);
+        return pool;
+    }
+
+    /**
+     * Register the management interface with the platform MBean server. Failure is logged and otherwise ignored.
+     */
+    public void registerMBean() {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(OBJECT_NAME);
+            if (!server.isRegistered(name)) {
+                server.registerMBean(this, name);
+                registeredName = name;
+            }
+        } catch (Exception e) {
+            logger.logWarning("Unable to register the execution service management interface", e);
+        }
+    }
+
+    public void close() {
+        if (registeredName != null) {
+            try {
+                ManagementFactory.getPlatformMBeanServer().unregisterMBean(registeredName);
+            } catch (Exception e) {
+                // ignore
+            }
+            registeredName = null;
+        }
+        scheduler.shutdownNow();
+        for (ThreadPoolExecutor pool : pools.values())
+            pool.shutdownNow();
+    }
+
+    @Override
+    public <T> Future<T> submit(Pool pool, Priority priority, String name, Callable<T> task) {
+        PrioritizedTask<T> future = new PrioritizedTask<>(task, priority, sequence.getAndIncrement(), statisticsFor(pool, name));
+        pools.get(pool).execute(future);
+        return future;
+    }
+
+    @Override
+    public Future< ? > submit(Pool pool, Priority priority, String name, Runnable task) {
+        PrioritizedTask<Object> future = new PrioritizedTask<>(task, null, priority, sequence.getAndIncrement(), statisticsFor(pool, name));
+        pools.get(pool).execute(future);
+        return future;
+    }
+
+    @Override
+    public ExecutorService getExecutor(Pool pool, Priority priority) {
+        return new LaneExecutor(pool, priority);
+    }
+
+    @Override
+    public ScheduledExecutorService getScheduler() {
+        return scheduler;
+    }
+
+    private TaskStatistics statisticsFor(Pool pool, String name) {
+        Map<String,TaskStatistics> poolStatistics = statistics.get(pool);
+        synchronized (poolStatistics) {
+            TaskStatistics result = poolStatistics.get(name);
+            if (result == null) {
+                if (poolStatistics.size() >= MAX_TASK_NAMES)
+                    name = OTHER_TASKS;
+                result = poolStatistics.get(name);
+                if (result == null) {
+                    result = new TaskStatistics();
+                    poolStatistics.put(name, result);
+                }
+            }
+            return result;
+        }
+    }
+
+    @Override
+    public String dumpMetrics() {
+        StringBuilder sb = new StringBuilder();
+        for (Entry<Pool,ThreadPoolExecutor> entry : pools.entrySet()) {
+            ThreadPoolExecutor pool = entry.getValue();
+            sb.append(String.format("%s: threads=%d/%d active=%d queued=%d completed=%d%n", entry.getKey(), pool.getPoolSize(), pool.getMaximumPoolSize(), pool.getActiveCount(), pool.getQueue().size(), pool.getCompletedTaskCount()));
+            Map<String,TaskStatistics> poolStatistics = statistics.get(entry.getKey());
+            List<Entry<String,TaskStatistics>> snapshot;
+            synchronized (poolStatistics) {
+                snapshot = new ArrayList<>(poolStatistics.entrySet());
+            }
+            for (Entry<String,TaskStatistics> stat : snapshot)
+                stat.getValue().appendTo(sb, stat.getKey());
+        }
+        sb.append(String.format("SCHEDULER: queued=%d completed=%d%n", scheduler.getQueue().size(), scheduler.getCompletedTaskCount()));
+        return sb.toString();
+    }
+
+    @Override
+    public String getMetrics() {
+        return dumpMetrics();
+    }
+
+    @Override
+    public int getQueuedCount(String pool) {
+        return pools.get(Pool.valueOf(pool)).getQueue().size();
+    }
+
+    @Override
+    public int getActiveCount(String pool) {
+        return pools.get(Pool.valueOf(pool)).getActiveCount();
+    }
+
+    @Override
+    public void resetMetrics() {
+        for (Map<String,TaskStatistics> poolStatistics : statistics.values()) {
+            synchronized (poolStatistics) {
+                poolStatistics.clear();
+            }
+        }
+    }
+
+    /**
+     * An {@link ExecutorService} view of one lane of a pool. Shutting it down has no effect on the shared pool.
+     */
+    private class LaneExecutor extends AbstractExecutorService {
+
+        private final Pool pool;
+        private final Priority priority;
+
+        LaneExecutor(Pool pool, Priority priority) {
+            this.pool = pool;
+            this.priority = priority;
+        }
+
+        @Override
+        protected <T> RunnableFuture<T> newTaskFor(Callable<T> callable) {
+            return new PrioritizedTask<>(callable, priority, sequence.getAndIncrement(), statisticsFor(pool, callable.getClass().getName()));
+        }
+
+        @Override
+        protected <T> RunnableFuture<T> newTaskFor(Runnable runnable, T value) {
+            return new PrioritizedTask<>(runnable, value, priority, sequence.getAndIncrement(), statisticsFor(pool, runnable.getClass().getName()));
+        }
+
+        @Override
+        public void execute(Runnable command) {
+            if (command instanceof PrioritizedTask)
+                pools.get(pool).execute(command);
+            else
+                pools.get(pool).execute(newTaskFor(command, null));
+        }
+
+        @Override
+        public void shutdown() {
+            // the shared pool is owned by bndtools
+        }
+
+        @Override
+        public List<Runnable> shutdownNow() {
+            return Collections.emptyList();
+        }
+
+        @Override
+        public boolean isShutdown() {
+            return pools.get(pool).isShutdown();
+        }
+
+        @Override
+        public boolean isTerminated() {
+            return pools.get(pool).isTerminated();
+        }
+
+        @Override
+        public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+            return pools.get(pool).awaitTermination(timeout, unit);
+        }
+    }
+
+    private static class NamedThreadFactory implements ThreadFactory {
+
+        private final String prefix;
+        private final AtomicInteger count = new AtomicInteger();
+
+        NamedThreadFactory(String prefix) {
+            this.prefix = prefix;
+        }
+
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, prefix + "-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+
+}
@@ -0,0 +1,28 @@
+package org.bndtools.core.execution;
+
+/**
+ * Management interface of the bndtools execution service, registered as {@code bndtools:type=ExecutionService}.
+ */
+public interface ExecutionServiceMXBean {
+
+    /**
+     * A human-readable dump of the pool state and per-task metrics.
+     */
+    String getMetrics();
+
+    /**
+     * The number of tasks waiting in the queue of the named pool.
+     */
+    int getQueuedCount(String pool);
+
+    /**
+     * The number of tasks currently running in the named pool.
+     */
+    int getActiveCount(String pool);
+
+    /**
+     * Discard the per-task metrics collected so far.
+     */
+    void resetMetrics();
+
+}
@@ -0,0 +1,59 @@
+package org.bndtools.core.execution;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.FutureTask;
+
+import org.bndtools.api.IExecutionService.Priority;
+
+/**
+ * A task queued in one of the pools. Orders by priority and then by submission sequence, and reports its queue-wait and
+ * run time when it completes.
+ */
+class PrioritizedTask<T> extends FutureTask<T> implements Comparable<PrioritizedTask< ? >> {
+
+    private final Priority priority;
+    private final long sequence;
+    private final TaskStatistics statistics;
+    private final long submitted = System.nanoTime();
+
+    private volatile boolean failed = false;
+
+    PrioritizedTask(Callable<T> callable, Priority priority, long sequence, TaskStatistics statistics) {
+        super(callable);
+        this.priority = priority;
+        this.sequence = sequence;
+        this.statistics = statistics;
+    }
+
+    PrioritizedTask(Runnable runnable, T result, Priority priority, long sequence, TaskStatistics statistics) {
+        super(runnable, result);
+        this.priority = priority;
+        this.sequence = sequence;
+        this.statistics = statistics;
+    }
+
+    @Override
+    public void run() {
+        long started = System.nanoTime();
+        try {
+            super.run();
+        } finally {
+            statistics.record(started - submitted, System.nanoTime() - started, failed);
+        }
+    }
+
+    @Override
+    protected void setException(Throwable t) {
+        failed = true;
+        super.setException(t);
+    }
+
+    @Override
+    public int compareTo(PrioritizedTask< ? > other) {
+        int diff = priority.compareTo(other.priority);
+        if (diff != 0)
+            return diff;
+        return sequence < other.sequence ? -1 : (sequence == other.sequence ? 0 : 1);
+    }
+
+}
@@ -0,0 +1,35 @@
+package org.bndtools.core.execution;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Aggregated queue-wait and run-time figures for the tasks of one name in one pool.
+ */
+class TaskStatistics {
+
+    private long count;
+    private long failed;
+    private long totalWaitNanos;
+    private long maxWaitNanos;
+    private long totalRunNanos;
+    private long maxRunNanos;
+
+    synchronized void record(long waitNanos, long runNanos, boolean failure) {
+        count++;
+        if (failure)
+            failed++;
+        totalWaitNanos += waitNanos;
+        maxWaitNanos = Math.max(maxWaitNanos, waitNanos);
+        totalRunNanos += runNanos;
+        maxRunNanos = Math.max(maxRunNanos, runNanos);
+    }
+
+    synchronized void appendTo(StringBuilder sb, String name) {
+        sb.append(String.format("    %-60s count=%d failed=%d wait(avg/max)=%d/%dms run(avg/max)=%d/%dms%n", name, count, failed, millis(totalWaitNanos / Math.max(count, 1)), millis(maxWaitNanos), millis(totalRunNanos / Math.max(count, 1)), millis(maxRunNanos)));
+    }
+
+    private static long millis(long nanos) {
+        return TimeUnit.NANOSECONDS.toMillis(nanos);
+    }
+
+}
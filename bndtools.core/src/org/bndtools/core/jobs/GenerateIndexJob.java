@@ -1,10 +1,11 @@
 package org.bndtools.core.jobs;
 
 import java.io.File;
-import java.io.FileOutputStream;
 import java.util.Map;
 import java.util.Set;
 
+import org.bndtools.api.IExecutionService.Pool;
+import org.bndtools.api.IExecutionService.Priority;
 import org.eclipse.core.resources.IFile;
 import org.eclipse.core.resources.IResource;
 import org.eclipse.core.resources.IWorkspace;
@@ -13,15 +14,17 @@ import org.eclipse.core.resources.ResourcesPlugin;
 import org.eclipse.core.runtime.CoreException;
 import org.eclipse.core.runtime.IProgressMonitor;
 import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.OperationCanceledException;
 import org.eclipse.core.runtime.Status;
 import org.eclipse.core.runtime.SubMonitor;
 import org.eclipse.core.runtime.jobs.Job;
-import org.osgi.service.indexer.ResourceIndexer;
 
 import bndtools.Plugin;
 
 public class GenerateIndexJob extends Job {
 
+    private static final String CACHE_DIR = "index-cache";
+
     private final Set<File> files;
     private final File outputFile;
     private final Map<String,String> config;
@@ -35,12 +38,16 @@ public class GenerateIndexJob extends Job {
 
     @Override
     protected IStatus run(IProgressMonitor monitor) {
-        SubMonitor progress = SubMonitor.convert(monitor);
+        SubMonitor progress = SubMonitor.convert(monitor, 10);
 
-        // Generate index
-        try (FileOutputStream outputStream = new FileOutputStream(outputFile)) {
-            ResourceIndexer indexer = Plugin.getDefault().getResourceIndexer();
-            indexer.index(files, outputStream, config);
+        // Generate index, analysing only the files that changed since the last run
+        try {
+            Plugin plugin = Plugin.getDefault();
+            File cacheDir = new File(plugin.getStateLocation().toFile(), CACHE_DIR + "/" + IncrementalIndexer.cacheName(outputFile));
+            IncrementalIndexer indexer = new IncrementalIndexer(cacheDir, plugin.getResourceIndexer(), plugin.getExecutionService().getExecutor(Pool.CPU, Priority.NORMAL));
+            indexer.index(files, outputFile, config, progress.newChild(9, SubMonitor.SUPPRESS_NONE));
+        } catch (OperationCanceledException e) {
+            return Status.CANCEL_STATUS;
         } catch (Exception e) {
             return new Status(IStatus.ERROR, Plugin.PLUGIN_ID, 0, "Error indexing files.", e);
         }
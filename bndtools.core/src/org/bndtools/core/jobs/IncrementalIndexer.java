@@ -0,0 +1,342 @@
+package org.bndtools.core.jobs;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileFilter;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPOutputStream;
+
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.OperationCanceledException;
+import org.osgi.service.indexer.ResourceIndexer;
+
+import aQute.lib.hex.Hex;
+import aQute.lib.io.IO;
+
+/**
+ * Generates an OSGi repository index from the resource fragments of the individual files, which are cached on disk.
+ * <p>
+ * Files are analysed in parallel on the given executor. The fragment of a file is kept under a key of its path, size,
+ * modification time and SHA-256 content hash, and of the index configuration, so after a change only the changed files
+ * are analysed again. The content hash of a file is only computed again when its size or modification time changed.
+ * The index is written by streaming the fragments in path order, as soon as each is available, to a temporary file
+ * which then replaces the output file.
+ */
+class IncrementalIndexer {
+
+    private static final String CATALOG = "catalog.txt";
+    private static final String SUFFIX = ".xml";
+    private static final String ALGORITHM = "SHA-256";
+    private static final String DEFAULT_REPOSITORY_NAME = "Untitled";
+
+    private final File dir;
+    private final ResourceIndexer indexer;
+    private final ExecutorService executor;
+
+    /**
+     * @param dir
+     *            the cache directory, which must only be used for one output index at a time.
+     */
+    IncrementalIndexer(File dir, ResourceIndexer indexer, ExecutorService executor) {
+        this.dir = dir;
+        this.indexer = indexer;
+        this.executor = executor;
+    }
+
+    /**
+     * Return the name of the cache directory for an output index.
+     */
+    static String cacheName(File outputFile) throws Exception {
+        MessageDigest digest = MessageDigest.getInstance(ALGORITHM);
+        digest.update(outputFile.getAbsolutePath().getBytes(StandardCharsets.UTF_8));
+        return Hex.toHexString(digest.digest()).toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Write the index of the files to the output file.
+     *
+     * @return the number of files that had to be analysed.
+     */
+    synchronized int index(Set<File> files, File outputFile, Map<String,String> config, IProgressMonitor monitor) throws Exception {
+        if (!dir.isDirectory() && !dir.mkdirs())
+            throw new IOException("Unable to create the index cache directory " + dir);
+
+        final Map<String,CatalogEntry> catalog = readCatalog();
+        final Map<String,CatalogEntry> newCatalog = new ConcurrentHashMap<>();
+        final AtomicInteger analysed = new AtomicInteger();
+        final Map<String,String> fragmentConfig = new HashMap<>(config);
+        fragmentConfig.remove(ResourceIndexer.COMPRESSED);
+        final String configKey = configKey(fragmentConfig);
+
+        // Sort by path so the same files always give the same index
+        Map<String,File> sorted = new TreeMap<>();
+        for (File file : files)
+            sorted.put(file.getAbsolutePath(), file);
+
+        List<Future<File>> fragments = new ArrayList<>(sorted.size());
+        for (final File file : sorted.values()) {
+            fragments.add(executor.submit(new Callable<File>() {
+                @Override
+                public File call() throws Exception {
+                    return fragment(file, catalog, newCatalog, configKey, fragmentConfig, analysed);
+                }
+            }));
+        }
+
+        monitor.beginTask("Generating index", fragments.size());
+        File tempFile = File.createTempFile(outputFile.getName(), ".tmp", outputFile.getAbsoluteFile().getParentFile());
+        try {
+            try (OutputStream out = openOutput(tempFile, config)) {
+                out.write(header(config).getBytes(StandardCharsets.UTF_8));
+                for (Future<File> fragment : fragments) {
+                    if (monitor.isCanceled())
+                        throw new OperationCanceledException();
+                    Files.copy(waitFor(fragment).toPath(), out);
+                    monitor.worked(1);
+                }
+                out.write("</repository>\n".getBytes(StandardCharsets.UTF_8));
+            }
+            replace(tempFile, outputFile);
+        } finally {
+            for (Future<File> fragment : fragments)
+                fragment.cancel(false);
+            if (tempFile.exists())
+                IO.delete(tempFile);
+            monitor.done();
+        }
+
+        writeCatalog(newCatalog);
+        prune(newCatalog);
+        return analysed.get();
+    }
+
+    private File fragment(File file, Map<String,CatalogEntry> catalog, Map<String,CatalogEntry> newCatalog, String configKey, Map<String,String> fragmentConfig, AtomicInteger analysed) throws Exception {
+        String path = file.getAbsolutePath();
+        long size = file.length();
+        long modified = file.lastModified();
+
+        CatalogEntry entry = catalog.get(path);
+        if (entry == null || entry.size != size || entry.modified != modified || !entry.configKey.equals(configKey))
+            entry = new CatalogEntry(path, size, modified, contentHash(file), configKey);
+
+        File fragment = new File(dir, entry.fragmentName());
+        if (!fragment.isFile()) {
+            File tempFile = File.createTempFile(fragment.getName(), ".tmp", dir);
+            try {
+                try (Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(tempFile), StandardCharsets.UTF_8))) {
+                    indexer.indexFragment(Collections.singleton(file), writer, fragmentConfig);
+                }
+                replace(tempFile, fragment);
+            } finally {
+                if (tempFile.exists())
+                    IO.delete(tempFile);
+            }
+            analysed.incrementAndGet();
+        }
+        newCatalog.put(path, entry);
+        return fragment;
+    }
+
+    private static File waitFor(Future<File> fragment) throws Exception {
+        try {
+            return fragment.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof Exception)
+                throw (Exception) cause;
+            throw e;
+        }
+    }
+
+    private static OutputStream openOutput(File file, Map<String,String> config) throws IOException {
+        OutputStream out = new BufferedOutputStream(new FileOutputStream(file));
+        if (Boolean.parseBoolean(config.get(ResourceIndexer.COMPRESSED)))
+            out = new GZIPOutputStream(out);
+        return out;
+    }
+
+    private static String header(Map<String,String> config) {
+        String name = config.get(ResourceIndexer.REPOSITORY_NAME);
+        StringBuilder sb = new StringBuilder();
+        sb.append("<?xml version='1.0' encoding='utf-8'?>\n");
+        sb.append("<repository increment='").append(System.currentTimeMillis()).append("' name='");
+        escape(sb, name != null ? name : DEFAULT_REPOSITORY_NAME);
+        sb.append("' xmlns='http://www.osgi.org/xmlns/repository/v1.0.0'>\n");
+        return sb.toString();
+    }
+
+    private static void escape(StringBuilder sb, String value) {
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+            case '&' :
+                sb.append("&amp;");
+                break;
+            case '<' :
+                sb.append("&lt;");
+                break;
+            case '>' :
+                sb.append("&gt;");
+                break;
+            case '\'' :
+                sb.append("&apos;");
+                break;
+            case '"' :
+                sb.append("&quot;");
+                break;
+            default :
+                sb.append(c);
+                break;
+            }
+        }
+    }
+
+    private static void replace(File source, File target) throws IOException {
+        try {
+            Files.move(source.toPath(), target.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(source.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    private static String configKey(Map<String,String> fragmentConfig) throws Exception {
+        MessageDigest digest = MessageDigest.getInstance(ALGORITHM);
+        for (Entry<String,String> entry : new TreeMap<>(fragmentConfig).entrySet()) {
+            update(digest, entry.getKey());
+            update(digest, entry.getValue() != null ? entry.getValue() : "");
+        }
+        return Hex.toHexString(digest.digest()).toLowerCase(Locale.ROOT);
+    }
+
+    private static String contentHash(File file) throws Exception {
+        MessageDigest digest = MessageDigest.getInstance(ALGORITHM);
+        byte[] buffer = new byte[64 * 1024];
+        try (InputStream in = new FileInputStream(file)) {
+            int n;
+            while ((n = in.read(buffer)) > 0)
+                digest.update(buffer, 0, n);
+        }
+        return Hex.toHexString(digest.digest()).toLowerCase(Locale.ROOT);
+    }
+
+    private static void update(MessageDigest digest, String value) {
+        digest.update(value.getBytes(StandardCharsets.UTF_8));
+        digest.update((byte) 0);
+    }
+
+    /**
+     * Read the catalog of the previous run. A catalog that cannot be read is ignored; the fragments are then found again
+     * from the content hashes.
+     */
+    private Map<String,CatalogEntry> readCatalog() {
+        Map<String,CatalogEntry> catalog = new HashMap<>();
+        File file = new File(dir, CATALOG);
+        if (!file.isFile())
+            return catalog;
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] fields = line.split("\t", 5);
+                if (fields.length != 5)
+                    continue;
+                CatalogEntry entry = new CatalogEntry(fields[4], Long.parseLong(fields[0]), Long.parseLong(fields[1]), fields[2], fields[3]);
+                catalog.put(entry.path, entry);
+            }
+        } catch (IOException | NumberFormatException e) {
+            catalog.clear();
+        }
+        return catalog;
+    }
+
+    private void writeCatalog(Map<String,CatalogEntry> catalog) throws IOException {
+        File file = new File(dir, CATALOG);
+        File tempFile = File.createTempFile(CATALOG, ".tmp", dir);
+        try {
+            try (Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(tempFile), StandardCharsets.UTF_8))) {
+                for (CatalogEntry entry : catalog.values()) {
+                    writer.append(Long.toString(entry.size)).append('\t').append(Long.toString(entry.modified)).append('\t');
+                    writer.append(entry.contentHash).append('\t').append(entry.configKey).append('\t').append(entry.path).append('\n');
+                }
+            }
+            replace(tempFile, file);
+        } finally {
+            if (tempFile.exists())
+                IO.delete(tempFile);
+        }
+    }
+
+    /**
+     * Delete the fragments of files that are no longer indexed, or that changed.
+     */
+    private void prune(Map<String,CatalogEntry> catalog) throws Exception {
+        final Set<String> live = Collections.newSetFromMap(new HashMap<String,Boolean>());
+        for (CatalogEntry entry : catalog.values())
+            live.add(entry.fragmentName());
+        File[] stale = dir.listFiles(new FileFilter() {
+            @Override
+            public boolean accept(File file) {
+                return file.getName().endsWith(SUFFIX) && !live.contains(file.getName());
+            }
+        });
+        if (stale != null) {
+            for (File file : stale)
+                IO.delete(file);
+        }
+    }
+
+    private static final class CatalogEntry {
+        final String path;
+        final long size;
+        final long modified;
+        final String contentHash;
+        final String configKey;
+
+        CatalogEntry(String path, long size, long modified, String contentHash, String configKey) {
+            this.path = path;
+            this.size = size;
+            this.modified = modified;
+            this.contentHash = contentHash;
+            this.configKey = configKey;
+        }
+
+        String fragmentName() throws Exception {
+            MessageDigest digest = MessageDigest.getInstance(ALGORITHM);
+            update(digest, path);
+            update(digest, Long.toString(size));
+            update(digest, Long.toString(modified));
+            update(digest, contentHash);
+            update(digest, configKey);
+            return Hex.toHexString(digest.digest()).toLowerCase(Locale.ROOT) + SUFFIX;
+        }
+    }
+
+}
@@ -0,0 +1,247 @@
+package org.bndtools.core.resolve;
+
+import java.io.File;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.Future;
+
+import org.bndtools.api.IExecutionService;
+import org.bndtools.api.IExecutionService.Pool;
+import org.bndtools.api.IExecutionService.Priority;
+import org.bndtools.api.ILogger;
+import org.bndtools.api.Logger;
+import org.bndtools.core.resolve.ResolutionResult.Outcome;
+import org.bndtools.utils.workspace.FileUtils;
+import org.eclipse.core.resources.IFile;
+import org.eclipse.core.resources.IResource;
+import org.eclipse.core.resources.IResourceProxy;
+import org.eclipse.core.resources.IResourceProxyVisitor;
+import org.eclipse.core.resources.IWorkspace;
+import org.eclipse.core.resources.IWorkspaceRunnable;
+import org.eclipse.core.resources.ResourcesPlugin;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.MultiStatus;
+import org.eclipse.core.runtime.NullProgressMonitor;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.jobs.Job;
+import org.eclipse.jface.text.IDocument;
+import org.osgi.resource.Resource;
+
+import aQute.bnd.build.Run;
+import aQute.bnd.build.Workspace;
+import aQute.bnd.build.model.BndEditModel;
+import aQute.lib.io.IO;
+import bndtools.Plugin;
+import bndtools.central.Central;
+import bndtools.editor.model.IDocumentWrapper;
+import bndtools.launch.LaunchConstants;
+
+/**
+ * Resolves every run descriptor ({@code .bndrun} file) in the workspace and writes the resulting {@code -runbundles}
+ * back to each file.
+ * <p>
+ * The resolves run in parallel on the shared CPU pool, with at most {@link #MAX_PARALLEL_RESOLVES} at a time since each
+ * resolve holds its own resolver state. All resolves share the workspace repositories and a single fingerprint of
+ * their content, which keys the resolution result cache. Each result is only cached if the repositories still have
+ * that fingerprint after the resolve. A file is only written if it has not been modified since it was read. The
+ * outcome and time of each resolve are collected in a single summary, available from {@link #getSummary()} when the job
+ * is done.
+ */
+public class BatchResolveJob extends Job {
+
+    public static final int MAX_PARALLEL_RESOLVES = 4;
+
+    private static final ILogger logger = Logger.getLogger(BatchResolveJob.class);
+
+    private volatile MultiStatus summary;
+
+    public BatchResolveJob() {
+        super("Resolving all run descriptors...");
+    }
+
+    @Override
+    protected IStatus run(final IProgressMonitor monitor) {
+        long start = System.currentTimeMillis();
+        final List<IFile> files;
+        final Workspace workspace;
+        final byte[] repositoryFingerprint;
+        try {
+            files = findRunFiles();
+            workspace = Central.getWorkspace();
+            repositoryFingerprint = ResolutionResultCache.fingerprintRepositories(workspace, monitor);
+        } catch (ResolveCancelledException e) {
+            return Status.CANCEL_STATUS;
+        } catch (Exception e) {
+            summary = new MultiStatus(Plugin.PLUGIN_ID, 0, "Unable to resolve run descriptors.", null);
+            summary.add(new Status(IStatus.ERROR, Plugin.PLUGIN_ID, 0, e.getMessage(), e));
+            return Status.OK_STATUS;
+        }
+
+        monitor.beginTask(getName(), files.size());
+
+        // Report cancellation of the job to each resolve, without sharing the job monitor between threads
+        final IProgressMonitor cancelMonitor = new NullProgressMonitor() {
+            @Override
+            public boolean isCanceled() {
+                return monitor.isCanceled();
+            }
+        };
+
+        IExecutionService executionService = Plugin.getDefault().getExecutionService();
+        CompletionService<IStatus> completion = new ExecutorCompletionService<IStatus>(executionService.getExecutor(Pool.CPU, Priority.NORMAL));
+        List<IStatus> statuses = new ArrayList<IStatus>(files.size());
+        int parallelism = Math.max(1, Math.min(Runtime.getRuntime().availableProcessors(), MAX_PARALLEL_RESOLVES));
+        int submitted = 0;
+        int completed = 0;
+        while (completed < files.size()) {
+            while (submitted < files.size() && submitted - completed < parallelism && !monitor.isCanceled()) {
+                final IFile file = files.get(submitted++);
+                completion.submit(new Callable<IStatus>() {
+                    @Override
+                    public IStatus call() throws Exception {
+                        return resolve(file, workspace, repositoryFingerprint, cancelMonitor);
+                    }
+                });
+            }
+            if (completed == submitted)
+                break; // cancelled before the remaining files were submitted
+            try {
+                Future<IStatus> future = completion.take();
+                completed++;
+                IStatus status = future.get();
+                statuses.add(status);
+                monitor.subTask(status.getMessage());
+                monitor.worked(1);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            } catch (ExecutionException e) {
+                completed++;
+                logger.logError("Unexpected error resolving run descriptor", e.getCause());
+                statuses.add(new Status(IStatus.ERROR, Plugin.PLUGIN_ID, 0, "Unexpected error: " + e.getCause(), e.getCause()));
+            }
+        }
+        monitor.done();
+
+        Collections.sort(statuses, new Comparator<IStatus>() {
+            @Override
+            public int compare(IStatus s1, IStatus s2) {
+                return s1.getMessage().compareTo(s2.getMessage());
+            }
+        });
+        int resolved = 0;
+        for (IStatus status : statuses) {
+            if (status.getSeverity() < IStatus.WARNING)
+                resolved++;
+        }
+        String message = String.format("Resolved %d of %d run descriptors in %d ms.", resolved, files.size(), System.currentTimeMillis() - start);
+        summary = new MultiStatus(Plugin.PLUGIN_ID, 0, statuses.toArray(new IStatus[statuses.size()]), message, null);
+
+        return monitor.isCanceled() ? Status.CANCEL_STATUS : Status.OK_STATUS;
+    }
+
+    /**
+     * Get the outcome and duration of each resolve, or {@code null} if the job has not finished.
+     */
+    public MultiStatus getSummary() {
+        return summary;
+    }
+
+    private static List<IFile> findRunFiles() throws CoreException {
+        final List<IFile> files = new ArrayList<IFile>();
+        ResourcesPlugin.getWorkspace().getRoot().accept(new IResourceProxyVisitor() {
+            @Override
+            public boolean visit(IResourceProxy proxy) throws CoreException {
+                if (proxy.isDerived() || proxy.isTeamPrivateMember())
+                    return false;
+                if (proxy.getType() == IResource.FILE) {
+                    if (proxy.getName().endsWith(LaunchConstants.EXT_BNDRUN))
+                        files.add((IFile) proxy.requestResource());
+                    return false;
+                }
+                return true;
+            }
+        }, IResource.NONE);
+        return files;
+    }
+
+    private static IStatus resolve(final IFile file, Workspace workspace, byte[] repositoryFingerprint, IProgressMonitor monitor) {
+        String path = file.getFullPath().toString();
+        long start = System.currentTimeMillis();
+        try {
+            final long stamp = file.getModificationStamp();
+            final IDocument document = FileUtils.readFully(file);
+            if (document == null)
+                return new Status(IStatus.WARNING, Plugin.PLUGIN_ID, 0, path + ": file no longer exists.", null);
+
+            File runFile = file.getLocation().toFile();
+            try (Run run = Run.createRun(workspace, runFile)) {
+                BndEditModel model = new BndEditModel();
+                model.setWorkspace(workspace);
+                model.setProject(run);
+                model.loadFrom(new IDocumentWrapper(document));
+                model.setBndResource(runFile);
+
+                ResolveOperation operation = new ResolveOperation(model);
+                operation.setRepositoryFingerprint(repositoryFingerprint);
+                operation.run(monitor);
+                ResolutionResult result = operation.getResult();
+                long resolveTime = System.currentTimeMillis() - start;
+
+                if (result.getOutcome() != Outcome.Resolved) {
+                    int severity = result.getOutcome() == Outcome.Cancelled ? IStatus.CANCEL : IStatus.ERROR;
+                    String reason = result.getResolutionException() != null ? result.getResolutionException().getLocalizedMessage() : result.getOutcome().toString();
+                    return new MultiStatus(Plugin.PLUGIN_ID, 0, new IStatus[] {
+                            result.getStatus()
+                    }, String.format("%s: %s after %d ms: %s", path, result.getOutcome(), resolveTime, reason), null);
+                }
+
+                Collection<Resource> resources = result.getResourceWirings().keySet();
+                PrintStream pathsStream = null;
+                try {
+                    pathsStream = RunBundles.openResolvedPathsStream(run, runFile);
+                } catch (Exception e) {
+                    logger.logError("Unable to write resolved path list in target directory for " + path, e);
+                }
+                try {
+                    model.setRunBundles(RunBundles.toRunBundles(resources, pathsStream));
+                } finally {
+                    if (pathsStream != null)
+                        IO.close(pathsStream);
+                }
+                model.saveChangesTo(new IDocumentWrapper(document));
+
+                // Write back under the file's scheduling rule, but only if nobody changed the file while it was resolved
+                final boolean[] modified = new boolean[1];
+                IWorkspace eclipseWorkspace = file.getWorkspace();
+                eclipseWorkspace.run(new IWorkspaceRunnable() {
+                    @Override
+                    public void run(IProgressMonitor monitor) throws CoreException {
+                        if (file.getModificationStamp() != stamp) {
+                            modified[0] = true;
+                            return;
+                        }
+                        FileUtils.writeFully(document, file, false);
+                    }
+                }, file, IWorkspace.AVOID_UPDATE, null);
+
+                if (modified[0])
+                    return new Status(IStatus.WARNING, Plugin.PLUGIN_ID, 0, String.format("%s: not updated because it was modified during the resolve.", path), null);
+                return new Status(IStatus.INFO, Plugin.PLUGIN_ID, 0, String.format("%s: resolved %d bundles in %d ms.", path, resources.size(), resolveTime), null);
+            }
+        } catch (Exception e) {
+            return new Status(IStatus.ERROR, Plugin.PLUGIN_ID, 0, String.format("%s: failed after %d ms: %s", path, System.currentTimeMillis() - start, e.getMessage()), e);
+        }
+    }
+
+}
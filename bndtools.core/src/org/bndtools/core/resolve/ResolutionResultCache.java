@@ -0,0 +1,616 @@
+package org.bndtools.core.resolve;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileFilter;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.net.URI;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.bndtools.core.resolve.ResolutionResult.Outcome;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.MultiStatus;
+import org.osgi.framework.Version;
+import org.osgi.framework.namespace.IdentityNamespace;
+import org.osgi.resource.Capability;
+import org.osgi.resource.Namespace;
+import org.osgi.resource.Requirement;
+import org.osgi.resource.Resource;
+import org.osgi.resource.Wire;
+import org.osgi.service.repository.ContentNamespace;
+import org.osgi.service.repository.Repository;
+
+import aQute.bnd.build.Workspace;
+import aQute.bnd.build.model.BndEditModel;
+import aQute.bnd.osgi.Constants;
+import aQute.bnd.osgi.Processor;
+import aQute.bnd.osgi.resource.CapReqBuilder;
+import aQute.bnd.service.RepositoryPlugin;
+import aQute.lib.hex.Hex;
+import aQute.lib.io.IO;
+import bndtools.Plugin;
+
+/**
+ * A persistent cache of successful resolution results, keyed by a hash of the effective resolve inputs: the expanded
+ * properties of the model and a fingerprint of the content of each repository in the workspace. Any change to the
+ * requirements, blacklist, execution environment, framework, run path, run properties or distro, or to any repository,
+ * gives a new key, so cached results never need to be revalidated.
+ * <p>
+ * Results are stored with their complete resources and wires, so a cached result can be presented and applied exactly
+ * like a fresh one. The number of cached results is bounded; when it is exceeded the least recently used results are
+ * evicted.
+ */
+class ResolutionResultCache {
+
+    static final int DEFAULT_MAX_ENTRIES = 32;
+
+    private static final String CACHE_DIR = "resolutions";
+    private static final String SUFFIX = ".resolution";
+    private static final String ALGORITHM = "SHA-256";
+    private static final int FORMAT_VERSION = 1;
+
+    /**
+     * The headers read by the resolve context. They are hashed after macro expansion, also when they are inherited from
+     * the workspace. All other properties of the model itself are hashed as well.
+     */
+    private static final String[] KEY_HEADERS = {
+            Constants.RUNREQUIRES, "-runblacklist", Constants.RUNEE, Constants.RUNFW, Constants.RUNREPOS, "-runsystempackages", "-runsystemcapabilities", Constants.RUNPATH, "-runprovidedcapabilities", "-distro",
+            Constants.RUNPROPERTIES, "-resolve.effective", "-resolve.preferences", "-augment"
+    };
+
+    private static final byte TYPE_STRING = 'S';
+    private static final byte TYPE_VERSION = 'V';
+    private static final byte TYPE_LONG = 'L';
+    private static final byte TYPE_INTEGER = 'I';
+    private static final byte TYPE_DOUBLE = 'D';
+    private static final byte TYPE_BOOLEAN = 'Z';
+    private static final byte TYPE_URI = 'U';
+    private static final byte TYPE_LIST = '[';
+
+    private static ResolutionResultCache instance = null;
+
+    private final File dir;
+    private final int maxEntries;
+
+    /**
+     * Return the cache in the plugin state location, or {@code null} if the plugin is not active.
+     */
+    static synchronized ResolutionResultCache getInstance() {
+        if (instance == null) {
+            Plugin plugin = Plugin.getDefault();
+            if (plugin == null)
+                return null;
+            instance = new ResolutionResultCache(new File(plugin.getStateLocation().toFile(), CACHE_DIR), DEFAULT_MAX_ENTRIES);
+        }
+        return instance;
+    }
+
+    ResolutionResultCache(File dir, int maxEntries) {
+        this.dir = dir;
+        this.maxEntries = maxEntries;
+    }
+
+    /**
+     * Compute the cache key of the resolve inputs of the model.
+     *
+     * @return the key, or {@code null} if the model has no workspace and so its repositories cannot be fingerprinted.
+     */
+    static String computeKey(BndEditModel model, IProgressMonitor monitor) throws Exception {
+        Workspace workspace = model.getWorkspace();
+        if (workspace == null)
+            return null;
+        return computeKey(model, fingerprintRepositories(workspace, monitor));
+    }
+
+    /**
+     * Compute the cache key of the resolve inputs of the model, using a fingerprint of the workspace repositories
+     * computed earlier by {@link #fingerprintRepositories(Workspace, IProgressMonitor)}. This allows a batch of models
+     * to share a single fingerprint.
+     */
+    static String computeKey(BndEditModel model, byte[] repositoryFingerprint) throws Exception {
+        MessageDigest digest = MessageDigest.getInstance(ALGORITHM);
+        Processor properties = model.getProperties();
+        Set<String> keys = new TreeSet<String>(properties.getPropertyKeys(false));
+        keys.addAll(Arrays.asList(KEY_HEADERS));
+        for (String key : keys) {
+            String value = properties.getProperty(key);
+            update(digest, key);
+            update(digest, value != null ? value : "");
+        }
+        digest.update(repositoryFingerprint);
+        return Hex.toHexString(digest.digest()).toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Compute a fingerprint of the content of all the repositories in the workspace.
+     */
+    static byte[] fingerprintRepositories(Workspace workspace, IProgressMonitor monitor) throws Exception {
+        MessageDigest digest = MessageDigest.getInstance(ALGORITHM);
+        List<Repository> repositories = workspace.getPlugins(Repository.class);
+        for (Repository repository : repositories) {
+            if (monitor.isCanceled())
+                throw new ResolveCancelledException();
+            update(digest, repository instanceof RepositoryPlugin ? ((RepositoryPlugin) repository).getName() : repository.getClass().getName());
+            for (String resource : fingerprint(repository))
+                update(digest, resource);
+        }
+        return digest.digest();
+    }
+
+    /**
+     * List the identity, version and content hash of every resource in the repository, in a stable order.
+     */
+    private static List<String> fingerprint(Repository repository) {
+        Requirement requirement = new CapReqBuilder(IdentityNamespace.IDENTITY_NAMESPACE).addDirective(Namespace.REQUIREMENT_FILTER_DIRECTIVE, "(" + IdentityNamespace.IDENTITY_NAMESPACE + "=*)").buildSyntheticRequirement();
+        Map<Requirement,Collection<Capability>> providers = repository.findProviders(Collections.singleton(requirement));
+        Collection<Capability> capabilities = providers.get(requirement);
+        if (capabilities == null)
+            return Collections.emptyList();
+
+        List<String> result = new ArrayList<String>(capabilities.size());
+        for (Capability capability : capabilities) {
+            Map<String,Object> attrs = capability.getAttributes();
+            StringBuilder sb = new StringBuilder();
+            sb.append(attrs.get(IdentityNamespace.IDENTITY_NAMESPACE)).append(';').append(attrs.get(IdentityNamespace.CAPABILITY_VERSION_ATTRIBUTE)).append(';').append(attrs.get(IdentityNamespace.CAPABILITY_TYPE_ATTRIBUTE));
+            for (Capability content : capability.getResource().getCapabilities(ContentNamespace.CONTENT_NAMESPACE))
+                sb.append(';').append(content.getAttributes().get(ContentNamespace.CONTENT_NAMESPACE));
+            result.add(sb.toString());
+        }
+        Collections.sort(result);
+        return result;
+    }
+
+    private static void update(MessageDigest digest, String value) throws IOException {
+        digest.update(value.getBytes("UTF-8"));
+        digest.update((byte) 0);
+    }
+
+    /**
+     * Return the cached result for the key, or {@code null} if there is none or it cannot be read.
+     */
+    ResolutionResult get(String key, MultiStatus status) {
+        File file = new File(dir, key + SUFFIX);
+        if (!file.isFile())
+            return null;
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(IO.read(file)))) {
+            ResolutionResult result = read(in, status);
+            file.setLastModified(System.currentTimeMillis());
+            return result;
+        } catch (IOException | RuntimeException | OutOfMemoryError e) {
+            // A corrupt entry would fail every later resolve with the same inputs
+            IO.delete(file);
+            return null;
+        }
+    }
+
+    /**
+     * Store a successful result under the key. Results whose resources have attributes of unsupported types are not
+     * cached.
+     */
+    void put(String key, ResolutionResult result) throws IOException {
+        if (result.getOutcome() != Outcome.Resolved)
+            return;
+        synchronized (this) {
+            if (!dir.isDirectory() && !dir.mkdirs())
+                throw new IOException("Could not create directory " + dir);
+            File tmp = File.createTempFile("resolution", ".tmp", dir);
+            try {
+                try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)))) {
+                    write(out, result);
+                }
+                File file = new File(dir, key + SUFFIX);
+                IO.delete(file);
+                if (!tmp.renameTo(file))
+                    throw new IOException("Could not rename " + tmp + " to " + file);
+                evict();
+            } finally {
+                IO.delete(tmp);
+            }
+        }
+    }
+
+    private void evict() {
+        File[] files = dir.listFiles(new FileFilter() {
+            @Override
+            public boolean accept(File file) {
+                return file.getName().endsWith(SUFFIX);
+            }
+        });
+        if (files == null || files.length <= maxEntries)
+            return;
+        Arrays.sort(files, new Comparator<File>() {
+            @Override
+            public int compare(File f1, File f2) {
+                return Long.compare(f2.lastModified(), f1.lastModified());
+            }
+        });
+        for (int i = maxEntries; i < files.length; i++)
+            IO.delete(files[i]);
+    }
+
+    static void write(DataOutputStream out, ResolutionResult result) throws IOException {
+        // Number all the resources referred to by the result
+        Map<Resource,Integer> ids = new IdentityHashMap<Resource,Integer>();
+        List<Resource> resources = new ArrayList<Resource>();
+        for (Map<Resource,List<Wire>> wirings : Arrays.asList(result.getResourceWirings(), result.getOptionalResources())) {
+            for (Entry<Resource,List<Wire>> entry : wirings.entrySet()) {
+                addResource(entry.getKey(), ids, resources);
+                for (Wire wire : entry.getValue()) {
+                    addResource(wire.getRequirer(), ids, resources);
+                    addResource(wire.getProvider(), ids, resources);
+                }
+            }
+        }
+
+        out.writeInt(FORMAT_VERSION);
+        writeString(out, result.getLog() != null ? result.getLog() : "");
+        out.writeInt(resources.size());
+        for (Resource resource : resources) {
+            List<Capability> capabilities = resource.getCapabilities(null);
+            out.writeInt(capabilities.size());
+            for (Capability capability : capabilities)
+                writeCapReq(out, capability.getNamespace(), capability.getDirectives(), capability.getAttributes());
+            List<Requirement> requirements = resource.getRequirements(null);
+            out.writeInt(requirements.size());
+            for (Requirement requirement : requirements)
+                writeCapReq(out, requirement.getNamespace(), requirement.getDirectives(), requirement.getAttributes());
+        }
+        writeWirings(out, result.getResourceWirings(), ids);
+        writeWirings(out, result.getOptionalResources(), ids);
+    }
+
+    static ResolutionResult read(DataInputStream in, MultiStatus status) throws IOException {
+        if (in.readInt() != FORMAT_VERSION)
+            throw new IOException("Unsupported cache format");
+        String log = readString(in);
+        int count = readSize(in);
+        List<CachedResource> resources = new ArrayList<CachedResource>(count);
+        for (int i = 0; i < count; i++) {
+            CachedResource resource = new CachedResource();
+            int capabilities = readSize(in);
+            for (int j = 0; j < capabilities; j++)
+                resource.capabilities.add(readCapability(in, resource));
+            int requirements = readSize(in);
+            for (int j = 0; j < requirements; j++)
+                resource.requirements.add(readRequirement(in, resource));
+            resources.add(resource);
+        }
+        Map<Resource,List<Wire>> wirings = readWirings(in, resources);
+        Map<Resource,List<Wire>> optionalResources = readWirings(in, resources);
+        return new ResolutionResult(Outcome.Resolved, wirings, optionalResources, null, status, log);
+    }
+
+    private static void addResource(Resource resource, Map<Resource,Integer> ids, List<Resource> resources) {
+        if (!ids.containsKey(resource)) {
+            ids.put(resource, resources.size());
+            resources.add(resource);
+        }
+    }
+
+    private static void writeWirings(DataOutputStream out, Map<Resource,List<Wire>> wirings, Map<Resource,Integer> ids) throws IOException {
+        out.writeInt(wirings.size());
+        for (Entry<Resource,List<Wire>> entry : wirings.entrySet()) {
+            out.writeInt(ids.get(entry.getKey()));
+            out.writeInt(entry.getValue().size());
+            for (Wire wire : entry.getValue()) {
+                Requirement requirement = wire.getRequirement();
+                Capability capability = wire.getCapability();
+                out.writeInt(ids.get(wire.getRequirer()));
+                int index = wire.getRequirer().getRequirements(null).indexOf(requirement);
+                out.writeInt(index);
+                if (index < 0)
+                    writeCapReq(out, requirement.getNamespace(), requirement.getDirectives(), requirement.getAttributes());
+                out.writeInt(ids.get(wire.getProvider()));
+                index = wire.getProvider().getCapabilities(null).indexOf(capability);
+                out.writeInt(index);
+                if (index < 0)
+                    writeCapReq(out, capability.getNamespace(), capability.getDirectives(), capability.getAttributes());
+            }
+        }
+    }
+
+    private static Map<Resource,List<Wire>> readWirings(DataInputStream in, List<CachedResource> resources) throws IOException {
+        int count = readSize(in);
+        Map<Resource,List<Wire>> wirings = new LinkedHashMap<Resource,List<Wire>>(count);
+        for (int i = 0; i < count; i++) {
+            Resource resource = resource(resources, in.readInt());
+            int wireCount = readSize(in);
+            List<Wire> wires = new ArrayList<Wire>(wireCount);
+            for (int j = 0; j < wireCount; j++) {
+                CachedResource requirer = resource(resources, in.readInt());
+                int index = in.readInt();
+                Requirement requirement = index >= 0 ? element(requirer.requirements, index) : readRequirement(in, requirer);
+                CachedResource provider = resource(resources, in.readInt());
+                index = in.readInt();
+                Capability capability = index >= 0 ? element(provider.capabilities, index) : readCapability(in, provider);
+                wires.add(new CachedWire(capability, requirement));
+            }
+            wirings.put(resource, wires);
+        }
+        return wirings;
+    }
+
+    private static CachedResource resource(List<CachedResource> resources, int id) throws IOException {
+        return element(resources, id);
+    }
+
+    private static <T> T element(List<T> list, int index) throws IOException {
+        if (index < 0 || index >= list.size())
+            throw new IOException("Corrupt cache entry");
+        return list.get(index);
+    }
+
+    /*
+     * Read a count or length. Every element takes at least one byte, so it cannot exceed the number of bytes left.
+     */
+    private static int readSize(DataInputStream in) throws IOException {
+        int size = in.readInt();
+        if (size < 0 || size > in.available())
+            throw new IOException("Corrupt cache entry");
+        return size;
+    }
+
+    private static void writeCapReq(DataOutputStream out, String namespace, Map<String,String> directives, Map<String,Object> attributes) throws IOException {
+        out.writeUTF(namespace);
+        writeMap(out, directives);
+        writeMap(out, attributes);
+    }
+
+    private static void writeMap(DataOutputStream out, Map<String, ? > map) throws IOException {
+        out.writeInt(map.size());
+        for (Entry<String, ? > entry : map.entrySet()) {
+            out.writeUTF(entry.getKey());
+            writeValue(out, entry.getValue());
+        }
+    }
+
+    private static CachedCapability readCapability(DataInputStream in, Resource resource) throws IOException {
+        String namespace = in.readUTF();
+        Map<String,String> directives = readDirectives(in);
+        return new CachedCapability(resource, namespace, directives, readAttributes(in));
+    }
+
+    private static CachedRequirement readRequirement(DataInputStream in, Resource resource) throws IOException {
+        String namespace = in.readUTF();
+        Map<String,String> directives = readDirectives(in);
+        return new CachedRequirement(resource, namespace, directives, readAttributes(in));
+    }
+
+    private static Map<String,String> readDirectives(DataInputStream in) throws IOException {
+        int size = readSize(in);
+        Map<String,String> map = new LinkedHashMap<String,String>(size);
+        for (int i = 0; i < size; i++) {
+            String key = in.readUTF();
+            Object value = readValue(in);
+            if (!(value instanceof String))
+                throw new IOException("Corrupt cache entry");
+            map.put(key, (String) value);
+        }
+        return Collections.unmodifiableMap(map);
+    }
+
+    private static Map<String,Object> readAttributes(DataInputStream in) throws IOException {
+        int size = readSize(in);
+        Map<String,Object> map = new LinkedHashMap<String,Object>(size);
+        for (int i = 0; i < size; i++) {
+            String key = in.readUTF();
+            map.put(key, readValue(in));
+        }
+        return Collections.unmodifiableMap(map);
+    }
+
+    private static void writeValue(DataOutputStream out, Object value) throws IOException {
+        if (value instanceof String) {
+            out.writeByte(TYPE_STRING);
+            writeString(out, (String) value);
+        } else if (value instanceof Version) {
+            out.writeByte(TYPE_VERSION);
+            out.writeUTF(value.toString());
+        } else if (value instanceof Long) {
+            out.writeByte(TYPE_LONG);
+            out.writeLong((Long) value);
+        } else if (value instanceof Integer) {
+            out.writeByte(TYPE_INTEGER);
+            out.writeInt((Integer) value);
+        } else if (value instanceof Double) {
+            out.writeByte(TYPE_DOUBLE);
+            out.writeDouble((Double) value);
+        } else if (value instanceof Boolean) {
+            out.writeByte(TYPE_BOOLEAN);
+            out.writeBoolean((Boolean) value);
+        } else if (value instanceof URI) {
+            out.writeByte(TYPE_URI);
+            writeString(out, value.toString());
+        } else if (value instanceof List) {
+            List< ? > list = (List< ? >) value;
+            out.writeByte(TYPE_LIST);
+            out.writeInt(list.size());
+            for (Object element : list)
+                writeValue(out, element);
+        } else {
+            throw new IOException("Unsupported attribute type " + (value != null ? value.getClass().getName() : null));
+        }
+    }
+
+    private static Object readValue(DataInputStream in) throws IOException {
+        byte type = in.readByte();
+        switch (type) {
+            case TYPE_STRING :
+                return readString(in);
+            case TYPE_VERSION :
+                try {
+                    return Version.parseVersion(in.readUTF());
+                } catch (IllegalArgumentException e) {
+                    throw new IOException("Corrupt cache entry", e);
+                }
+            case TYPE_LONG :
+                return in.readLong();
+            case TYPE_INTEGER :
+                return in.readInt();
+            case TYPE_DOUBLE :
+                return in.readDouble();
+            case TYPE_BOOLEAN :
+                return in.readBoolean();
+            case TYPE_URI :
+                try {
+                    return new URI(readString(in));
+                } catch (Exception e) {
+                    throw new IOException("Corrupt cache entry", e);
+                }
+            case TYPE_LIST :
+                int size = readSize(in);
+                List<Object> list = new ArrayList<Object>(size);
+                for (int i = 0; i < size; i++)
+                    list.add(readValue(in));
+                return Collections.unmodifiableList(list);
+            default :
+                throw new IOException("Corrupt cache entry");
+        }
+    }
+
+    // Unlike writeUTF, not limited to 64K
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = value.getBytes("UTF-8");
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        byte[] bytes = new byte[readSize(in)];
+        in.readFully(bytes);
+        return new String(bytes, "UTF-8");
+    }
+
+    static class CachedResource implements Resource {
+        final List<Capability> capabilities = new ArrayList<Capability>();
+        final List<Requirement> requirements = new ArrayList<Requirement>();
+
+        @Override
+        public List<Capability> getCapabilities(String namespace) {
+            List<Capability> result = new ArrayList<Capability>();
+            for (Capability capability : capabilities) {
+                if (namespace == null || namespace.equals(capability.getNamespace()))
+                    result.add(capability);
+            }
+            return result;
+        }
+
+        @Override
+        public List<Requirement> getRequirements(String namespace) {
+            List<Requirement> result = new ArrayList<Requirement>();
+            for (Requirement requirement : requirements) {
+                if (namespace == null || namespace.equals(requirement.getNamespace()))
+                    result.add(requirement);
+            }
+            return result;
+        }
+
+        @Override
+        public String toString() {
+            List<Capability> identities = getCapabilities(IdentityNamespace.IDENTITY_NAMESPACE);
+            if (identities.isEmpty())
+                return super.toString();
+            Map<String,Object> attrs = identities.get(0).getAttributes();
+            return attrs.get(IdentityNamespace.IDENTITY_NAMESPACE) + ";version=" + attrs.get(IdentityNamespace.CAPABILITY_VERSION_ATTRIBUTE);
+        }
+    }
+
+    static abstract class CachedCapReq {
+        final Resource resource;
+        final String namespace;
+        final Map<String,String> directives;
+        final Map<String,Object> attributes;
+
+        CachedCapReq(Resource resource, String namespace, Map<String,String> directives, Map<String,Object> attributes) {
+            this.resource = resource;
+            this.namespace = namespace;
+            this.directives = directives;
+            this.attributes = attributes;
+        }
+
+        public String getNamespace() {
+            return namespace;
+        }
+
+        public Map<String,String> getDirectives() {
+            return directives;
+        }
+
+        public Map<String,Object> getAttributes() {
+            return attributes;
+        }
+
+        public Resource getResource() {
+            return resource;
+        }
+
+        @Override
+        public String toString() {
+            return namespace + directives + attributes;
+        }
+    }
+
+    static class CachedCapability extends CachedCapReq implements Capability {
+        CachedCapability(Resource resource, String namespace, Map<String,String> directives, Map<String,Object> attributes) {
+            super(resource, namespace, directives, attributes);
+        }
+    }
+
+    static class CachedRequirement extends CachedCapReq implements Requirement {
+        CachedRequirement(Resource resource, String namespace, Map<String,String> directives, Map<String,Object> attributes) {
+            super(resource, namespace, directives, attributes);
+        }
+    }
+
+    static class CachedWire implements Wire {
+        private final Capability capability;
+        private final Requirement requirement;
+
+        CachedWire(Capability capability, Requirement requirement) {
+            this.capability = capability;
+            this.requirement = requirement;
+        }
+
+        @Override
+        public Capability getCapability() {
+            return capability;
+        }
+
+        @Override
+        public Requirement getRequirement() {
+            return requirement;
+        }
+
+        @Override
+        public Resource getProvider() {
+            return capability.getResource();
+        }
+
+        @Override
+        public Resource getRequirer() {
+            return requirement.getResource();
+        }
+
+        @Override
+        public String toString() {
+            return requirement + " -> " + capability;
+        }
+    }
+}
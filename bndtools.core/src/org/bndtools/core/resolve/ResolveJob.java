@@ -57,6 +57,8 @@ public class ResolveJob extends Job {
         operation.run(monitor);
         result = operation.getResult();
 
+        if (result.getOutcome() == ResolutionResult.Outcome.Cancelled)
+            return Status.CANCEL_STATUS;
         return Status.OK_STATUS;
     }
 
@@ -1,19 +1,27 @@
 package org.bndtools.core.resolve;
 
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
+import org.bndtools.api.ILogger;
+import org.bndtools.api.Logger;
 import org.bndtools.core.resolve.ResolutionResult.Outcome;
 import org.eclipse.core.runtime.IProgressMonitor;
 import org.eclipse.core.runtime.IStatus;
 import org.eclipse.core.runtime.MultiStatus;
+import org.eclipse.core.runtime.NullProgressMonitor;
 import org.eclipse.core.runtime.Status;
 import org.eclipse.jface.operation.IRunnableWithProgress;
 import org.osgi.framework.BundleContext;
 import org.osgi.framework.ServiceReference;
+import org.osgi.resource.Capability;
+import org.osgi.resource.Requirement;
 import org.osgi.resource.Resource;
 import org.osgi.resource.Wire;
 import org.osgi.service.coordinator.Coordination;
@@ -30,9 +38,12 @@ import bndtools.Plugin;
 
 public class ResolveOperation implements IRunnableWithProgress {
 
+    private static final ILogger logger = Logger.getLogger(ResolveOperation.class);
+
     private final BndEditModel model;
     private final List<ResolutionCallback> callbacks;
 
+    private byte[] repositoryFingerprint = null;
     private ResolutionResult result;
 
     public ResolveOperation(BndEditModel model) {
@@ -44,8 +55,18 @@ public class ResolveOperation implements IRunnableWithProgress {
         this.callbacks = callbacks;
     }
 
+    /**
+     * Use a fingerprint of the workspace repositories computed earlier, rather than computing one for this operation.
+     * The repositories may change after the fingerprint was computed, so it is computed again before a result is cached.
+     */
+    void setRepositoryFingerprint(byte[] repositoryFingerprint) {
+        this.repositoryFingerprint = repositoryFingerprint;
+    }
+
     @Override
     public void run(IProgressMonitor monitor) {
+        if (monitor == null)
+            monitor = new NullProgressMonitor();
 
         MultiStatus status = new MultiStatus(Plugin.PLUGIN_ID, 0, Messages.ResolveOperation_errorOverview, null);
 
@@ -58,11 +79,28 @@ public class ResolveOperation implements IRunnableWithProgress {
         // Begin resolve
         ResolveProcess resolve = new ResolveProcess();
         ResolverLogger logger = new ResolverLogger();
+        ResolutionResultCache cache = ResolutionResultCache.getInstance();
+        String cacheKey = null;
         try {
+            if (cache != null) {
+                cacheKey = computeCacheKey(monitor);
+                ResolutionResult cached = cacheKey != null ? cache.get(cacheKey, status) : null;
+                if (cached != null && replayCallbacks(cached)) {
+                    result = cached;
+                    if (coordination != null)
+                        coordination.end();
+                    return;
+                }
+            }
+
+            List<ResolutionCallback> operationCallbacks = new ArrayList<ResolutionCallback>(callbacks.size() + 1);
+            operationCallbacks.add(new CancellationCallback(monitor));
+            operationCallbacks.addAll(callbacks);
+
             BndResolver bndResolver = new BndResolver(logger);
 
             ReporterLogService log = new ReporterLogService(model.getWorkspace());
-            Map<Resource,List<Wire>> wirings = resolve.resolveRequired(model, model.getWorkspace(), bndResolver, callbacks, log);
+            Map<Resource,List<Wire>> wirings = resolve.resolveRequired(model, model.getWorkspace(), bndResolver, operationCallbacks, log);
 
             Map<Resource,List<Wire>> optionalResources = new HashMap<Resource,List<Wire>>(resolve.getOptionalResources().size());
 
@@ -71,6 +109,8 @@ public class ResolveOperation implements IRunnableWithProgress {
             }
 
             result = new ResolutionResult(Outcome.Resolved, wirings, optionalResources, null, status, logger.getLog());
+            if (cacheKey != null && !monitor.isCanceled() && isFingerprintCurrent(monitor))
+                storeInCache(cache, cacheKey, result);
             if (coordination != null)
                 coordination.end();
         } catch (ResolveCancelledException e) {
@@ -96,8 +136,89 @@ public class ResolveOperation implements IRunnableWithProgress {
         }
     }
 
+    /*
+     * Give the callbacks the requirements of a cached result, each with the capability it was wired to as the only
+     * candidate, as they are not called by the resolver on a cache hit. Returns false if a callback rejected or replaced
+     * the candidate, in which case the cached result cannot be used.
+     */
+    private boolean replayCallbacks(ResolutionResult cached) {
+        if (callbacks.isEmpty())
+            return true;
+        Set<Capability> wired = Collections.emptySet();
+        for (List<Wire> wires : cached.getResourceWirings().values()) {
+            for (Wire wire : wires) {
+                Capability capability = wire.getCapability();
+                List<Capability> candidates = new ArrayList<Capability>(1);
+                candidates.add(capability);
+                for (ResolutionCallback callback : callbacks)
+                    callback.processCandidates(wire.getRequirement(), wired, candidates);
+                if (candidates.size() != 1 || candidates.get(0) != capability)
+                    return false;
+            }
+        }
+        return true;
+    }
+
+    private String computeCacheKey(IProgressMonitor monitor) {
+        try {
+            if (repositoryFingerprint != null)
+                return ResolutionResultCache.computeKey(model, repositoryFingerprint);
+            return ResolutionResultCache.computeKey(model, monitor);
+        } catch (ResolveCancelledException e) {
+            throw e;
+        } catch (Exception e) {
+            logger.logWarning("Unable to compute the resolution cache key, resolving without the cache.", e);
+            return null;
+        }
+    }
+
+    /*
+     * Check that the repositories still have the fingerprint given to the operation, so that a result resolved against
+     * changed repositories is not cached under the key of their earlier content
+     */
+    private boolean isFingerprintCurrent(IProgressMonitor monitor) {
+        if (repositoryFingerprint == null)
+            return true;
+        try {
+            if (Arrays.equals(repositoryFingerprint, ResolutionResultCache.fingerprintRepositories(model.getWorkspace(), monitor)))
+                return true;
+            logger.logInfo("Resolution result not cached: the repositories changed during the resolve.", null);
+        } catch (ResolveCancelledException e) {
+            throw e;
+        } catch (Exception e) {
+            logger.logWarning("Unable to check the repository fingerprint, resolution result not cached.", e);
+        }
+        return false;
+    }
+
+    private static void storeInCache(ResolutionResultCache cache, String cacheKey, ResolutionResult result) {
+        try {
+            cache.put(cacheKey, result);
+        } catch (IOException e) {
+            logger.logInfo("Resolution result not cached: " + e.getMessage(), null);
+        }
+    }
+
     public ResolutionResult getResult() {
         return result;
     }
 
+    /**
+     * Stops the resolver at the next requirement it processes once the operation has been cancelled. The resolver
+     * processes candidates for every requirement, so this bounds the time a cancelled resolve keeps running.
+     */
+    private static class CancellationCallback implements ResolutionCallback {
+        private final IProgressMonitor monitor;
+
+        CancellationCallback(IProgressMonitor monitor) {
+            this.monitor = monitor;
+        }
+
+        @Override
+        public void processCandidates(Requirement requirement, Set<Capability> wired, List<Capability> candidates) {
+            if (monitor.isCanceled())
+                throw new ResolveCancelledException();
+        }
+    }
+
 }
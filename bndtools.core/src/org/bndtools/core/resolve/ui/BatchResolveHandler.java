@@ -0,0 +1,56 @@
+package org.bndtools.core.resolve.ui;
+
+import org.bndtools.core.resolve.BatchResolveJob;
+import org.eclipse.core.commands.AbstractHandler;
+import org.eclipse.core.commands.ExecutionEvent;
+import org.eclipse.core.commands.ExecutionException;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.MultiStatus;
+import org.eclipse.core.runtime.jobs.IJobChangeEvent;
+import org.eclipse.core.runtime.jobs.JobChangeAdapter;
+import org.eclipse.jface.dialogs.ErrorDialog;
+import org.eclipse.jface.dialogs.MessageDialog;
+import org.eclipse.swt.widgets.Shell;
+import org.eclipse.ui.IWorkbenchWindow;
+import org.eclipse.ui.handlers.HandlerUtil;
+
+public class BatchResolveHandler extends AbstractHandler {
+
+    private static final String TITLE = "Resolve All Run Descriptors";
+
+    @Override
+    public Object execute(ExecutionEvent event) throws ExecutionException {
+        IWorkbenchWindow window = HandlerUtil.getActiveWorkbenchWindowChecked(event);
+
+        // Unsaved editor changes would otherwise be overwritten, or cause the results to be discarded
+        if (!window.getWorkbench().saveAllEditors(true))
+            return null;
+
+        final Shell shell = window.getShell();
+        final BatchResolveJob job = new BatchResolveJob();
+        job.addJobChangeListener(new JobChangeAdapter() {
+            @Override
+            public void done(IJobChangeEvent event) {
+                final MultiStatus summary = job.getSummary();
+                if (summary == null || shell.isDisposed())
+                    return;
+                shell.getDisplay().asyncExec(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (shell.isDisposed())
+                            return;
+                        if (summary.getChildren().length == 0)
+                            MessageDialog.openInformation(shell, TITLE, "No run descriptors were found in the workspace.");
+                        else
+                            ErrorDialog.openError(shell, TITLE, summary.getMessage(), summary, IStatus.INFO | IStatus.WARNING | IStatus.ERROR | IStatus.CANCEL);
+                    }
+                });
+            }
+        });
+        job.setUser(true);
+        job.schedule();
+
+        return null;
+    }
+
+}
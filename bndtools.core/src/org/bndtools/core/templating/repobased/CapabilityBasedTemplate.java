@@ -1,11 +1,11 @@
 package org.bndtools.core.templating.repobased;
 
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.URI;
 import java.util.ArrayList;
+import java.util.Enumeration;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
@@ -13,7 +13,6 @@ import java.util.Map.Entry;
 import java.util.NoSuchElementException;
 import java.util.jar.JarEntry;
 import java.util.jar.JarFile;
-import java.util.jar.JarInputStream;
 
 import org.apache.felix.metatype.AD;
 import org.apache.felix.metatype.MetaData;
@@ -65,6 +64,8 @@ public class CapabilityBasedTemplate implements Template {
 
     private File _bundleFile = null;
     private ResourceMap _inputResources = null;
+    private File _inputsFile = null;
+    private long _inputsModified = 0L;
 
     public CapabilityBasedTemplate(Capability capability, BundleLocator locator, TemplateEngine engine) {
         this.capability = capability;
@@ -230,31 +231,39 @@ public class CapabilityBasedTemplate implements Template {
     private synchronized ResourceMap getInputSources() throws IOException {
         File bundleFile = fetchBundle();
 
-        _inputResources = new ResourceMap();
-        try (JarInputStream in = new JarInputStream(new FileInputStream(bundleFile))) {
-            JarEntry jarEntry = in.getNextJarEntry();
-            while (jarEntry != null) {
-                String entryPath = jarEntry.getName().trim();
-                if (entryPath.startsWith(dir)) {
-                    String relativePath = entryPath.substring(dir.length());
-                    if (!relativePath.isEmpty()) { // skip the root folder
-                        Resource resource;
-                        if (relativePath.endsWith("/")) {
-                            // strip the trailing slash
-                            relativePath.substring(0, relativePath.length());
-                            resource = new FolderResource();
-                        } else {
-                            // cannot use IO.collect() because it closes the whole JarInputStream
-                            resource = BytesResource.loadFrom(in);
+        // Read the bundle only once; the engines may remove entries from the map they are given, so hand out a copy
+        if (_inputResources == null || !bundleFile.equals(_inputsFile) || bundleFile.lastModified() != _inputsModified) {
+            ResourceMap resources = new ResourceMap();
+            try (JarFile jarFile = new JarFile(bundleFile)) {
+                for (Enumeration<JarEntry> entries = jarFile.entries(); entries.hasMoreElements();) {
+                    JarEntry jarEntry = entries.nextElement();
+                    String entryPath = jarEntry.getName().trim();
+                    if (entryPath.startsWith(dir)) {
+                        String relativePath = entryPath.substring(dir.length());
+                        if (!relativePath.isEmpty()) { // skip the root folder
+                            Resource resource;
+                            if (relativePath.endsWith("/")) {
+                                resource = new FolderResource();
+                            } else {
+                                try (InputStream in = jarFile.getInputStream(jarEntry)) {
+                                    resource = BytesResource.loadFrom(in);
+                                }
+                            }
+                            resources.put(relativePath, resource);
                         }
-                        _inputResources.put(relativePath, resource);
                     }
-
                 }
-                jarEntry = in.getNextJarEntry();
             }
+            _inputResources = resources;
+            _inputsFile = bundleFile;
+            _inputsModified = bundleFile.lastModified();
+        }
+
+        ResourceMap copy = new ResourceMap();
+        for (Entry<String,Resource> entry : _inputResources.entries()) {
+            copy.put(entry.getKey(), entry.getValue());
         }
-        return _inputResources;
+        return copy;
     }
 
     private synchronized File fetchBundle() throws IOException {
@@ -5,11 +5,23 @@ import java.net.URI;
 
 import aQute.lib.io.IO;
 
-// TODO need to use some kind of cache to avoid repeated downloads
 public class DirectDownloadBundleLocator implements BundleLocator {
 
+    private final TemplateBundleCache cache;
+
+    public DirectDownloadBundleLocator() {
+        this(null);
+    }
+
+    public DirectDownloadBundleLocator(TemplateBundleCache cache) {
+        this.cache = cache;
+    }
+
     @Override
     public File locate(String bsn, String hash, String algo, URI location) throws Exception {
+        if (cache != null)
+            return cache.get(hash, algo, location);
+
         File tempFile = File.createTempFile("download", "jar");
         tempFile.deleteOnExit();
 
@@ -7,18 +7,32 @@ import java.util.List;
 import java.util.Map;
 
 import aQute.bnd.service.RepositoryPlugin;
-import aQute.lib.io.IO;
 
 public class RepoPluginsBundleLocator implements BundleLocator {
 
     private final List<RepositoryPlugin> plugins;
+    private final TemplateBundleCache cache;
+    private final BundleLocator fallback;
 
     public RepoPluginsBundleLocator(List<RepositoryPlugin> plugins) {
+        this(plugins, null);
+    }
+
+    public RepoPluginsBundleLocator(List<RepositoryPlugin> plugins, TemplateBundleCache cache) {
         this.plugins = plugins;
+        this.cache = cache;
+        this.fallback = new DirectDownloadBundleLocator(cache);
     }
 
     @Override
     public File locate(String bsn, String hash, String algo, URI location) throws Exception {
+        // A previously downloaded copy with the same content is always good, and avoids querying the repositories
+        if (cache != null && hash != null && "SHA-256".equalsIgnoreCase(algo)) {
+            File cached = cache.getCached(hash);
+            if (cached != null)
+                return cached;
+        }
+
         Map<String,String> searchProps = new HashMap<>();
         searchProps.put("version", "hash");
         searchProps.put("hash", algo + ":" + hash);
@@ -34,13 +48,8 @@ public class RepoPluginsBundleLocator implements BundleLocator {
             }
         }
 
-        // Fall back to direct download
-        // TODO: need some kind of download/cache service to avoid repeated downloads
-        File tempFile = File.createTempFile("download", "jar");
-        tempFile.deleteOnExit();
-
-        IO.copy(location.toURL(), tempFile);
-        return tempFile;
+        // Fall back to direct download, through the cache if we have one
+        return fallback.locate(bsn, hash, algo, location);
     }
 
 }
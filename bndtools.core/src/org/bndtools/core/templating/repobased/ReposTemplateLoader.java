@@ -1,23 +1,35 @@
 package org.bndtools.core.templating.repobased;
 
+import java.io.File;
 import java.io.IOException;
 import java.net.URISyntaxException;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.Iterator;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
+import org.bndtools.api.IExecutionService;
+import org.bndtools.api.IExecutionService.Pool;
+import org.bndtools.api.IExecutionService.Priority;
+import org.bndtools.templating.IncrementalTemplateLoader;
 import org.bndtools.templating.Template;
 import org.bndtools.templating.TemplateEngine;
+import org.bndtools.templating.TemplateListener;
 import org.bndtools.templating.TemplateLoader;
-import org.bndtools.utils.collections.CollectionUtils;
 import org.eclipse.osgi.framework.internal.core.Constants;
 import org.osgi.framework.namespace.IdentityNamespace;
 import org.osgi.resource.Capability;
@@ -25,66 +37,132 @@ import org.osgi.resource.Namespace;
 import org.osgi.resource.Requirement;
 import org.osgi.service.component.annotations.Activate;
 import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Deactivate;
 import org.osgi.service.component.annotations.Reference;
 import org.osgi.service.component.annotations.ReferenceCardinality;
 import org.osgi.service.component.annotations.ReferencePolicy;
 import org.osgi.service.component.annotations.ReferencePolicyOption;
 import org.osgi.service.repository.Repository;
-import org.osgi.util.function.Function;
 import org.osgi.util.promise.Deferred;
 import org.osgi.util.promise.Promise;
-import org.osgi.util.promise.Promises;
-import org.osgi.util.promise.Success;
 
 import aQute.bnd.build.Workspace;
+import aQute.bnd.build.WorkspaceRepository;
 import aQute.bnd.deployer.repository.FixedIndexedRepo;
+import aQute.bnd.osgi.Jar;
 import aQute.bnd.osgi.resource.CapReqBuilder;
 import aQute.bnd.osgi.resource.ResourceUtils;
 import aQute.bnd.osgi.resource.ResourceUtils.IdentityCapability;
+import aQute.bnd.service.RepositoryListenerPlugin;
+import aQute.bnd.service.RepositoryPlugin;
 import aQute.service.reporter.Reporter;
+import bndtools.Plugin;
 import bndtools.central.Central;
+import bndtools.central.WorkspaceR5Repository;
 import bndtools.preferences.BndPreferences;
 
-@Component(name = "org.bndtools.templating.repos", property = {
+@Component(name = "org.bndtools.templating.repos", service = {
+        TemplateLoader.class, IncrementalTemplateLoader.class, RepositoryListenerPlugin.class
+}, property = {
         "source=workspace", Constants.SERVICE_DESCRIPTION + "=Load templates from the Workspace and Repositories", Constants.SERVICE_RANKING + "=" + ReposTemplateLoader.RANKING
 })
-public class ReposTemplateLoader implements TemplateLoader {
+public class ReposTemplateLoader implements IncrementalTemplateLoader, RepositoryListenerPlugin {
 
     static final int RANKING = Integer.MAX_VALUE;
 
     private static final String NS_TEMPLATE = "org.bndtools.template";
 
+    private static final String BUNDLE_CACHE_DIR = "templatebundles";
+
+    private static final int MAX_THREADS = 4;
+    private static final long DEFAULT_REPO_TIMEOUT = 30000L;
+
     private final ConcurrentMap<String,TemplateEngine> engines = new ConcurrentHashMap<>();
 
+    /**
+     * Templates found in each repository, by template type. Entries are dropped when the repository reports a refresh,
+     * when the repository is no longer configured, or when the workspace repository has loaded a newer index.
+     */
+    private final Map<Object,Memo> memo = Collections.synchronizedMap(new HashMap<Object,Memo>());
+
     // for testing
     Workspace workspace = null;
+    long repoTimeout = DEFAULT_REPO_TIMEOUT;
 
     private ExecutorService executor;
+    private ExecutorService ownedExecutor;
+    private ScheduledExecutorService timer;
+    private ScheduledExecutorService ownedTimer;
+
+    private TemplateBundleCache bundleCache;
+
+    private List<String> prefsRepoUris = null;
+    private FixedIndexedRepo prefsRepo = null;
 
     @Reference(cardinality = ReferenceCardinality.OPTIONAL, policyOption = ReferencePolicyOption.GREEDY)
-    void setExecutorService(ExecutorService executor) {
-        this.executor = executor;
+    void setExecutionService(IExecutionService executionService) {
+        this.executor = executionService.getExecutor(Pool.IO, Priority.NORMAL);
+        this.timer = executionService.getScheduler();
     }
 
     @Reference(cardinality = ReferenceCardinality.MULTIPLE, policy = ReferencePolicy.DYNAMIC)
     void addTemplateEngine(TemplateEngine engine, Map<String,Object> svcProps) {
         String name = (String) svcProps.get("name");
         engines.put(name, engine);
+        memo.clear();
     }
 
     void removeTemplateEngine(@SuppressWarnings("unused") TemplateEngine engine, Map<String,Object> svcProps) {
         String name = (String) svcProps.get("name");
         engines.remove(name);
+        memo.clear();
     }
 
     @Activate
     void activate() {
-        if (executor == null)
-            executor = Executors.newCachedThreadPool();
+        ThreadFactory threadFactory = new ThreadFactory() {
+            private final AtomicInteger count = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "bndtools-templates-" + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        };
+        if (executor == null) {
+            ThreadPoolExecutor pool = new ThreadPoolExecutor(MAX_THREADS, MAX_THREADS, 60L, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), threadFactory);
+            pool.allowCoreThreadTimeOut(true);
+            ownedExecutor = pool;
+            executor = ownedExecutor;
+        }
+
+        if (timer == null) {
+            ownedTimer = Executors.newSingleThreadScheduledExecutor(threadFactory);
+            timer = ownedTimer;
+        }
+
+        Plugin plugin = Plugin.getDefault();
+        if (plugin != null)
+            bundleCache = new TemplateBundleCache(new File(plugin.getStateLocation().toFile(), BUNDLE_CACHE_DIR));
+    }
+
+    @Deactivate
+    void deactivate() {
+        if (ownedTimer != null)
+            ownedTimer.shutdownNow();
+        if (ownedExecutor != null)
+            ownedExecutor.shutdownNow();
+        memo.clear();
     }
 
     @Override
     public Promise<List<Template>> findTemplates(String templateType, final Reporter reporter) {
+        return findTemplates(templateType, reporter, null);
+    }
+
+    @Override
+    public Promise<List<Template>> findTemplates(final String templateType, final Reporter reporter, final TemplateListener listener) {
         String filterStr = String.format("(%s=%s)", NS_TEMPLATE, templateType);
         final Requirement requirement = new CapReqBuilder(NS_TEMPLATE).addDirective(Namespace.REQUIREMENT_FILTER_DIRECTIVE, filterStr).buildSyntheticRequirement();
 
@@ -95,10 +173,10 @@ public class ReposTemplateLoader implements TemplateLoader {
             if (workspace == null)
                 workspace = Central.getWorkspace();
             workspaceRepos = workspace.getPlugins(Repository.class);
-            tmpLocator = new RepoPluginsBundleLocator(workspace.getRepositories());
+            tmpLocator = new RepoPluginsBundleLocator(workspace.getRepositories(), bundleCache);
         } catch (Exception e) {
             workspaceRepos = Collections.emptyList();
-            tmpLocator = new DirectDownloadBundleLocator();
+            tmpLocator = new DirectDownloadBundleLocator(bundleCache);
         }
         final BundleLocator locator = tmpLocator;
 
@@ -106,62 +184,190 @@ public class ReposTemplateLoader implements TemplateLoader {
         List<Repository> repos = new ArrayList<>(workspaceRepos.size() + 1);
         repos.addAll(workspaceRepos);
         addPreferenceConfiguredRepos(repos, reporter);
+        synchronized (memo) {
+            memo.keySet().retainAll(repos);
+        }
 
-        // Generate a Promise<List<Template>> for each repository and add to an accumulator
-        Promise<List<Template>> accumulator = Promises.resolved((List<Template>) new LinkedList<Template>());
+        // Publish each repository's templates as soon as they are available, and resolve when all are accounted for
+        final TemplateAccumulator accumulator = new TemplateAccumulator(repos.size(), listener);
         for (final Repository repo : repos) {
-            final Deferred<List<Template>> deferred = new Deferred<>();
+            List<Template> memoized = getMemoized(repo, templateType);
+            if (memoized != null) {
+                accumulator.publish(memoized);
+                continue;
+            }
 
-            final Promise<List<Template>> current = deferred.getPromise();
-            accumulator = accumulator.then(new Success<List<Template>,List<Template>>() {
+            final AtomicBoolean done = new AtomicBoolean(false);
+            executor.submit(new Runnable() {
                 @Override
-                public Promise<List<Template>> call(Promise<List<Template>> resolved) throws Exception {
-                    final List<Template> prefix = resolved.getValue();
-                    return current.map(new Function<List<Template>,List<Template>>() {
-                        @Override
-                        public List<Template> apply(List<Template> t) {
-                            return CollectionUtils.append(prefix, t);
-                        }
-                    });
+                public void run() {
+                    List<Template> templates = Collections.emptyList();
+                    try {
+                        long generation = getGeneration(repo);
+                        templates = loadTemplates(repo, requirement, locator, reporter);
+                        setMemoized(repo, generation, templateType, templates);
+                    } catch (Exception e) {
+                        reporter.exception(e, "Error loading templates from repository %s", repo);
+                    } finally {
+                        // A late result is still memoized, but is not published once the time budget is spent
+                        if (done.compareAndSet(false, true))
+                            accumulator.publish(templates);
+                    }
                 }
             });
-
-            executor.submit(new Runnable() {
+            timer.schedule(new Runnable() {
                 @Override
                 public void run() {
-                    List<Template> templates = new LinkedList<>();
-                    Map<Requirement,Collection<Capability>> providerMap = repo.findProviders(Collections.singleton(requirement));
-                    if (providerMap != null) {
-                        Collection<Capability> candidates = providerMap.get(requirement);
-                        if (candidates != null) {
-                            for (Capability cap : candidates) {
-                                IdentityCapability idcap = ResourceUtils.getIdentityCapability(cap.getResource());
-                                Object id = idcap.getAttributes().get(IdentityNamespace.IDENTITY_NAMESPACE);
-                                Object ver = idcap.getAttributes().get(IdentityNamespace.CAPABILITY_VERSION_ATTRIBUTE);
-                                try {
-                                    String engineName = (String) cap.getAttributes().get("engine");
-                                    if (engineName == null)
-                                        engineName = "stringtemplate";
-                                    TemplateEngine engine = engines.get(engineName);
-                                    if (engine != null)
-                                        templates.add(new CapabilityBasedTemplate(cap, locator, engine));
-                                    else
-                                        reporter.error("Error loading template from resource '%s' version %s: no Template Engine available matching '%s'", id, ver, engineName);
-                                } catch (Exception e) {
-                                    reporter.error("Error loading template from resource '%s' version %s: %s", id, ver, e.getMessage());
-                                }
-                            }
-                        }
+                    // The load is left to complete in the background so that its result is memoized for next time
+                    if (done.compareAndSet(false, true)) {
+                        reporter.warning("Timed out after %dms loading templates from repository %s", repoTimeout, repo);
+                        accumulator.publish(Collections.<Template> emptyList());
                     }
-                    deferred.resolve(templates);
                 }
-            });
+            }, repoTimeout, TimeUnit.MILLISECONDS);
+        }
+
+        return accumulator.getPromise();
+    }
+
+    private List<Template> loadTemplates(Repository repo, Requirement requirement, BundleLocator locator, Reporter reporter) {
+        List<Template> templates = new ArrayList<>();
+        Map<Requirement,Collection<Capability>> providerMap = repo.findProviders(Collections.singleton(requirement));
+        if (providerMap != null) {
+            Collection<Capability> candidates = providerMap.get(requirement);
+            if (candidates != null) {
+                for (Capability cap : candidates) {
+                    IdentityCapability idcap = ResourceUtils.getIdentityCapability(cap.getResource());
+                    Object id = idcap.getAttributes().get(IdentityNamespace.IDENTITY_NAMESPACE);
+                    Object ver = idcap.getAttributes().get(IdentityNamespace.CAPABILITY_VERSION_ATTRIBUTE);
+                    try {
+                        String engineName = (String) cap.getAttributes().get("engine");
+                        if (engineName == null)
+                            engineName = "stringtemplate";
+                        TemplateEngine engine = engines.get(engineName);
+                        if (engine != null)
+                            templates.add(new CapabilityBasedTemplate(cap, locator, engine));
+                        else
+                            reporter.error("Error loading template from resource '%s' version %s: no Template Engine available matching '%s'", id, ver, engineName);
+                    } catch (Exception e) {
+                        reporter.error("Error loading template from resource '%s' version %s: %s", id, ver, e.getMessage());
+                    }
+                }
+            }
+        }
+        return Collections.unmodifiableList(templates);
+    }
+
+    private List<Template> getMemoized(Repository repo, String templateType) {
+        synchronized (memo) {
+            Memo memoized = memo.get(repo);
+            return memoized != null && memoized.generation == getGeneration(repo) ? memoized.byType.get(templateType) : null;
+        }
+    }
+
+    private void setMemoized(Repository repo, long generation, String templateType, List<Template> templates) {
+        synchronized (memo) {
+            Memo memoized = memo.get(repo);
+            if (memoized == null || memoized.generation != generation) {
+                memoized = new Memo(generation);
+                memo.put(repo, memoized);
+            }
+            memoized.byType.put(templateType, templates);
         }
+    }
+
+    /*
+     * Projects are indexed into the workspace repository when they are built, without a refresh being reported
+     */
+    private static long getGeneration(Repository repo) {
+        return repo instanceof WorkspaceR5Repository ? ((WorkspaceR5Repository) repo).getGeneration() : 0L;
+    }
+
+    private void invalidate(RepositoryPlugin repository) {
+        synchronized (memo) {
+            memo.remove(repository);
 
-        return accumulator;
+            // Refreshes of the workspace are reported for its WorkspaceRepository plugin, while the templates are found in
+            // the WorkspaceR5Repository
+            if (repository instanceof WorkspaceRepository) {
+                for (Iterator<Object> iter = memo.keySet().iterator(); iter.hasNext();) {
+                    if (iter.next() instanceof WorkspaceR5Repository)
+                        iter.remove();
+                }
+            }
+        }
     }
 
-    private static void addPreferenceConfiguredRepos(List<Repository> repos, Reporter reporter) {
+    @Override
+    public void bundleAdded(RepositoryPlugin repository, Jar jar, File file) {
+        invalidate(repository);
+    }
+
+    @Override
+    public void bundleRemoved(RepositoryPlugin repository, Jar jar, File file) {
+        invalidate(repository);
+    }
+
+    @Override
+    public void repositoryRefreshed(RepositoryPlugin repository) {
+        invalidate(repository);
+    }
+
+    @Override
+    public void repositoriesRefreshed() {
+        memo.clear();
+    }
+
+    private static final class Memo {
+        final long generation;
+        final Map<String,List<Template>> byType = new HashMap<>();
+
+        Memo(long generation) {
+            this.generation = generation;
+        }
+    }
+
+    /**
+     * Collects the templates published for each repository, passing them on to the listener, and resolves the promise
+     * once every repository has published.
+     */
+    private static class TemplateAccumulator {
+        private final Deferred<List<Template>> deferred = new Deferred<>();
+        private final List<Template> templates = new ArrayList<>();
+        private final TemplateListener listener;
+        private int remaining;
+
+        TemplateAccumulator(int count, TemplateListener listener) {
+            this.remaining = count;
+            this.listener = listener;
+            if (count == 0)
+                deferred.resolve(Collections.<Template> emptyList());
+        }
+
+        void publish(List<Template> batch) {
+            if (listener != null && !batch.isEmpty()) {
+                try {
+                    listener.templatesFound(batch);
+                } catch (Exception e) {
+                    // a broken listener must not stop the discovery
+                }
+            }
+            List<Template> result = null;
+            synchronized (this) {
+                templates.addAll(batch);
+                if (--remaining == 0)
+                    result = new ArrayList<>(templates);
+            }
+            if (result != null)
+                deferred.resolve(result);
+        }
+
+        Promise<List<Template>> getPromise() {
+            return deferred.getPromise();
+        }
+    }
+
+    private void addPreferenceConfiguredRepos(List<Repository> repos, Reporter reporter) {
         BndPreferences bndPrefs = null;
         try {
             bndPrefs = new BndPreferences();
@@ -172,8 +378,14 @@ public class ReposTemplateLoader implements TemplateLoader {
         if (bndPrefs != null && bndPrefs.getEnableTemplateRepo()) {
             List<String> repoUris = bndPrefs.getTemplateRepoUriList();
             try {
-                FixedIndexedRepo prefsRepo = loadRepo(repoUris);
-                repos.add(prefsRepo);
+                synchronized (this) {
+                    // Reuse the repository while the configuration is unchanged, so its templates stay memoized
+                    if (prefsRepo == null || !repoUris.equals(prefsRepoUris)) {
+                        prefsRepo = loadRepo(repoUris);
+                        prefsRepoUris = repoUris;
+                    }
+                    repos.add(prefsRepo);
+                }
             } catch (IOException | URISyntaxException ex) {
                 reporter.exception(ex, "Error loading preference repository: %s", repoUris);
             }
@@ -0,0 +1,301 @@
+package org.bndtools.core.templating.repobased;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URI;
+import java.net.URLConnection;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Properties;
+
+import aQute.lib.hex.Hex;
+import aQute.lib.io.IO;
+
+/**
+ * A persistent, content-addressed cache for downloaded template bundles.
+ * <p>
+ * Bundles whose content hash is known are stored under the lower-case hex SHA-256 of their content, so a cached copy
+ * never needs to be revalidated. Bundles without a known hash are stored under the SHA-256 of their location URI,
+ * together with the {@code ETag} and {@code Last-Modified} headers returned by the server, and are revalidated with a
+ * conditional GET on each lookup. If the server cannot be reached the cached copy is used, so templates keep working
+ * offline.
+ * <p>
+ * The total size of the cache is bounded; when it is exceeded the least recently used entries are evicted.
+ */
+public class TemplateBundleCache {
+
+    public static final long DEFAULT_MAX_SIZE = 256L * 1024L * 1024L;
+
+    private static final String ALGORITHM = "SHA-256";
+    private static final String BUNDLE_SUFFIX = ".jar";
+    private static final String META_SUFFIX = ".properties";
+    private static final String PROP_ETAG = "etag";
+    private static final String PROP_LAST_MODIFIED = "lastModified";
+    private static final String PROP_LOCATION = "location";
+
+    private static final int CONNECT_TIMEOUT = 10000;
+    private static final int READ_TIMEOUT = 30000;
+
+    private final File dir;
+    private final long maxSize;
+
+    public TemplateBundleCache(File dir) {
+        this(dir, DEFAULT_MAX_SIZE);
+    }
+
+    public TemplateBundleCache(File dir, long maxSize) {
+        this.dir = dir;
+        this.maxSize = maxSize;
+    }
+
+    public File getDirectory() {
+        return dir;
+    }
+
+    /**
+     * Return a local copy of the bundle with the specified content hash, downloading it from the location if it is not
+     * already in the cache.
+     *
+     * @param hash
+     *            The expected content hash, or {@code null} if unknown.
+     * @param algo
+     *            The algorithm of the hash; only SHA-256 hashes are used as cache keys.
+     * @param location
+     *            The location to download from.
+     */
+    public File get(String hash, String algo, URI location) throws IOException {
+        if (hash != null && ALGORITHM.equalsIgnoreCase(algo))
+            return getByContent(hash.toLowerCase(Locale.ROOT), location);
+        return getByLocation(location);
+    }
+
+    /**
+     * Return the cached bundle with the specified SHA-256 content hash, or {@code null} if it is not cached.
+     */
+    public File getCached(String sha256) {
+        File file = new File(dir, sha256.toLowerCase(Locale.ROOT) + BUNDLE_SUFFIX);
+        if (!file.isFile())
+            return null;
+        touch(file);
+        return file;
+    }
+
+    /**
+     * Store a copy of the specified file in the cache under its content hash, and return the cached file.
+     */
+    public File put(File source) throws IOException {
+        String sha256 = digest(source);
+        synchronized (this) {
+            File file = new File(dir, sha256 + BUNDLE_SUFFIX);
+            if (file.isFile()) {
+                touch(file);
+                return file;
+            }
+            File tmp = createTempFile();
+            IO.copy(source, tmp);
+            file = install(tmp, file);
+            evict(file);
+            return file;
+        }
+    }
+
+    private File getByContent(String sha256, URI location) throws IOException {
+        File cached = getCached(sha256);
+        if (cached != null)
+            return cached;
+
+        File tmp = createTempFile();
+        try {
+            URLConnection conn = openConnection(location);
+            String actual = download(conn, tmp);
+            if (!sha256.equals(actual))
+                throw new IOException(String.format("Content hash mismatch for bundle downloaded from %s: expected %s, actual %s", location, sha256, actual));
+            synchronized (this) {
+                File file = install(tmp, new File(dir, sha256 + BUNDLE_SUFFIX));
+                evict(file);
+                return file;
+            }
+        } finally {
+            IO.delete(tmp);
+        }
+    }
+
+    private File getByLocation(URI location) throws IOException {
+        String key = Hex.toHexString(digest(location.toString().getBytes("UTF-8"))).toLowerCase(Locale.ROOT);
+        File file = new File(dir, key + BUNDLE_SUFFIX);
+        File metaFile = new File(dir, key + META_SUFFIX);
+
+        Properties meta = new Properties();
+        if (file.isFile() && metaFile.isFile()) {
+            try (InputStream in = new FileInputStream(metaFile)) {
+                meta.load(in);
+            } catch (IOException e) {
+                meta.clear();
+            }
+        }
+
+        File tmp = createTempFile();
+        try {
+            URLConnection conn;
+            try {
+                conn = openConnection(location);
+                if (file.isFile()) {
+                    String etag = meta.getProperty(PROP_ETAG);
+                    if (etag != null)
+                        conn.setRequestProperty("If-None-Match", etag);
+                    String lastModified = meta.getProperty(PROP_LAST_MODIFIED);
+                    if (lastModified != null)
+                        conn.setIfModifiedSince(Long.parseLong(lastModified));
+                }
+                if (conn instanceof HttpURLConnection && ((HttpURLConnection) conn).getResponseCode() == HttpURLConnection.HTTP_NOT_MODIFIED) {
+                    ((HttpURLConnection) conn).disconnect();
+                    touch(file);
+                    return file;
+                }
+                download(conn, tmp);
+            } catch (IOException e) {
+                // Offline or server failure: fall back to the previously cached copy if we have one
+                if (file.isFile()) {
+                    touch(file);
+                    return file;
+                }
+                throw e;
+            }
+
+            meta.clear();
+            meta.setProperty(PROP_LOCATION, location.toString());
+            String etag = conn.getHeaderField("ETag");
+            if (etag != null)
+                meta.setProperty(PROP_ETAG, etag);
+            long lastModified = conn.getLastModified();
+            if (lastModified > 0)
+                meta.setProperty(PROP_LAST_MODIFIED, Long.toString(lastModified));
+
+            synchronized (this) {
+                file = install(tmp, file);
+                try (OutputStream out = new FileOutputStream(metaFile)) {
+                    meta.store(out, null);
+                }
+                evict(file);
+                return file;
+            }
+        } catch (NumberFormatException e) {
+            throw new IOException("Corrupt cache metadata for " + location, e);
+        } finally {
+            IO.delete(tmp);
+        }
+    }
+
+    private static URLConnection openConnection(URI location) throws IOException {
+        URLConnection conn = location.toURL().openConnection();
+        conn.setConnectTimeout(CONNECT_TIMEOUT);
+        conn.setReadTimeout(READ_TIMEOUT);
+        return conn;
+    }
+
+    /**
+     * Copy the content of the connection to the file, returning the hex SHA-256 of the content.
+     */
+    private static String download(URLConnection conn, File file) throws IOException {
+        if (conn instanceof HttpURLConnection) {
+            int code = ((HttpURLConnection) conn).getResponseCode();
+            if (code >= 300)
+                throw new IOException(String.format("Failed to download %s: HTTP %d %s", conn.getURL(), code, ((HttpURLConnection) conn).getResponseMessage()));
+        }
+        try (DigestInputStream in = new DigestInputStream(conn.getInputStream(), newDigest())) {
+            IO.copy(in, file);
+            return Hex.toHexString(in.getMessageDigest().digest()).toLowerCase(Locale.ROOT);
+        }
+    }
+
+    private File createTempFile() throws IOException {
+        IO.mkdirs(dir);
+        return File.createTempFile("download", ".tmp", dir);
+    }
+
+    private static File install(File tmp, File target) throws IOException {
+        if (target.isFile())
+            IO.delete(target);
+        if (!tmp.renameTo(target)) {
+            IO.copy(tmp, target);
+        }
+        touch(target);
+        return target;
+    }
+
+    private static void touch(File file) {
+        file.setLastModified(System.currentTimeMillis());
+    }
+
+    /**
+     * Evict the least recently used bundles until the cache fits within its maximum size. The most recently added file
+     * is never evicted.
+     */
+    private synchronized void evict(File keep) {
+        File[] files = dir.listFiles();
+        if (files == null)
+            return;
+
+        List<File> bundles = new ArrayList<>();
+        long total = 0L;
+        for (File file : files) {
+            if (file.isFile() && file.getName().endsWith(BUNDLE_SUFFIX)) {
+                bundles.add(file);
+                total += file.length();
+            }
+        }
+        if (total <= maxSize)
+            return;
+
+        Collections.sort(bundles, new Comparator<File>() {
+            @Override
+            public int compare(File f1, File f2) {
+                long m1 = f1.lastModified();
+                long m2 = f2.lastModified();
+                return m1 < m2 ? -1 : (m1 == m2 ? 0 : 1);
+            }
+        });
+        for (File file : bundles) {
+            if (total <= maxSize)
+                break;
+            if (file.equals(keep))
+                continue;
+            total -= file.length();
+            String name = file.getName();
+            IO.delete(new File(dir, name.substring(0, name.length() - BUNDLE_SUFFIX.length()) + META_SUFFIX));
+            IO.delete(file);
+        }
+    }
+
+    static String digest(File file) throws IOException {
+        try (DigestInputStream in = new DigestInputStream(new FileInputStream(file), newDigest())) {
+            IO.drain(in);
+            return Hex.toHexString(in.getMessageDigest().digest()).toLowerCase(Locale.ROOT);
+        }
+    }
+
+    private static byte[] digest(byte[] data) {
+        MessageDigest md = newDigest();
+        md.update(data);
+        return md.digest();
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance(ALGORITHM);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,104 @@
+package org.bndtools.core.trace;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.bndtools.api.BuildTrace;
+import org.bndtools.api.IExecutionService;
+import org.bndtools.api.IExecutionService.Pool;
+import org.bndtools.api.IExecutionService.Priority;
+import org.bndtools.api.ILogger;
+import org.bndtools.api.Logger;
+import org.eclipse.jface.preference.IPreferenceStore;
+import org.eclipse.jface.util.IPropertyChangeListener;
+import org.eclipse.jface.util.PropertyChangeEvent;
+
+import bndtools.preferences.BndPreferences;
+
+/**
+ * Turns build tracing on and off following the build tracing preference. While it is on, a
+ * {@link ChromeTraceRecorder} is installed and its events are written to the trace directory every few seconds.
+ */
+public class BuildTracing implements IPropertyChangeListener {
+
+    private static final ILogger logger = Logger.getLogger(BuildTracing.class);
+
+    private static final long FLUSH_INTERVAL_SECONDS = 5L;
+    private static final long MAX_FILE_SIZE = 10L * 1024L * 1024L;
+    private static final int MAX_FILES = 5;
+
+    private final File directory;
+    private final IExecutionService executionService;
+    private final ScheduledExecutorService scheduler;
+
+    // Guarded by this
+    private IPreferenceStore store = null;
+    private ChromeTraceRecorder recorder = null;
+    private ScheduledFuture< ? > flushTask = null;
+
+    public BuildTracing(File directory, IExecutionService executionService, ScheduledExecutorService scheduler) {
+        this.directory = directory;
+        this.executionService = executionService;
+        this.scheduler = scheduler;
+    }
+
+    public synchronized void start(IPreferenceStore store) {
+        this.store = store;
+        store.addPropertyChangeListener(this);
+        setEnabled(store.getBoolean(BndPreferences.PREF_BUILD_TRACING));
+    }
+
+    public synchronized void stop() {
+        if (store != null) {
+            store.removePropertyChangeListener(this);
+            store = null;
+        }
+        setEnabled(false);
+    }
+
+    @Override
+    public synchronized void propertyChange(PropertyChangeEvent event) {
+        if (store != null && BndPreferences.PREF_BUILD_TRACING.equals(event.getProperty()))
+            setEnabled(store.getBoolean(BndPreferences.PREF_BUILD_TRACING));
+    }
+
+    private void setEnabled(boolean enabled) {
+        if (enabled == (recorder != null))
+            return;
+
+        if (enabled) {
+            final ChromeTraceRecorder newRecorder = new ChromeTraceRecorder(directory, MAX_FILE_SIZE, MAX_FILES);
+            recorder = newRecorder;
+            BuildTrace.setRecorder(newRecorder);
+            flushTask = scheduler.scheduleWithFixedDelay(new Runnable() {
+                @Override
+                public void run() {
+                    executionService.submit(Pool.IO, Priority.LOW, "Flush build trace", new Runnable() {
+                        @Override
+                        public void run() {
+                            try {
+                                newRecorder.flush();
+                            } catch (IOException e) {
+                                logger.logWarning("Unable to write the build trace to " + directory, e);
+                            }
+                        }
+                    });
+                }
+            }, FLUSH_INTERVAL_SECONDS, FLUSH_INTERVAL_SECONDS, TimeUnit.SECONDS);
+        } else {
+            BuildTrace.setRecorder(null);
+            flushTask.cancel(false);
+            flushTask = null;
+            try {
+                recorder.close();
+            } catch (IOException e) {
+                logger.logWarning("Unable to write the build trace to " + directory, e);
+            }
+            recorder = null;
+        }
+    }
+
+}
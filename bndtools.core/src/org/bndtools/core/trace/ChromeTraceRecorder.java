@@ -0,0 +1,312 @@
+package org.bndtools.core.trace;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileFilter;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.text.SimpleDateFormat;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.bndtools.api.BuildTrace;
+
+/**
+ * Records build trace events to rolling files in the Chrome trace event format, which can be opened in
+ * {@code chrome://tracing} or Perfetto. Recording only queues the event; {@link #flush()} writes the queued events and
+ * is expected to be called periodically from a background thread. When the queue is full, events are dropped and
+ * counted.
+ * <p>
+ * Each file is a JSON array of events. The closing bracket is written when the file is rolled over or the recorder is
+ * closed, but the trace viewers also accept a file without it, such as after a crash.
+ */
+public class ChromeTraceRecorder implements BuildTrace.Recorder, Closeable {
+
+    static final String FILE_PREFIX = "build-trace-";
+    static final String FILE_SUFFIX = ".json";
+
+    private static final int MAX_QUEUED_EVENTS = 100000;
+    private static final int PID = 1;
+
+    private final File directory;
+    private final long maxFileSize;
+    private final int maxFiles;
+    private final long origin = System.nanoTime();
+
+    private final Queue<Event> queue = new ConcurrentLinkedQueue<Event>();
+    private final AtomicInteger queued = new AtomicInteger();
+    private final AtomicLong dropped = new AtomicLong();
+    // Events recorded or flushed after close are ignored, so that no file is left open
+    private volatile boolean closed = false;
+
+    // Guarded by this
+    private Writer writer = null;
+    private long written = 0;
+    private final Set<Long> namedThreads = new HashSet<Long>();
+    private final StringBuilder buffer = new StringBuilder(256);
+
+    /**
+     * @param directory
+     *            the directory of the trace files, which is created when needed.
+     * @param maxFileSize
+     *            the size in bytes after which a new file is started.
+     * @param maxFiles
+     *            the number of files to keep; older files are deleted.
+     */
+    public ChromeTraceRecorder(File directory, long maxFileSize, int maxFiles) {
+        this.directory = directory;
+        this.maxFileSize = maxFileSize;
+        this.maxFiles = maxFiles;
+    }
+
+    @Override
+    public void span(String category, String name, long startNanos, long durationNanos, Thread thread, Map<String,Object> args) {
+        enqueue(new Event('X', category, name, startNanos, durationNanos, thread, args, 0));
+    }
+
+    @Override
+    public void counter(String category, String name, long timeNanos, long value) {
+        enqueue(new Event('C', category, name, timeNanos, 0, Thread.currentThread(), null, value));
+    }
+
+    private void enqueue(Event event) {
+        if (closed)
+            return;
+        if (queued.incrementAndGet() > MAX_QUEUED_EVENTS) {
+            queued.decrementAndGet();
+            dropped.incrementAndGet();
+            return;
+        }
+        queue.add(event);
+    }
+
+    /**
+     * The number of events that were dropped because the queue was full.
+     */
+    public long getDropped() {
+        return dropped.get();
+    }
+
+    /**
+     * Write the queued events to the current trace file. Does nothing once the recorder is closed.
+     */
+    public synchronized void flush() throws IOException {
+        if (closed)
+            return;
+        Event event;
+        boolean any = false;
+        while ((event = queue.poll()) != null) {
+            queued.decrementAndGet();
+            write(event);
+            any = true;
+        }
+        if (any)
+            writer.flush();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (closed)
+            return;
+        long lost = dropped.get();
+        if (lost > 0)
+            enqueue(new Event('C', BuildTrace.BUILD, "dropped trace events", System.nanoTime(), 0, Thread.currentThread(), null, lost));
+        try {
+            flush();
+        } finally {
+            closed = true;
+            queue.clear();
+            finishFile();
+        }
+    }
+
+    private void write(Event event) throws IOException {
+        if (writer == null || written >= maxFileSize) {
+            finishFile();
+            startFile();
+        }
+
+        if (namedThreads.add(event.threadId)) {
+            buffer.setLength(0);
+            buffer.append(",\n{\"name\":\"thread_name\",\"ph\":\"M\",\"pid\":").append(PID).append(",\"tid\":").append(event.threadId).append(",\"args\":{\"name\":");
+            appendString(buffer, event.threadName);
+            buffer.append("}}");
+            append(buffer);
+        }
+
+        buffer.setLength(0);
+        buffer.append(",\n{\"name\":");
+        appendString(buffer, event.name);
+        buffer.append(",\"cat\":");
+        appendString(buffer, event.category);
+        buffer.append(",\"ph\":\"").append(event.phase).append("\",\"ts\":").append(micros(event.startNanos - origin));
+        if (event.phase == 'X')
+            buffer.append(",\"dur\":").append(micros(event.durationNanos));
+        buffer.append(",\"pid\":").append(PID).append(",\"tid\":").append(event.threadId).append(",\"args\":{");
+        if (event.phase == 'C') {
+            appendString(buffer, event.name);
+            buffer.append(':').append(event.value);
+        } else if (event.args != null) {
+            boolean first = true;
+            for (Entry<String,Object> arg : event.args.entrySet()) {
+                if (!first)
+                    buffer.append(',');
+                first = false;
+                appendString(buffer, arg.getKey());
+                buffer.append(':');
+                appendValue(buffer, arg.getValue());
+            }
+        }
+        buffer.append("}}");
+        append(buffer);
+    }
+
+    private void append(CharSequence text) throws IOException {
+        writer.append(text);
+        written += utf8Length(text);
+    }
+
+    /*
+     * The number of bytes of the text in UTF-8, which is compared with the maximum file size
+     */
+    static long utf8Length(CharSequence text) {
+        long length = 0;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c < 0x80)
+                length += 1;
+            else if (c < 0x800 || Character.isSurrogate(c))
+                length += 2; // a surrogate pair is 4 bytes
+            else
+                length += 3;
+        }
+        return length;
+    }
+
+    private void startFile() throws IOException {
+        if (!directory.isDirectory() && !directory.mkdirs())
+            throw new IOException("Unable to create the build trace directory " + directory);
+        pruneFiles(maxFiles - 1);
+
+        String timestamp = new SimpleDateFormat("yyyyMMdd-HHmmss-SSS").format(new Date());
+        File file = new File(directory, FILE_PREFIX + timestamp + FILE_SUFFIX);
+        writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8));
+        written = 0;
+        namedThreads.clear();
+
+        // Start with a metadata event so every following event can be preceded by a comma
+        buffer.setLength(0);
+        buffer.append("[\n{\"name\":\"process_name\",\"ph\":\"M\",\"pid\":").append(PID).append(",\"args\":{\"name\":\"bndtools\"}}");
+        append(buffer);
+    }
+
+    private void finishFile() throws IOException {
+        if (writer == null)
+            return;
+        try {
+            writer.append("\n]\n");
+        } finally {
+            writer.close();
+            writer = null;
+        }
+    }
+
+    private void pruneFiles(int keep) {
+        File[] files = directory.listFiles(new FileFilter() {
+            @Override
+            public boolean accept(File file) {
+                String name = file.getName();
+                return file.isFile() && name.startsWith(FILE_PREFIX) && name.endsWith(FILE_SUFFIX);
+            }
+        });
+        if (files == null || files.length <= keep)
+            return;
+
+        // The timestamp in the names sorts them from oldest to newest
+        Arrays.sort(files);
+        for (int i = 0; i < files.length - Math.max(keep, 0); i++) {
+            if (!files[i].delete())
+                files[i].deleteOnExit();
+        }
+    }
+
+    private static long micros(long nanos) {
+        return nanos / 1000L;
+    }
+
+    private static void appendValue(StringBuilder sb, Object value) {
+        if (value instanceof Number || value instanceof Boolean)
+            sb.append(value);
+        else
+            appendString(sb, String.valueOf(value));
+    }
+
+    static void appendString(StringBuilder sb, String s) {
+        sb.append('"');
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            switch (c) {
+            case '"' :
+                sb.append("\\\"");
+                break;
+            case '\\' :
+                sb.append("\\\\");
+                break;
+            case '\n' :
+                sb.append("\\n");
+                break;
+            case '\r' :
+                sb.append("\\r");
+                break;
+            case '\t' :
+                sb.append("\\t");
+                break;
+            default :
+                if (c < 0x20) {
+                    sb.append(String.format("\\u%04x", (int) c));
+                } else {
+                    sb.append(c);
+                }
+                break;
+            }
+        }
+        sb.append('"');
+    }
+
+    private static final class Event {
+        final char phase;
+        final String category;
+        final String name;
+        final long startNanos;
+        final long durationNanos;
+        final long threadId;
+        final String threadName;
+        final Map<String,Object> args;
+        final long value;
+
+        Event(char phase, String category, String name, long startNanos, long durationNanos, Thread thread, Map<String,Object> args, long value) {
+            this.phase = phase;
+            this.category = category;
+            this.name = name;
+            this.startNanos = startNanos;
+            this.durationNanos = durationNanos;
+            this.threadId = thread.getId();
+            this.threadName = thread.getName();
+            this.args = args;
+            this.value = value;
+        }
+    }
+
+}
@@ -1,15 +1,24 @@
 package org.bndtools.core.ui.wizards.shared;
 
 import java.io.ByteArrayInputStream;
-import java.io.InputStream;
 import java.net.URI;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
-
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.bndtools.api.IExecutionService.Pool;
+import org.bndtools.api.IExecutionService.Priority;
 import org.bndtools.templating.Template;
 import org.eclipse.core.runtime.ILog;
 import org.eclipse.core.runtime.IProgressMonitor;
@@ -22,14 +31,29 @@ import org.eclipse.swt.graphics.Image;
 import org.eclipse.swt.graphics.ImageData;
 import org.eclipse.swt.widgets.Control;
 
-import aQute.lib.io.IO;
 import bndtools.Plugin;
 
 /*
  * Loads icons from the templates in a background job, and updates the UI in batches when icons become available.
+ * Icons are fetched concurrently through the icon cache. Icons that were loaded before, by this or an earlier wizard,
+ * are shown straight away and only updated when they have changed.
  */
 public class IconLoaderJob extends Job {
 
+    private static final int MAX_PARALLEL = 4;
+    private static final int MAX_LOADED_ICONS = 256;
+    private static final long POLL_MILLIS = 100L;
+
+    // The decoded icons by location, shared between wizards. Guarded by itself.
+    private static final Map<URI,LoadedIcon> loadedIcons = new LinkedHashMap<URI,LoadedIcon>(16, 0.75f, true) {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<URI,LoadedIcon> eldest) {
+            return size() > MAX_LOADED_ICONS;
+        }
+    };
+
     private final ILog log = Plugin.getDefault().getLog();
 
     private final Collection<Template> templates;
@@ -50,35 +74,71 @@ public class IconLoaderJob extends Job {
     protected IStatus run(IProgressMonitor monitor) {
         SubMonitor progress = SubMonitor.convert(monitor, templates.size());
 
-        Map<Template,byte[]> batch = new IdentityHashMap<>();
-
+        // Show the icons that were loaded before while they are revalidated
+        Map<Template,ImageData> batch = new IdentityHashMap<>();
+        Map<Template,String> shown = new IdentityHashMap<>();
+        LinkedList<Template> toFetch = new LinkedList<>();
         for (Template template : templates) {
-            InputStream iconStream = null;
-            try {
-                URI iconUri = template.getIcon();
-                if (iconUri != null) {
-                    iconStream = iconUri.toURL().openStream();
-                    byte[] bytes = IO.read(iconStream);
-                    batch.put(template, bytes);
-
-                    if (batch.size() >= batchLimit) {
-                        processBatch(batch);
-                        batch = new IdentityHashMap<>();
+            URI iconUri = template.getIcon();
+            if (iconUri == null) {
+                progress.worked(1);
+                continue;
+            }
+            LoadedIcon loaded;
+            synchronized (loadedIcons) {
+                loaded = loadedIcons.get(iconUri);
+            }
+            if (loaded != null) {
+                batch.put(template, loaded.data);
+                shown.put(template, loaded.hash);
+            }
+            toFetch.add(template);
+        }
+        processBatch(batch);
+        batch = new IdentityHashMap<>();
+
+        CompletionService<LoadedIcon> completion = new ExecutorCompletionService<>(Plugin.getDefault().getExecutionService().getExecutor(Pool.IO, Priority.NORMAL));
+        Map<Future<LoadedIcon>,Template> running = new IdentityHashMap<>();
+        try {
+            while (!toFetch.isEmpty() || !running.isEmpty()) {
+                while (!toFetch.isEmpty() && running.size() < MAX_PARALLEL) {
+                    Template template = toFetch.removeFirst();
+                    running.put(completion.submit(new FetchIcon(template.getIcon())), template);
+                }
+
+                if (progress.isCanceled())
+                    return Status.CANCEL_STATUS;
+                Future<LoadedIcon> done = completion.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+                if (done == null)
+                    continue;
+
+                Template template = running.remove(done);
+                try {
+                    LoadedIcon loaded = done.get();
+                    if (!loaded.hash.equals(shown.get(template))) {
+                        batch.put(template, loaded.data);
+                        if (batch.size() >= batchLimit) {
+                            processBatch(batch);
+                            batch = new IdentityHashMap<>();
+                        }
                     }
+                } catch (ExecutionException e) {
+                    log.log(new Status(IStatus.ERROR, Plugin.PLUGIN_ID, 0, "Error reading icon for template '" + template.getName() + "'", e.getCause()));
                 }
-            } catch (Exception e) {
-                log.log(new Status(IStatus.ERROR, Plugin.PLUGIN_ID, 0, "Error reading icon for template '" + template.getName() + "'", e));
-            } finally {
-                IO.close(iconStream);
+                progress.worked(1);
             }
-
-            progress.worked(1);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return Status.CANCEL_STATUS;
+        } finally {
+            for (Future<LoadedIcon> future : running.keySet())
+                future.cancel(true);
         }
         processBatch(batch);
         return Status.OK_STATUS;
     }
 
-    private void processBatch(final Map<Template,byte[]> batch) {
+    private void processBatch(final Map<Template,ImageData> batch) {
         if (batch.isEmpty())
             return;
         final Control control = viewer.getControl();
@@ -90,12 +150,11 @@ public class IconLoaderJob extends Job {
                         return;
                     List<Object> toUpdate = new ArrayList<>(batch.size());
 
-                    for (Entry<Template,byte[]> entry : batch.entrySet()) {
+                    for (Entry<Template,ImageData> entry : batch.entrySet()) {
                         Template template = entry.getKey();
-                        byte[] imgBytes = entry.getValue();
+                        ImageData imgData = entry.getValue();
 
                         try {
-                            ImageData imgData = new ImageData(new ByteArrayInputStream(imgBytes));
                             Image image = new Image(control.getDisplay(), imgData);
 
                             Image old = loadedImageMap.put(template, image);
@@ -113,4 +172,44 @@ public class IconLoaderJob extends Job {
         }
     }
 
+    private static final class LoadedIcon {
+        final String hash;
+        final ImageData data;
+
+        LoadedIcon(String hash, ImageData data) {
+            this.hash = hash;
+            this.data = data;
+        }
+    }
+
+    /*
+     * Fetches an icon through the icon cache and decodes it, off the UI thread
+     */
+    private static final class FetchIcon implements Callable<LoadedIcon> {
+        private final URI iconUri;
+
+        FetchIcon(URI iconUri) {
+            this.iconUri = iconUri;
+        }
+
+        @Override
+        public LoadedIcon call() throws Exception {
+            TemplateIconCache cache = TemplateIconCache.getInstance();
+            if (cache == null)
+                throw new IllegalStateException("bndtools.core is not active");
+            TemplateIconCache.Icon icon = cache.get(iconUri);
+
+            synchronized (loadedIcons) {
+                LoadedIcon loaded = loadedIcons.get(iconUri);
+                if (loaded != null && loaded.hash.equals(icon.hash))
+                    return loaded;
+            }
+            LoadedIcon loaded = new LoadedIcon(icon.hash, new ImageData(new ByteArrayInputStream(icon.data)));
+            synchronized (loadedIcons) {
+                loadedIcons.put(iconUri, loaded);
+            }
+            return loaded;
+        }
+    }
+
 }
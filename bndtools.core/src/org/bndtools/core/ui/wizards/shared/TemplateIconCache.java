@@ -0,0 +1,279 @@
+package org.bndtools.core.ui.wizards.shared;
+
+import java.io.File;
+import java.io.FileFilter;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.JarURLConnection;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.net.URLConnection;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Locale;
+import java.util.Properties;
+import java.util.jar.JarEntry;
+
+import aQute.lib.hex.Hex;
+import aQute.lib.io.IO;
+import bndtools.Plugin;
+
+/**
+ * A persistent, content-addressed cache of template icons.
+ * <p>
+ * The content of each icon is stored under the lower-case hex SHA-256 of the content. For each icon location the cache
+ * records the hash of its content together with a validator: the {@code ETag} and {@code Last-Modified} headers for
+ * HTTP locations, which are revalidated with a conditional GET, and the modification time of the file or jar entry for
+ * other locations, which are compared without reading the icon. If an HTTP server cannot be reached the cached copy is
+ * used. When the content at a location changes, the previous content is deleted unless another location still refers to
+ * it.
+ */
+class TemplateIconCache {
+
+    private static final String CACHE_DIR = "template-icons";
+    private static final String ALGORITHM = "SHA-256";
+    private static final String ICON_SUFFIX = ".icon";
+    private static final String META_SUFFIX = ".properties";
+    private static final String PROP_LOCATION = "location";
+    private static final String PROP_HASH = "hash";
+    private static final String PROP_VALIDATOR = "validator";
+    private static final String PROP_ETAG = "etag";
+    private static final String PROP_LAST_MODIFIED = "lastModified";
+
+    private static final int CONNECT_TIMEOUT = 10000;
+    private static final int READ_TIMEOUT = 30000;
+
+    private static TemplateIconCache instance = null;
+
+    private final File dir;
+
+    /**
+     * The content of an icon and its hash.
+     */
+    static final class Icon {
+        final String hash;
+        final byte[] data;
+
+        Icon(String hash, byte[] data) {
+            this.hash = hash;
+            this.data = data;
+        }
+    }
+
+    /**
+     * Return the cache in the plugin state location, or {@code null} if the plugin is not active.
+     */
+    static synchronized TemplateIconCache getInstance() {
+        if (instance == null) {
+            Plugin plugin = Plugin.getDefault();
+            if (plugin == null)
+                return null;
+            instance = new TemplateIconCache(new File(plugin.getStateLocation().toFile(), CACHE_DIR));
+        }
+        return instance;
+    }
+
+    TemplateIconCache(File dir) {
+        this.dir = dir;
+    }
+
+    /**
+     * Return the icon at the location, from the cache if the cached copy is still valid.
+     */
+    Icon get(URI location) throws IOException {
+        String key = hash(location.toString().getBytes("UTF-8"));
+        File metaFile = new File(dir, key + META_SUFFIX);
+
+        Properties meta = metaFile.isFile() ? readMeta(metaFile) : new Properties();
+        Icon cached = readCached(meta);
+        String previousHash = meta.getProperty(PROP_HASH);
+
+        URLConnection conn;
+        try {
+            conn = location.toURL().openConnection();
+            conn.setConnectTimeout(CONNECT_TIMEOUT);
+            conn.setReadTimeout(READ_TIMEOUT);
+            if (conn instanceof HttpURLConnection) {
+                HttpURLConnection http = (HttpURLConnection) conn;
+                if (cached != null) {
+                    String etag = meta.getProperty(PROP_ETAG);
+                    if (etag != null)
+                        http.setRequestProperty("If-None-Match", etag);
+                    String lastModified = meta.getProperty(PROP_LAST_MODIFIED);
+                    if (lastModified != null)
+                        http.setIfModifiedSince(Long.parseLong(lastModified));
+                }
+                int code = http.getResponseCode();
+                if (code == HttpURLConnection.HTTP_NOT_MODIFIED && cached != null) {
+                    http.disconnect();
+                    return cached;
+                }
+                if (code >= 300)
+                    throw new IOException(String.format("Failed to download %s: HTTP %d %s", location, code, http.getResponseMessage()));
+            } else {
+                String validator = validator(location, conn);
+                if (cached != null && validator != null && validator.equals(meta.getProperty(PROP_VALIDATOR)))
+                    return cached;
+                meta.clear();
+                if (validator != null)
+                    meta.setProperty(PROP_VALIDATOR, validator);
+            }
+        } catch (NumberFormatException e) {
+            throw new IOException("Corrupt cache metadata for " + location, e);
+        } catch (IOException e) {
+            // Offline or server failure: fall back to the previously cached copy if we have one
+            if (cached != null && isRemote(location))
+                return cached;
+            throw e;
+        }
+
+        byte[] data;
+        try (InputStream in = conn.getInputStream()) {
+            data = IO.read(in);
+        }
+        Icon icon = new Icon(hash(data), data);
+
+        if (conn instanceof HttpURLConnection) {
+            meta.clear();
+            String etag = conn.getHeaderField("ETag");
+            if (etag != null)
+                meta.setProperty(PROP_ETAG, etag);
+            long lastModified = conn.getLastModified();
+            if (lastModified > 0)
+                meta.setProperty(PROP_LAST_MODIFIED, Long.toString(lastModified));
+            if (etag == null && lastModified <= 0)
+                return icon;
+        } else if (!meta.containsKey(PROP_VALIDATOR)) {
+            return icon;
+        }
+
+        meta.setProperty(PROP_LOCATION, location.toString());
+        meta.setProperty(PROP_HASH, icon.hash);
+        store(icon, meta, metaFile, previousHash);
+        return icon;
+    }
+
+    private static Properties readMeta(File metaFile) {
+        Properties meta = new Properties();
+        try (InputStream in = new FileInputStream(metaFile)) {
+            meta.load(in);
+        } catch (IOException e) {
+            meta.clear();
+        }
+        return meta;
+    }
+
+    private Icon readCached(Properties meta) {
+        String hash = meta.getProperty(PROP_HASH);
+        if (hash == null)
+            return null;
+        File file = new File(dir, hash + ICON_SUFFIX);
+        if (!file.isFile())
+            return null;
+        try {
+            return new Icon(hash, IO.read(file));
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    private synchronized void store(Icon icon, Properties meta, File metaFile, String previousHash) throws IOException {
+        IO.mkdirs(dir);
+        File file = new File(dir, icon.hash + ICON_SUFFIX);
+        if (!file.isFile()) {
+            File tmp = File.createTempFile("icon", ".tmp", dir);
+            Files.write(tmp.toPath(), icon.data);
+            install(tmp, file);
+        }
+        File tmp = File.createTempFile("icon", ".tmp", dir);
+        try (OutputStream out = new FileOutputStream(tmp)) {
+            meta.store(out, null);
+        }
+        install(tmp, metaFile);
+
+        if (previousHash != null && !previousHash.equals(icon.hash) && !isReferenced(previousHash))
+            IO.delete(new File(dir, previousHash + ICON_SUFFIX));
+    }
+
+    /*
+     * Whether the metadata of any location refers to the content with the hash
+     */
+    private boolean isReferenced(String hash) {
+        File[] metaFiles = dir.listFiles(new FileFilter() {
+            @Override
+            public boolean accept(File file) {
+                return file.isFile() && file.getName().endsWith(META_SUFFIX);
+            }
+        });
+        if (metaFiles == null)
+            return false;
+        for (File metaFile : metaFiles) {
+            if (hash.equals(readMeta(metaFile).getProperty(PROP_HASH)))
+                return true;
+        }
+        return false;
+    }
+
+    private static void install(File tmp, File target) throws IOException {
+        try {
+            Files.move(tmp.toPath(), target.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(tmp.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            IO.delete(tmp);
+        }
+    }
+
+    /*
+     * The modification time of the file or jar entry of a local location, without reading its content, or null if
+     * there is none
+     */
+    private static String validator(URI location, URLConnection conn) throws IOException {
+        if (conn instanceof JarURLConnection) {
+            JarURLConnection jarConn = (JarURLConnection) conn;
+            JarEntry entry = jarConn.getJarEntry();
+            if (entry == null)
+                return null;
+            String validator = "entry:" + entry.getTime() + "," + entry.getSize();
+            File jarFile = toFile(jarConn.getJarFileURL());
+            return jarFile != null ? validator + ",jar:" + jarFile.lastModified() + "," + jarFile.length() : validator;
+        }
+        File file = toFile(location.toURL());
+        if (file != null)
+            return file.isFile() ? "file:" + file.lastModified() + "," + file.length() : null;
+        long lastModified = conn.getLastModified();
+        return lastModified > 0 ? "lastModified:" + lastModified : null;
+    }
+
+    private static File toFile(URL url) {
+        if (!"file".equals(url.getProtocol()))
+            return null;
+        try {
+            return new File(url.toURI());
+        } catch (URISyntaxException | IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    private static boolean isRemote(URI location) {
+        String scheme = location.getScheme();
+        return "http".equalsIgnoreCase(scheme) || "https".equalsIgnoreCase(scheme);
+    }
+
+    static String hash(byte[] data) {
+        try {
+            MessageDigest md = MessageDigest.getInstance(ALGORITHM);
+            return Hex.toHexString(md.digest(data)).toLowerCase(Locale.ROOT);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -18,7 +18,9 @@ import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
 
+import org.bndtools.templating.IncrementalTemplateLoader;
 import org.bndtools.templating.Template;
+import org.bndtools.templating.TemplateListener;
 import org.bndtools.templating.TemplateLoader;
 import org.bndtools.utils.jface.ProgressRunner;
 import org.eclipse.core.runtime.ILog;
@@ -266,6 +268,31 @@ public class TemplateSelectionWizardPage extends WizardPage {
             try {
                 final Set<Template> templates = new LinkedHashSet<>();
 
+                // Show templates from incremental loaders as they arrive, rather than waiting for the slowest source
+                final Set<Template> arrived = new LinkedHashSet<>();
+                if (emptyTemplate != null)
+                    arrived.add(emptyTemplate);
+                TemplateListener progressiveDisplay = new TemplateListener() {
+                    @Override
+                    public void templatesFound(Collection<Template> found) {
+                        final List<Template> snapshot;
+                        synchronized (arrived) {
+                            arrived.addAll(found);
+                            snapshot = new ArrayList<>(arrived);
+                        }
+                        Control control = viewer.getControl();
+                        if (control != null && !control.isDisposed()) {
+                            control.getDisplay().asyncExec(new Runnable() {
+                                @Override
+                                public void run() {
+                                    if (!viewer.getControl().isDisposed())
+                                        updateTemplates(snapshot);
+                                }
+                            });
+                        }
+                    }
+                };
+
                 // Fire all the template loaders and get their promises
                 List<ServiceReference<TemplateLoader>> templateLoaderSvcRefs = new ArrayList<>(context.getServiceReferences(TemplateLoader.class, null));
                 monitor.beginTask("Loading templates...", templateLoaderSvcRefs.size());
@@ -280,7 +307,11 @@ public class TemplateSelectionWizardPage extends WizardPage {
 
                     TemplateLoader templateLoader = context.getService(templateLoaderSvcRef);
                     try {
-                        Promise< ? extends Collection<Template>> promise = templateLoader.findTemplates(templateType, new Processor());
+                        Promise< ? extends Collection<Template>> promise;
+                        if (templateLoader instanceof IncrementalTemplateLoader)
+                            promise = ((IncrementalTemplateLoader) templateLoader).findTemplates(templateType, new Processor(), progressiveDisplay);
+                        else
+                            promise = templateLoader.findTemplates(templateType, new Processor());
                         promises.add(new Pair<String,Promise< ? extends Collection<Template>>>(label, promise));
                     } finally {
                         context.ungetService(templateLoaderSvcRef);
@@ -381,6 +412,20 @@ public class TemplateSelectionWizardPage extends WizardPage {
         viewer.setSelection(first != null ? new StructuredSelection(first) : StructuredSelection.EMPTY, true);
     }
 
+    /*
+     * Show a partial set of templates while loading continues, keeping any selection the user has already made
+     */
+    private void updateTemplates(final Collection<Template> templates) {
+        Template current = selected;
+        if (current == null || current == emptyTemplate || !templates.contains(current)) {
+            setTemplates(templates);
+            return;
+        }
+        viewer.setInput(templates);
+        viewer.expandAll();
+        viewer.setSelection(new StructuredSelection(current), true);
+    }
+
     public void setTemplate(final Template template) {
         Template old = this.selected;
         this.selected = template;
@@ -0,0 +1,128 @@
+package bndtools;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import org.bndtools.api.IStartupParticipant;
+import org.bndtools.core.execution.ExecutionService;
+
+import junit.framework.TestCase;
+
+public class StartupParticipantsTest extends TestCase {
+
+    private static final long START_TIME = 300L;
+    private static final Collection<String> NONE = Collections.emptyList();
+
+    private ExecutionService executionService;
+    private List<String> events;
+
+    @Override
+    protected void setUp() throws Exception {
+        executionService = new ExecutionService();
+        events = new CopyOnWriteArrayList<String>();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        executionService.close();
+    }
+
+    public void testActivationDoesNotWaitForParticipants() throws Exception {
+        StartupParticipants participants = new StartupParticipants(executionService);
+        for (int i = 0; i < 4; i++)
+            participants.add("p" + i, NONE, false, participant("p" + i, START_TIME));
+
+        long start = System.nanoTime();
+        participants.start();
+        long activation = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        assertTrue("activation took " + activation + "ms", activation < START_TIME);
+
+        // The participants start concurrently
+        Map<String,Long> times = awaitStarted(participants, 4);
+        long total = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        assertTrue("starting took " + total + "ms", total < 3 * START_TIME);
+        for (Long time : times.values())
+            assertTrue(time >= START_TIME);
+
+        participants.stop();
+        assertEquals(8, events.size());
+    }
+
+    public void testOrdering() throws Exception {
+        StartupParticipants participants = new StartupParticipants(executionService);
+        participants.add("b", Arrays.asList("a"), false, participant("b", 0L));
+        participants.add("a", NONE, false, participant("a", START_TIME));
+        participants.add("c", Arrays.asList("b", "unknown"), false, participant("c", 0L));
+        participants.add("sync", NONE, true, participant("sync", 0L));
+
+        participants.start();
+        assertEquals(Arrays.asList("start sync"), events);
+
+        awaitStarted(participants, 4);
+        assertEquals(Arrays.asList("start sync", "start a", "start b", "start c"), events);
+
+        participants.stop();
+        assertEquals(Arrays.asList("start sync", "start a", "start b", "start c", "stop c", "stop b", "stop a", "stop sync"), events);
+    }
+
+    public void testCyclesAndFailuresDoNotBlock() throws Exception {
+        StartupParticipants participants = new StartupParticipants(executionService);
+        participants.add("a", Arrays.asList("b"), false, participant("a", 0L));
+        participants.add("b", Arrays.asList("a"), false, participant("b", 0L));
+        participants.add("failing", NONE, false, new Callable<Object>() {
+            @Override
+            public Object call() throws Exception {
+                throw new Exception("failed");
+            }
+        });
+        participants.add("c", Arrays.asList("failing"), false, participant("c", 0L));
+
+        participants.start();
+        awaitStarted(participants, 4);
+        participants.stop();
+        assertTrue(events.contains("stop a"));
+        assertTrue(events.contains("stop b"));
+        assertTrue(events.contains("stop c"));
+    }
+
+    private Callable<Object> participant(final String id, final long startTime) {
+        return new Callable<Object>() {
+            @Override
+            public Object call() throws Exception {
+                return new IStartupParticipant() {
+                    @Override
+                    public void start() {
+                        try {
+                            Thread.sleep(startTime);
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                        }
+                        events.add("start " + id);
+                    }
+
+                    @Override
+                    public void stop() {
+                        events.add("stop " + id);
+                    }
+                };
+            }
+        };
+    }
+
+    private static Map<String,Long> awaitStarted(StartupParticipants participants, int count) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(10);
+        Map<String,Long> times;
+        while ((times = participants.getStartTimes()).size() < count) {
+            assertTrue("participants did not start", System.currentTimeMillis() < deadline);
+            Thread.sleep(10L);
+        }
+        return times;
+    }
+
+}
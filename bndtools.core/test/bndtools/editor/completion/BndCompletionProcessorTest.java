@@ -0,0 +1,77 @@
+package bndtools.editor.completion;
+
+import org.eclipse.jface.text.Document;
+import org.eclipse.jface.text.IDocument;
+import org.eclipse.jface.text.contentassist.ICompletionProposal;
+
+import junit.framework.TestCase;
+
+public class BndCompletionProcessorTest extends TestCase {
+
+    private static final int LINES = 10000;
+
+    private BndCompletionProcessor processor;
+
+    @Override
+    protected void setUp() throws Exception {
+        processor = new BndCompletionProcessor(new BndCompletionIndex());
+    }
+
+    public void testHeaderCompletion() throws Exception {
+        IDocument document = new Document("Bundle-Version: 1.0.0\n-runfw");
+        ICompletionProposal[] proposals = processor.computeProposals(document, document.getLength());
+        assertTrue(proposals.length > 0);
+        for (ICompletionProposal proposal : proposals)
+            assertTrue(proposal.getDisplayString().startsWith("-runfw"));
+    }
+
+    public void testMacroCompletion() throws Exception {
+        IDocument document = new Document("my.version: 1.2.3\nBundle-Version: ${my.");
+        ICompletionProposal[] proposals = processor.computeProposals(document, document.getLength());
+        assertEquals(1, proposals.length);
+        assertEquals("my.version", proposals[0].getDisplayString());
+
+        document = new Document("Bundle-Version: ${ver");
+        proposals = processor.computeProposals(document, document.getLength());
+        assertTrue(proposals.length > 0);
+        assertEquals("version", proposals[0].getDisplayString());
+    }
+
+    public void testContinuationLines() throws Exception {
+        IDocument document = new Document("-runbundles: \\\n\tfoo;version=1,\\\n\tbar");
+        BndCompletionContext context = BndCompletionContext.compute(document, document.getLength());
+        assertEquals(BndCompletionContext.Kind.VALUE, context.kind);
+        assertEquals("-runbundles", context.header);
+        assertEquals("bar", context.prefix);
+
+        document = new Document("-runbundles: foo;version=");
+        assertNull(BndCompletionContext.compute(document, document.getLength()));
+
+        document = new Document("# -run");
+        assertNull(BndCompletionContext.compute(document, document.getLength()));
+    }
+
+    public void testLargeBndrun() throws Exception {
+        StringBuilder sb = new StringBuilder();
+        sb.append("-runfw: org.apache.felix.framework\n");
+        sb.append("-runbundles: \\\n");
+        for (int i = 0; i < LINES; i++)
+            sb.append("\tcom.example.bundle").append(i).append(";version='[1.0.0,1.0.1)',\\\n");
+        sb.append("\tcom.example.last\n");
+        sb.append("-runp");
+        IDocument document = new Document(sb.toString());
+
+        int headerOffset = document.getLength();
+        ICompletionProposal[] proposals = processor.computeProposals(document, headerOffset);
+        assertTrue(proposals.length > 0);
+        for (ICompletionProposal proposal : proposals)
+            assertTrue(proposal.getDisplayString().startsWith("-runp"));
+
+        // The clause is found at the end of the continued value
+        int valueOffset = headerOffset - "\n-runp".length();
+        BndCompletionContext context = BndCompletionContext.compute(document, valueOffset);
+        assertEquals(BndCompletionContext.Kind.VALUE, context.kind);
+        assertEquals("-runbundles", context.header);
+        assertEquals("com.example.last", context.prefix);
+    }
+}
@@ -0,0 +1,80 @@
+package bndtools.editor.completion;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Random;
+
+import org.eclipse.jface.text.Document;
+import org.eclipse.jface.text.IDocument;
+
+import junit.framework.TestCase;
+
+public class DocumentKeysTest extends TestCase {
+
+    public void testKeys() throws Exception {
+        IDocument document = new Document("a.b: 1\n# c: 2\nd = \\\n  e: 3\n\\\\: 4\nf.g:\\\\\ntyping");
+        DocumentKeys keys = new DocumentKeys(document);
+        assertEquals(Arrays.asList("\\\\", "a.b", "d", "f.g"), keys.search("", Integer.MAX_VALUE));
+        assertEquals(Arrays.asList("f.g"), keys.search("f", Integer.MAX_VALUE));
+        assertEquals(Collections.emptyList(), keys.search("x", Integer.MAX_VALUE));
+        keys.dispose();
+    }
+
+    public void testContinuationAgreesWithContext() throws Exception {
+        // Three backslashes: an escaped backslash followed by a continuation
+        IDocument document = new Document("a: x\\\\\\\nb: y\nc: z");
+        DocumentKeys keys = new DocumentKeys(document);
+        assertEquals(Arrays.asList("a", "c"), keys.search("", Integer.MAX_VALUE));
+
+        BndCompletionContext context = BndCompletionContext.compute(document, document.getLineOffset(1) + 1);
+        assertEquals(BndCompletionContext.Kind.VALUE, context.kind);
+        assertEquals("a", context.header);
+        keys.dispose();
+    }
+
+    public void testEdits() throws Exception {
+        IDocument document = new Document("a: 1\nb: 2\nc: 3\n");
+        DocumentKeys keys = new DocumentKeys(document);
+
+        // Continuing a line hides the key of the next one
+        document.replace(document.getLineOffset(0) + 4, 0, " \\");
+        assertEquals(Arrays.asList("a", "c"), keys.search("", Integer.MAX_VALUE));
+
+        // and removing the continuation shows it again
+        document.replace(document.getLineOffset(0) + 4, 2, "");
+        assertEquals(Arrays.asList("a", "b", "c"), keys.search("", Integer.MAX_VALUE));
+
+        // A key defined twice is kept until both are removed
+        document.replace(document.getLength(), 0, "a: 4\nd: 5\n");
+        document.replace(0, document.getLineOffset(1), "");
+        assertEquals(Arrays.asList("a", "b", "c", "d"), keys.search("", Integer.MAX_VALUE));
+        document.replace(document.getLineOffset(2), document.getLineOffset(3) - document.getLineOffset(2), "");
+        assertEquals(Arrays.asList("b", "c", "d"), keys.search("", Integer.MAX_VALUE));
+
+        document.set("x: 1\n");
+        assertEquals(Arrays.asList("x"), keys.search("", Integer.MAX_VALUE));
+        keys.dispose();
+    }
+
+    public void testRandomEdits() throws Exception {
+        String[] fragments = {
+                "a", "b.c", ": ", "=", "\\", "\\\\", "\n", "\r\n", "\r", " ", "#", "${x}", "d"
+        };
+        Random random = new Random(42);
+        IDocument document = new Document("a: 1\nb: \\\n 2\nc: 3\n");
+        DocumentKeys keys = new DocumentKeys(document);
+        for (int i = 0; i < 5000; i++) {
+            int offset = random.nextInt(document.getLength() + 1);
+            int length = random.nextInt(Math.min(4, document.getLength() - offset) + 1);
+            StringBuilder text = new StringBuilder();
+            for (int j = random.nextInt(3); j > 0; j--)
+                text.append(fragments[random.nextInt(fragments.length)]);
+            document.replace(offset, length, text.toString());
+
+            DocumentKeys expected = new DocumentKeys(document);
+            assertEquals(document.get(), expected.search("", Integer.MAX_VALUE), keys.search("", Integer.MAX_VALUE));
+            expected.dispose();
+        }
+        keys.dispose();
+    }
+}
@@ -0,0 +1,119 @@
+package bndtools.editor.model;
+
+import java.beans.PropertyChangeEvent;
+import java.beans.PropertyChangeListener;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.eclipse.jface.text.Document;
+import org.eclipse.jface.text.IDocument;
+
+import aQute.bnd.osgi.Constants;
+import junit.framework.TestCase;
+
+public class DocumentPropertyIndexTest extends TestCase {
+
+    private static final int BUNDLES = 1000;
+
+    public void testEditValue() throws Exception {
+        IDocument document = new Document("Bundle-Version: 1.0.0\nBundle-Name: Foo\n");
+        DocumentPropertyIndex index = new DocumentPropertyIndex(document);
+        assertEquals(2, index.size());
+
+        document.replace(document.get().indexOf("Foo"), 3, "Bar");
+        assertEquals(Collections.singleton("Bundle-Name"), index.getChangedKeys());
+        assertEquals("Bundle-Name: Bar", index.getText("Bundle-Name"));
+
+        index.markSynchronized();
+        assertTrue(index.getChangedKeys().isEmpty());
+    }
+
+    public void testRevertedEditIsNotAChange() throws Exception {
+        IDocument document = new Document("Bundle-Version: 1.0.0\n");
+        DocumentPropertyIndex index = new DocumentPropertyIndex(document);
+
+        document.replace(16, 5, "2.0.0");
+        document.replace(16, 5, "1.0.0");
+        assertTrue(index.getChangedKeys().isEmpty());
+    }
+
+    public void testContinuationLines() throws Exception {
+        IDocument document = new Document("-runbundles: a,\\\n\tb\n-runfw: felix\n");
+        DocumentPropertyIndex index = new DocumentPropertyIndex(document);
+        assertEquals(2, index.size());
+
+        // Edit inside the continuation
+        document.replace(document.get().indexOf("\tb") + 1, 1, "c");
+        assertEquals(Collections.singleton("-runbundles"), index.getChangedKeys());
+        index.markSynchronized();
+
+        // Continuing the last line of -runbundles swallows -runfw
+        document.replace(document.get().indexOf("\tc") + 2, 0, ",\\");
+        assertEquals(1, index.size());
+        assertEquals(2, index.getChangedKeys().size());
+        assertNull(index.getText("-runfw"));
+    }
+
+    public void testAddAndRemoveProperties() throws Exception {
+        IDocument document = new Document("# comment\nBundle-Version: 1.0.0\n");
+        DocumentPropertyIndex index = new DocumentPropertyIndex(document);
+        assertEquals(1, index.size());
+
+        document.replace(0, 0, "Bundle-Name: Foo\n");
+        assertEquals(2, index.size());
+        assertEquals(Collections.singleton("Bundle-Name"), index.getChangedKeys());
+        index.markSynchronized();
+
+        document.replace(0, document.getLength(), "");
+        assertEquals(0, index.size());
+        assertEquals(2, index.getChangedKeys().size());
+    }
+
+    public void testReloadChangedProperties() throws Exception {
+        StringBuilder sb = new StringBuilder();
+        sb.append("-runfw: org.apache.felix.framework\n");
+        sb.append("-runbundles: \\\n");
+        for (int i = 0; i < BUNDLES; i++)
+            sb.append("\tcom.example.bundle").append(i).append(";version='[1.0.0,1.0.1)',\\\n");
+        sb.append("\tcom.example.last\n");
+        sb.append("Bundle-Version: 1.0.0\n");
+        IDocument document = new Document(sb.toString());
+        IDocumentWrapper wrapper = new IDocumentWrapper(document);
+        DocumentPropertyIndex index = new DocumentPropertyIndex(document);
+        IncrementalBndEditModel model = new IncrementalBndEditModel();
+        model.loadFrom(wrapper);
+
+        final Set<String> notified = new HashSet<String>();
+        model.addPropertyChangeListener(new PropertyChangeListener() {
+            @Override
+            public void propertyChange(PropertyChangeEvent evt) {
+                notified.add(evt.getPropertyName());
+            }
+        });
+
+        document.replace(document.get().lastIndexOf("1.0.0"), 5, "2.0.0");
+        Set<String> changed = index.getChangedKeys();
+        assertEquals(Collections.singleton(Constants.BUNDLE_VERSION), changed);
+        model.loadFrom(wrapper, changed);
+        index.markSynchronized();
+        assertEquals(changed, notified);
+        assertEquals("2.0.0", model.getBundleVersionString());
+        assertEquals("org.apache.felix.framework", model.getRunFw());
+        assertEquals(BUNDLES + 1, model.getRunBundles().size());
+
+        // Edit inside the continuation lines of -runbundles
+        notified.clear();
+        document.replace(document.get().indexOf("\tcom.example.last"), 0, "\tcom.example.added,\\\n");
+        changed = index.getChangedKeys();
+        assertEquals(Collections.singleton(Constants.RUNBUNDLES), changed);
+        model.loadFrom(wrapper, changed);
+        index.markSynchronized();
+        assertEquals(changed, notified);
+        assertEquals(BUNDLES + 2, model.getRunBundles().size());
+        assertEquals("2.0.0", model.getBundleVersionString());
+        assertTrue(index.getChangedKeys().isEmpty());
+
+        index.dispose();
+    }
+}
@@ -0,0 +1,21 @@
+package bndtools.launch;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.HashSet;
+
+import junit.framework.TestCase;
+
+public class BndDependencySourceContainerTest extends TestCase {
+
+    public void testPackagesOf() throws Exception {
+        assertEquals(new HashSet<String>(Arrays.asList("META-INF", "OSGI-OPT/src/api", "OSGI-OPT/src/provider", "api", "provider")), BndDependencySourceContainer.packagesOf(new File("test/tests.provider.jar")));
+        assertNull(BndDependencySourceContainer.packagesOf(new File("test/missing.jar")));
+    }
+
+    public void testPackageOf() throws Exception {
+        assertEquals("org/example", BndDependencySourceContainer.packageOf("org/example/Foo.java"));
+        assertEquals("", BndDependencySourceContainer.packageOf("Foo.java"));
+    }
+
+}
@@ -0,0 +1,124 @@
+package bndtools.launch;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.jar.JarOutputStream;
+
+import aQute.lib.io.IO;
+import junit.framework.TestCase;
+
+public class ChangedTestSelectorTest extends TestCase {
+
+    private static final String CONSUMER_TEST = "consumer.TestConsumer";
+    private static final String PROVIDER_TEST = "provider.TestProvider";
+    private static final List<String> TESTS = Arrays.asList(CONSUMER_TEST + ":testConsume", PROVIDER_TEST);
+
+    private final File dir = IO.getFile("generated/test-changedtests-tmp");
+    private File provider;
+    private File consumer;
+    private ChangedTestSelector selector;
+
+    @Override
+    protected void setUp() throws Exception {
+        IO.delete(dir);
+        dir.mkdirs();
+        provider = new File(dir, "tests.provider.jar");
+        consumer = new File(dir, "tests.consumer.jar");
+        IO.copy(new File("test/tests.provider.jar"), provider);
+        IO.copy(new File("test/tests.consumer.jar"), consumer);
+        selector = new ChangedTestSelector(new File(dir, "state/selection.properties"));
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        IO.delete(dir);
+    }
+
+    public void testSelectsTestsOfChangedBundles() throws Exception {
+        List<File> bundles = Arrays.asList(provider, consumer);
+
+        // Without a previous launch everything runs
+        assertEquals(TESTS, passed(TESTS, bundles, "env"));
+        assertEquals(Collections.emptyList(), passed(TESTS, bundles, "env"));
+
+        // The consumer is only used by its own test
+        change(consumer);
+        assertEquals(Arrays.asList(CONSUMER_TEST + ":testConsume"), passed(TESTS, bundles, "env"));
+        assertEquals(Collections.emptyList(), passed(TESTS, bundles, "env"));
+
+        // The consumer test uses the api package exported by the provider
+        change(provider);
+        assertEquals(TESTS, passed(TESTS, bundles, "env"));
+    }
+
+    public void testTouchedBundleWithSameContentIsNotChanged() throws Exception {
+        List<File> bundles = Arrays.asList(provider, consumer);
+        passed(TESTS, bundles, "env");
+
+        consumer.setLastModified(consumer.lastModified() + 10000);
+        assertEquals(Collections.emptyList(), passed(TESTS, bundles, "env"));
+    }
+
+    public void testOtherChangesSelectEverything() throws Exception {
+        passed(TESTS, Arrays.asList(provider, consumer), "env");
+
+        assertEquals(TESTS, passed(TESTS, Arrays.asList(provider, consumer), "other env"));
+        assertEquals(TESTS, passed(TESTS, Arrays.asList(provider), "other env"));
+    }
+
+    public void testNewTestsAreSelected() throws Exception {
+        List<File> bundles = Arrays.asList(provider, consumer);
+        passed(Arrays.asList(PROVIDER_TEST), bundles, "env");
+
+        assertEquals(Arrays.asList(CONSUMER_TEST + ":testConsume"), passed(TESTS, bundles, "env"));
+    }
+
+    public void testChangesAreKeptUntilTheTestsPass() throws Exception {
+        List<File> bundles = Arrays.asList(provider, consumer);
+        passed(TESTS, bundles, "env");
+
+        // A failed run does not save its selection
+        change(consumer);
+        assertEquals(Arrays.asList(CONSUMER_TEST + ":testConsume"), selector.select(TESTS, bundles, "env").getTests());
+        assertEquals(Arrays.asList(CONSUMER_TEST + ":testConsume"), passed(TESTS, bundles, "env"));
+        assertEquals(Collections.emptyList(), passed(TESTS, bundles, "env"));
+    }
+
+    /*
+     * Select the tests and save the selection, as after a run in which they passed
+     */
+    private List<String> passed(List<String> tests, List<File> bundles, String environment) throws Exception {
+        ChangedTestSelector.Selection selection = selector.select(tests, bundles, environment);
+        selection.save();
+        return selection.getTests();
+    }
+
+    /*
+     * Rebuild the bundle with the same manifest and classes but a different content
+     */
+    private void change(File bundle) throws Exception {
+        File changed = new File(dir, "changed.jar");
+        try (JarFile in = new JarFile(bundle); JarOutputStream out = new JarOutputStream(new FileOutputStream(changed), in.getManifest())) {
+            for (Enumeration<JarEntry> entries = in.entries(); entries.hasMoreElements();) {
+                JarEntry entry = entries.nextElement();
+                if (entry.getName().equals(JarFile.MANIFEST_NAME))
+                    continue;
+                out.putNextEntry(new JarEntry(entry.getName()));
+                IO.copy(in.getInputStream(entry), out);
+                out.closeEntry();
+            }
+            out.putNextEntry(new JarEntry("changed.txt"));
+            out.write(Long.toString(System.nanoTime()).getBytes("UTF-8"));
+            out.closeEntry();
+        }
+        IO.delete(bundle);
+        IO.rename(changed, bundle);
+    }
+
+}
@@ -0,0 +1,200 @@
+package bndtools.launch;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import aQute.lib.io.IO;
+import junit.framework.TestCase;
+
+public class JUnitShardMergerTest extends TestCase {
+
+    private static final int CLASSES = 8;
+    private static final long TEST_TIME = 150L;
+
+    private final File dir = IO.getFile("generated/test-junitshards-tmp");
+    private ExecutorService executor;
+
+    @Override
+    protected void setUp() throws Exception {
+        IO.delete(dir);
+        dir.mkdirs();
+        executor = Executors.newCachedThreadPool();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        executor.shutdownNow();
+        IO.delete(dir);
+    }
+
+    public void testMergesShardsIntoOneRun() throws Exception {
+        TestDurations durations = new TestDurations(new File(dir, "durations.properties"));
+        List<String> lines = run(createTests(), 3, durations);
+
+        assertEquals(JUnitShardMerger.TEST_RUN_START + CLASSES + " v2", lines.get(0));
+        assertTrue(lines.get(lines.size() - 1).startsWith(JUnitShardMerger.TEST_RUN_END));
+
+        // All trees come before the first test starts, and the ids are unique over the shards
+        Set<String> ids = new HashSet<String>();
+        int firstStart = -1;
+        for (int i = 0; i < lines.size(); i++) {
+            String line = lines.get(i);
+            if (line.startsWith(JUnitShardMerger.TEST_TREE)) {
+                assertEquals(-1, firstStart);
+                assertTrue(ids.add(line.substring(8, line.indexOf(','))));
+            } else if (line.startsWith(JUnitShardMerger.TEST_START) && firstStart < 0)
+                firstStart = i;
+        }
+        assertEquals(2 * CLASSES, ids.size());
+
+        // A failure is forwarded together with its trace
+        int failed = lines.indexOf(JUnitShardMerger.TEST_FAILED + idOf(lines, "test(a.Test3)") + ",test(a.Test3)");
+        assertTrue(failed > 0);
+        assertEquals("%TRACES ", lines.get(failed + 1));
+        assertEquals("junit.framework.AssertionFailedError: expected", lines.get(failed + 2));
+        assertEquals("%TRACEE ", lines.get(failed + 3));
+
+        Map<String,Long> recorded = durations.load();
+        assertEquals(CLASSES, recorded.size());
+        assertTrue(recorded.get("a.Test0") >= TEST_TIME / 2);
+    }
+
+    public void testWallClockTimeScalesDown() throws Exception {
+        List<String> tests = createTests();
+
+        long start = System.nanoTime();
+        run(tests, 1, new TestDurations(new File(dir, "one.properties")));
+        long one = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        run(tests, 4, new TestDurations(new File(dir, "four.properties")));
+        long four = System.nanoTime() - start;
+
+        assertTrue("1 shard: " + TimeUnit.NANOSECONDS.toMillis(one) + "ms, 4 shards: " + TimeUnit.NANOSECONDS.toMillis(four) + "ms", four * 2 < one);
+    }
+
+    public void testMoreShardsThanIoThreads() throws Exception {
+        // More shards than the 8 threads of the shared IO pool: every shard is read while it runs, so no test is
+        // measured as taking next to no time because its events were read in one go after the fact
+        int shards = 16;
+        TestDurations durations = new TestDurations(new File(dir, "many.properties"));
+        List<String> lines = run(createTests(shards), shards, durations);
+
+        assertEquals(JUnitShardMerger.TEST_RUN_START + shards + " v2", lines.get(0));
+        Map<String,Long> recorded = durations.load();
+        assertEquals(shards, recorded.size());
+        for (Map.Entry<String,Long> entry : recorded.entrySet())
+            assertTrue(entry.getKey() + ": " + entry.getValue() + "ms", entry.getValue() >= TEST_TIME / 2);
+    }
+
+    private static List<String> createTests() {
+        return createTests(CLASSES);
+    }
+
+    private static List<String> createTests(int classes) {
+        List<String> tests = new ArrayList<String>();
+        for (int i = 0; i < classes; i++)
+            tests.add("a.Test" + i);
+        return tests;
+    }
+
+    /*
+     * Plan the tests over the shards and run every shard as a simulated tester reporting to the merger, which reports
+     * to a simulated JUnit view
+     */
+    private List<String> run(List<String> tests, int shards, TestDurations durations) throws Exception {
+        final List<List<String>> plan = JUnitShardPlanner.plan(tests, shards, durations.load());
+        assertEquals(shards, plan.size());
+
+        try (final ServerSocket view = new ServerSocket(0)) {
+            Future<List<String>> received = executor.submit(new Callable<List<String>>() {
+                @Override
+                public List<String> call() throws Exception {
+                    List<String> lines = new ArrayList<String>();
+                    try (Socket socket = view.accept(); BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8))) {
+                        String line;
+                        while ((line = in.readLine()) != null)
+                            lines.add(line);
+                    }
+                    return lines;
+                }
+            });
+
+            int[] ports = new int[plan.size()];
+            try (JUnitShardMerger merger = new JUnitShardMerger("localhost", view.getLocalPort(), ports, durations)) {
+                merger.start();
+                for (int i = 0; i < plan.size(); i++) {
+                    final int port = merger.getShardPort(i);
+                    final List<String> shardTests = plan.get(i);
+                    executor.submit(new Callable<Void>() {
+                        @Override
+                        public Void call() throws Exception {
+                            runShard(port, shardTests);
+                            return null;
+                        }
+                    });
+                }
+                return received.get(30, TimeUnit.SECONDS);
+            }
+        }
+    }
+
+    /*
+     * Reports like the bnd tester: the test tree, then every test as it runs
+     */
+    private static void runShard(int port, List<String> classes) throws Exception {
+        try (Socket socket = new Socket("localhost", port); PrintWriter out = new PrintWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8))) {
+            long start = System.currentTimeMillis();
+            out.println(JUnitShardMerger.TEST_RUN_START + classes.size() + " v2");
+            int id = 1;
+            for (String className : classes) {
+                out.println(JUnitShardMerger.TEST_TREE + id++ + "," + className + ",true,1");
+                out.println(JUnitShardMerger.TEST_TREE + id++ + ",test(" + className + "),false,1");
+            }
+            out.flush();
+
+            id = 1;
+            for (String className : classes) {
+                String test = (id + 1) + ",test(" + className + ")";
+                out.println(JUnitShardMerger.TEST_START + test);
+                out.flush();
+                Thread.sleep(TEST_TIME);
+                if (className.equals("a.Test3")) {
+                    out.println(JUnitShardMerger.TEST_FAILED + test);
+                    out.println("%TRACES ");
+                    out.println("junit.framework.AssertionFailedError: expected");
+                    out.println("%TRACEE ");
+                }
+                out.println(JUnitShardMerger.TEST_END + test);
+                out.flush();
+                id += 2;
+            }
+            out.println(JUnitShardMerger.TEST_RUN_END + (System.currentTimeMillis() - start));
+        }
+    }
+
+    private static String idOf(List<String> lines, String name) {
+        for (String line : lines) {
+            if (line.startsWith(JUnitShardMerger.TEST_TREE) && line.contains("," + name + ","))
+                return line.substring(8, line.indexOf(','));
+        }
+        return null;
+    }
+
+}
@@ -0,0 +1,46 @@
+package bndtools.launch;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import junit.framework.TestCase;
+
+public class JUnitShardPlannerTest extends TestCase {
+
+    public void testBalancesByDuration() {
+        Map<String,Long> durations = new HashMap<String,Long>();
+        durations.put("a.Slow", 9000L);
+        durations.put("a.Medium", 5000L);
+        durations.put("a.Fast1", 2000L);
+        durations.put("a.Fast2", 2000L);
+
+        List<List<String>> plan = JUnitShardPlanner.plan(Arrays.asList("a.Fast1", "a.Fast2", "a.Medium", "a.Slow"), 2, durations);
+
+        assertEquals(2, plan.size());
+        assertEquals(Arrays.asList("a.Slow"), plan.get(0));
+        assertEquals(Arrays.asList("a.Medium", "a.Fast1", "a.Fast2"), plan.get(1));
+    }
+
+    public void testKeepsTestsOfAClassTogether() {
+        List<List<String>> plan = JUnitShardPlanner.plan(Arrays.asList("a.One:test1", "a.Two", "a.One:test2"), 4, Collections.<String,Long> emptyMap());
+
+        assertEquals(2, plan.size());
+        assertEquals(Arrays.asList("a.One:test1", "a.One:test2"), plan.get(0));
+        assertEquals(Arrays.asList("a.Two"), plan.get(1));
+    }
+
+    public void testUnknownClassesTakeTheAverage() {
+        Map<String,Long> durations = new HashMap<String,Long>();
+        durations.put("a.Known1", 1000L);
+        durations.put("a.Known2", 3000L);
+
+        List<List<String>> plan = JUnitShardPlanner.plan(Arrays.asList("a.Known1", "a.Known2", "a.New"), 2, durations);
+
+        assertEquals(Arrays.asList("a.Known2"), plan.get(0));
+        assertEquals(Arrays.asList("a.New", "a.Known1"), plan.get(1));
+    }
+
+}
@@ -0,0 +1,65 @@
+package bndtools.tasks;
+
+import java.io.File;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import org.osgi.resource.Capability;
+
+import bndtools.model.resolution.RequirementWrapper;
+import junit.framework.TestCase;
+
+public class BndFileCapReqLoaderTest extends TestCase {
+
+    private static final File PROVIDER = new File("test/tests.provider.jar");
+    private static final File CONSUMER = new File("test/tests.consumer.jar");
+
+    public void testFindBuiltJar() throws Exception {
+        File[] buildFiles = new File[] {
+                CONSUMER, new File("test/missing.jar"), PROVIDER
+        };
+        assertEquals(PROVIDER, BndFileCapReqLoader.findBuiltJar(buildFiles, "tests.provider", 2000L, 1000L));
+        assertEquals(CONSUMER, BndFileCapReqLoader.findBuiltJar(buildFiles, "tests.consumer", 2000L, 1000L));
+        assertNull(BndFileCapReqLoader.findBuiltJar(buildFiles, "tests.other", 2000L, 1000L));
+        assertNull(BndFileCapReqLoader.findBuiltJar(buildFiles, null, 2000L, 1000L));
+    }
+
+    public void testStaleBuildIsNotUsed() throws Exception {
+        File[] buildFiles = new File[] {
+                PROVIDER
+        };
+        // A bnd file of the project changed after the last build
+        assertNull(BndFileCapReqLoader.findBuiltJar(buildFiles, "tests.provider", 1000L, 2000L));
+        assertEquals(PROVIDER, BndFileCapReqLoader.findBuiltJar(buildFiles, "tests.provider", 2000L, 2000L));
+    }
+
+    public void testCacheIsBounded() throws Exception {
+        BndFileCapReqLoader.BuiltCapReqs capReqs = new BndFileCapReqLoader.BuiltCapReqs("stamp", Collections.<String,List<Capability>> emptyMap(),
+                Collections.<String,List<RequirementWrapper>> emptyMap());
+        File first = new File("test/first.bnd");
+        BndFileCapReqLoader.putCached(first, capReqs);
+        assertSame(capReqs, BndFileCapReqLoader.getCached(first, "stamp"));
+
+        // A rebuilt bundle has another stamp
+        assertNull(BndFileCapReqLoader.getCached(first, "rebuilt"));
+
+        for (int i = 0; i < BndFileCapReqLoader.MAX_CACHED; i++)
+            BndFileCapReqLoader.putCached(new File("test/" + i + ".bnd"), capReqs);
+        assertNull(BndFileCapReqLoader.getCached(first, "stamp"));
+        assertSame(capReqs, BndFileCapReqLoader.getCached(new File("test/" + (BndFileCapReqLoader.MAX_CACHED - 1) + ".bnd"), "stamp"));
+    }
+
+    public void testRequirementsAreCopied() throws Exception {
+        RequirementWrapper rw = new RequirementWrapper();
+        rw.resolved = true;
+        BndFileCapReqLoader.BuiltCapReqs capReqs = new BndFileCapReqLoader.BuiltCapReqs("stamp", Collections.<String,List<Capability>> emptyMap(),
+                Collections.<String,List<RequirementWrapper>> singletonMap("osgi.wiring.package", Collections.singletonList(rw)));
+
+        Map<String,List<RequirementWrapper>> copy = capReqs.copyRequirements();
+        RequirementWrapper rwCopy = copy.get("osgi.wiring.package").get(0);
+        assertNotSame(rw, rwCopy);
+        assertFalse(rwCopy.resolved);
+    }
+
+}
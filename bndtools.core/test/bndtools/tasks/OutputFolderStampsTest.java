@@ -0,0 +1,41 @@
+package bndtools.tasks;
+
+import java.io.File;
+
+import aQute.lib.io.IO;
+import junit.framework.TestCase;
+
+public class OutputFolderStampsTest extends TestCase {
+
+    private final File dir = IO.getFile("generated/test-outputstamps-tmp");
+
+    @Override
+    protected void setUp() throws Exception {
+        IO.delete(dir);
+        dir.mkdirs();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        IO.delete(dir);
+    }
+
+    public void testNewestModification() throws Exception {
+        assertEquals(0, OutputFolderStamps.newestModification(dir));
+        assertEquals(0, OutputFolderStamps.newestModification(new File(dir, "missing")));
+
+        File top = new File(dir, "Top.class");
+        IO.store("top", top);
+        top.setLastModified(2000000L);
+        File nested = IO.getFile(dir, "a/b/Nested.class");
+        nested.getParentFile().mkdirs();
+        IO.store("nested", nested);
+        nested.setLastModified(3000000L);
+        assertEquals(3000000L, OutputFolderStamps.newestModification(dir));
+
+        // A recompiled class anywhere in the folder makes it newer
+        top.setLastModified(4000000L);
+        assertEquals(4000000L, OutputFolderStamps.newestModification(dir));
+    }
+
+}
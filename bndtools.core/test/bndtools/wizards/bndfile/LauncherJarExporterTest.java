@@ -0,0 +1,95 @@
+package bndtools.wizards.bndfile;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.util.jar.JarInputStream;
+import java.util.jar.Manifest;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import org.eclipse.core.runtime.NullProgressMonitor;
+
+import aQute.bnd.osgi.EmbeddedResource;
+import aQute.bnd.osgi.FileResource;
+import aQute.bnd.osgi.Jar;
+import aQute.lib.io.IO;
+import junit.framework.TestCase;
+
+public class LauncherJarExporterTest extends TestCase {
+
+    private final File dir = IO.getFile("generated/test-launcherjarexporter-tmp");
+    private File bundles;
+
+    @Override
+    protected void setUp() throws Exception {
+        IO.delete(dir);
+        dir.mkdirs();
+        bundles = new File(dir, "bundles");
+        bundles.mkdirs();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        IO.delete(dir);
+    }
+
+    public void testWriteJarStoresEmbeddedBundles() throws Exception {
+        File output = new File(dir, "export/launch.jar");
+        try (Jar jar = createJar("a.jar", "b.jar")) {
+            new LauncherJarExporter(jar).writeJar(output, new NullProgressMonitor());
+        }
+
+        // The manifest must come first for a streaming reader to find it
+        try (JarInputStream in = new JarInputStream(new FileInputStream(output))) {
+            assertEquals("aQute.launcher.pre.EmbeddedLauncher", in.getManifest().getMainAttributes().getValue("Main-Class"));
+        }
+        try (ZipFile zip = new ZipFile(output)) {
+            ZipEntry bundle = zip.getEntry("jar/a.jar");
+            assertEquals(ZipEntry.STORED, bundle.getMethod());
+            assertEquals(new File(bundles, "a.jar").length(), bundle.getSize());
+            assertEquals(ZipEntry.DEFLATED, zip.getEntry("launcher.properties").getMethod());
+            assertNotNull(zip.getEntry("jar/"));
+            assertEquals("content of a.jar", IO.collect(zip.getInputStream(bundle)));
+        }
+        assertEquals(1, output.getParentFile().list().length);
+    }
+
+    public void testWriteFolderCopiesOnlyChangedEntries() throws Exception {
+        File folder = new File(dir, "export");
+        try (Jar jar = createJar("a.jar", "b.jar")) {
+            assertEquals(4, new LauncherJarExporter(jar).writeFolder(folder, new NullProgressMonitor()));
+        }
+        assertEquals("content of b.jar", IO.collect(new File(folder, "jar/b.jar")));
+
+        // Nothing changed
+        try (Jar jar = createJar("a.jar", "b.jar")) {
+            assertEquals(0, new LauncherJarExporter(jar).writeFolder(folder, new NullProgressMonitor()));
+        }
+
+        // One bundle changed and one was removed from the launch
+        IO.store("new content of a.jar", new File(bundles, "a.jar"));
+        try (Jar jar = createJar("a.jar")) {
+            assertEquals(1, new LauncherJarExporter(jar).writeFolder(folder, new NullProgressMonitor()));
+        }
+        assertEquals("new content of a.jar", IO.collect(new File(folder, "jar/a.jar")));
+        assertFalse(new File(folder, "jar/b.jar").exists());
+        assertEquals(1, new File(folder, "jar").list().length);
+    }
+
+    private Jar createJar(String... names) throws Exception {
+        Jar jar = new Jar("launch");
+        Manifest manifest = new Manifest();
+        manifest.getMainAttributes().putValue("Manifest-Version", "1.0");
+        manifest.getMainAttributes().putValue("Main-Class", "aQute.launcher.pre.EmbeddedLauncher");
+        jar.setManifest(manifest);
+        for (String name : names) {
+            File file = new File(bundles, name);
+            if (!file.isFile())
+                IO.store("content of " + name, file);
+            jar.putResource("jar/" + name, new FileResource(file));
+        }
+        jar.putResource("launcher.properties", new EmbeddedResource("launch.bundles=".getBytes("UTF-8"), 0L));
+        return jar;
+    }
+
+}
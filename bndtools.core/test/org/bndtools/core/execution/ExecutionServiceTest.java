@@ -0,0 +1,158 @@
+package org.bndtools.core.execution;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.bndtools.api.IExecutionService.Pool;
+import org.bndtools.api.IExecutionService.Priority;
+
+import junit.framework.TestCase;
+
+public class ExecutionServiceTest extends TestCase {
+
+    private ExecutionService executionService;
+    private List<String> events;
+
+    @Override
+    protected void setUp() throws Exception {
+        executionService = new ExecutionService();
+        events = new CopyOnWriteArrayList<String>();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        executionService.close();
+    }
+
+    public void testPriorityOrdering() throws Exception {
+        // Occupy both threads of the UI pool, so the following tasks are queued
+        CountDownLatch first = new CountDownLatch(1);
+        CountDownLatch second = new CountDownLatch(1);
+        executionService.submit(Pool.UI, Priority.NORMAL, "blocker", blocker(first));
+        executionService.submit(Pool.UI, Priority.NORMAL, "blocker", blocker(second));
+        awaitActive(Pool.UI, 2);
+
+        executionService.submit(Pool.UI, Priority.LOW, "task", event("low"));
+        executionService.submit(Pool.UI, Priority.NORMAL, "task", event("normal 1"));
+        executionService.submit(Pool.UI, Priority.HIGH, "task", event("high"));
+        executionService.submit(Pool.UI, Priority.NORMAL, "task", event("normal 2"));
+        assertEquals(4, executionService.getQueuedCount("UI"));
+
+        // A single thread runs the queue: by priority, and in submission order within a priority
+        first.countDown();
+        awaitEvents(4);
+        assertEquals(Arrays.asList("high", "normal 1", "normal 2", "low"), events);
+        second.countDown();
+    }
+
+    public void testCallableResultAndFailure() throws Exception {
+        Future<String> result = executionService.submit(Pool.CPU, Priority.NORMAL, "callable", new Callable<String>() {
+            @Override
+            public String call() throws Exception {
+                return "result";
+            }
+        });
+        assertEquals("result", result.get(10, TimeUnit.SECONDS));
+
+        Future<String> failure = executionService.submit(Pool.CPU, Priority.NORMAL, "failing", new Callable<String>() {
+            @Override
+            public String call() throws Exception {
+                throw new Exception("failed");
+            }
+        });
+        try {
+            failure.get(10, TimeUnit.SECONDS);
+            fail("expected the task to fail");
+        } catch (ExecutionException e) {
+            assertEquals("failed", e.getCause().getMessage());
+        }
+    }
+
+    public void testMetrics() throws Exception {
+        executionService.submit(Pool.IO, Priority.NORMAL, "Named task", event("named")).get(10, TimeUnit.SECONDS);
+        executionService.submit(Pool.IO, Priority.NORMAL, "Failing task", new Callable<Object>() {
+            @Override
+            public Object call() throws Exception {
+                throw new Exception("failed");
+            }
+        });
+        awaitMetrics("Named task", "count=1 failed=0");
+        awaitMetrics("Failing task", "count=1 failed=1");
+        assertEquals(0, executionService.getQueuedCount("IO"));
+
+        executionService.resetMetrics();
+        assertFalse(executionService.dumpMetrics().contains("Named task"));
+    }
+
+    public void testExecutorView() throws Exception {
+        ExecutorService executor = executionService.getExecutor(Pool.IO, Priority.HIGH);
+        assertEquals("done", executor.submit(event("submitted"), "done").get(10, TimeUnit.SECONDS));
+
+        // The shared pool is not shut down through the view
+        executor.shutdown();
+        assertTrue(executor.shutdownNow().isEmpty());
+        assertFalse(executor.isShutdown());
+        assertEquals("done", executor.submit(event("after shutdown"), "done").get(10, TimeUnit.SECONDS));
+
+        executionService.close();
+        assertTrue(executor.isShutdown());
+    }
+
+    private static Runnable blocker(final CountDownLatch latch) {
+        return new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    latch.await(10, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        };
+    }
+
+    private Runnable event(final String name) {
+        return new Runnable() {
+            @Override
+            public void run() {
+                events.add(name);
+            }
+        };
+    }
+
+    private void awaitActive(Pool pool, int count) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(10);
+        while (executionService.getActiveCount(pool.name()) < count) {
+            assertTrue("tasks did not start", System.currentTimeMillis() < deadline);
+            Thread.sleep(10L);
+        }
+    }
+
+    private void awaitEvents(int count) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(10);
+        while (events.size() < count) {
+            assertTrue("tasks did not run", System.currentTimeMillis() < deadline);
+            Thread.sleep(10L);
+        }
+    }
+
+    private void awaitMetrics(String name, String figures) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(10);
+        while (true) {
+            for (String line : executionService.dumpMetrics().split("\n")) {
+                if (line.trim().startsWith(name + " ") && line.contains(figures))
+                    return;
+            }
+            assertTrue("no metrics for " + name, System.currentTimeMillis() < deadline);
+            Thread.sleep(10L);
+        }
+    }
+
+}
@@ -0,0 +1,143 @@
+package org.bndtools.core.jobs;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPInputStream;
+
+import org.eclipse.core.runtime.NullProgressMonitor;
+import org.osgi.service.indexer.ResourceIndexer;
+
+import aQute.lib.io.IO;
+import junit.framework.TestCase;
+
+public class IncrementalIndexerTest extends TestCase {
+
+    private static final int FILES = 200;
+
+    private final File dir = IO.getFile("generated/test-incrementalindexer-tmp");
+    private File repo;
+    private File output;
+    private ExecutorService executor;
+    private CountingIndexer resourceIndexer;
+    private IncrementalIndexer indexer;
+    private Map<String,String> config;
+
+    @Override
+    protected void setUp() throws Exception {
+        IO.delete(dir);
+        dir.mkdirs();
+        repo = new File(dir, "repo");
+        repo.mkdirs();
+        output = new File(dir, "index.xml");
+        executor = Executors.newFixedThreadPool(4);
+        resourceIndexer = new CountingIndexer();
+        indexer = new IncrementalIndexer(new File(dir, "cache"), resourceIndexer, executor);
+        config = new HashMap<String,String>();
+        config.put(ResourceIndexer.ROOT_URL, repo.toURI().toString());
+        config.put(ResourceIndexer.REPOSITORY_NAME, "Test");
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        executor.shutdownNow();
+        IO.delete(dir);
+    }
+
+    public void testReindexAnalysesOnlyChangedFiles() throws Exception {
+        Set<File> files = createFiles();
+
+        assertEquals(FILES, indexer.index(files, output, config, new NullProgressMonitor()));
+        String first = IO.collect(output);
+        assertTrue(first.startsWith("<?xml version='1.0' encoding='utf-8'?>\n<repository increment='"));
+        assertTrue(first.contains(" name='Test' xmlns='http://www.osgi.org/xmlns/repository/v1.0.0'>\n"));
+        assertTrue(first.endsWith("</repository>\n"));
+        assertTrue(first.indexOf("bundle000.jar") < first.indexOf("bundle001.jar"));
+        assertTrue(first.indexOf("bundle001.jar") < first.indexOf("bundle199.jar"));
+
+        // Nothing changed: nothing is analysed and the index is the same
+        assertEquals(0, indexer.index(files, output, config, new NullProgressMonitor()));
+        assertEquals(body(first), body(IO.collect(output)));
+
+        // One file changed: only that file is analysed
+        File changed = new File(repo, "bundle042.jar");
+        IO.store("changed content", changed);
+        changed.setLastModified(changed.lastModified() + 2000);
+        assertEquals(1, indexer.index(files, output, config, new NullProgressMonitor()));
+        assertTrue(IO.collect(output).contains("bundle042.jar' length='15'"));
+        assertEquals(FILES + 1, resourceIndexer.calls.get());
+    }
+
+    public void testRemovedFilesAreDropped() throws Exception {
+        Set<File> files = createFiles();
+        indexer.index(files, output, config, new NullProgressMonitor());
+        int fragments = new File(dir, "cache").list().length;
+
+        File removed = new File(repo, "bundle007.jar");
+        files.remove(removed);
+        assertEquals(0, indexer.index(files, output, config, new NullProgressMonitor()));
+        assertFalse(IO.collect(output).contains("bundle007.jar"));
+        assertEquals(fragments - 1, new File(dir, "cache").list().length);
+    }
+
+    public void testConfigChangeAnalysesAgain() throws Exception {
+        Set<File> files = createFiles();
+        indexer.index(files, output, config, new NullProgressMonitor());
+
+        config.put(ResourceIndexer.PRETTY, "true");
+        assertEquals(FILES, indexer.index(files, output, config, new NullProgressMonitor()));
+
+        // Compression only applies to the whole index
+        config.put(ResourceIndexer.COMPRESSED, "true");
+        assertEquals(0, indexer.index(files, output, config, new NullProgressMonitor()));
+        try (GZIPInputStream in = new GZIPInputStream(new FileInputStream(output))) {
+            assertTrue(IO.collect(in).endsWith("</repository>\n"));
+        }
+    }
+
+    private Set<File> createFiles() throws Exception {
+        Set<File> files = new LinkedHashSet<File>();
+        // Add in reverse order to check the index is sorted by path
+        for (int i = FILES - 1; i >= 0; i--) {
+            File file = new File(repo, String.format("bundle%03d.jar", i));
+            IO.store("content " + i, file);
+            files.add(file);
+        }
+        return files;
+    }
+
+    private static String body(String index) {
+        return index.substring(index.indexOf('>', index.indexOf("<repository")));
+    }
+
+    private static class CountingIndexer implements ResourceIndexer {
+        final AtomicInteger calls = new AtomicInteger();
+
+        @Override
+        public void index(Set<File> files, OutputStream out, Map<String,String> config) throws Exception {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void indexFragment(Set<File> files, Writer out, Map<String,String> config) throws Exception {
+            calls.incrementAndGet();
+            String indent = Boolean.parseBoolean(config.get(ResourceIndexer.PRETTY)) ? "  " : "";
+            for (File file : files)
+                out.write(indent + "<resource url='" + file.getName() + "' length='" + file.length() + "'/>\n");
+        }
+
+        @Override
+        public IndexResult indexFile(File file) throws Exception {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+}
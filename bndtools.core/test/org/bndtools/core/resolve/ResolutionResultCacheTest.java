@@ -0,0 +1,194 @@
+package org.bndtools.core.resolve;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.bndtools.core.resolve.ResolutionResult.Outcome;
+import org.bndtools.core.resolve.ResolutionResultCache.CachedCapability;
+import org.bndtools.core.resolve.ResolutionResultCache.CachedRequirement;
+import org.bndtools.core.resolve.ResolutionResultCache.CachedResource;
+import org.bndtools.core.resolve.ResolutionResultCache.CachedWire;
+import org.eclipse.core.runtime.MultiStatus;
+import org.osgi.framework.Version;
+import org.osgi.framework.namespace.IdentityNamespace;
+import org.osgi.framework.namespace.PackageNamespace;
+import org.osgi.resource.Capability;
+import org.osgi.resource.Namespace;
+import org.osgi.resource.Resource;
+import org.osgi.resource.Wire;
+
+import aQute.bnd.build.model.BndEditModel;
+import aQute.bnd.properties.Document;
+import aQute.lib.io.IO;
+import junit.framework.TestCase;
+
+public class ResolutionResultCacheTest extends TestCase {
+
+    private final File dir = IO.getFile("generated/test-resolutioncache-tmp");
+    private ResolutionResultCache cache;
+
+    @Override
+    protected void setUp() throws Exception {
+        IO.delete(dir);
+        dir.mkdirs();
+        cache = new ResolutionResultCache(dir, 2);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        IO.delete(dir);
+    }
+
+    public void testRoundTrip() throws Exception {
+        CachedResource api = resource("org.example.api", "1.2.3");
+        Map<String,Object> exportAttrs = new HashMap<String,Object>();
+        exportAttrs.put(PackageNamespace.PACKAGE_NAMESPACE, "org.example.api");
+        exportAttrs.put(PackageNamespace.CAPABILITY_VERSION_ATTRIBUTE, new Version(1, 2, 0));
+        exportAttrs.put("uri", URI.create("file:/repo/api.jar"));
+        exportAttrs.put("sizes", Arrays.asList(1L, 2L));
+        CachedCapability export = new CachedCapability(api, PackageNamespace.PACKAGE_NAMESPACE, Collections.singletonMap(Namespace.CAPABILITY_USES_DIRECTIVE, "org.osgi.framework"), exportAttrs);
+        api.capabilities.add(export);
+
+        CachedResource impl = resource("org.example.impl", "1.0.0");
+        CachedRequirement importReq = new CachedRequirement(impl, PackageNamespace.PACKAGE_NAMESPACE, Collections.singletonMap(Namespace.REQUIREMENT_FILTER_DIRECTIVE, "(osgi.wiring.package=org.example.api)"),
+                Collections.<String,Object> emptyMap());
+        impl.requirements.add(importReq);
+
+        Map<Resource,List<Wire>> wirings = new LinkedHashMap<Resource,List<Wire>>();
+        wirings.put(api, Collections.<Wire> emptyList());
+        wirings.put(impl, Collections.<Wire> singletonList(new CachedWire(export, importReq)));
+        ResolutionResult result = new ResolutionResult(Outcome.Resolved, wirings, Collections.<Resource,List<Wire>> emptyMap(), null, status(), "log");
+
+        cache.put("key", result);
+        ResolutionResult cached = cache.get("key", status());
+        assertNotNull(cached);
+        assertEquals(Outcome.Resolved, cached.getOutcome());
+        assertEquals("log", cached.getLog());
+        assertEquals(2, cached.getResourceWirings().size());
+        assertTrue(cached.getOptionalResources().isEmpty());
+
+        Resource cachedImpl = null;
+        for (Resource resource : cached.getResourceWirings().keySet()) {
+            if ("org.example.impl".equals(resource.getCapabilities(IdentityNamespace.IDENTITY_NAMESPACE).get(0).getAttributes().get(IdentityNamespace.IDENTITY_NAMESPACE)))
+                cachedImpl = resource;
+        }
+        assertNotNull(cachedImpl);
+        List<Wire> wires = cached.getResourceWirings().get(cachedImpl);
+        assertEquals(1, wires.size());
+        Wire wire = wires.get(0);
+        assertSame(cachedImpl, wire.getRequirer());
+        assertSame(wire.getRequirement(), cachedImpl.getRequirements(PackageNamespace.PACKAGE_NAMESPACE).get(0));
+        assertTrue(cached.getResourceWirings().containsKey(wire.getProvider()));
+
+        Capability capability = wire.getCapability();
+        assertEquals(new Version(1, 2, 0), capability.getAttributes().get(PackageNamespace.CAPABILITY_VERSION_ATTRIBUTE));
+        assertEquals(URI.create("file:/repo/api.jar"), capability.getAttributes().get("uri"));
+        assertEquals(Arrays.asList(1L, 2L), capability.getAttributes().get("sizes"));
+        assertEquals("org.osgi.framework", capability.getDirectives().get(Namespace.CAPABILITY_USES_DIRECTIVE));
+    }
+
+    public void testUnsupportedAttributesAreNotCached() throws Exception {
+        CachedResource resource = resource("org.example", "1.0.0");
+        resource.capabilities.add(new CachedCapability(resource, "example", Collections.<String,String> emptyMap(), Collections.<String,Object> singletonMap("bad", new Object())));
+        ResolutionResult result = new ResolutionResult(Outcome.Resolved, Collections.<Resource,List<Wire>> singletonMap(resource, Collections.<Wire> emptyList()), Collections.<Resource,List<Wire>> emptyMap(), null, status(), "");
+
+        try {
+            cache.put("key", result);
+            fail("expected an exception");
+        } catch (IOException e) {
+            // expected
+        }
+        assertNull(cache.get("key", status()));
+    }
+
+    public void testEviction() throws Exception {
+        CachedResource resource = resource("org.example", "1.0.0");
+        ResolutionResult result = new ResolutionResult(Outcome.Resolved, Collections.<Resource,List<Wire>> singletonMap(resource, Collections.<Wire> emptyList()), Collections.<Resource,List<Wire>> emptyMap(), null, status(), "");
+
+        cache.put("a", result);
+        new File(dir, "a.resolution").setLastModified(System.currentTimeMillis() - 10000);
+        cache.put("b", result);
+        cache.put("c", result);
+
+        assertNull(cache.get("a", status()));
+        assertNotNull(cache.get("b", status()));
+        assertNotNull(cache.get("c", status()));
+    }
+
+    public void testCorruptEntriesAreDeleted() throws Exception {
+        CachedResource resource = resource("org.example", "1.0.0");
+        CachedRequirement requirement = new CachedRequirement(resource, "example", Collections.<String,String> emptyMap(), Collections.<String,Object> emptyMap());
+        resource.requirements.add(requirement);
+        CachedWire wire = new CachedWire(resource.capabilities.get(0), requirement);
+        ResolutionResult result = new ResolutionResult(Outcome.Resolved, Collections.<Resource,List<Wire>> singletonMap(resource, Collections.<Wire> singletonList(wire)),
+                Collections.<Resource,List<Wire>> emptyMap(), null, status(), "");
+        cache.put("key", result);
+        File file = new File(dir, "key.resolution");
+        byte[] data = IO.read(file);
+
+        // Truncated at every length, and with every int overwritten by a negative, huge or out of range value
+        for (int length = 0; length < data.length; length++) {
+            IO.store(Arrays.copyOf(data, length), file);
+            assertNull(cache.get("key", status()));
+            assertFalse(file.exists());
+        }
+        for (int offset = 0; offset + 4 <= data.length; offset++) {
+            for (int value : new int[] {
+                    -1, 1, 2, Integer.MAX_VALUE
+            }) {
+                byte[] corrupt = data.clone();
+                ByteBuffer.wrap(corrupt).putInt(offset, value);
+                IO.store(corrupt, file);
+                ResolutionResult read;
+                try {
+                    read = cache.get("key", status());
+                } catch (Throwable t) {
+                    fail("offset " + offset + ": " + t);
+                    return;
+                }
+                if (read == null)
+                    assertFalse(file.exists());
+            }
+        }
+    }
+
+    public void testRunPathChangeIsACacheMiss() throws Exception {
+        byte[] fingerprint = new byte[] {
+                1, 2, 3
+        };
+        BndEditModel model = new BndEditModel();
+        model.loadFrom(new Document("-runfw: org.apache.felix.framework\n-runrequires: osgi.identity;filter:='(osgi.identity=org.example)'\n-runpath: org.example.agent;version=1.0.0\n"));
+        String key = ResolutionResultCache.computeKey(model, fingerprint);
+        assertEquals(key, ResolutionResultCache.computeKey(model, fingerprint));
+
+        CachedResource resource = resource("org.example", "1.0.0");
+        cache.put(key, new ResolutionResult(Outcome.Resolved, Collections.<Resource,List<Wire>> singletonMap(resource, Collections.<Wire> emptyList()), Collections.<Resource,List<Wire>> emptyMap(), null, status(), ""));
+
+        model.loadFrom(new Document("-runfw: org.apache.felix.framework\n-runrequires: osgi.identity;filter:='(osgi.identity=org.example)'\n-runpath: org.example.agent;version=2.0.0\n"));
+        String changed = ResolutionResultCache.computeKey(model, fingerprint);
+        assertFalse(key.equals(changed));
+        assertNull(cache.get(changed, status()));
+        assertNotNull(cache.get(key, status()));
+    }
+
+    private static CachedResource resource(String bsn, String version) {
+        CachedResource resource = new CachedResource();
+        Map<String,Object> attrs = new HashMap<String,Object>();
+        attrs.put(IdentityNamespace.IDENTITY_NAMESPACE, bsn);
+        attrs.put(IdentityNamespace.CAPABILITY_VERSION_ATTRIBUTE, Version.parseVersion(version));
+        resource.capabilities.add(new CachedCapability(resource, IdentityNamespace.IDENTITY_NAMESPACE, Collections.<String,String> emptyMap(), attrs));
+        return resource;
+    }
+
+    private static MultiStatus status() {
+        return new MultiStatus("test", 0, "", null);
+    }
+}
@@ -1,7 +1,14 @@
 package org.bndtools.core.templating.repobased;
 
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
 import java.security.DigestInputStream;
 import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.Iterator;
@@ -12,18 +19,24 @@ import java.util.Map.Entry;
 import org.bndtools.templating.Resource;
 import org.bndtools.templating.ResourceMap;
 import org.bndtools.templating.Template;
+import org.bndtools.templating.TemplateListener;
 import org.bndtools.templating.engine.st.StringTemplateEngine;
 import org.bndtools.utils.progress.ProgressMonitorReporter;
+import org.eclipse.core.resources.IProject;
 import org.eclipse.core.runtime.NullProgressMonitor;
 
 import aQute.bnd.build.Run;
 import aQute.lib.hex.Hex;
 import aQute.lib.io.IO;
+import bndtools.central.Central;
+import bndtools.central.WorkspaceR5Repository;
 import junit.framework.TestCase;
 
 @SuppressWarnings("restriction")
 public class ReposTemplateLoaderTest extends TestCase {
 
+    private static final String EMPTY_INDEX = "<repository xmlns=\"http://www.osgi.org/xmlns/repository/v1.0.0\"/>";
+
     private ReposTemplateLoader loader;
 
     @Override
@@ -38,6 +51,11 @@ public class ReposTemplateLoaderTest extends TestCase {
         loader.addTemplateEngine(new StringTemplateEngine(), engineProps);
     }
 
+    @Override
+    protected void tearDown() throws Exception {
+        loader.deactivate();
+    }
+
     public void testLoad() throws Exception {
         List<Template> templates = loader.findTemplates("test1", new ProgressMonitorReporter(new NullProgressMonitor(), "")).getValue();
         assertEquals(1, templates.size());
@@ -47,6 +65,85 @@ public class ReposTemplateLoaderTest extends TestCase {
         assertNull(template.getCategory());
     }
 
+    public void testIncrementalLoad() throws Exception {
+        final List<Template> published = new ArrayList<>();
+        TemplateListener listener = new TemplateListener() {
+            @Override
+            public void templatesFound(Collection<Template> templates) {
+                synchronized (published) {
+                    published.addAll(templates);
+                }
+            }
+        };
+        List<Template> templates = loader.findTemplates("test1", new ProgressMonitorReporter(new NullProgressMonitor(), ""), listener).getValue();
+        assertEquals(1, templates.size());
+        synchronized (published) {
+            assertEquals(templates, published);
+        }
+
+        // Memoized until the repositories are refreshed
+        List<Template> again = loader.findTemplates("test1", new ProgressMonitorReporter(new NullProgressMonitor(), "")).getValue();
+        assertSame(templates.get(0), again.get(0));
+
+        loader.repositoriesRefreshed();
+        List<Template> reloaded = loader.findTemplates("test1", new ProgressMonitorReporter(new NullProgressMonitor(), "")).getValue();
+        assertEquals(1, reloaded.size());
+        assertNotSame(templates.get(0), reloaded.get(0));
+    }
+
+    public void testWorkspaceTemplateChange() throws Exception {
+        WorkspaceR5Repository workspaceRepo = Central.getWorkspaceR5Repository();
+        loader.workspace.addBasicPlugin(workspaceRepo);
+        IProject project = (IProject) Proxy.newProxyInstance(IProject.class.getClassLoader(), new Class< ? >[] {
+                IProject.class
+        }, new InvocationHandler() {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                switch (method.getName()) {
+                case "exists" :
+                case "isOpen" :
+                    return true;
+                case "equals" :
+                    return proxy == args[0];
+                case "hashCode" :
+                    return System.identityHashCode(proxy);
+                default :
+                    return null;
+                }
+            }
+        });
+        try {
+            // The project with the template bundle is built
+            loadWorkspaceIndex(workspaceRepo, project, "Before");
+            List<Template> templates = loader.findTemplates("workspace", new ProgressMonitorReporter(new NullProgressMonitor(), "")).getValue();
+            assertEquals(1, templates.size());
+            assertEquals("Before", templates.get(0).getName());
+            assertSame(templates.get(0), loader.findTemplates("workspace", new ProgressMonitorReporter(new NullProgressMonitor(), "")).getValue().get(0));
+
+            // The template bundle is edited and built again
+            loadWorkspaceIndex(workspaceRepo, project, "After");
+            templates = loader.findTemplates("workspace", new ProgressMonitorReporter(new NullProgressMonitor(), "")).getValue();
+            assertEquals(1, templates.size());
+            assertEquals("After", templates.get(0).getName());
+
+            // A refresh of the workspace is reported for the WorkspaceRepository plugin
+            loader.repositoryRefreshed(loader.workspace.getWorkspaceRepository());
+            List<Template> refreshed = loader.findTemplates("workspace", new ProgressMonitorReporter(new NullProgressMonitor(), "")).getValue();
+            assertEquals(1, refreshed.size());
+            assertNotSame(templates.get(0), refreshed.get(0));
+        } finally {
+            workspaceRepo.loadProjectIndex(project, new ByteArrayInputStream(EMPTY_INDEX.getBytes("UTF-8")), IO.getFile("testdata/bundles").toURI());
+            loader.workspace.removeBasicPlugin(workspaceRepo);
+        }
+    }
+
+    private static void loadWorkspaceIndex(WorkspaceR5Repository workspaceRepo, IProject project, String templateName) throws Exception {
+        File bundles = IO.getFile("testdata/bundles");
+        String index = IO.collect(new File(bundles, "index.xml"));
+        index = index.replace("value=\"test1\"", "value=\"workspace\"").replace("value=\"Hello\"", "value=\"" + templateName + "\"");
+        workspaceRepo.loadProjectIndex(project, new ByteArrayInputStream(index.getBytes("UTF-8")), bundles.toURI());
+    }
+
     public void testProcessTemplate() throws Exception {
         List<Template> templates = loader.findTemplates("test1", new ProgressMonitorReporter(new NullProgressMonitor(), "")).getValue();
         assertEquals(1, templates.size());
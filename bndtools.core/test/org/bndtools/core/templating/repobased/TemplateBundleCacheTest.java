@@ -0,0 +1,93 @@
+package org.bndtools.core.templating.repobased;
+
+import java.io.File;
+import java.io.IOException;
+
+import aQute.lib.io.IO;
+import junit.framework.TestCase;
+
+public class TemplateBundleCacheTest extends TestCase {
+
+    private final File cacheDir = IO.getFile("generated/test-templatecache-cache-tmp");
+    private final File sourceDir = IO.getFile("generated/test-templatecache-source-tmp");
+
+    @Override
+    protected void setUp() throws Exception {
+        IO.delete(cacheDir);
+        IO.delete(sourceDir);
+        cacheDir.mkdirs();
+        sourceDir.mkdirs();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        IO.delete(cacheDir);
+        IO.delete(sourceDir);
+    }
+
+    public void testCacheByContentHash() throws Exception {
+        File source = createSource("a.jar", "aaaa");
+        String hash = TemplateBundleCache.digest(source);
+        TemplateBundleCache cache = new TemplateBundleCache(cacheDir);
+
+        File first = cache.get(hash, "SHA-256", source.toURI());
+        assertTrue(first.isFile());
+        assertEquals(hash, TemplateBundleCache.digest(first));
+
+        // The source has gone, but the cached copy is still found by its hash
+        IO.delete(source);
+        File second = cache.get(hash, "SHA-256", source.toURI());
+        assertEquals(first, second);
+        assertEquals(first, cache.getCached(hash.toUpperCase()));
+    }
+
+    public void testHashMismatch() throws Exception {
+        File source = createSource("a.jar", "aaaa");
+        TemplateBundleCache cache = new TemplateBundleCache(cacheDir);
+        try {
+            cache.get("0000", "SHA-256", source.toURI());
+            fail("Expected IOException");
+        } catch (IOException e) {
+            // expected
+        }
+        assertNull(cache.getCached("0000"));
+    }
+
+    public void testCacheByLocation() throws Exception {
+        File source = createSource("a.jar", "aaaa");
+        TemplateBundleCache cache = new TemplateBundleCache(cacheDir);
+
+        File first = cache.get(null, null, source.toURI());
+        assertEquals("aaaa", IO.collect(first));
+
+        // Changed at the source, so the next lookup picks up the new content
+        IO.store("bbbb", source);
+        File second = cache.get(null, null, source.toURI());
+        assertEquals("bbbb", IO.collect(second));
+
+        // Unreachable, so fall back to the cached copy
+        IO.delete(source);
+        File third = cache.get(null, null, source.toURI());
+        assertEquals("bbbb", IO.collect(third));
+    }
+
+    public void testEvictLeastRecentlyUsed() throws Exception {
+        TemplateBundleCache cache = new TemplateBundleCache(cacheDir, 10);
+
+        File a = cache.put(createSource("a.jar", "aaaa"));
+        a.setLastModified(System.currentTimeMillis() - 20000);
+        File b = cache.put(createSource("b.jar", "bbbb"));
+        b.setLastModified(System.currentTimeMillis() - 10000);
+        File c = cache.put(createSource("c.jar", "cccc"));
+
+        assertFalse(a.exists());
+        assertTrue(b.exists());
+        assertTrue(c.exists());
+    }
+
+    private File createSource(String name, String content) throws IOException {
+        File file = new File(sourceDir, name);
+        IO.store(content, file);
+        return file;
+    }
+}
@@ -0,0 +1,124 @@
+package org.bndtools.core.trace;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.bndtools.api.BuildTrace;
+
+import aQute.lib.io.IO;
+import junit.framework.TestCase;
+
+public class ChromeTraceRecorderTest extends TestCase {
+
+    private final File dir = IO.getFile("generated/test-buildtrace-tmp");
+
+    @Override
+    protected void setUp() throws Exception {
+        IO.delete(dir);
+        dir.mkdirs();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        BuildTrace.setRecorder(null);
+        IO.delete(dir);
+    }
+
+    public void testSpansAndCounters() throws Exception {
+        ChromeTraceRecorder recorder = new ChromeTraceRecorder(dir, 1024 * 1024, 5);
+        BuildTrace.setRecorder(recorder);
+
+        try (BuildTrace.Span span = BuildTrace.span(BuildTrace.BUILD, "build")) {
+            span.arg("project", "a \"quoted\"\nname").arg("files", 3).arg("changed", true);
+            BuildTrace.counter(BuildTrace.WORKSPACE, "waiting", 2);
+        }
+        BuildTrace.setRecorder(null);
+        recorder.close();
+
+        File[] files = dir.listFiles();
+        assertEquals(1, files.length);
+        String trace = IO.collect(files[0]);
+        assertTrue(trace.startsWith("[\n"));
+        assertTrue(trace.endsWith("\n]\n"));
+        assertTrue(trace.contains("\"name\":\"build\",\"cat\":\"build\",\"ph\":\"X\""));
+        assertTrue(trace.contains("\"args\":{\"project\":\"a \\\"quoted\\\"\\nname\",\"files\":3,\"changed\":true}"));
+        assertTrue(trace.contains("\"name\":\"waiting\",\"cat\":\"workspace\",\"ph\":\"C\""));
+        assertTrue(trace.contains("\"name\":\"thread_name\""));
+    }
+
+    public void testDisabledSpansAreNotRecorded() throws Exception {
+        ChromeTraceRecorder recorder = new ChromeTraceRecorder(dir, 1024 * 1024, 5);
+        try (BuildTrace.Span span = BuildTrace.span(BuildTrace.BUILD, "build")) {
+            span.arg("project", "p");
+        }
+        recorder.flush();
+
+        assertFalse(BuildTrace.isEnabled());
+        assertEquals(0, dir.list().length);
+    }
+
+    public void testRollsAndKeepsNewestFiles() throws Exception {
+        ChromeTraceRecorder recorder = new ChromeTraceRecorder(dir, 200, 2);
+        Map<String,Object> args = new LinkedHashMap<String,Object>();
+        args.put("project", "p");
+        for (int i = 0; i < 4; i++) {
+            for (int j = 0; j < 3; j++)
+                recorder.span(BuildTrace.BUILD, "build", System.nanoTime(), 1000L, Thread.currentThread(), args);
+            recorder.flush();
+            // the file names have a millisecond timestamp
+            Thread.sleep(5);
+        }
+        recorder.span(BuildTrace.BUILD, "build", System.nanoTime(), 1000L, Thread.currentThread(), Collections.<String,Object> emptyMap());
+        recorder.close();
+
+        File[] files = dir.listFiles();
+        Arrays.sort(files);
+        assertEquals(2, files.length);
+        for (File file : files) {
+            String trace = IO.collect(file);
+            assertTrue(trace.startsWith("[\n"));
+            assertTrue(trace.endsWith("\n]\n"));
+        }
+    }
+
+    public void testSizeIsCountedInBytes() throws Exception {
+        assertEquals(10, ChromeTraceRecorder.utf8Length("a\u00e9\u20ac\ud83d\ude00"));
+
+        // Multi-byte names fill a file sooner than their length in chars
+        ChromeTraceRecorder recorder = new ChromeTraceRecorder(dir, 400, 10);
+        StringBuilder name = new StringBuilder();
+        for (int i = 0; i < 100; i++)
+            name.append('\u20ac');
+        recorder.span(BuildTrace.BUILD, name.toString(), System.nanoTime(), 1000L, Thread.currentThread(), null);
+        recorder.flush();
+        // the file names have a millisecond timestamp
+        Thread.sleep(5);
+        recorder.span(BuildTrace.BUILD, name.toString(), System.nanoTime(), 1000L, Thread.currentThread(), null);
+        recorder.close();
+
+        assertEquals(2, dir.listFiles().length);
+    }
+
+    public void testEventsAfterCloseAreIgnored() throws Exception {
+        ChromeTraceRecorder recorder = new ChromeTraceRecorder(dir, 1024 * 1024, 5);
+        recorder.span(BuildTrace.BUILD, "build", System.nanoTime(), 1000L, Thread.currentThread(), null);
+        recorder.close();
+        File[] files = dir.listFiles();
+        assertEquals(1, files.length);
+        String trace = IO.collect(files[0]);
+
+        // A late event and flush must not open a new file
+        Thread.sleep(5);
+        recorder.span(BuildTrace.BUILD, "late", System.nanoTime(), 1000L, Thread.currentThread(), null);
+        recorder.counter(BuildTrace.BUILD, "late", System.nanoTime(), 1);
+        recorder.flush();
+        recorder.close();
+
+        assertEquals(1, dir.listFiles().length);
+        assertEquals(trace, IO.collect(files[0]));
+    }
+
+}
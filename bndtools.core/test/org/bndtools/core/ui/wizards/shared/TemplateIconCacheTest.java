@@ -0,0 +1,128 @@
+package org.bndtools.core.ui.wizards.shared;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.bndtools.core.ui.wizards.shared.TemplateIconCache.Icon;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import aQute.lib.io.IO;
+import junit.framework.TestCase;
+
+public class TemplateIconCacheTest extends TestCase {
+
+    private static final String ETAG = "\"v1\"";
+
+    private final File dir = IO.getFile("generated/test-templateicons-tmp");
+    private TemplateIconCache cache;
+
+    @Override
+    protected void setUp() throws Exception {
+        IO.delete(dir);
+        dir.mkdirs();
+        cache = new TemplateIconCache(new File(dir, "cache"));
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        IO.delete(dir);
+    }
+
+    public void testFileIcon() throws Exception {
+        File file = new File(dir, "icon.png");
+        IO.store("first", file);
+
+        Icon icon = cache.get(file.toURI());
+        assertEquals("first", new String(icon.data, "UTF-8"));
+        assertEquals(TemplateIconCache.hash(icon.data), icon.hash);
+        assertTrue(new File(dir, "cache/" + icon.hash + ".icon").isFile());
+        assertEquals(icon.hash, cache.get(file.toURI()).hash);
+
+        IO.store("second", file);
+        file.setLastModified(file.lastModified() + 10000);
+        Icon changed = cache.get(file.toURI());
+        assertEquals("second", new String(changed.data, "UTF-8"));
+        assertFalse(icon.hash.equals(changed.hash));
+
+        // The superseded content is deleted
+        assertFalse(new File(dir, "cache/" + icon.hash + ".icon").exists());
+        assertTrue(new File(dir, "cache/" + changed.hash + ".icon").isFile());
+    }
+
+    public void testSharedContentIsKept() throws Exception {
+        File first = new File(dir, "first.png");
+        File second = new File(dir, "second.png");
+        IO.store("shared", first);
+        IO.store("shared", second);
+
+        Icon icon = cache.get(first.toURI());
+        assertEquals(icon.hash, cache.get(second.toURI()).hash);
+
+        // The other location still refers to the previous content
+        IO.store("changed", first);
+        first.setLastModified(first.lastModified() + 10000);
+        assertFalse(icon.hash.equals(cache.get(first.toURI()).hash));
+        assertTrue(new File(dir, "cache/" + icon.hash + ".icon").isFile());
+        assertEquals("shared", new String(cache.get(second.toURI()).data, "UTF-8"));
+    }
+
+    public void testJarEntryIcon() throws Exception {
+        File jar = new File("test/tests.provider.jar");
+        URI uri = new URI("jar:" + jar.getAbsoluteFile().toURI() + "!/api/packageinfo");
+
+        Icon icon = cache.get(uri);
+        assertEquals("version 1.0.0", new String(icon.data, "UTF-8").trim());
+        assertTrue(new File(dir, "cache/" + icon.hash + ".icon").isFile());
+        assertEquals(icon.hash, cache.get(uri).hash);
+    }
+
+    public void testHttpIconIsRevalidated() throws Exception {
+        final AtomicInteger downloads = new AtomicInteger();
+        final AtomicInteger notModified = new AtomicInteger();
+        HttpServer server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/icon.png", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                if (ETAG.equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+                    notModified.incrementAndGet();
+                    exchange.sendResponseHeaders(304, -1);
+                } else {
+                    downloads.incrementAndGet();
+                    byte[] data = "remote".getBytes("UTF-8");
+                    exchange.getResponseHeaders().add("ETag", ETAG);
+                    exchange.sendResponseHeaders(200, data.length);
+                    try (OutputStream out = exchange.getResponseBody()) {
+                        out.write(data);
+                    }
+                }
+                exchange.close();
+            }
+        });
+        server.start();
+        URI uri = new URI("http://localhost:" + server.getAddress().getPort() + "/icon.png");
+        try {
+            Icon icon = cache.get(uri);
+            assertEquals("remote", new String(icon.data, "UTF-8"));
+
+            Icon revalidated = cache.get(uri);
+            assertTrue(Arrays.equals(icon.data, revalidated.data));
+            assertEquals(1, downloads.get());
+            assertEquals(1, notModified.get());
+        } finally {
+            server.stop(0);
+        }
+
+        // The cached copy is used when the server cannot be reached
+        Icon offline = cache.get(uri);
+        assertEquals("remote", new String(offline.data, "UTF-8"));
+    }
+
+}
@@ -1,24 +1,60 @@
 package org.bndtools.templating.jgit;
 
+import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.net.URI;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 import aQute.bnd.http.HttpClient;
 import aQute.bnd.service.url.TaggedData;
 import aQute.lib.io.IO;
+import aQute.libg.cryptography.SHA1;
 import aQute.libg.tuple.Pair;
 
+/**
+ * Cache of ETag'd API responses. Entries are held in a bounded, least recently used, in-memory map and, if a directory
+ * is given, are also persisted so that they survive restarts.
+ */
 public class Cache {
 
-    private final ConcurrentMap<URI,Pair<String,byte[]>> cache = new ConcurrentHashMap<>();
+    public static final String DEFAULT_DIR = "github";
+    public static final int DEFAULT_MAX_ENTRIES = 256;
+
+    private static final String TAG_SUFFIX = ".etag";
+    private static final String DATA_SUFFIX = ".data";
+
+    private final File dir;
+    private final Map<URI,Pair<String,byte[]>> cache;
+
+    public Cache() {
+        this(null, DEFAULT_MAX_ENTRIES);
+    }
+
+    public Cache(File dir) {
+        this(dir, DEFAULT_MAX_ENTRIES);
+    }
+
+    public Cache(File dir, final int maxEntries) {
+        this.dir = dir;
+        this.cache = new LinkedHashMap<URI,Pair<String,byte[]>>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<URI,Pair<String,byte[]>> eldest) {
+                if (size() <= maxEntries)
+                    return false;
+                deletePersisted(eldest.getKey());
+                return true;
+            }
+        };
+    }
 
     public byte[] download(URI uri) throws IOException {
         byte[] data;
         try (HttpClient client = new HttpClient()) {
-            Pair<String,byte[]> cachedTag = cache.get(uri);
+            Pair<String,byte[]> cachedTag = get(uri);
             if (cachedTag == null) {
                 // Not previously cached
                 TaggedData td = client.connectTagged(uri.toURL());
@@ -26,7 +62,7 @@ public class Cache {
                     throw new FileNotFoundException("Not found");
                 data = IO.read(td.getInputStream());
                 if (td.getTag() != null)
-                    cache.put(uri, new Pair<String,byte[]>(td.getTag(), data));
+                    put(uri, new Pair<String,byte[]>(td.getTag(), data));
             } else {
                 // Previously cached with an ETag
                 TaggedData td = client.connectTagged(uri.toURL(), cachedTag.getFirst());
@@ -40,10 +76,10 @@ public class Cache {
                     data = IO.read(td.getInputStream());
                     if (td.getTag() == null) {
                         // server now not giving an etag -> remove from cache
-                        cache.remove(td.getTag());
+                        remove(uri);
                     } else {
                         // replace cache entry with new tag
-                        cache.put(uri, new Pair<String,byte[]>(td.getTag(), data));
+                        put(uri, new Pair<String,byte[]>(td.getTag(), data));
                     }
                 }
             }
@@ -55,4 +91,56 @@ public class Cache {
         }
     }
 
+    private synchronized Pair<String,byte[]> get(URI uri) {
+        Pair<String,byte[]> entry = cache.get(uri);
+        if (entry == null && dir != null) {
+            try {
+                File tagFile = persistedFile(uri, TAG_SUFFIX);
+                File dataFile = persistedFile(uri, DATA_SUFFIX);
+                if (tagFile.isFile() && dataFile.isFile()) {
+                    entry = new Pair<String,byte[]>(IO.collect(tagFile, "UTF-8"), IO.read(dataFile));
+                    cache.put(uri, entry);
+                }
+            } catch (Exception e) {
+                // treat a corrupt entry as missing
+                deletePersisted(uri);
+            }
+        }
+        return entry;
+    }
+
+    private synchronized void put(URI uri, Pair<String,byte[]> entry) {
+        cache.put(uri, entry);
+        if (dir != null) {
+            try {
+                IO.mkdirs(dir);
+                IO.store(entry.getSecond(), persistedFile(uri, DATA_SUFFIX));
+                IO.store(entry.getFirst(), persistedFile(uri, TAG_SUFFIX), "UTF-8");
+            } catch (Exception e) {
+                // persistence is an optimisation only
+                deletePersisted(uri);
+            }
+        }
+    }
+
+    private synchronized void remove(URI uri) {
+        cache.remove(uri);
+        deletePersisted(uri);
+    }
+
+    private void deletePersisted(URI uri) {
+        if (dir == null)
+            return;
+        try {
+            IO.delete(persistedFile(uri, TAG_SUFFIX));
+            IO.delete(persistedFile(uri, DATA_SUFFIX));
+        } catch (Exception e) {
+            // ignore
+        }
+    }
+
+    private File persistedFile(URI uri, String suffix) throws Exception {
+        return new File(dir, SHA1.digest(uri.toString().getBytes("UTF-8")).asHex().toLowerCase() + suffix);
+    }
+
 }
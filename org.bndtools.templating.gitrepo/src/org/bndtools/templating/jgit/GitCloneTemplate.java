@@ -1,25 +1,19 @@
 package org.bndtools.templating.jgit;
 
 import java.io.File;
-import java.io.FileFilter;
 import java.io.IOException;
 import java.net.URI;
 import java.nio.file.Files;
-import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import java.util.Map.Entry;
 
-import org.bndtools.templating.FileResource;
-import org.bndtools.templating.FolderResource;
+import org.bndtools.templating.Resource;
 import org.bndtools.templating.ResourceMap;
 import org.bndtools.templating.Template;
 import org.bndtools.templating.util.ObjectClassDefinitionImpl;
 import org.eclipse.core.runtime.IProgressMonitor;
 import org.eclipse.core.runtime.NullProgressMonitor;
-import org.eclipse.jgit.api.CloneCommand;
-import org.eclipse.jgit.api.Git;
-import org.eclipse.jgit.api.errors.JGitInternalException;
-import org.eclipse.jgit.lib.Repository;
 import org.osgi.framework.Version;
 import org.osgi.service.metatype.ObjectClassDefinition;
 
@@ -28,11 +22,18 @@ import aQute.lib.io.IO;
 public class GitCloneTemplate implements Template {
 
     private final GitCloneTemplateParams params;
+    private final GitMirrorCache mirrors;
 
-    private Repository checkedOut = null;
+    private ResourceMap loaded = null;
+    private File tempDir = null;
 
     public GitCloneTemplate(GitCloneTemplateParams params) {
+        this(params, null);
+    }
+
+    public GitCloneTemplate(GitCloneTemplateParams params, GitMirrorCache mirrors) {
         this.params = params;
+        this.mirrors = mirrors;
     }
 
     @Override
@@ -84,58 +85,48 @@ public class GitCloneTemplate implements Template {
 
     @Override
     public ResourceMap generateOutputs(Map<String,List<Object>> parameters, IProgressMonitor monitor) throws Exception {
-        File workingDir = null;
-        File gitDir = null;
+        ResourceMap resources;
 
-        // Get existing checkout if available
+        // Get existing content if available
         synchronized (this) {
-            if (checkedOut != null) {
-                workingDir = checkedOut.getWorkTree();
-                gitDir = new File(workingDir, ".git");
-            }
+            resources = loaded;
         }
 
-        if (workingDir == null) {
-            // Need to do a new checkout
-            workingDir = Files.createTempDirectory("checkout").toFile();
-            gitDir = new File(workingDir, ".git");
+        if (resources == null) {
             String branch = params.branch != null ? params.branch : GitCloneTemplateParams.DEFAULT_BRANCH;
-
-            try {
-                CloneCommand cloneCmd = Git.cloneRepository().setURI(params.cloneUrl).setDirectory(workingDir).setNoCheckout(true);
-                cloneCmd.setProgressMonitor(new EclipseGitProgressTransformer(monitor));
-                cloneCmd.setBranchesToClone(Collections.singleton(branch));
-                Git git = cloneCmd.call();
-
-                git.checkout().setCreateBranch(true).setName("_tmp").setStartPoint(branch).call();
-                checkedOut = git.getRepository();
-            } catch (JGitInternalException e) {
-                Throwable cause = e.getCause();
-                if (cause instanceof Exception)
-                    throw (Exception) cause;
-                throw e;
+            GitMirrorCache cache = mirrors;
+            if (cache == null) {
+                // No persistent store, so use a throwaway mirror
+                synchronized (this) {
+                    if (tempDir == null)
+                        tempDir = Files.createTempDirectory("checkout").toFile();
+                    cache = new GitMirrorCache(tempDir);
+                }
+            }
+            resources = cache.load(params.cloneUrl, branch, monitor);
+            synchronized (this) {
+                loaded = resources;
             }
         }
 
-        final File exclude = gitDir;
-        FileFilter filter = new FileFilter() {
-            @Override
-            public boolean accept(File path) {
-                return !path.equals(exclude);
-            }
-        };
-        return toResourceMap(workingDir, filter);
+        // Return a copy since the caller may modify the map
+        ResourceMap result = new ResourceMap();
+        for (Entry<String,Resource> entry : resources.entries()) {
+            result.put(entry.getKey(), entry.getValue());
+        }
+        return result;
     }
 
     @Override
     public void close() throws IOException {
-        File tempDir = null;
+        File dir;
         synchronized (this) {
-            if (checkedOut != null)
-                tempDir = checkedOut.getWorkTree();
+            dir = tempDir;
+            tempDir = null;
+            loaded = null;
         }
-        if (tempDir != null)
-            IO.delete(tempDir);
+        if (dir != null)
+            IO.delete(dir);
     }
 
     @Override
@@ -147,30 +138,4 @@ public class GitCloneTemplate implements Template {
     public URI getHelpContent() {
         return params.helpUri;
     }
-
-    private static ResourceMap toResourceMap(File baseDir, FileFilter filter) {
-        ResourceMap result = new ResourceMap();
-        File[] files = baseDir.listFiles(filter);
-        if (files != null)
-            for (File file : files) {
-                recurse("", file, filter, result);
-            }
-        return result;
-    }
-
-    private static void recurse(String prefix, File file, FileFilter filter, ResourceMap resourceMap) {
-        if (file.isDirectory()) {
-            String path = prefix + file.getName() + "/";
-            resourceMap.put(path, new FolderResource());
-
-            File[] children = file.listFiles(filter);
-            for (File child : children) {
-                recurse(path, child, filter, resourceMap);
-            }
-        } else {
-            String path = prefix + file.getName();
-            // TODO: WTF is the encoding?
-            resourceMap.put(path, new FileResource(file, "UTF-8"));
-        }
-    }
 }
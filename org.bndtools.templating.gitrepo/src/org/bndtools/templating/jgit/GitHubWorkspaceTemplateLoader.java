@@ -8,8 +8,12 @@ import java.util.Map.Entry;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 
+import org.bndtools.api.IExecutionService;
+import org.bndtools.api.IExecutionService.Pool;
+import org.bndtools.api.IExecutionService.Priority;
 import org.bndtools.templating.Template;
 import org.bndtools.templating.TemplateLoader;
+import org.osgi.framework.BundleContext;
 import org.osgi.framework.Constants;
 import org.osgi.service.component.annotations.Activate;
 import org.osgi.service.component.annotations.Component;
@@ -32,19 +36,22 @@ public class GitHubWorkspaceTemplateLoader implements TemplateLoader {
 
     private static final String TEMPLATE_TYPE = "workspace";
 
-    private final Cache cache = new Cache();
+    private Cache cache;
+    private GitMirrorCache mirrors;
 
     private ExecutorService executor;
 
     @Reference(cardinality = ReferenceCardinality.OPTIONAL, policyOption = ReferencePolicyOption.GREEDY)
-    void setExecutorService(ExecutorService executor) {
-        this.executor = executor;
+    void setExecutionService(IExecutionService executionService) {
+        this.executor = executionService.getExecutor(Pool.IO, Priority.NORMAL);
     }
 
     @Activate
-    void activate() {
+    void activate(BundleContext context) {
         if (executor == null)
             executor = Executors.newCachedThreadPool();
+        cache = new Cache(context.getDataFile(Cache.DEFAULT_DIR));
+        mirrors = new GitMirrorCache(context.getDataFile(GitMirrorCache.DEFAULT_DIR));
     }
 
     @Override
@@ -92,7 +99,7 @@ public class GitHubWorkspaceTemplateLoader implements TemplateLoader {
                             params.helpUri = createHelpUri(repo, detailsDTO.html_url);
                         }
 
-                        return Promises.<Template> resolved(new GitCloneTemplate(params));
+                        return Promises.<Template> resolved(new GitCloneTemplate(params, mirrors));
                     }
 
                 }));
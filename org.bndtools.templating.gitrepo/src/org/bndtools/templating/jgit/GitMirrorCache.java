@@ -0,0 +1,148 @@
+package org.bndtools.templating.jgit;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.bndtools.templating.BytesResource;
+import org.bndtools.templating.FolderResource;
+import org.bndtools.templating.ResourceMap;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.api.errors.GitAPIException;
+import org.eclipse.jgit.api.errors.JGitInternalException;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.FileMode;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.lib.StoredConfig;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.eclipse.jgit.transport.TagOpt;
+import org.eclipse.jgit.treewalk.TreeWalk;
+
+import aQute.lib.io.IO;
+import aQute.libg.cryptography.SHA1;
+
+/**
+ * Persistent store of bare mirrors of Git clone URLs. The first use of a clone URL creates a bare repository in the
+ * store; subsequent uses only fetch the objects that changed. Template content is read straight out of the object
+ * database with a tree walk, so no working tree is ever checked out.
+ */
+public class GitMirrorCache {
+
+    public static final String DEFAULT_DIR = "mirrors";
+
+    private static final String REMOTE = "origin";
+    private static final String FETCH_REFSPEC = "+" + Constants.R_HEADS + "*:" + Constants.R_REMOTES + REMOTE + "/*";
+
+    // Shared by all instances, since several loaders may use the same store directory
+    private static final ConcurrentMap<File,Object> locks = new ConcurrentHashMap<>();
+
+    private final File dir;
+
+    public GitMirrorCache(File dir) {
+        this.dir = dir;
+    }
+
+    public File getDirectory() {
+        return dir;
+    }
+
+    /**
+     * Update the mirror of the clone URL and read the tree of the specified branch into a resource map.
+     * <p>
+     * If the fetch fails, for example because we are offline, the previously mirrored state of the branch is used if
+     * there is one.
+     */
+    public ResourceMap load(String cloneUrl, String branch, IProgressMonitor monitor) throws Exception {
+        File mirrorDir = getMirrorDir(cloneUrl);
+        synchronized (lockFor(mirrorDir)) {
+            Repository repository = openMirror(mirrorDir, cloneUrl);
+            try {
+                try {
+                    fetch(repository, monitor);
+                } catch (GitAPIException | RuntimeException e) {
+                    if (repository.resolve(branch) == null) {
+                        if (e instanceof JGitInternalException && e.getCause() instanceof Exception)
+                            throw (Exception) e.getCause();
+                        throw e;
+                    }
+                    // otherwise use the last fetched state
+                }
+
+                ObjectId commitId = repository.resolve(branch);
+                if (commitId == null)
+                    throw new IOException(String.format("Branch '%s' not found in Git repository %s", branch, cloneUrl));
+                return readTree(repository, commitId);
+            } finally {
+                repository.close();
+            }
+        }
+    }
+
+    File getMirrorDir(String cloneUrl) throws Exception {
+        String key = SHA1.digest(cloneUrl.getBytes("UTF-8")).asHex().toLowerCase();
+        return new File(dir, key + Constants.DOT_GIT_EXT);
+    }
+
+    private static Object lockFor(File mirrorDir) {
+        Object lock = new Object();
+        Object existing = locks.putIfAbsent(mirrorDir.getAbsoluteFile(), lock);
+        return existing != null ? existing : lock;
+    }
+
+    private static Repository openMirror(File mirrorDir, String cloneUrl) throws Exception {
+        Repository repository;
+        if (new File(mirrorDir, Constants.HEAD).isFile()) {
+            repository = Git.open(mirrorDir).getRepository();
+        } else {
+            IO.delete(mirrorDir);
+            IO.mkdirs(mirrorDir);
+            repository = Git.init().setBare(true).setDirectory(mirrorDir).call().getRepository();
+        }
+
+        // Always (re)write the remote, in case the store was created by an earlier version
+        StoredConfig config = repository.getConfig();
+        config.setString("remote", REMOTE, "url", cloneUrl);
+        config.setString("remote", REMOTE, "fetch", FETCH_REFSPEC);
+        config.save();
+        return repository;
+    }
+
+    private static void fetch(Repository repository, IProgressMonitor monitor) throws GitAPIException {
+        new Git(repository).fetch().setRemote(REMOTE).setRemoveDeletedRefs(true).setTagOpt(TagOpt.FETCH_TAGS).setProgressMonitor(new EclipseGitProgressTransformer(monitor)).call();
+    }
+
+    private static ResourceMap readTree(Repository repository, ObjectId commitId) throws IOException {
+        ResourceMap result = new ResourceMap();
+
+        RevWalk revWalk = new RevWalk(repository);
+        TreeWalk treeWalk = new TreeWalk(repository);
+        try {
+            RevCommit commit = revWalk.parseCommit(commitId);
+            treeWalk.addTree(commit.getTree());
+            treeWalk.setRecursive(false);
+            while (treeWalk.next()) {
+                String path = treeWalk.getPathString();
+                FileMode mode = treeWalk.getFileMode(0);
+                if (treeWalk.isSubtree()) {
+                    result.put(path + "/", new FolderResource());
+                    treeWalk.enterSubtree();
+                } else if (mode == FileMode.REGULAR_FILE || mode == FileMode.EXECUTABLE_FILE) {
+                    // Git does not record an encoding, template text is read as UTF-8
+                    byte[] data = repository.open(treeWalk.getObjectId(0), Constants.OBJ_BLOB).getBytes();
+                    result.put(path, new BytesResource(data, StandardCharsets.UTF_8.name()));
+                }
+                // symlinks and submodules are not supported in templates
+            }
+        } finally {
+            treeWalk.release();
+            revWalk.release();
+        }
+        return result;
+    }
+
+}
@@ -27,10 +27,12 @@ public class PlainGitWorkspaceTemplateLoader implements TemplateLoader {
     private static final String TEMPLATE_TYPE = "workspace";
 
     private URL iconUrl;
+    private GitMirrorCache mirrors;
 
     @Activate
     void activate(BundleContext context) {
         iconUrl = context.getBundle().getEntry("icons/git-16px.png");
+        mirrors = new GitMirrorCache(context.getDataFile(GitMirrorCache.DEFAULT_DIR));
     }
 
     @Override
@@ -53,7 +55,7 @@ public class PlainGitWorkspaceTemplateLoader implements TemplateLoader {
                 params.iconUri = iconUrl.toURI();
                 params.branch = attribs.get("branch");
 
-                GitCloneTemplate template = new GitCloneTemplate(params);
+                GitCloneTemplate template = new GitCloneTemplate(params, mirrors);
                 templates.add(template);
             } catch (Exception e) {
                 reporter.exception(e, "Error loading template from Git clone URL %s", cloneUrl);
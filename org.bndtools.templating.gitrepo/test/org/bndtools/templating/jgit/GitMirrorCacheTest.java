@@ -0,0 +1,99 @@
+package org.bndtools.templating.jgit;
+
+import java.io.File;
+
+import org.bndtools.templating.Resource;
+import org.bndtools.templating.ResourceMap;
+import org.eclipse.core.runtime.NullProgressMonitor;
+import org.eclipse.jgit.api.Git;
+
+import aQute.lib.io.IO;
+import junit.framework.TestCase;
+
+public class GitMirrorCacheTest extends TestCase {
+
+    private final File sourceDir = IO.getFile("generated/test-gitmirror-source-tmp");
+    private final File cacheDir = IO.getFile("generated/test-gitmirror-cache-tmp");
+
+    private Git source;
+    private String cloneUrl;
+
+    @Override
+    protected void setUp() throws Exception {
+        IO.delete(sourceDir);
+        IO.delete(cacheDir);
+        sourceDir.mkdirs();
+        source = Git.init().setDirectory(sourceDir).call();
+        cloneUrl = sourceDir.getAbsoluteFile().toURI().toString();
+        commit("template.txt", "first");
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        source.getRepository().close();
+        IO.delete(sourceDir);
+        IO.delete(cacheDir);
+    }
+
+    public void testClonesOnce() throws Exception {
+        GitMirrorCache cache = new GitMirrorCache(cacheDir);
+        assertEquals("first", read(cache.load(cloneUrl, GitCloneTemplateParams.DEFAULT_BRANCH, new NullProgressMonitor()), "template.txt"));
+
+        File mirrorDir = cache.getMirrorDir(cloneUrl);
+        assertTrue(new File(mirrorDir, "HEAD").isFile());
+        File marker = new File(mirrorDir, "marker");
+        IO.store("kept", marker);
+
+        // The mirror is reused, not cloned again
+        assertEquals("first", read(new GitMirrorCache(cacheDir).load(cloneUrl, GitCloneTemplateParams.DEFAULT_BRANCH, new NullProgressMonitor()), "template.txt"));
+        assertTrue(marker.isFile());
+        assertEquals(1, cacheDir.list().length);
+    }
+
+    public void testFetchesOnRefresh() throws Exception {
+        GitMirrorCache cache = new GitMirrorCache(cacheDir);
+        ResourceMap first = cache.load(cloneUrl, GitCloneTemplateParams.DEFAULT_BRANCH, new NullProgressMonitor());
+        assertEquals("first", read(first, "template.txt"));
+        assertNull(first.get("added.txt"));
+
+        commit("template.txt", "second");
+        commit("dir/added.txt", "added");
+
+        ResourceMap second = cache.load(cloneUrl, GitCloneTemplateParams.DEFAULT_BRANCH, new NullProgressMonitor());
+        assertEquals("second", read(second, "template.txt"));
+        assertEquals("added", read(second, "dir/added.txt"));
+        assertNotNull(second.get("dir/"));
+    }
+
+    public void testOfflineFallback() throws Exception {
+        GitMirrorCache cache = new GitMirrorCache(cacheDir);
+        cache.load(cloneUrl, GitCloneTemplateParams.DEFAULT_BRANCH, new NullProgressMonitor());
+
+        // The clone URL cannot be reached anymore, the mirrored state is used
+        source.getRepository().close();
+        IO.delete(sourceDir);
+        assertEquals("first", read(cache.load(cloneUrl, GitCloneTemplateParams.DEFAULT_BRANCH, new NullProgressMonitor()), "template.txt"));
+
+        // Without a mirrored state the failure is reported
+        try {
+            new GitMirrorCache(new File(cacheDir, "other")).load(cloneUrl, GitCloneTemplateParams.DEFAULT_BRANCH, new NullProgressMonitor());
+            fail("expected the load to fail");
+        } catch (Exception e) {
+            // expected
+        }
+    }
+
+    private void commit(String path, String content) throws Exception {
+        IO.store(content, IO.getFile(sourceDir, path));
+        source.add().addFilepattern(path).call();
+        source.commit().setMessage("Change " + path).call();
+    }
+
+    private static String read(ResourceMap resources, String path) throws Exception {
+        Resource resource = resources.get(path);
+        assertNotNull(path, resource);
+        assertEquals("UTF-8", resource.getTextEncoding());
+        return IO.collect(resource.getContent(), resource.getTextEncoding());
+    }
+
+}
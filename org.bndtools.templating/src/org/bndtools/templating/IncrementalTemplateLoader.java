@@ -0,0 +1,23 @@
+package org.bndtools.templating;
+
+import java.util.Collection;
+
+import org.osgi.annotation.versioning.ProviderType;
+import org.osgi.util.promise.Promise;
+
+import aQute.service.reporter.Reporter;
+
+/**
+ * A template loader that publishes templates as each of its sources responds, rather than only once all of them have.
+ */
+@ProviderType
+public interface IncrementalTemplateLoader extends TemplateLoader {
+
+    /**
+     * Find templates of the specified type, passing each batch to the listener as soon as it is available. The returned
+     * promise resolves to all of the templates found once every source has either responded or exceeded its time
+     * budget.
+     */
+    Promise< ? extends Collection<Template>> findTemplates(String type, Reporter reporter, TemplateListener listener);
+
+}
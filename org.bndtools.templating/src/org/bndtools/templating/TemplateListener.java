@@ -0,0 +1,19 @@
+package org.bndtools.templating;
+
+import java.util.Collection;
+
+import org.osgi.annotation.versioning.ConsumerType;
+
+/**
+ * Receives templates from an {@link IncrementalTemplateLoader} as each of its sources responds.
+ */
+@ConsumerType
+public interface TemplateListener {
+
+    /**
+     * Called with each batch of newly found templates. May be called from any thread, and may be called concurrently
+     * for different sources.
+     */
+    void templatesFound(Collection<Template> templates);
+
+}
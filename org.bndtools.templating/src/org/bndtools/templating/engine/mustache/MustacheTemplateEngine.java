@@ -6,9 +6,10 @@ import java.io.Reader;
 import java.io.StringReader;
 import java.io.StringWriter;
 import java.io.UnsupportedEncodingException;
-import java.util.Collections;
+import java.io.Writer;
 import java.util.Enumeration;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
@@ -17,14 +18,18 @@ import java.util.Properties;
 import org.bndtools.templating.Resource;
 import org.bndtools.templating.ResourceMap;
 import org.bndtools.templating.ResourceType;
-import org.bndtools.templating.StringResource;
 import org.bndtools.templating.TemplateEngine;
+import org.bndtools.templating.util.CompiledTemplateCache;
+import org.bndtools.templating.util.RenderedResource;
 import org.eclipse.core.runtime.IProgressMonitor;
 import org.osgi.service.component.annotations.Component;
 
+import com.github.mustachejava.Code;
 import com.github.mustachejava.DefaultMustacheFactory;
-import com.github.mustachejava.reflect.ReflectionObjectHandler;
-import com.github.mustachejava.util.Wrapper;
+import com.github.mustachejava.Mustache;
+import com.github.mustachejava.codes.IterableCode;
+import com.github.mustachejava.codes.NotIterableCode;
+import com.github.mustachejava.codes.ValueCode;
 
 import aQute.bnd.osgi.Constants;
 import aQute.bnd.osgi.Instructions;
@@ -69,50 +74,77 @@ public class MustacheTemplateEngine implements TemplateEngine {
         }
     }
 
+    /**
+     * The compiled form of a template: the mapping template for each input path, and the content template for each
+     * preprocessed input.
+     */
+    private static class CompiledTemplate {
+        final TemplateSettings settings;
+        final Properties defaults;
+        final Map<String,Mustache> mappings = new LinkedHashMap<>();
+        final Map<String,Mustache> contents = new HashMap<>();
+        Map<String,String> params = null;
+
+        CompiledTemplate(TemplateSettings settings, Properties defaults) {
+            this.settings = settings;
+            this.defaults = defaults;
+        }
+    }
+
+    private final CompiledTemplateCache<CompiledTemplate> cache = new CompiledTemplateCache<>();
+
     @Override
     public Map<String,String> getTemplateParameters(ResourceMap inputs, IProgressMonitor monitor) throws Exception {
-        final Map<String,String> params = new HashMap<>();
-        final Properties defaults = readDefaults(inputs);
-
-        TemplateSettings settings = readSettings(inputs);
-        DefaultMustacheFactory factory = new DefaultMustacheFactory();
-        factory.setObjectHandler(new ReflectionObjectHandler() {
-            @Override
-            public Wrapper find(String name, Object[] scopes) {
-                params.put(name, defaults.getProperty(name, null));
-                return super.find(name, scopes);
-            }
-        });
-        int counter = 0;
-        for (Entry<String,Resource> entry : inputs.entries()) {
-            String inputPath = entry.getKey();
-            factory.compile(new StringReader(inputPath), "mapping", settings.leftDelim, settings.rightDelim).execute(new StringWriter(), Collections.emptyMap());
-            Resource source = entry.getValue();
-            if (settings.ignore == null || !settings.ignore.matches(inputPath)) {
-                if (source.getType() == ResourceType.File && settings.preprocessMatch.matches(inputPath)) {
-                    InputStreamReader reader = new InputStreamReader(source.getContent(), source.getTextEncoding());
-                    factory.compile(reader, "temp" + (counter++), settings.leftDelim, settings.rightDelim).execute(new StringWriter(), Collections.emptyMap()).toString();
-                }
-            }
+        CompiledTemplate compiled = compileTemplate(inputs);
+        synchronized (compiled) {
+            if (compiled.params == null)
+                compiled.params = extractParameters(compiled);
+            return new HashMap<>(compiled.params);
         }
+    }
+
+    /*
+     * Find the parameters in the compiled templates, as they would be looked up when rendering without any values: the
+     * content of a section is not rendered then, but the content of an inverted section is.
+     */
+    private static Map<String,String> extractParameters(CompiledTemplate compiled) {
+        Map<String,String> params = new HashMap<>();
+        for (Mustache mapping : compiled.mappings.values())
+            collectParameters(mapping, compiled.defaults, params);
+        for (Mustache content : compiled.contents.values())
+            collectParameters(content, compiled.defaults, params);
         return params;
     }
 
+    private static void collectParameters(Code code, Properties defaults, Map<String,String> params) {
+        if (code instanceof ValueCode || code instanceof IterableCode) {
+            String name = code.getName();
+            params.put(name, defaults.getProperty(name, null));
+            if (!(code instanceof NotIterableCode))
+                return;
+        }
+        Code[] codes = code.getCodes();
+        if (codes != null) {
+            for (Code child : codes)
+                collectParameters(child, defaults, params);
+        }
+    }
+
     @Override
     public ResourceMap generateOutputs(ResourceMap inputs, Map<String,List<Object>> parameters, IProgressMonitor monitor) throws Exception {
-        TemplateSettings settings = readSettings(inputs);
-        Properties defaults = readDefaults(inputs);
+        CompiledTemplate compiled = compileTemplate(inputs);
+        TemplateSettings settings = compiled.settings;
 
         ResourceMap outputs = new ResourceMap();
-        Map<String,Object> flattenedParams = flattenParameters(parameters);
-        applyDefaults(defaults, flattenedParams);
-
-        DefaultMustacheFactory mustacheFactory = new DefaultMustacheFactory();
+        final Map<String,Object> flattenedParams = flattenParameters(parameters);
+        applyDefaults(compiled.defaults, flattenedParams);
 
         for (Entry<String,Resource> entry : inputs.entries()) {
             String inputPath = entry.getKey();
+            if (isSettingsPath(inputPath))
+                continue;
             Resource source = entry.getValue();
-            String outputPath = mustacheFactory.compile(new StringReader(inputPath), "mapping", settings.leftDelim, settings.rightDelim).execute(new StringWriter(), flattenedParams).toString();
+            String outputPath = compiled.mappings.get(inputPath).execute(new StringWriter(), flattenedParams).toString();
 
             if (settings.ignore == null || !settings.ignore.matches(inputPath)) {
                 Resource output;
@@ -121,11 +153,15 @@ public class MustacheTemplateEngine implements TemplateEngine {
                     output = source;
                     break;
                 case File :
-                    if (settings.preprocessMatch.matches(inputPath)) {
-                        // This file should be processed with the template engine
-                        InputStreamReader reader = new InputStreamReader(source.getContent(), source.getTextEncoding());
-                        String rendered = mustacheFactory.compile(reader, outputPath, settings.leftDelim, settings.rightDelim).execute(new StringWriter(), flattenedParams).toString();
-                        output = new StringResource(rendered);
+                    final Mustache content = compiled.contents.get(inputPath);
+                    if (content != null) {
+                        // This file is processed with the template engine, but only rendered when the output is actually consumed
+                        output = new RenderedResource() {
+                            @Override
+                            protected void render(Writer writer) throws Exception {
+                                content.execute(writer, flattenedParams);
+                            }
+                        };
                     } else {
                         // This file should be directly copied
                         output = source;
@@ -141,6 +177,40 @@ public class MustacheTemplateEngine implements TemplateEngine {
         return outputs;
     }
 
+    private CompiledTemplate compileTemplate(ResourceMap inputs) throws IOException {
+        String key = CompiledTemplateCache.hash(inputs);
+
+        // The settings and defaults resources are not part of the template output. They are left in the inputs, so the
+        // same inputs hash to the same key when they are passed again.
+        TemplateSettings settings = readSettings(inputs);
+        Properties defaults = readDefaults(inputs);
+
+        CompiledTemplate compiled = cache.get(key);
+        if (compiled != null)
+            return compiled;
+
+        compiled = new CompiledTemplate(settings, defaults);
+        DefaultMustacheFactory mustacheFactory = new DefaultMustacheFactory();
+        for (Entry<String,Resource> entry : inputs.entries()) {
+            String inputPath = entry.getKey();
+            if (isSettingsPath(inputPath))
+                continue;
+            Resource source = entry.getValue();
+            compiled.mappings.put(inputPath, mustacheFactory.compile(new StringReader(inputPath), "mapping", settings.leftDelim, settings.rightDelim));
+
+            if (settings.ignore == null || !settings.ignore.matches(inputPath)) {
+                if (source.getType() == ResourceType.File && settings.preprocessMatch.matches(inputPath)) {
+                    try (Reader reader = new InputStreamReader(source.getContent(), source.getTextEncoding())) {
+                        compiled.contents.put(inputPath, mustacheFactory.compile(reader, inputPath, settings.leftDelim, settings.rightDelim));
+                    }
+                }
+            }
+        }
+
+        cache.put(key, compiled);
+        return compiled;
+    }
+
     private static void applyDefaults(Properties defaults, Map<String,Object> params) {
         for (Enumeration< ? > defaultsEnum = defaults.propertyNames(); defaultsEnum.hasMoreElements();) {
             String name = (String) defaultsEnum.nextElement();
@@ -150,9 +220,13 @@ public class MustacheTemplateEngine implements TemplateEngine {
         }
     }
 
+    private static boolean isSettingsPath(String path) {
+        return TEMPLATE_PROPERTIES.equals(path) || DEFAULT_PROPERTIES.equals(path);
+    }
+
     private static TemplateSettings readSettings(ResourceMap inputs) throws IOException, UnsupportedEncodingException {
         Properties settingsProp = new Properties();
-        Resource settingsResource = inputs.remove(TEMPLATE_PROPERTIES);
+        Resource settingsResource = inputs.get(TEMPLATE_PROPERTIES);
         if (settingsResource != null) {
             if (settingsResource.getType() != ResourceType.File)
                 throw new IllegalArgumentException(String.format("Template settings resource %s must be a file; found resource type %s.", TEMPLATE_PROPERTIES, settingsResource.getType()));
@@ -166,7 +240,7 @@ public class MustacheTemplateEngine implements TemplateEngine {
 
     private static Properties readDefaults(ResourceMap inputs) throws IOException {
         Properties props = new Properties();
-        Resource defaultsResource = inputs.remove(DEFAULT_PROPERTIES);
+        Resource defaultsResource = inputs.get(DEFAULT_PROPERTIES);
         if (defaultsResource != null) {
             if (defaultsResource.getType() != ResourceType.File)
                 throw new IllegalArgumentException(String.format("Default properties resource %s must be a file; found resource type %s", DEFAULT_PROPERTIES, defaultsResource.getType()));
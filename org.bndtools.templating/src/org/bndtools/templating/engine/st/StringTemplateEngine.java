@@ -8,18 +8,24 @@ import java.io.Reader;
 import java.io.StringReader;
 import java.io.StringWriter;
 import java.io.UnsupportedEncodingException;
+import java.io.Writer;
 import java.util.Enumeration;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Properties;
+import java.util.Set;
+
 import org.bndtools.templating.Resource;
 import org.bndtools.templating.ResourceMap;
 import org.bndtools.templating.ResourceType;
 import org.bndtools.templating.StringResource;
 import org.bndtools.templating.TemplateEngine;
+import org.bndtools.templating.util.CompiledTemplateCache;
+import org.bndtools.templating.util.RenderedResource;
 import org.eclipse.core.runtime.IProgressMonitor;
 import org.osgi.service.component.annotations.Component;
 import org.stringtemplate.v4.AutoIndentWriter;
@@ -45,6 +51,7 @@ public class StringTemplateEngine implements TemplateEngine {
     private static final String TEMPLATE_PROPERTIES = "_template.properties";
     private static final String TEMPLATE_DEFS_PREFIX = "_defs/";
     private static final String TEMPLATE_FILE_SUFFIX = ".st";
+    private static final String MAPPING_TEMPLATE = "_mapping";
 
     private static class TemplateSettings {
         char leftDelim = '$';
@@ -83,51 +90,48 @@ public class StringTemplateEngine implements TemplateEngine {
         }
     }
 
-    @Override
-    public Map<String,String> getTemplateParameters(ResourceMap inputs, IProgressMonitor monitor) throws Exception {
-        Map<String,String> params = new HashMap<>();
-
-        // Initialise the engine
-        TemplateSettings settings = readSettings(inputs);
-        STGroup stg = new STGroup(settings.leftDelim, settings.rightDelim);
-
-        // Assemble a mapping properties file of outputPath=sourcePath
-        String mappingTemplate = loadMappingTemplate(inputs, settings, stg);
-        extractAttrs(compile(stg, "_mapping", new StringResource(mappingTemplate)), params);
-
-        // Iterate the entries
-        Properties contentProps = new Properties();
-        contentProps.load(new StringReader(mappingTemplate));
-        @SuppressWarnings("unchecked")
-        Enumeration<String> contentEnum = (Enumeration<String>) contentProps.propertyNames();
-        while (contentEnum.hasMoreElements()) {
-            String outputPath = contentEnum.nextElement().trim();
-            String sourcePath = contentProps.getProperty(outputPath);
+    /**
+     * The compiled form of a template: a group containing the mapping template and every preprocessed input.
+     */
+    private static class CompiledTemplate {
+        final TemplateSettings settings;
+        final STGroup group;
+        final String mappingTemplate;
+        final Set<String> compiledSources = new HashSet<>();
+        Map<String,String> params = null;
+
+        CompiledTemplate(TemplateSettings settings, STGroup group, String mappingTemplate) {
+            this.settings = settings;
+            this.group = group;
+            this.mappingTemplate = mappingTemplate;
+        }
+    }
 
-            Resource source = inputs.get(sourcePath);
-            if (source == null)
-                throw new RuntimeException(String.format("Internal error in template engine: could not find input resource '%s'", sourcePath));
+    private final CompiledTemplateCache<CompiledTemplate> cache = new CompiledTemplateCache<>();
 
-            if (settings.ignore == null || !settings.ignore.matches(sourcePath)) {
-                if (source.getType() == ResourceType.File) {
-                    if (settings.preprocessMatch.matches(sourcePath)) {
-                        extractAttrs(compile(stg, sourcePath, source), params);
-                    }
+    @Override
+    public Map<String,String> getTemplateParameters(ResourceMap inputs, IProgressMonitor monitor) throws Exception {
+        CompiledTemplate compiled = compileTemplate(inputs);
+        synchronized (compiled) {
+            if (compiled.params == null) {
+                Map<String,String> params = new HashMap<>();
+                extractAttrs(compiled.group.getInstanceOf(MAPPING_TEMPLATE), params);
+                for (String sourcePath : compiled.compiledSources) {
+                    extractAttrs(compiled.group.getInstanceOf(sourcePath), params);
                 }
+                compiled.params = params;
             }
+            return new HashMap<>(compiled.params);
         }
-
-        return params;
     }
 
     @Override
-    public ResourceMap generateOutputs(ResourceMap inputs, Map<String,List<Object>> parameters, IProgressMonitor monitor) throws Exception {
-        TemplateSettings settings = readSettings(inputs);
-        STGroup stg = new STGroup(settings.leftDelim, settings.rightDelim);
+    public ResourceMap generateOutputs(ResourceMap inputs, final Map<String,List<Object>> parameters, IProgressMonitor monitor) throws Exception {
+        final CompiledTemplate compiled = compileTemplate(inputs);
+        TemplateSettings settings = compiled.settings;
 
-        // Assemble a mapping properties file of outputPath=sourcePath
-        String mappingTemplate = loadMappingTemplate(inputs, settings, stg);
-        String renderedMapping = render(compile(stg, "_mapping", new StringResource(mappingTemplate)), parameters);
+        // Render the mapping properties file of outputPath=sourcePath
+        String renderedMapping = render(compiled.group.getInstanceOf(MAPPING_TEMPLATE), parameters);
 
         Properties contentProps = new Properties();
         contentProps.load(new StringReader(renderedMapping));
@@ -138,7 +142,7 @@ public class StringTemplateEngine implements TemplateEngine {
         Enumeration<String> contentEnum = (Enumeration<String>) contentProps.propertyNames();
         while (contentEnum.hasMoreElements()) {
             String outputName = contentEnum.nextElement().trim();
-            String sourceName = contentProps.getProperty(outputName, "").trim();
+            final String sourceName = contentProps.getProperty(outputName, "").trim();
 
             Resource source = inputs.get(sourceName);
             if (source == null)
@@ -148,10 +152,16 @@ public class StringTemplateEngine implements TemplateEngine {
             if (settings.ignore == null || !settings.ignore.matches(sourceName)) {
                 if (source.getType() == ResourceType.Folder) {
                     output = source;
-                } else if (settings.preprocessMatch.matches(sourceName)) {
-                    // This file is a candidate for preprocessing with ST
-                    String rendered = render(compile(stg, sourceName, source), parameters);
-                    output = new StringResource(rendered);
+                } else if (compiled.compiledSources.contains(sourceName)) {
+                    // This file is preprocessed with ST, but only rendered when the output is actually consumed
+                    output = new RenderedResource() {
+                        @Override
+                        protected void render(Writer writer) throws Exception {
+                            ST st = compiled.group.getInstanceOf(sourceName);
+                            addParameters(st, parameters);
+                            st.write(new AutoIndentWriter(writer));
+                        }
+                    };
                 } else {
                     // This file should be directly copied
                     output = source;
@@ -163,6 +173,49 @@ public class StringTemplateEngine implements TemplateEngine {
         return outputs;
     }
 
+    private CompiledTemplate compileTemplate(ResourceMap inputs) throws Exception {
+        String key = CompiledTemplateCache.hash(inputs);
+
+        // The settings resource is not part of the template output
+        TemplateSettings settings = readSettings(inputs);
+
+        CompiledTemplate compiled = cache.get(key);
+        if (compiled != null)
+            return compiled;
+
+        // Initialise the engine
+        STGroup stg = new STGroup(settings.leftDelim, settings.rightDelim);
+
+        // Assemble a mapping properties file of outputPath=sourcePath
+        String mappingTemplate = loadMappingTemplate(inputs, settings, stg);
+        compile(stg, MAPPING_TEMPLATE, new StringResource(mappingTemplate));
+        compiled = new CompiledTemplate(settings, stg, mappingTemplate);
+
+        // Compile each preprocessed input exactly once
+        Properties contentProps = new Properties();
+        contentProps.load(new StringReader(mappingTemplate));
+        @SuppressWarnings("unchecked")
+        Enumeration<String> contentEnum = (Enumeration<String>) contentProps.propertyNames();
+        while (contentEnum.hasMoreElements()) {
+            String outputPath = contentEnum.nextElement().trim();
+            String sourcePath = contentProps.getProperty(outputPath);
+
+            Resource source = inputs.get(sourcePath);
+            if (source == null)
+                throw new RuntimeException(String.format("Internal error in template engine: could not find input resource '%s'", sourcePath));
+
+            if (settings.ignore == null || !settings.ignore.matches(sourcePath)) {
+                if (source.getType() == ResourceType.File && settings.preprocessMatch.matches(sourcePath)) {
+                    compile(stg, sourcePath, source);
+                    compiled.compiledSources.add(sourcePath);
+                }
+            }
+        }
+
+        cache.put(key, compiled);
+        return compiled;
+    }
+
     private String loadMappingTemplate(ResourceMap inputs, TemplateSettings settings, STGroup stg) throws IOException {
         StringWriter buf = new StringWriter();
         PrintWriter bufPrint = new PrintWriter(buf);
@@ -176,7 +229,7 @@ public class StringTemplateEngine implements TemplateEngine {
                     if (resource != null && resource.getType() == ResourceType.File)
                         loadTemplate(stg, inputPathRelative, resource.getContent(), resource.getTextEncoding());
                 }
-            } else {
+            } else if (!TEMPLATE_PROPERTIES.equals(inputPath)) {
                 // Mapping to output file
                 String outputPath = inputPath;
                 String escapedSourcePath = escapeDelimiters(inputPath, settings);
@@ -191,7 +244,7 @@ public class StringTemplateEngine implements TemplateEngine {
 
     private TemplateSettings readSettings(ResourceMap inputs) throws IOException, UnsupportedEncodingException {
         Properties settingsProp = new Properties();
-        Resource settingsResource = inputs.remove(TEMPLATE_PROPERTIES);
+        Resource settingsResource = inputs.get(TEMPLATE_PROPERTIES);
         if (settingsResource != null) {
             if (settingsResource.getType() != ResourceType.File)
                 throw new IllegalArgumentException(String.format("Template settings resource %s must be a file; found resource type %s.", TEMPLATE_PROPERTIES, settingsResource.getType()));
@@ -240,13 +293,17 @@ public class StringTemplateEngine implements TemplateEngine {
         interpreter.exec(new AutoIndentWriter(writer), new InstanceScope(null, st));
     }
 
-    private String render(ST st, Map<String,List<Object>> params) throws Exception {
+    private static String render(ST st, Map<String,List<Object>> params) throws Exception {
+        addParameters(st, params);
+        return st.render();
+    }
+
+    private static void addParameters(ST st, Map<String,List<Object>> params) {
         for (Entry<String,List<Object>> entry : params.entrySet()) {
             for (Object value : entry.getValue()) {
                 st.add(entry.getKey(), value);
             }
         }
-        return st.render();
     }
 
     private ST compile(STGroup group, String name, Resource resource) throws Exception {
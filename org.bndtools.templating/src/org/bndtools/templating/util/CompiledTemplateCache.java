@@ -0,0 +1,100 @@
+package org.bndtools.templating.util;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.ref.SoftReference;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import org.bndtools.templating.Resource;
+import org.bndtools.templating.ResourceMap;
+import org.bndtools.templating.ResourceType;
+
+import aQute.lib.hex.Hex;
+
+/**
+ * A bounded, least recently used cache of compiled template artifacts, keyed by the hash of the template's input
+ * resources. Values are softly referenced so the cache gives way under memory pressure.
+ */
+public class CompiledTemplateCache<T> {
+
+    public static final int DEFAULT_MAX_ENTRIES = 32;
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private final Map<String,SoftReference<T>> cache;
+
+    public CompiledTemplateCache() {
+        this(DEFAULT_MAX_ENTRIES);
+    }
+
+    public CompiledTemplateCache(final int maxEntries) {
+        cache = new LinkedHashMap<String,SoftReference<T>>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String,SoftReference<T>> eldest) {
+                return size() > maxEntries;
+            }
+        };
+    }
+
+    public synchronized T get(String key) {
+        SoftReference<T> ref = cache.get(key);
+        if (ref == null)
+            return null;
+        T value = ref.get();
+        if (value == null)
+            cache.remove(key);
+        return value;
+    }
+
+    public synchronized void put(String key, T value) {
+        cache.put(key, new SoftReference<T>(value));
+    }
+
+    public synchronized void clear() {
+        cache.clear();
+    }
+
+    /**
+     * Calculate a hash over the paths, types, encodings and content of all the resources in the map.
+     */
+    public static String hash(ResourceMap resources) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IOException(e);
+        }
+
+        byte[] buf = new byte[4096];
+        for (Entry<String,Resource> entry : resources.entries()) {
+            Resource resource = entry.getValue();
+            digest.update(entry.getKey().getBytes(UTF8));
+            digest.update((byte) 0);
+            digest.update(resource.getType().name().getBytes(UTF8));
+            digest.update((byte) 0);
+            if (resource.getType() == ResourceType.File) {
+                String encoding = resource.getTextEncoding();
+                if (encoding != null)
+                    digest.update(encoding.getBytes(UTF8));
+                digest.update((byte) 0);
+                try (InputStream in = resource.getContent()) {
+                    int count = in.read(buf);
+                    while (count >= 0) {
+                        digest.update(buf, 0, count);
+                        count = in.read(buf);
+                    }
+                }
+                digest.update((byte) 0);
+            }
+        }
+        return Hex.toHexString(digest.digest());
+    }
+
+}
@@ -0,0 +1,60 @@
+package org.bndtools.templating.util;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+
+import org.bndtools.templating.Resource;
+import org.bndtools.templating.ResourceType;
+
+/**
+ * A file resource that is rendered from a compiled template only when its content is requested. Consumers that write
+ * outputs one at a time therefore hold at most one rendered file in memory, and {@link #write(OutputStream)} renders
+ * straight into a target stream without any intermediate buffer.
+ */
+public abstract class RenderedResource implements Resource {
+
+    private static final String ENCODING = "UTF-8";
+
+    /**
+     * Render the content into the writer.
+     */
+    protected abstract void render(Writer writer) throws Exception;
+
+    @Override
+    public ResourceType getType() {
+        return ResourceType.File;
+    }
+
+    @Override
+    public InputStream getContent() throws IOException {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        write(buffer);
+        return new ByteArrayInputStream(buffer.toByteArray());
+    }
+
+    /**
+     * Render the content directly to the output stream. The stream is flushed but not closed.
+     */
+    public void write(OutputStream out) throws IOException {
+        Writer writer = new OutputStreamWriter(out, ENCODING);
+        try {
+            render(writer);
+        } catch (IOException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IOException(e);
+        }
+        writer.flush();
+    }
+
+    @Override
+    public String getTextEncoding() {
+        return ENCODING;
+    }
+
+}
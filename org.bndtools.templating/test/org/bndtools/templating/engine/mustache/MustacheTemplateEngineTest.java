@@ -2,8 +2,10 @@ package org.bndtools.templating.engine.mustache;
 
 import static org.junit.Assert.*;
 
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 
@@ -143,6 +145,17 @@ public class MustacheTemplateEngineTest {
         assertTrue(params.containsKey("antidisestablishmentarianism"));
     }
 
+    @Test
+    public void testGetParamNamesInSections() throws Exception {
+        MustacheTemplateEngine engine = new MustacheTemplateEngine();
+
+        ResourceMap input = new ResourceMap();
+        input.put("{{dir}}/readme.txt", new StringResource("{{#section}}{{inSection}}{{/section}} {{^inverted}}{{inInverted}}{{/inverted}}"));
+
+        Map<String,String> params = engine.getTemplateParameters(input, new NullProgressMonitor());
+        assertEquals(new HashSet<>(Arrays.asList("dir", "section", "inverted", "inInverted")), params.keySet());
+    }
+
     @Test
     public void testGetDefaults() throws Exception {
         MustacheTemplateEngine engine = new MustacheTemplateEngine();
@@ -170,4 +183,32 @@ public class MustacheTemplateEngineTest {
         assertEquals("Blah carp blah potemkin blah ", IO.collect(outputs.get("readme.txt").getContent()));
     }
 
+    @Test
+    public void testRepeatedGeneration() throws Exception {
+        MustacheTemplateEngine engine = new MustacheTemplateEngine();
+
+        Map<String,List<Object>> params = new HashMap<>();
+        params.put("srcDir", Collections.<Object> singletonList("src"));
+        params.put("packageName", Collections.<Object> singletonList("org.example.foo"));
+
+        // Same content, different map instances: the compiled template is reused
+        for (int i = 0; i < 2; i++) {
+            ResourceMap input = new ResourceMap();
+            input.put("_template.properties", new StringResource("ignore=*/donotcopy.*"));
+            input.put("{{srcDir}}/package-info.java", new StringResource("package {{packageName}};"));
+            input.put("{{srcDir}}/donotcopy.txt", new StringResource(""));
+
+            assertEquals(2, engine.getTemplateParameters(input, new NullProgressMonitor()).size());
+            ResourceMap output = engine.generateOutputs(input, params, new NullProgressMonitor());
+            assertEquals(1, output.size());
+            assertEquals("package org.example.foo;", IO.collect(output.get("src/package-info.java").getContent()));
+        }
+
+        // Changed content is recompiled
+        ResourceMap input = new ResourceMap();
+        input.put("{{srcDir}}/package-info.java", new StringResource("package {{packageName}}.impl;"));
+        ResourceMap output = engine.generateOutputs(input, params, new NullProgressMonitor());
+        assertEquals("package org.example.foo.impl;", IO.collect(output.get("src/package-info.java").getContent()));
+    }
+
 }